@@ -36,31 +36,48 @@ package prefux;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.event.Event;
 import javafx.event.EventHandler;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.scene.Group;
 import javafx.scene.Node;
+import javafx.scene.Scene;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.shape.Circle;
+import javafx.scene.transform.Transform;
 import javafx.scene.transform.Scale;
 
 import com.sun.javafx.css.StyleManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import prefux.controls.Control;
+import prefux.data.Edge;
 import prefux.data.expression.AndPredicate;
 import prefux.data.expression.BooleanLiteral;
 import prefux.data.expression.Predicate;
 import prefux.data.util.Point2D;
 import prefux.data.util.Rectangle2D;
 import prefux.render.EdgeRenderer;
+import prefux.render.Renderer;
+import prefux.util.display.LevelOfDetail;
+import prefux.util.display.LevelOfDetail.Aggregate;
 import prefux.visual.EdgeItem;
+import prefux.visual.NodeItem;
 import prefux.visual.VisualItem;
 import prefux.visual.expression.VisiblePredicate;
 
@@ -68,8 +85,30 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
 
 	private static final Logger log = LogManager.getLogger(FxDisplay.class);
 
+    /**
+     * Looks up the items within the viewports of all displays, off the
+     * JavaFX application thread.
+     */
+    private static final Executor VIEWPORT_LOOKUP = Executors
+            .newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "prefux-viewport");
+                t.setDaemon(true);
+                return t;
+            });
+
     public static final String DEFAULT_STYLESHEET = "prefux/prefux.css";
 
+    /**
+     * The default margin, in screen pixels, by which the culling viewport
+     * extends beyond the visible area of the scene.
+     */
+    public static final double DEFAULT_CULLING_MARGIN = 50.0;
+
+    /**
+     * The CSS style class of the glyphs drawn for aggregated items.
+     */
+    public static final String AGGREGATE_STYLE_CLASS = "prefux-aggregate";
+
     protected AndPredicate m_predicate = new AndPredicate();
 
     private int m_itemCount = 0;
@@ -85,9 +124,23 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
     private DoubleProperty zoomPivotX = new SimpleDoubleProperty(0.0);
     private DoubleProperty zoomPivotY = new SimpleDoubleProperty(0.0);
 
+    private boolean m_culling = false;
+    private double m_cullingMargin = DEFAULT_CULLING_MARGIN;
+    private boolean m_viewportPending = false;
+    private Map<VisualItem, Renderer> m_attached = new HashMap<>();
+    private InvalidationListener m_viewportListener = o -> {
+        if (m_culling)
+            requestViewportUpdate();
+    };
+    private LevelOfDetail m_lod = null;
+    private List<Circle> m_glyphs = new ArrayList<>();
+    private int m_glyphCount = 0;
+    private int m_viewportSeq = 0;
+    private Set<Node> m_back = new LinkedHashSet<>();
+
     public FxDisplay(Visualization vis) {
-        setVisualization(vis);
         setPredicate(null);
+        setVisualization(vis);
     }
 
     /*
@@ -141,8 +194,8 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
 
     @Override
     public double getScale() {
-        // TODO Auto-generated method stub
-        return 0;
+        Transform t = getLocalToSceneTransform();
+        return Math.hypot(t.getMxx(), t.getMyx());
     }
 
     @Override
@@ -161,29 +214,46 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
         StyleManager.getInstance().addUserAgentStylesheet(DEFAULT_STYLESHEET);
         vis.addDisplay(this);
         this.vis = vis;
+        initializeViewport();
+        if (m_culling) {
+            requestViewportUpdate();
+        } else {
+            renderAll();
+        }
+    }
+
+    /**
+     * Render and attach the nodes of all items of the visualization,
+     * regardless of the current viewport.
+     */
+    private void renderAll() {
+        for (VisualItem item : allItems()) {
+            attach(item);
+        }
+        moveToBack();
+    }
+
+    /**
+     * Collect all items of the visualization, edges first.
+     */
+    private List<VisualItem> allItems() {
+        List<VisualItem> items = new ArrayList<>();
         LinkedList<VisualItem> nodes = new LinkedList<>();
         Iterator<VisualItem> it = vis.items();
         // We render nodes after edges for better stacking
         while (it.hasNext()) {
             VisualItem item = it.next();
             if (item instanceof EdgeItem) {
-                item.getRenderer().render(this, item);
-                item.getNode().addEventHandler(Event.ANY, this);
-                m_registeredNodes.put(item.getNode(), item);
-                m_itemCount++;
+                items.add(item);
             } else {
                 nodes.offer(item);
             }
         }
         // Rendering edges after the nodes
-        for (VisualItem item : nodes) {
-            item.getRenderer().render(this, item);
-            item.getNode().addEventHandler(Event.ANY, this);
-            m_registeredNodes.put(item.getNode(), item);
-            m_itemCount++;
-        }
+        items.addAll(nodes);
+        return items;
     }
-    
+
     private void initializeZoom() {
         this.getTransforms().add(zoomScale);
         zoomScale.xProperty().bind(zoomFactor);
@@ -197,7 +267,391 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
     @Override
     public void repaint() {
         log.debug("repaint");
+        if (m_culling) {
+            requestViewportUpdate();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Viewport Culling
 
+    /**
+     * Indicates if viewport culling is enabled. If enabled, scene nodes are
+     * only created and attached for the items within the current viewport,
+     * and are detached again once the items leave it. Culling is disabled
+     * by default.
+     * 
+     * @return true if viewport culling is enabled, false otherwise
+     */
+    public boolean isViewportCulling() {
+        return m_culling;
+    }
+
+    /**
+     * Sets if viewport culling is enabled. If disabled, nodes are attached
+     * for all items of the visualization. While enabled, the items within
+     * the viewport are looked up through the spatial indices of the
+     * visualization, which are created as needed (see
+     * {@link Visualization#createSpatialIndices(String)}).
+     * 
+     * @param b
+     *            true to enable viewport culling, false to disable it
+     */
+    public void setViewportCulling(boolean b) {
+        if (m_culling == b)
+            return;
+        m_culling = b;
+        if (!b) {
+            drawAggregates(null, null, 1.0);
+        }
+        requestViewportUpdate();
+    }
+
+    /**
+     * Returns the margin, in screen pixels, by which the culling viewport
+     * extends beyond the visible area. Items within the margin are
+     * attached ahead of time, so that small pans do not expose missing
+     * nodes.
+     * 
+     * @return the culling margin
+     */
+    public double getCullingMargin() {
+        return m_cullingMargin;
+    }
+
+    /**
+     * Sets the margin, in screen pixels, by which the culling viewport
+     * extends beyond the visible area.
+     * 
+     * @param margin
+     *            the culling margin, must be non-negative
+     */
+    public void setCullingMargin(double margin) {
+        if (margin < 0 || Double.isNaN(margin)) {
+            throw new IllegalArgumentException(
+                    "Culling margin must be non-negative: " + margin);
+        }
+        m_cullingMargin = margin;
+        if (m_culling)
+            requestViewportUpdate();
+    }
+
+    /**
+     * Returns the level-of-detail policy of this display. It is applied
+     * while culling nodes to the viewport. No policy is set by default.
+     * 
+     * @return the level-of-detail policy, or null if all items are drawn
+     *         in full regardless of the display scale
+     */
+    public LevelOfDetail getLevelOfDetail() {
+        return m_lod;
+    }
+
+    /**
+     * Sets the level-of-detail policy of this display. It is only applied
+     * if viewport culling is enabled.
+     * 
+     * @param lod
+     *            the level-of-detail policy, or null to draw all items in
+     *            full regardless of the display scale
+     */
+    public void setLevelOfDetail(LevelOfDetail lod) {
+        m_lod = lod;
+        if (m_culling)
+            requestViewportUpdate();
+    }
+
+    /**
+     * Returns the region currently visible in this display, in item
+     * coordinates and including the culling margin. The region accounts
+     * for the zoom and pan transforms of the display.
+     * 
+     * @return the visible region, or null if the display is not yet part
+     *         of a scene
+     */
+    public Rectangle2D getViewport() {
+        Scene scene = getScene();
+        if (scene == null || scene.getWidth() <= 0 || scene.getHeight() <= 0)
+            return null;
+        double m = m_cullingMargin;
+        Bounds b = sceneToLocal(new BoundingBox(-m, -m,
+                scene.getWidth() + 2 * m, scene.getHeight() + 2 * m));
+        if (b == null)
+            return null;
+        return new Rectangle2D(b.getMinX(), b.getMinY(), b.getWidth(),
+                b.getHeight());
+    }
+
+    /**
+     * Schedule an update of the attached nodes on the JavaFX application
+     * thread. Multiple requests issued before the update runs are
+     * coalesced into a single update.
+     */
+    public void requestViewportUpdate() {
+        if (m_viewportPending)
+            return;
+        m_viewportPending = true;
+        Platform.runLater(() -> {
+            m_viewportPending = false;
+            updateViewport();
+        });
+    }
+
+    /**
+     * Synchronize the attached nodes with the current viewport: nodes are
+     * rendered for items entering the viewport and detached for items
+     * leaving it. Edges are attached if one of their end points lies
+     * within the viewport. The nodes of items leaving the viewport are
+     * released to their renderers, which may reuse them for other items.
+     * If culling is disabled, all items of the visualization are attached,
+     * and the nodes of items no longer part of it are released.
+     *
+     * <p>Must be called on the JavaFX application thread. The items within
+     * the viewport are looked up on a background thread, as this requires
+     * the lock of the visualization, which running actions hold. The nodes
+     * are updated once the lookup completes; results of lookups superseded
+     * by a newer update are dropped.</p>
+     */
+    public void updateViewport() {
+        if (vis == null)
+            return;
+        int seq = ++m_viewportSeq;
+        if (!m_culling) {
+            VIEWPORT_LOOKUP.execute(() -> {
+                Set<VisualItem> items;
+                synchronized (vis) {
+                    items = new LinkedHashSet<>(allItems());
+                }
+                Platform.runLater(() -> {
+                    if (seq == m_viewportSeq && !m_culling)
+                        updateViewport(items, null, null, 1.0);
+                });
+            });
+            return;
+        }
+        Rectangle2D viewport = getViewport();
+        if (viewport == null)
+            return;
+
+        Predicate filter = getPredicate();
+        double scale = getScale();
+        LevelOfDetail lod = m_lod;
+        VIEWPORT_LOOKUP.execute(() -> {
+            List<Aggregate> aggregates = new ArrayList<>();
+            Set<VisualItem> inside = lookup(viewport, filter, scale, lod,
+                    aggregates);
+            Platform.runLater(() -> {
+                if (seq == m_viewportSeq && m_culling)
+                    updateViewport(inside, lod, aggregates, scale);
+            });
+        });
+    }
+
+    /**
+     * Collect the items to attach for the given viewport, replacing dense
+     * regions by aggregates and sampling edges as determined by the
+     * level-of-detail policy.
+     */
+    private Set<VisualItem> lookup(Rectangle2D viewport, Predicate filter,
+            double scale, LevelOfDetail lod, List<Aggregate> aggregates) {
+        boolean labels = lod == null || lod.isLabelVisible(scale);
+        boolean aggregate = lod != null && lod.isAggregated(scale);
+        boolean sample = lod != null && lod.isEdgeSampled(scale);
+
+        Set<VisualItem> inside = new HashSet<>();
+        List<VisualItem> nodes = new ArrayList<>();
+        Set<EdgeItem> edges = new HashSet<>();
+        synchronized (vis) {
+            vis.createSpatialIndices(Visualization.ALL_ITEMS);
+            Iterator<VisualItem> items = vis.items(viewport);
+            while (items.hasNext()) {
+                VisualItem item = items.next();
+                if (item instanceof EdgeItem || !filter.getBoolean(item))
+                    continue;
+                if (!labels && lod.isLabel(item))
+                    continue;
+                nodes.add(item);
+                if (item instanceof NodeItem) {
+                    Iterator<? extends Edge> iter = ((NodeItem) item).edges();
+                    while (iter.hasNext()) {
+                        Edge e = iter.next();
+                        if (e instanceof EdgeItem
+                                && ((EdgeItem) e).isVisible()
+                                && filter.getBoolean(e))
+                            edges.add((EdgeItem) e);
+                    }
+                }
+            }
+
+            // replace dense regions by aggregates
+            if (aggregate) {
+                aggregates.addAll(lod.aggregate(nodes.iterator(), scale,
+                        inside));
+            } else {
+                inside.addAll(nodes);
+            }
+        }
+        // edges are kept when sampled, even if their end points have been
+        // aggregated, as they are still drawn towards the aggregate
+        for (EdgeItem e : edges) {
+            if (!sample || lod.sampleEdge(e, edges.size()))
+                inside.add(e);
+        }
+        return inside;
+    }
+
+    /**
+     * Attach the nodes of the given items and release all others.
+     */
+    private void updateViewport(Set<VisualItem> inside, LevelOfDetail lod,
+            List<Aggregate> aggregates, double scale) {
+        // release the items that left the viewport
+        Map<VisualItem, Renderer> released = new HashMap<>();
+        for (Iterator<Map.Entry<VisualItem, Renderer>> iter = m_attached
+                .entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<VisualItem, Renderer> entry = iter.next();
+            if (!inside.contains(entry.getKey())) {
+                released.put(entry.getKey(), entry.getValue());
+                iter.remove();
+            }
+        }
+        release(released);
+        // materialize the items that entered the viewport
+        for (VisualItem item : inside) {
+            attach(item);
+        }
+        moveToBack();
+        drawAggregates(lod, aggregates, scale);
+        m_itemCount = m_attached.size();
+    }
+
+    /**
+     * Draw a glyph for each aggregate, reusing the glyphs of the previous
+     * update. Glyphs are sized in screen pixels, independent of the scale.
+     */
+    private void drawAggregates(LevelOfDetail lod, List<Aggregate> aggregates,
+            double scale) {
+        int n = aggregates == null ? 0 : aggregates.size();
+        for (int i = 0; i < n; ++i) {
+            Aggregate a = aggregates.get(i);
+            Circle glyph;
+            if (i < m_glyphs.size()) {
+                glyph = m_glyphs.get(i);
+            } else {
+                glyph = new Circle();
+                glyph.getStyleClass().add(AGGREGATE_STYLE_CLASS);
+                glyph.setMouseTransparent(true);
+                m_glyphs.add(glyph);
+            }
+            glyph.setCenterX(a.getX());
+            glyph.setCenterY(a.getY());
+            glyph.setRadius(lod.getGlyphRadius(a.getCount()) / scale);
+            if (i >= m_glyphCount) {
+                getChildren().add(glyph);
+            }
+        }
+        if (n < m_glyphCount) {
+            getChildren().removeAll(m_glyphs.subList(n, m_glyphCount));
+        }
+        m_glyphCount = n;
+    }
+
+    /**
+     * Attach the node of the given item to this display, rendering it
+     * first if the item does not have a node yet. The nodes of edges are
+     * collected to be moved behind all other nodes by {@link #moveToBack()}.
+     * Items drawn without a node of their own, such as batched edges, are
+     * recorded as attached only, and thus can not be picked.
+     */
+    private void attach(VisualItem item) {
+        if (m_attached.containsKey(item))
+            return;
+        Renderer renderer = item.getRenderer();
+        m_attached.put(item, renderer);
+        Node node = item.getNode();
+        if (node == null) {
+            renderer.render(this, item);
+            node = item.getNode();
+            if (node == null)
+                return;
+        } else if (node.getParent() != this) {
+            getChildren().add(node);
+        }
+        if (m_registeredNodes.put(node, item) == null) {
+            node.addEventHandler(Event.ANY, this);
+        }
+        if (item instanceof EdgeItem && node.getParent() == this) {
+            m_back.add(node);
+        }
+        m_itemCount = m_attached.size();
+    }
+
+    /**
+     * Move the nodes of the edges attached since the last call behind all
+     * other nodes, using a single update of the child list.
+     */
+    private void moveToBack() {
+        if (m_back.isEmpty())
+            return;
+        List<Node> children = new ArrayList<>(getChildren().size());
+        children.addAll(m_back);
+        for (Node node : getChildren()) {
+            if (!m_back.contains(node))
+                children.add(node);
+        }
+        m_back.clear();
+        getChildren().setAll(children);
+    }
+
+    /**
+     * Detach the nodes of the given items, using a single update of the
+     * child list, and hand them back to the renderers that created them.
+     */
+    private void release(Map<VisualItem, Renderer> released) {
+        if (released.isEmpty())
+            return;
+        Set<Node> nodes = new HashSet<>();
+        for (VisualItem item : released.keySet()) {
+            Node node = item.getNode();
+            if (node != null && node.getParent() == this)
+                nodes.add(node);
+        }
+        getChildren().removeAll(nodes);
+        for (Map.Entry<VisualItem, Renderer> entry : released.entrySet()) {
+            release(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Detach the node of the given item and hand it back to the renderer
+     * that created it.
+     */
+    private void release(VisualItem item, Renderer renderer) {
+        Node node = item.getNode();
+        if (node != null && m_registeredNodes.remove(node) != null) {
+            node.removeEventHandler(Event.ANY, this);
+        }
+        renderer.release(item);
+    }
+
+    /**
+     * Listen to zoom, pan and scene size changes to keep the attached
+     * nodes in sync with the viewport.
+     */
+    private void initializeViewport() {
+        localToSceneTransformProperty().addListener(m_viewportListener);
+        sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (oldScene != null) {
+                oldScene.widthProperty().removeListener(m_viewportListener);
+                oldScene.heightProperty().removeListener(m_viewportListener);
+            }
+            if (newScene != null) {
+                newScene.widthProperty().addListener(m_viewportListener);
+                newScene.heightProperty().addListener(m_viewportListener);
+            }
+            if (m_culling)
+                requestViewportUpdate();
+        });
     }
 
     @Override
@@ -292,6 +746,36 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
         }
     }
 
+    /**
+     * Find the visible item drawn by this display at the given location,
+     * using the spatial indices of the visualization rather than JavaFX hit
+     * testing. If several items contain the point, the one with the
+     * smallest bounds is returned.
+     * 
+     * @param p
+     *            the location, in item coordinates
+     * @return the item at the given location, or null if there is none
+     */
+    public VisualItem findItem(Point2D p) {
+        Predicate filter = getPredicate();
+        VisualItem best = null;
+        double area = Double.POSITIVE_INFINITY;
+        Iterator<VisualItem> items = vis.items(
+                new Rectangle2D(p.getX(), p.getY(), 0, 0));
+        while (items.hasNext()) {
+            VisualItem item = items.next();
+            if (!filter.getBoolean(item))
+                continue;
+            Rectangle2D b = item.getBounds();
+            double a = b == null ? 0 : b.getWidth() * b.getHeight();
+            if (best == null || a < area) {
+                best = item;
+                area = a;
+            }
+        }
+        return best;
+    }
+
     public VisualItem findItem(Object source) {
         if (source instanceof Node) {
             return m_registeredNodes.get((Node) source);
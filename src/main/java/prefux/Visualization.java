@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -43,6 +44,7 @@ import org.apache.logging.log4j.Logger;
 
 import prefux.action.Action;
 import prefux.activity.Activity;
+import prefux.activity.ActivityManager;
 import prefux.activity.ActivityMap;
 import prefux.data.Graph;
 import prefux.data.Node;
@@ -50,7 +52,6 @@ import prefux.data.Schema;
 import prefux.data.Table;
 import prefux.data.Tree;
 import prefux.data.Tuple;
-import prefux.data.expression.Expression;
 import prefux.data.expression.Predicate;
 import prefux.data.expression.parser.ExpressionParser;
 import prefux.data.tuple.CompositeTupleSet;
@@ -65,6 +66,7 @@ import prefux.util.PrefuseConfig;
 import prefux.util.PrefuseLib;
 import prefux.util.collections.CompositeIterator;
 import prefux.visual.AggregateTable;
+import prefux.visual.SpatialIndex;
 import prefux.visual.VisualGraph;
 import prefux.visual.VisualItem;
 import prefux.visual.VisualTable;
@@ -969,7 +971,8 @@ public class Visualization {
     }
     
     /**
-     * Get an iterator over all visible items.
+     * Get an iterator over all visible items. Visual tables index their
+     * visible flags using bit sets, so only the visible items are visited.
      * @return an iterator over all visible items.
      */
     public Iterator<VisualItem> visibleItems() {
@@ -1035,15 +1038,17 @@ public class Visualization {
      * @param expr an expression string that should parse to a Predicate
      * indicating which items should be included in the iteration. The input
      * string will be parsed using the
-     * {@link prefux.data.expression.parser.ExpressionParser} class. If a
-     * parse error occurs, an empty iterator is returned.
+     * {@link prefux.data.expression.parser.ExpressionParser} class, and
+     * recently used expressions are cached. If a parse error occurs, an
+     * empty iterator is returned.
      * @return a filtered iterator over VisualItems
      */
     public Iterator<VisualItem> items(String group, String expr) {
-        Expression e = ExpressionParser.parse(expr);
-        if ( !(e instanceof Predicate) || ExpressionParser.getError()!=null )
+        // the shared predicate is only used for this iteration
+        Predicate p = ExpressionParser.predicateCached(expr);
+        if ( p == null )
             return Collections.emptyIterator();
-        return items(group, (Predicate)e);
+        return items(group, p);
     }
     
     /**
@@ -1187,7 +1192,7 @@ public class Visualization {
      * @return the Action scheduled to run
      */
     public Activity runAfter(String action, long delay) {
-        return m_actions.runAt(action, System.currentTimeMillis()+delay);
+        return m_actions.runAt(action, ActivityManager.currentTime()+delay);
     }
     
     /**
@@ -1311,6 +1316,27 @@ public class Visualization {
      * bounding box
      */
     public Rectangle2D getBounds(String group, Rectangle2D r) {
+        List<SpatialIndex> indices = new ArrayList<>();
+        if ( getSpatialIndices(group, indices, false) ) {
+            // union of the bounds maintained by the spatial indices
+            Rectangle2D u = null;
+            for ( SpatialIndex idx : indices ) {
+                Rectangle2D b = idx.getBounds();
+                if ( b == null ) {
+                    continue;
+                } else if ( u == null ) {
+                    u = b;
+                } else {
+                    double x = Math.min(b.getMinX(), u.getMinX());
+                    double y = Math.min(b.getMinY(), u.getMinY());
+                    double x1 = Math.max(b.getMaxX(), u.getMaxX());
+                    double y1 = Math.max(b.getMaxY(), u.getMaxY());
+                    u = new Rectangle2D(x,y,x1-x,y1-y);
+                }
+            }
+            return u == null ? r : u;
+        }
+        
         Iterator<VisualItem> iter = visibleItems(group);
         if ( iter.hasNext() ) {
             VisualItem item = (VisualItem)iter.next();
@@ -1327,6 +1353,185 @@ public class Visualization {
         return r;
     }
     
+    // ------------------------------------------------------------------------
+    // Spatial Queries
+    
+    /**
+     * Get the spatial index over the visible items of a group, creating it
+     * if necessary. Spatial indices are available for groups backed by a
+     * {@link prefux.visual.VisualTable}. The spatial queries of this
+     * visualization only consult indices that have been created this way,
+     * and scan the visible items of groups without an index.
+     * @param group the visual data group name
+     * @return the spatial index of the group, or null if the group is not
+     * backed by a single VisualTable
+     * @see #createSpatialIndices(String)
+     */
+    public SpatialIndex getSpatialIndex(String group) {
+        TupleSet ts = getGroup(group);
+        return ts instanceof VisualTable
+            ? ((VisualTable)ts).getSpatialIndex() : null;
+    }
+    
+    /**
+     * Create the spatial indices of all VisualTables making up the given
+     * group, if not present yet. For the {@link #ALL_ITEMS} group, all
+     * visual data groups are indexed.
+     * @param group the visual data group name
+     * @return true if all items of the group are now covered by spatial
+     * indices, false if the group contains items not backed by a
+     * VisualTable
+     * @see #getSpatialIndex(String)
+     */
+    public boolean createSpatialIndices(String group) {
+        return getSpatialIndices(group, new ArrayList<>(), true);
+    }
+    
+    /**
+     * Collect the spatial indices covering all items of the given group.
+     * @param create indicates if missing indices should be created
+     * @return false if the group is not made up of VisualTables with
+     * a spatial index only
+     */
+    private boolean getSpatialIndices(String group, List<SpatialIndex> list,
+                                      boolean create)
+    {
+        if ( ALL_ITEMS.equals(group) ) {
+            for ( String g : m_visual.keySet() ) {
+                if ( !PrefuseLib.isChildGroup(g) &&
+                     !getSpatialIndices(getGroup(g), list, create) )
+                    return false;
+            }
+            return true;
+        }
+        TupleSet ts = getGroup(group);
+        return ts != null && getSpatialIndices(ts, list, create);
+    }
+    
+    private boolean getSpatialIndices(TupleSet ts, List<SpatialIndex> list,
+                                      boolean create)
+    {
+        if ( ts instanceof VisualTable ) {
+            VisualTable vt = (VisualTable)ts;
+            if ( !create && !vt.hasSpatialIndex() )
+                return false;
+            list.add(vt.getSpatialIndex());
+            return true;
+        } else if ( ts instanceof CompositeTupleSet ) {
+            Iterator<TupleSet> sets = ((CompositeTupleSet)ts).sets();
+            while ( sets.hasNext() ) {
+                if ( !getSpatialIndices(sets.next(), list, create) )
+                    return false;
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Get an iterator over all visible items whose bounds intersect the
+     * given region. Items without bounds are matched by their location.
+     * Groups without a spatial index are scanned item by item.
+     * @param region the query region, in item coordinates
+     * @return an iterator over the visible items within the region
+     * @see prefux.visual.SpatialIndex
+     */
+    public Iterator<VisualItem> items(Rectangle2D region) {
+        return items(ALL_ITEMS, region);
+    }
+    
+    /**
+     * Get an iterator over all visible items in the given group whose
+     * bounds intersect the given region. Items without bounds are matched
+     * by their location. Groups without a spatial index are scanned item
+     * by item.
+     * @param group the visual data group name
+     * @param region the query region, in item coordinates
+     * @return an iterator over the visible items within the region
+     * @see prefux.visual.SpatialIndex
+     */
+    public Iterator<VisualItem> items(String group, Rectangle2D region) {
+        List<SpatialIndex> indices = new ArrayList<>();
+        if ( getSpatialIndices(group, indices, false) ) {
+            CompositeIterator<VisualItem> iter =
+                new CompositeIterator<>(indices.size());
+            for ( int i=0; i<indices.size(); ++i )
+                iter.setIterator(i, indices.get(i).items(region));
+            return iter;
+        }
+        
+        List<VisualItem> list = new ArrayList<>();
+        TupleSet ts = getFocusGroup(group);
+        indices.clear();
+        if ( ts != null && getSpatialIndices(ALL_ITEMS, indices, false) ) {
+            // focus groups: query all items and filter by group membership
+            for ( SpatialIndex idx : indices ) {
+                for ( Iterator<VisualItem> iter = idx.items(region);
+                      iter.hasNext(); )
+                {
+                    VisualItem item = iter.next();
+                    if ( ts.containsTuple(item) ) list.add(item);
+                }
+            }
+        } else {
+            for ( Iterator<VisualItem> iter = visibleItems(group);
+                  iter.hasNext(); )
+            {
+                VisualItem item = iter.next();
+                if ( SpatialIndex.intersects(item, region) ) list.add(item);
+            }
+        }
+        return list.iterator();
+    }
+    
+    /**
+     * Get the visible item in the given group that is nearest to the given
+     * point. Items containing the point have distance zero; among
+     * overlapping items, the one with the smallest bounds is returned.
+     * @param group the visual data group name
+     * @param x the x-coordinate of the point, in item coordinates
+     * @param y the y-coordinate of the point, in item coordinates
+     * @param maxDistance the maximum distance of the item to the point
+     * @return the nearest item, or null if there is no item within the
+     * given distance
+     * @see prefux.visual.SpatialIndex
+     */
+    public VisualItem getNearestItem(String group, double x, double y,
+                                     double maxDistance)
+    {
+        VisualItem best = null;
+        List<SpatialIndex> indices = new ArrayList<>();
+        if ( getSpatialIndices(group, indices, false) ) {
+            for ( SpatialIndex idx : indices ) {
+                VisualItem item = idx.getNearestItem(x, y, maxDistance);
+                if ( item != null ) {
+                    // subsequent indices only need to beat this distance
+                    best = item;
+                    maxDistance = SpatialIndex.distance(item, x, y);
+                }
+            }
+            return best;
+        }
+        
+        // no spatial index: linear scan over the visible group members
+        double bestArea = Double.POSITIVE_INFINITY;
+        for ( Iterator<VisualItem> iter = visibleItems(group);
+              iter.hasNext(); )
+        {
+            VisualItem item = iter.next();
+            double d = SpatialIndex.distance(item, x, y);
+            if ( d > maxDistance ) continue;
+            double a = SpatialIndex.area(item);
+            if ( d < maxDistance || a < bestArea || best == null ) {
+                best = item;
+                bestArea = a;
+                maxDistance = d;
+            }
+        }
+        return best;
+    }
+    
     // ------------------------------------------------------------------------
     // Displays
     
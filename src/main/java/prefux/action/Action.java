@@ -30,6 +30,7 @@
  */
 package prefux.action;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import prefux.Visualization;
@@ -60,6 +61,13 @@ import prefux.activity.Activity;
  * a specified step time between each execution until the activity has run for
  * its full duration. A duration of Activity.INFINITE will result in a
  * continually re-running Action.</p>
+ * 
+ * <p>Actions may declare the data they depend upon using the
+ * {@link #addDependency(String)} and {@link #addDependency(String, String)}
+ * methods. Once dependencies are declared, a run of the Action is skipped
+ * if none of them changed since the last executed run, so that, e.g.,
+ * continually scheduled layouts do not consume processing time while
+ * nothing changes. Actions without dependencies always run.</p>
  *
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
@@ -71,6 +79,10 @@ public abstract class Action extends Activity {
     /** A reference to the visualization processed by this Action. */
     protected Visualization m_vis;
     
+    private ActionDependencies m_deps;
+    private final AtomicLong m_executed = new AtomicLong();
+    private final AtomicLong m_skipped = new AtomicLong();
+    
     /**
      * Creates an action instance with zero duration. This Action will only
      * run once if invoked.
@@ -149,7 +161,12 @@ public abstract class Action extends Activity {
         Visualization vis = getVisualization();
         if ( vis != null ) {
             synchronized (vis) {
-                run(getPace(elapsedTime));
+                if ( !begin() ) return;
+                try {
+                    run(getPace(elapsedTime));
+                } finally {
+                    end();
+                }
             }
         } else {
             s_logger.info("Running unsynchronized Action");
@@ -157,6 +174,124 @@ public abstract class Action extends Activity {
         }
     }
     
+    /**
+     * Called before this Action is run. Checks the dependencies of this
+     * Action and updates the run statistics.
+     * @return true if the Action should be run, false if it can be skipped
+     */
+    boolean begin() {
+        if ( isDirty() ) {
+            m_executed.incrementAndGet();
+            return true;
+        } else {
+            m_skipped.incrementAndGet();
+            return false;
+        }
+    }
+    
+    /**
+     * Called after this Action has been run. Marks all dependencies as
+     * unchanged, so that changes made by this Action itself do not cause
+     * it to run again.
+     */
+    void end() {
+        ActionDependencies deps = m_deps;
+        if ( deps != null ) deps.reset();
+    }
+    
+    // ------------------------------------------------------------------------
+    // Dependencies
+    
+    /**
+     * Declare that this Action depends on the given data group. If all
+     * dependencies of this Action are unchanged, a run of this Action is
+     * skipped. Any insertion, deletion or update of items in the group
+     * counts as a change.
+     * @param group the data group this Action depends on
+     */
+    public void addDependency(String group) {
+        addDependency(group, null);
+    }
+    
+    /**
+     * Declare that this Action depends on a data field of the given data
+     * group. If all dependencies of this Action are unchanged, a run of
+     * this Action is skipped. Insertion or deletion of items in the group
+     * as well as updates to the field count as a change.
+     * @param group the data group this Action depends on
+     * @param field the data field this Action depends on
+     */
+    public synchronized void addDependency(String group, String field) {
+        if ( m_deps == null )
+            m_deps = new ActionDependencies();
+        m_deps.add(group, field);
+    }
+    
+    /**
+     * Remove all dependencies of this Action, causing it to always run.
+     */
+    public synchronized void removeDependencies() {
+        if ( m_deps != null ) {
+            m_deps.clear();
+            m_deps = null;
+        }
+    }
+    
+    /**
+     * Indicates if this Action has declared dependencies.
+     * @return true if dependencies have been declared
+     */
+    public boolean hasDependencies() {
+        ActionDependencies deps = m_deps;
+        return deps != null && !deps.isEmpty();
+    }
+    
+    /**
+     * Force the next run of this Action to be executed, even if none of
+     * its dependencies changed. Subclasses should call this method when a
+     * parameter affecting the outcome of the Action changes.
+     */
+    public void invalidate() {
+        ActionDependencies deps = m_deps;
+        if ( deps != null ) deps.invalidate();
+    }
+    
+    /**
+     * Indicates if the next run of this Action will be executed. This is
+     * the case if this Action has no dependencies, or any of them changed
+     * since the last executed run.
+     * @return true if this Action needs to be run
+     */
+    public boolean isDirty() {
+        ActionDependencies deps = m_deps;
+        return deps == null || deps.isDirty(getVisualization());
+    }
+    
+    /**
+     * Get the number of executed runs of this Action.
+     * @return the number of executed runs
+     */
+    public long getExecutedCount() {
+        return m_executed.get();
+    }
+    
+    /**
+     * Get the number of runs of this Action that were skipped because
+     * its dependencies did not change.
+     * @return the number of skipped runs
+     */
+    public long getSkippedCount() {
+        return m_skipped.get();
+    }
+    
+    /**
+     * Reset the executed and skipped run counts of this Action.
+     */
+    public void resetRunCounts() {
+        m_executed.set(0);
+        m_skipped.set(0);
+    }
+    
     /**
      * Return the Visualization processed by this Action.
      * @return the {@link prefux.Visualization} instance.
@@ -171,6 +306,7 @@ public abstract class Action extends Activity {
      */
     public void setVisualization(Visualization vis) {
         m_vis = vis;
+        invalidate();
     }
 
 } // end of class Action
@@ -0,0 +1,224 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import prefux.Visualization;
+import prefux.data.Table;
+import prefux.data.Tuple;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.data.event.TupleSetListener;
+import prefux.data.tuple.CompositeTupleSet;
+import prefux.data.tuple.TupleSet;
+
+/**
+ * Tracks changes to the data an {@link Action} depends upon. Dependencies
+ * are given as data groups of the action's Visualization, optionally
+ * restricted to a single data field. Changes to whole tables are detected
+ * by comparing table modification counts, changes to single fields are
+ * detected by listening for table events on the corresponding column, and
+ * changes to other tuple sets are detected by listening for tuple set
+ * events. Groups are resolved anew on every check, so that groups added to
+ * or removed from the Visualization are picked up.
+ */
+class ActionDependencies {
+
+    private final List<Dependency> m_deps = new ArrayList<Dependency>();
+    private volatile boolean m_dirty = true;
+    
+    /**
+     * Add a dependency on a data group.
+     * @param group the data group
+     * @param field the data field, or null for any change to the group
+     */
+    public synchronized void add(String group, String field) {
+        m_deps.add(new Dependency(group, field));
+        m_dirty = true;
+    }
+    
+    /**
+     * Remove all dependencies, detaching all listeners.
+     */
+    public synchronized void clear() {
+        for ( Dependency d : m_deps )
+            d.detach();
+        m_deps.clear();
+        m_dirty = true;
+    }
+    
+    /**
+     * Indicates if any dependencies are registered.
+     * @return true if there are dependencies
+     */
+    public synchronized boolean isEmpty() {
+        return m_deps.isEmpty();
+    }
+    
+    /**
+     * Mark the dependencies as changed.
+     */
+    public void invalidate() {
+        m_dirty = true;
+    }
+    
+    /**
+     * Indicates if any dependency changed since the last call to
+     * {@link #reset()}.
+     * @param vis the Visualization to resolve data groups with
+     * @return true if a change occurred or a group could not be resolved
+     */
+    public synchronized boolean isDirty(Visualization vis) {
+        if ( vis == null )
+            return true;
+        boolean dirty = m_dirty;
+        for ( Dependency d : m_deps )
+            dirty |= d.check(vis);
+        return m_dirty = dirty;
+    }
+    
+    /**
+     * Accept the current state of all dependencies as unchanged.
+     */
+    public synchronized void reset() {
+        for ( Dependency d : m_deps )
+            d.snapshot();
+        m_dirty = false;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * A single dependency on a data group, and optionally a field.
+     */
+    private class Dependency implements TableListener, TupleSetListener {
+        
+        private final String m_group;
+        private final String m_field;
+        private TupleSet m_set;
+        private List<TupleSet> m_sets = new ArrayList<TupleSet>();
+        private int[] m_counts = new int[0];
+        
+        Dependency(String group, String field) {
+            m_group = group;
+            m_field = field;
+        }
+        
+        /**
+         * Resolve the group and check for changes not reported by events.
+         */
+        boolean check(Visualization vis) {
+            TupleSet ts = vis.getGroup(m_group);
+            if ( ts == null ) {
+                detach();
+                return true;
+            } else if ( ts != m_set ) {
+                detach();
+                attach(ts);
+                return true;
+            }
+            if ( m_field == null ) {
+                for ( int i=0; i<m_counts.length; ++i ) {
+                    TupleSet s = m_sets.get(i);
+                    if ( s instanceof Table && m_counts[i]
+                            != ((Table)s).getModificationCount() )
+                        return true;
+                }
+            }
+            return false;
+        }
+        
+        void snapshot() {
+            for ( int i=0; i<m_counts.length; ++i ) {
+                TupleSet s = m_sets.get(i);
+                if ( s instanceof Table )
+                    m_counts[i] = ((Table)s).getModificationCount();
+            }
+        }
+        
+        private void attach(TupleSet ts) {
+            m_set = ts;
+            collect(ts);
+            m_counts = new int[m_sets.size()];
+            for ( TupleSet s : m_sets ) {
+                if ( s instanceof Table ) {
+                    // whole tables are tracked by modification counts
+                    if ( m_field != null )
+                        ((Table)s).addTableListener(this);
+                } else {
+                    s.addTupleSetListener(this);
+                }
+            }
+            snapshot();
+        }
+        
+        private void collect(TupleSet ts) {
+            if ( ts instanceof CompositeTupleSet ) {
+                Iterator<TupleSet> sets = ((CompositeTupleSet)ts).sets();
+                while ( sets.hasNext() )
+                    collect(sets.next());
+            }
+            m_sets.add(ts);
+        }
+        
+        void detach() {
+            for ( TupleSet s : m_sets ) {
+                if ( s instanceof Table )
+                    ((Table)s).removeTableListener(this);
+                else
+                    s.removeTupleSetListener(this);
+            }
+            m_sets.clear();
+            m_counts = new int[0];
+            m_set = null;
+        }
+        
+        /**
+         * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+         */
+        public void tableChanged(Table t, int start, int end, int col, int type) {
+            if ( col == EventConstants.ALL_COLUMNS
+                    || m_field.equals(t.getColumnName(col)) )
+                m_dirty = true;
+        }
+        
+        /**
+         * @see prefux.data.event.TupleSetListener#tupleSetChanged(prefux.data.tuple.TupleSet, prefux.data.Tuple[], prefux.data.Tuple[])
+         */
+        public void tupleSetChanged(TupleSet tset, Tuple[] add, Tuple[] rem) {
+            m_dirty = true;
+        }
+    }
+    
+} // end of class ActionDependencies
@@ -30,11 +30,16 @@
  */
 package prefux.action;
 
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import prefux.Visualization;
 import prefux.activity.Activity;
+import prefux.data.expression.Predicate;
 import prefux.util.StringLib;
+import prefux.visual.VisualItem;
 
 
 /**
@@ -43,6 +48,19 @@ import prefux.util.StringLib;
  * within other ActionList or {@link ActionSwitch} instances,
  * allowing recursive composition of different sets of Actions.</p>
  * 
+ * <p>By default each Action is run in turn, so that a list of several
+ * {@link ItemAction ItemActions} iterates over the same group several times.
+ * In {@link #setFused(boolean) fused} mode, consecutive ItemActions
+ * processing the same group are instead run in a single pass over the
+ * group: each item is handed to all of these actions in order before the
+ * next item is visited. This is only valid if the fused actions do not
+ * depend on each other's results for <em>other</em> items, which holds for
+ * the typical assignment actions and animators. Actions with declared
+ * {@link Action#addDependency(String) dependencies} are never fused, as
+ * changes made by the other actions of a fused pass could not be told
+ * apart from their own. Per-action run times can be
+ * recorded by enabling {@link #setTimingEnabled(boolean) timing}.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see prefux.activity.Activity
  * @see prefux.action.Action
@@ -52,6 +70,10 @@ public class ActionList extends CompositeAction {
     private static final Logger s_logger = 
         Logger.getLogger(ActionList.class.getName());
     
+    private boolean m_fused = false;
+    private boolean m_timing = false;
+    private Map<Action,long[]> m_times = new IdentityHashMap<Action,long[]>();
+    
     /**
      * Creates a new run-once ActionList.
      */
@@ -98,20 +120,205 @@ public class ActionList extends CompositeAction {
         super(duration, stepTime);
     }
 
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Indicates if consecutive ItemActions on the same group are run in a
+     * single, fused pass over the group's items.
+     * @return true if fused execution is enabled
+     */
+    public boolean isFused() {
+        return m_fused;
+    }
+    
+    /**
+     * Sets if consecutive ItemActions on the same group are run in a
+     * single, fused pass over the group's items. ItemActions overriding
+     * {@link ItemAction#run(double)} are never fused.
+     * @param fused true to enable fused execution
+     */
+    public void setFused(boolean fused) {
+        m_fused = fused;
+    }
+    
+    /**
+     * Indicates if the run time of each contained Action is recorded.
+     * @return true if timing is enabled
+     */
+    public boolean isTimingEnabled() {
+        return m_timing;
+    }
+    
+    /**
+     * Sets if the run time of each contained Action is recorded. In fused
+     * mode, this times every single item processed, which adds a small
+     * overhead per item.
+     * @param timing true to enable timing
+     * @see #getRunTime(Action)
+     */
+    public void setTimingEnabled(boolean timing) {
+        m_timing = timing;
+        if ( !timing ) m_times.clear();
+    }
+    
+    /**
+     * Returns the time spent in the given Action during the last run of
+     * this list. Timing must be enabled for this information to be
+     * recorded.
+     * @param a the Action to look up
+     * @return the run time in nanoseconds, or -1 if not available
+     */
+    public long getRunTime(Action a) {
+        long[] t = m_times.get(a);
+        return ( t == null ? -1 : t[0] );
+    }
+    
+    /**
+     * Returns a short, human readable report of the time spent in each
+     * contained Action during the last run of this list.
+     * @return the timing report
+     */
+    public String getTimingReport() {
+        StringBuilder sb = new StringBuilder();
+        Object[] actions = m_actions.getArray();
+        for ( int i=0; i<actions.length; ++i ) {
+            long t = getRunTime((Action)actions[i]);
+            sb.append(actions[i].getClass().getSimpleName()).append(": ")
+              .append(t < 0 ? "n/a" : (t/1000)+" us").append('\n');
+        }
+        return sb.toString();
+    }
+    
+    // ------------------------------------------------------------------------
+    
     /**
      * @see prefux.action.Action#run(double)
      */
     public void run(double frac) {
         Object[] actions = m_actions.getArray();
-        for ( int i=0; i<actions.length; ++i ) {
+        for ( int i=0; i<actions.length; ) {
             Action a = (Action)actions[i];
-            try {
-                if ( a.isEnabled() ) a.run(frac);
-            } catch ( Exception e ) {
-                s_logger.warning(e.getMessage() + '\n'
-                        + StringLib.getStackTrace(e));
+            int j = i+1;
+            if ( m_fused && isFusable(a) ) {
+                while ( j<actions.length && isFusable((Action)actions[j])
+                        && fusable((ItemAction)a, (ItemAction)actions[j]) )
+                    ++j;
+            }
+            if ( j-i > 1 ) {
+                runFused(actions, i, j, frac);
+            } else {
+                runAction(a, frac);
+            }
+            i = j;
+        }
+    }
+    
+    private void runAction(Action a, double frac) {
+        long t0 = m_timing ? System.nanoTime() : 0;
+        try {
+            if ( a.isEnabled() && a.begin() ) {
+                try {
+                    a.run(frac);
+                } finally {
+                    a.end();
+                }
+            }
+        } catch ( Exception e ) {
+            s_logger.warning(e.getMessage() + '\n'
+                    + StringLib.getStackTrace(e));
+        }
+        if ( m_timing ) setTime(a, System.nanoTime()-t0);
+    }
+    
+    private static boolean isFusable(Action a) {
+        return a.isEnabled() && a instanceof ItemAction 
+                && !a.hasDependencies() && ((ItemAction)a).isFusable();
+    }
+    
+    private static boolean fusable(ItemAction a, ItemAction b) {
+        return a.getVisualization() == b.getVisualization()
+                && a.getGroup() != null && a.getGroup().equals(b.getGroup());
+    }
+    
+    /**
+     * Runs the ItemActions in the given range in a single pass over their
+     * group. If all actions share the same filter predicate, the predicate
+     * is evaluated once per item, otherwise each action's predicate is
+     * tested separately.
+     */
+    private void runFused(Object[] actions, int start, int end, double frac) {
+        int n = end - start;
+        ItemAction[] ia = new ItemAction[n];
+        boolean[] began = new boolean[n];
+        boolean[] ok = new boolean[n];
+        long[] time = new long[n];
+        Predicate filter = ((ItemAction)actions[start]).getFilterPredicate();
+        boolean shared = true;
+        for ( int k=0; k<n; ++k ) {
+            ia[k] = (ItemAction)actions[start+k];
+            shared &= ( ia[k].getFilterPredicate() == filter );
+        }
+        
+        for ( int k=0; k<n; ++k ) {
+            long t0 = m_timing ? System.nanoTime() : 0;
+            began[k] = ia[k].begin();
+            ok[k] = began[k] && invoke(ia[k], true, frac);
+            if ( m_timing ) time[k] += System.nanoTime() - t0;
+        }
+        
+        Visualization vis = ia[0].getVisualization();
+        String group = ia[0].getGroup();
+        Iterator<VisualItem> items = 
+            ( shared ? vis.items(group, filter) : vis.items(group) );
+        while ( items.hasNext() ) {
+            VisualItem item = items.next();
+            for ( int k=0; k<n; ++k ) {
+                if ( !ok[k] ) continue;
+                if ( !shared && !ia[k].getFilterPredicate().getBoolean(item) )
+                    continue;
+                long t0 = m_timing ? System.nanoTime() : 0;
+                try {
+                    ia[k].process(item, frac);
+                } catch ( Exception e ) {
+                    // skip the failing action for the rest of this pass
+                    s_logger.warning(e.getMessage() + '\n'
+                            + StringLib.getStackTrace(e));
+                    ok[k] = false;
+                }
+                if ( m_timing ) time[k] += System.nanoTime() - t0;
             }
         }
+        
+        for ( int k=0; k<n; ++k ) {
+            if ( !began[k] ) {
+                if ( m_timing ) setTime(ia[k], time[k]);
+                continue;
+            }
+            long t0 = m_timing ? System.nanoTime() : 0;
+            if ( ok[k] ) invoke(ia[k], false, frac);
+            ia[k].end();
+            if ( m_timing ) setTime(ia[k], time[k] + System.nanoTime() - t0);
+        }
+    }
+    
+    private boolean invoke(ItemAction a, boolean pre, double frac) {
+        try {
+            if ( pre )
+                a.preProcess(frac);
+            else
+                a.postProcess(frac);
+            return true;
+        } catch ( Exception e ) {
+            s_logger.warning(e.getMessage() + '\n'
+                    + StringLib.getStackTrace(e));
+            return false;
+        }
+    }
+    
+    private void setTime(Action a, long t) {
+        long[] r = m_times.get(a);
+        if ( r == null ) m_times.put(a, r = new long[1]);
+        r[0] = t;
     }
 
 } // end of class ActionList
@@ -64,7 +64,14 @@ public class ActionSwitch extends CompositeAction {
      */
     public void run(double frac) {
         if ( m_actions.size() > 0 ) {
-            get(getSwitchValue()).run(frac);
+            Action a = get(getSwitchValue());
+            if ( a.begin() ) {
+                try {
+                    a.run(frac);
+                } finally {
+                    a.end();
+                }
+            }
         }
     }
     
@@ -87,6 +94,7 @@ public class ActionSwitch extends CompositeAction {
             throw new IllegalArgumentException(
                     "Switch value out of legal range");
         m_switchVal = s;
+        invalidate();
     }
 
 } // end of class ActionSwitch
@@ -163,15 +163,18 @@ public abstract class EncoderAction extends ItemAction {
     // ------------------------------------------------------------------------
     
     /**
-     * @see prefux.action.Action#run(double)
+     * @see prefux.action.ItemAction#preProcess(double)
      */
-    public void run(double frac) {
+    protected void preProcess(double frac) {
         setup();
         if ( m_chain != null )
             m_chain.getExpression().visit(SetupVisitor.getInstance());
-        
-        super.run(frac);
-        
+    }
+    
+    /**
+     * @see prefux.action.ItemAction#postProcess(double)
+     */
+    protected void postProcess(double frac) {
         if ( m_chain != null )
             m_chain.getExpression().visit(FinishVisitor.getInstance());
         finish();
@@ -158,6 +158,7 @@ public abstract class GroupAction extends Action {
      */
     public void setGroup(String group) {
         m_group = group;
+        invalidate();
     }
     
     // ------------------------------------------------------------------------
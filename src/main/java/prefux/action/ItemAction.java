@@ -30,10 +30,18 @@
  */
 package prefux.action;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import prefux.Visualization;
+import prefux.data.Table;
 import prefux.data.expression.Predicate;
+import prefux.util.PrefuseConfig;
 import prefux.visual.VisualItem;
 import prefux.visual.expression.VisiblePredicate;
 
@@ -50,6 +58,16 @@ public abstract class ItemAction extends GroupAction {
     /** A reference to filtering predicate for this Action */
     protected Predicate m_predicate;
     
+    /** Cached result of the fusion check, 0 = unknown, 1 = yes, -1 = no */
+    private int m_fusable = 0;
+    
+    /** The pool used for parallel runs, or null to process items serially */
+    private ForkJoinPool m_pool = null;
+    
+    /** The minimum number of items for which a run is parallelized */
+    private int m_parallelThreshold =
+        PrefuseConfig.getInt("action.parallelThreshold");
+    
     /**
      * Create a new ItemAction that processes all groups.
      * @see Visualization#ALL_ITEMS
@@ -127,10 +145,208 @@ public abstract class ItemAction extends GroupAction {
      * @see prefux.action.Action#run(double)
      */
     public void run(double frac) {
+        preProcess(frac);
         Iterator<VisualItem> items = getVisualization().items(m_group, m_predicate);
-        while ( items.hasNext() ) {
-            process(items.next(), frac);
+        if ( m_pool != null && isThreadSafe() ) {
+            runParallel(items, frac);
+        } else {
+            while ( items.hasNext() ) {
+                process(items.next(), frac);
+            }
+        }
+        postProcess(frac);
+    }
+    
+    /**
+     * Processes the given items in chunks on the parallel pool. Update
+     * events of the tables backing the items, including the events of their
+     * columns, are deferred while the chunks are processed, and then fired
+     * once per modified column and run of consecutive rows, so listeners
+     * are never invoked concurrently.
+     */
+    private void runParallel(Iterator<VisualItem> iter, double frac) {
+        ArrayList<VisualItem> list = new ArrayList<VisualItem>();
+        while ( iter.hasNext() )
+            list.add(iter.next());
+        int n = list.size();
+        VisualItem[] items = list.toArray(new VisualItem[n]);
+        if ( n < m_parallelThreshold ) {
+            for ( int i=0; i<n; ++i )
+                process(items[i], frac);
+            return;
+        }
+        
+        // gather the rows processed per table
+        Map<Table,int[]> counts = new IdentityHashMap<Table,int[]>();
+        for ( int i=0; i<n; ++i ) {
+            Table t = items[i].getTable();
+            int[] c = counts.get(t);
+            if ( c == null ) counts.put(t, c = new int[1]);
+            ++c[0];
         }
+        Map<Table,int[]> rows = new IdentityHashMap<Table,int[]>();
+        for ( Map.Entry<Table,int[]> e : counts.entrySet() ) {
+            rows.put(e.getKey(), new int[e.getValue()[0]]);
+            e.getValue()[0] = 0;
+        }
+        for ( int i=0; i<n; ++i ) {
+            Table t = items[i].getTable();
+            rows.get(t)[counts.get(t)[0]++] = items[i].getRow();
+        }
+        
+        // defer update events, unless a caller already defers them
+        ArrayList<Table> deferred = new ArrayList<Table>(rows.size());
+        boolean parallel = true;
+        for ( Table t : rows.keySet() ) {
+            if ( parallel && t.beginDeferredUpdates() )
+                deferred.add(t);
+            else
+                parallel = false;
+        }
+        
+        try {
+            if ( parallel ) {
+                int grain = Math.max(64, n/(4*m_pool.getParallelism()));
+                m_pool.invoke(new ProcessChunk(items, 0, n, grain, frac));
+            } else {
+                for ( Table t : deferred )
+                    t.endDeferredUpdates(null, 0);
+                deferred.clear();
+                for ( int i=0; i<n; ++i )
+                    process(items[i], frac);
+            }
+        } finally {
+            for ( Table t : deferred ) {
+                int[] r = rows.get(t);
+                Arrays.sort(r);
+                t.endDeferredUpdates(r, r.length);
+            }
+        }
+    }
+    
+    /**
+     * Recursively splits a range of items until it is small enough to be
+     * processed directly.
+     */
+    private final class ProcessChunk extends RecursiveAction {
+        private final VisualItem[] m_items;
+        private final int m_start, m_end, m_grain;
+        private final double m_frac;
+        
+        ProcessChunk(VisualItem[] items, int start, int end,
+                     int grain, double frac)
+        {
+            m_items = items;
+            m_start = start;
+            m_end = end;
+            m_grain = grain;
+            m_frac = frac;
+        }
+        
+        protected void compute() {
+            if ( m_end - m_start <= m_grain ) {
+                for ( int i=m_start; i<m_end; ++i )
+                    process(m_items[i], m_frac);
+            } else {
+                int mid = (m_start + m_end) >>> 1;
+                invokeAll(new ProcessChunk(m_items, m_start, mid, m_grain, m_frac),
+                          new ProcessChunk(m_items, mid, m_end, m_grain, m_frac));
+            }
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Enables or disables parallel execution on the common fork-join pool.
+     * When enabled and this action {@link #isThreadSafe() is thread-safe},
+     * runs over at least {@link #getParallelThreshold()} items are split
+     * into chunks that are processed concurrently. Parallel actions are not
+     * fused with other actions of an {@link ActionList}.
+     * @param parallel true to enable parallel execution, false to process
+     * items serially
+     */
+    public void setParallel(boolean parallel) {
+        setParallel(parallel ? ForkJoinPool.commonPool() : null);
+    }
+    
+    /**
+     * Enables parallel execution on the given fork-join pool.
+     * @param pool the pool on which to process items, or null to process
+     * items serially
+     * @see #setParallel(boolean)
+     */
+    public void setParallel(ForkJoinPool pool) {
+        m_pool = pool;
+    }
+    
+    /**
+     * Indicates if parallel execution is enabled for this action.
+     * @return true if parallel execution is enabled, false otherwise
+     */
+    public boolean isParallel() {
+        return m_pool != null;
+    }
+    
+    /**
+     * Returns the fork-join pool used for parallel runs.
+     * @return the parallel pool, or null if items are processed serially
+     */
+    protected ForkJoinPool getParallelPool() {
+        return m_pool;
+    }
+    
+    /**
+     * Returns the minimum number of items for which a run is processed in
+     * parallel. Smaller runs are always processed serially.
+     * @return the parallel threshold
+     */
+    public int getParallelThreshold() {
+        return m_parallelThreshold;
+    }
+    
+    /**
+     * Sets the minimum number of items for which a run is processed in
+     * parallel.
+     * @param threshold the parallel threshold
+     */
+    public void setParallelThreshold(int threshold) {
+        m_parallelThreshold = threshold;
+    }
+    
+    /**
+     * Indicates if {@link #process(VisualItem, double)} may be invoked
+     * concurrently for distinct items. This requires that processing an
+     * item reads only state that is not modified during the run, including
+     * indices and column metadata, and writes only to the local columns of
+     * the item's own table. Actions are not considered thread-safe unless
+     * they override this method.
+     * @return true if items may be processed concurrently
+     * @see #setParallel(boolean)
+     */
+    protected boolean isThreadSafe() {
+        return false;
+    }
+    
+    /**
+     * Called once per run before any item is processed. By default does
+     * nothing. Subclasses can override this method rather than
+     * {@link #run(double)} to prepare for processing, which keeps the
+     * action eligible for fused execution within an {@link ActionList}.
+     * @param frac the fraction of elapsed duration time
+     */
+    protected void preProcess(double frac) {
+        // do nothing by default
+    }
+    
+    /**
+     * Called once per run after all items have been processed. By default
+     * does nothing.
+     * @param frac the fraction of elapsed duration time
+     * @see #preProcess(double)
+     */
+    protected void postProcess(double frac) {
+        // do nothing by default
     }
     
     /**
@@ -139,5 +355,29 @@ public abstract class ItemAction extends GroupAction {
      * @param frac the fraction of elapsed duration time
      */
     public abstract void process(VisualItem item, double frac);
+    
+    /**
+     * Indicates if this action can be run as part of a fused, single pass
+     * over a group. This is the case if the action does not override
+     * {@link #run(double)}, so that a run consists of nothing but
+     * {@link #preProcess(double)}, {@link #process(VisualItem, double)}
+     * for each filtered item and {@link #postProcess(double)}.
+     * @return true if this action can be fused with other item actions
+     */
+    boolean isFusable() {
+        if ( m_pool != null && isThreadSafe() ) {
+            return false;
+        }
+        if ( m_fusable == 0 ) {
+            try {
+                Class<?> c = getClass().getMethod("run", double.class)
+                        .getDeclaringClass();
+                m_fusable = ( c == ItemAction.class ? 1 : -1 );
+            } catch ( NoSuchMethodException e ) {
+                m_fusable = -1;
+            }
+        }
+        return m_fusable > 0;
+    }
 
 } // end of class ItemAction
@@ -131,5 +131,16 @@ public class ColorAnimator extends ItemAction {
             item.setInt(f, cc);
         }
     }
+    
+    /**
+     * Each item is interpolated from its own start and end colors, so items
+     * may be processed concurrently. The color fields should not be changed
+     * while the animator runs. Subclasses must override this method to opt
+     * in.
+     * @see prefux.action.ItemAction#isThreadSafe()
+     */
+    protected boolean isThreadSafe() {
+        return getClass() == ColorAnimator.class;
+    }
 
 } // end of class ColorAnimator
@@ -0,0 +1,331 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action.animate;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import prefux.action.ItemAction;
+import prefux.data.CascadedTable;
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.column.DoubleColumn;
+import prefux.data.column.FloatColumn;
+import prefux.data.column.IntColumn;
+import prefux.util.ColorLib;
+import prefux.util.PrefuseLib;
+import prefux.util.collections.CopyOnWriteArrayList;
+import prefux.visual.VisualItem;
+
+/**
+ * <p>Animator that interpolates any number of interpolated fields (a field
+ * together with its start and end fields, such as <code>_x</code>,
+ * <code>_startX</code> and <code>_endX</code>) for a whole group at once.
+ * Rather than going through the VisualItem accessors for every item, the
+ * rows of each backing table are collected once per frame and the
+ * primitive data columns are interpolated in a tight loop. Update events
+ * are deferred while interpolating and then fired once per modified column
+ * and run of consecutive rows.</p>
+ * 
+ * <p>Numeric fields are interpolated linearly, color fields channel by
+ * channel. By default, the x and y coordinates, the size, and the stroke,
+ * fill and text colors are animated. When parallel execution is enabled,
+ * large tables are interpolated in chunks on the parallel pool. Fields
+ * that are not backed by local double, float or int columns, such as the
+ * data fields inherited by a cascaded table, are interpolated through the
+ * regular table accessors instead.</p>
+ */
+public class ColumnAnimator extends ItemAction {
+
+    /** The interpolated fields */
+    private CopyOnWriteArrayList m_fields = new CopyOnWriteArrayList();
+    
+    /**
+     * Create a new ColumnAnimator that processes all data groups.
+     */
+    public ColumnAnimator() {
+        super();
+        addDefaultFields();
+    }
+    
+    /**
+     * Create a new ColumnAnimator that processes the specified group.
+     * @param group the data group to process.
+     */
+    public ColumnAnimator(String group) {
+        super(group);
+        addDefaultFields();
+    }
+    
+    private void addDefaultFields() {
+        addField(VisualItem.X);
+        addField(VisualItem.Y);
+        addField(VisualItem.SIZE);
+        addColorField(VisualItem.STROKECOLOR);
+        addColorField(VisualItem.FILLCOLOR);
+        addColorField(VisualItem.TEXTCOLOR);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Add a numeric field to interpolate linearly.
+     * @param field the data field. This should be an interpolated field
+     * (have start and end instances as well as the field name itself).
+     */
+    public void addField(String field) {
+        m_fields.add(new Field(field, false));
+    }
+    
+    /**
+     * Add a color field to interpolate.
+     * @param field the data field holding color values. This should be an
+     * interpolated field (have start and end instances as well as the field
+     * name itself).
+     */
+    public void addColorField(String field) {
+        m_fields.add(new Field(field, true));
+    }
+    
+    /**
+     * Remove a field from the set of interpolated fields.
+     * @param field the data field to remove
+     * @return true if the field was found and removed, false otherwise
+     */
+    public boolean removeField(String field) {
+        Object[] fields = m_fields.getArray();
+        for ( int i=0; i<fields.length; ++i ) {
+            if ( ((Field)fields[i]).name.equals(field) )
+                return m_fields.remove(fields[i]);
+        }
+        return false;
+    }
+    
+    /**
+     * Remove all interpolated fields.
+     */
+    public void clearFields() {
+        m_fields.clear();
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * @see prefux.action.Action#run(double)
+     */
+    public void run(double frac) {
+        Object[] fields = m_fields.getArray();
+        if ( fields.length == 0 ) return;
+        
+        // collect the rows to animate per table
+        Map<Table,Rows> tables = new IdentityHashMap<Table,Rows>();
+        Iterator<VisualItem> items =
+            getVisualization().items(m_group, m_predicate);
+        while ( items.hasNext() ) {
+            VisualItem item = items.next();
+            Rows rows = tables.get(item.getTable());
+            if ( rows == null )
+                tables.put(item.getTable(), rows = new Rows());
+            rows.add(item.getRow());
+        }
+        
+        for ( Map.Entry<Table,Rows> e : tables.entrySet() ) {
+            Table t = e.getKey();
+            Rows rows = e.getValue();
+            Arrays.sort(rows.rows, 0, rows.size);
+            
+            boolean deferred = t.beginDeferredUpdates();
+            try {
+                for ( int i=0; i<fields.length; ++i )
+                    interpolate(t, (Field)fields[i], rows, frac);
+            } finally {
+                if ( deferred )
+                    t.endDeferredUpdates(rows.rows, rows.size);
+            }
+        }
+    }
+    
+    /**
+     * Interpolates a field for the given rows of a table, using the column
+     * kernels when the field is backed by local primitive columns.
+     */
+    private void interpolate(Table t, Field f, Rows rows, double frac) {
+        int c  = t.getColumnNumber(f.name);
+        int sc = t.getColumnNumber(f.start);
+        int ec = t.getColumnNumber(f.end);
+        if ( c < 0 || sc < 0 || ec < 0 ) return;
+        
+        Kernel k = null;
+        if ( isLocal(t, c) && isLocal(t, sc) && isLocal(t, ec) ) {
+            final Column col = t.getColumn(c);
+            final Column s = t.getColumn(sc), e = t.getColumn(ec);
+            final int[] r = rows.rows;
+            if ( f.color ) {
+                if ( col instanceof IntColumn && s instanceof IntColumn
+                        && e instanceof IntColumn )
+                {
+                    k = (from, to) -> ((IntColumn)col).interpolateColors(
+                            (IntColumn)s, (IntColumn)e, frac, r, from, to);
+                }
+            } else if ( col instanceof DoubleColumn
+                    && s instanceof DoubleColumn && e instanceof DoubleColumn )
+            {
+                k = (from, to) -> ((DoubleColumn)col).interpolate(
+                        (DoubleColumn)s, (DoubleColumn)e, frac, r, from, to);
+            } else if ( col instanceof FloatColumn
+                    && s instanceof FloatColumn && e instanceof FloatColumn )
+            {
+                final float ffrac = (float)frac;
+                k = (from, to) -> ((FloatColumn)col).interpolate(
+                        (FloatColumn)s, (FloatColumn)e, ffrac, r, from, to);
+            }
+        }
+        
+        if ( k == null ) {
+            // no column kernel available, go through the table accessors
+            for ( int i=0; i<rows.size; ++i )
+                interpolate(t, rows.rows[i], c, sc, ec, f.color, frac);
+            return;
+        }
+        
+        ForkJoinPool pool = getParallelPool();
+        if ( pool != null && rows.size >= getParallelThreshold() ) {
+            int grain = Math.max(1024, rows.size/(4*pool.getParallelism()));
+            pool.invoke(new KernelChunk(k, 0, rows.size, grain));
+        } else {
+            k.apply(0, rows.size);
+        }
+    }
+    
+    /**
+     * Indicates if the given column is stored in the table itself, such
+     * that column rows and table rows coincide.
+     */
+    private static boolean isLocal(Table t, int col) {
+        return !(t instanceof CascadedTable)
+            || col < ((CascadedTable)t).getLocalColumnCount();
+    }
+    
+    /**
+     * Interpolates a single table cell using the table accessors.
+     */
+    private static void interpolate(Table t, int row, int c, int sc, int ec,
+                                    boolean color, double frac)
+    {
+        if ( color ) {
+            t.setInt(row, c, ColorLib.interp(
+                    t.getInt(row, sc), t.getInt(row, ec), frac));
+        } else if ( t.canSetDouble(t.getColumnName(c)) ) {
+            double s = t.getDouble(row, sc);
+            t.setDouble(row, c, s + frac*(t.getDouble(row, ec)-s));
+        } else if ( t.canSetFloat(t.getColumnName(c)) ) {
+            float s = t.getFloat(row, sc);
+            t.setFloat(row, c, s + (float)frac*(t.getFloat(row, ec)-s));
+        } else {
+            int s = t.getInt(row, sc);
+            t.setInt(row, c, (int)Math.round(s + frac*(t.getInt(row, ec)-s)));
+        }
+    }
+    
+    /**
+     * @see prefux.action.ItemAction#process(prefux.visual.VisualItem, double)
+     */
+    public void process(VisualItem item, double frac) {
+        Table t = item.getTable();
+        Object[] fields = m_fields.getArray();
+        for ( int i=0; i<fields.length; ++i ) {
+            Field f = (Field)fields[i];
+            int c  = t.getColumnNumber(f.name);
+            int sc = t.getColumnNumber(f.start);
+            int ec = t.getColumnNumber(f.end);
+            if ( c >= 0 && sc >= 0 && ec >= 0 )
+                interpolate(t, item.getRow(), c, sc, ec, f.color, frac);
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /** An interpolated field along with its start and end fields. */
+    private static final class Field {
+        final String name, start, end;
+        final boolean color;
+        Field(String name, boolean color) {
+            this.name  = name;
+            this.start = PrefuseLib.getStartField(name);
+            this.end   = PrefuseLib.getEndField(name);
+            this.color = color;
+        }
+    }
+    
+    /** A growable list of table rows. */
+    private static final class Rows {
+        int[] rows = new int[64];
+        int size = 0;
+        void add(int row) {
+            if ( size == rows.length )
+                rows = Arrays.copyOf(rows, 2*size);
+            rows[size++] = row;
+        }
+    }
+    
+    /** Interpolates the rows within a range of row array indices. */
+    private interface Kernel {
+        void apply(int from, int to);
+    }
+    
+    /** Splits a kernel range into chunks for the fork-join pool. */
+    private static final class KernelChunk extends RecursiveAction {
+        private final Kernel m_kernel;
+        private final int m_from, m_to, m_grain;
+        
+        KernelChunk(Kernel kernel, int from, int to, int grain) {
+            m_kernel = kernel;
+            m_from = from;
+            m_to = to;
+            m_grain = grain;
+        }
+        
+        protected void compute() {
+            if ( m_to - m_from <= m_grain ) {
+                m_kernel.apply(m_from, m_to);
+            } else {
+                int mid = (m_from + m_to) >>> 1;
+                invokeAll(new KernelChunk(m_kernel, m_from, mid, m_grain),
+                          new KernelChunk(m_kernel, mid, m_to, m_grain));
+            }
+        }
+    }
+
+} // end of class ColumnAnimator
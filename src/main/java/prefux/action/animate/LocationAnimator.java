@@ -66,5 +66,15 @@ public class LocationAnimator extends ItemAction {
         item.setX(sx + frac*(item.getEndX()-sx));
         item.setY(sy + frac*(item.getEndY()-sy));
     }
+    
+    /**
+     * Each item is interpolated from its own start and end coordinates, so
+     * items may be processed concurrently. Subclasses must override this
+     * method to opt in.
+     * @see prefux.action.ItemAction#isThreadSafe()
+     */
+    protected boolean isThreadSafe() {
+        return getClass() == LocationAnimator.class;
+    }
 
 } // end of class LocationAnimator
@@ -229,6 +229,17 @@ public class ColorAction extends EncoderAction {
         item.setInt(m_endField, c);
         item.setInt(m_colorField, c);
     }
+    
+    /**
+     * Color assignment reads the mapping rules and writes the color fields
+     * of each item only, so items may be processed concurrently. This holds
+     * for this class only: subclasses may compute colors from mutable
+     * state, and must override this method to opt in.
+     * @see prefux.action.ItemAction#isThreadSafe()
+     */
+    protected boolean isThreadSafe() {
+        return getClass() == ColorAction.class;
+    }
 
     /**
      * Returns a color value for the given item. Colors are represented as
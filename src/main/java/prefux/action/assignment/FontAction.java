@@ -174,6 +174,16 @@ public class FontAction extends EncoderAction {
         item.setFont(f);
     }
     
+    /**
+     * Fonts are immutable and only stored on the processed item, so items
+     * may be processed concurrently. Subclasses may compute fonts from
+     * mutable state, and must override this method to opt in.
+     * @see prefux.action.ItemAction#isThreadSafe()
+     */
+    protected boolean isThreadSafe() {
+        return getClass() == FontAction.class;
+    }
+    
     /**
      * Returns the Font to use for a given VisualItem. Subclasses should
      * override this method to perform customized font assignment.
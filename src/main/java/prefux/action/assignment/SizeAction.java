@@ -172,6 +172,16 @@ public class SizeAction extends EncoderAction {
         item.setSize(size);
     }
     
+    /**
+     * Sizes are looked up from the rule chain and stored on the item, so
+     * items may be processed concurrently. Subclasses may compute sizes from
+     * mutable state, and must override this method to opt in.
+     * @see prefux.action.ItemAction#isThreadSafe()
+     */
+    protected boolean isThreadSafe() {
+        return getClass() == SizeAction.class;
+    }
+    
     /**
      * Returns a size value for the given item.
      * @param item the item for which to get the size value
@@ -30,6 +30,7 @@
  */
 package prefux.action.filter;
 
+import java.util.BitSet;
 import java.util.Iterator;
 
 import prefux.Constants;
@@ -74,6 +75,7 @@ public class FisheyeTreeFilter extends GroupAction {
     
     private NodeItem m_root;
     private double m_divisor;
+    private BitSet m_expanded = new BitSet();
     
     /**
      * Create a new FisheyeTreeFilter that processes the given group.
@@ -164,12 +166,13 @@ public class FisheyeTreeFilter extends GroupAction {
         m_divisor = tree.getNodeCount();
         m_root = (NodeItem)tree.getRoot();
         
-        // mark the items
+        // mark the items. expanded states are collected first and only
+        // applied at the end, so that unchanged nodes fire no events
+        m_expanded.clear();
         Iterator<VisualItem> items = m_vis.visibleItems(m_group);
         while ( items.hasNext() ) {
             VisualItem item = items.next();
             item.setDOI(Constants.MINIMUM_DOI);
-            item.setExpanded(false);
         }
         
         // compute the fisheye over nodes
@@ -182,6 +185,8 @@ public class FisheyeTreeFilter extends GroupAction {
         items = m_vis.visibleItems(m_group);
         while ( items.hasNext() ) {
             VisualItem item = items.next();
+            item.setExpanded(item instanceof NodeItem && 
+                             m_expanded.get(item.getRow()));
             if ( item.getDOI() == Constants.MINIMUM_DOI )
                 PrefuseLib.updateVisible(item, false);
         }
@@ -230,7 +235,7 @@ public class FisheyeTreeFilter extends GroupAction {
         
         Iterator<? extends Node> children = p.children();
         
-        p.setExpanded(children.hasNext());
+        if ( children.hasNext() ) m_expanded.set(p.getRow());
         
         for ( int i=0; children.hasNext(); ++i ) {
             NodeItem c = (NodeItem)children.next();
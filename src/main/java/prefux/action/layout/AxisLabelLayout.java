@@ -277,6 +277,13 @@ public class AxisLabelLayout extends Layout {
             
             // compute the layout
             switch ( m_scale ) {
+            case Constants.QUANTILE_SCALE:
+                if ( m_layout != null && m_layout.getDistribution() != null ) {
+                    quantileLayout(labels, m_layout.getDistribution());
+                } else {
+                    linearLayout(labels);
+                }
+                break;
             case Constants.LOG_SCALE:
                 logLayout(labels);
                 break;
@@ -348,6 +355,52 @@ public class AxisLabelLayout extends Layout {
         }
     }
     
+    /**
+     * Calculates a quantile scaled layout, placing labels at the quantile
+     * boundaries of the matching {@link AxisLayout}.
+     * @param dist the quantile boundaries, as computed by the axis layout
+     */
+    protected void quantileLayout(VisualTable labels, double[] dist) {
+        Rectangle2D b = getLayoutBounds();
+        double breadth = getBreadth(b);
+        int n = dist.length-1;
+        
+        // mark previously visible labels
+        Iterator iter = labels.tuples();
+        while ( iter.hasNext() ) {
+            VisualItem item = (VisualItem)iter.next();
+            reset(item);
+            double v = item.getDouble(VALUE);
+            set(item, MathLib.quantile(v, dist)*breadth, b);
+        }
+        
+        // label every step-th boundary, keeping the desired spacing
+        Index index = labels.index(VALUE);
+        int step = breadth > 0 ? (int)Math.ceil(n*m_spacing/breadth) : n;
+        if ( step < 1 ) step = 1;
+        int r;
+        
+        for ( int i=0; i<=n; i+=step ) {
+            double v = dist[i];
+            double x = (((double)i)/n)*breadth;
+            if ( i > 0 && v == dist[i-step] ) {
+                continue; // skip repeated boundaries
+            } else if ( (r=index.get(v)) >= 0 ) {
+                VisualItem item = labels.getItem(r);
+                item.setVisible(true);
+                item.setEndVisible(true);
+            } else {
+                VisualItem item = labels.addItem();
+                item.set(LABEL, m_nf.format(v));
+                item.setDouble(VALUE, v);
+                item.setStartVisible(true);
+                // no previous quantile positions, fade in at final place
+                set(item, x, b);
+                set(item, x, b);
+            }
+        }
+    }
+    
     /**
      * Calculates a quantitative, square root scaled layout.
      */
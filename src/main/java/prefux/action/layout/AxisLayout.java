@@ -42,6 +42,7 @@ import prefux.data.query.ObjectRangeModel;
 import prefux.data.tuple.TupleSet;
 import prefux.util.DataLib;
 import prefux.util.MathLib;
+import prefux.util.QuantileSketch;
 import prefux.util.ui.ValuedRangeModel;
 import prefux.visual.VisualItem;
 
@@ -58,6 +59,9 @@ import prefux.visual.VisualItem;
  */
 public class AxisLayout extends Layout {
 
+    /** The default number of quantile bins used by a quantile scale. */
+    public static final int DEFAULT_BINS = 100;
+
     private String m_field;
     private int m_scale = Constants.LINEAR_SCALE;
     private int m_axis = Constants.X_AXIS;
@@ -75,6 +79,8 @@ public class AxisLayout extends Layout {
     
     // value range / distribution
     private double[] m_dist = new double[2];
+    private double[] m_qdist = null;
+    private int m_bins = DEFAULT_BINS;
     
     /**
      * Create a new AxisLayout. Defaults to using the x-axis.
@@ -191,8 +197,9 @@ public class AxisLayout extends Layout {
      * <code>NumberValuedRange</code>).
      * @return the scale type. One of
      * {@link prefux.Constants#LINEAR_SCALE}, 
-     * {@link prefux.Constants#SQRT_SCALE}, or
-     * {@link Constants#LOG_SCALE}.
+     * {@link prefux.Constants#SQRT_SCALE},
+     * {@link Constants#LOG_SCALE}, or
+     * {@link Constants#QUANTILE_SCALE}.
      */
     public int getScale() {
         return m_scale;
@@ -204,8 +211,9 @@ public class AxisLayout extends Layout {
      * <code>NumberValuedRange</code>).
      * @param scale the scale type. One of
      * {@link prefux.Constants#LINEAR_SCALE}, 
-     * {@link prefux.Constants#SQRT_SCALE}, or
-     * {@link Constants#LOG_SCALE}.
+     * {@link prefux.Constants#SQRT_SCALE},
+     * {@link Constants#LOG_SCALE}, or
+     * {@link Constants#QUANTILE_SCALE}.
      */
     public void setScale(int scale) {
         if ( scale < 0 || scale >= Constants.SCALE_COUNT )
@@ -214,6 +222,39 @@ public class AxisLayout extends Layout {
         m_scale = scale;
     }
     
+    /**
+     * Returns the number of quantile bins the value range is divided into
+     * when using a quantile scale.
+     * @return the number of quantile bins
+     */
+    public int getBinCount() {
+        return m_bins;
+    }
+    
+    /**
+     * Sets the number of quantile bins the value range is divided into
+     * when using a quantile scale. Items are placed at the start of the
+     * bin containing their value.
+     * @param count the number of quantile bins, must be positive
+     */
+    public void setBinCount(int count) {
+        if ( count < 1 )
+            throw new IllegalArgumentException(
+                    "Bin count must be positive: "+count);
+        m_bins = count;
+    }
+    
+    /**
+     * Returns the value distribution used in the most recent numerical
+     * layout: the low and high values of the visible range, or, for a
+     * quantile scale, the quantile boundaries of the values in that range.
+     * @return the value distribution, or null if no numerical layout has
+     * been computed yet
+     */
+    public double[] getDistribution() {
+        return m_scale == Constants.QUANTILE_SCALE ? m_qdist : m_dist;
+    }
+    
     /**
      * Return the axis type of this layout, either
      * {@link prefux.Constants#X_AXIS} or {@link prefux.Constants#Y_AXIS}.
@@ -349,15 +390,38 @@ public class AxisLayout extends Layout {
             m_dist[1] = ((Number)m_model.getHighValue()).doubleValue();
         }
         
+        double[] dist = m_dist;
+        if ( m_scale == Constants.QUANTILE_SCALE ) {
+            dist = m_qdist = quantiles(ts, m_dist[0], m_dist[1]);
+        }
+        
         Iterator iter = m_vis.items(m_group, m_filter);
         while ( iter.hasNext() ) {
             VisualItem item = (VisualItem)iter.next();
             double v = item.getDouble(m_field);
-            double f = MathLib.interp(m_scale, v, m_dist);
+            double f = MathLib.interp(m_scale, v, dist);
             set(item, f);
         }
     }
     
+    /**
+     * Compute the quantile boundaries of the data values within the
+     * given value range, using the quantile sketch of the data field.
+     */
+    protected double[] quantiles(TupleSet ts, double lo, double hi) {
+        QuantileSketch sketch = DataLib.quantileSketch(ts, m_field);
+        double rlo = sketch.getRank(lo);
+        double rhi = hi >= sketch.getMaximum() ? 1 : sketch.getRank(hi);
+        
+        double[] q = new double[m_bins+1];
+        q[0] = lo;
+        q[m_bins] = hi;
+        for ( int i=1; i<m_bins; ++i ) {
+            q[i] = sketch.getQuantile(rlo + ((rhi-rlo)*i)/m_bins);
+        }
+        return q;
+    }
+    
     /**
      * Compute an ordinal axis layout.
      */
@@ -0,0 +1,689 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action.layout.graph;
+
+import java.util.Arrays;
+
+import javafx.geometry.Rectangle2D;
+import prefux.Constants;
+import prefux.data.Graph;
+import prefux.data.Tree;
+import prefux.data.util.Point2D;
+import prefux.util.ArrayLib;
+import prefux.visual.NodeItem;
+import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
+
+/**
+ * <p>Variant of {@link NodeLinkTreeLayout} that computes the same tidy tree
+ * layout without allocating any per-node objects. The state of the
+ * Reingold-Tilford algorithm (prelim, mod, shift, change, thread and
+ * ancestor) is kept in primitive arrays indexed by node row, and the tree
+ * is traversed iteratively, so that very large and very deep trees can be
+ * laid out quickly and without running out of stack space.</p>
+ * 
+ * <p>The arrays are retained between runs and only grow when the node
+ * table grows. The layout operates directly on the rows of the spanning
+ * tree of the layout's graph, so the graph's node table must be a
+ * {@link VisualTable}, as is the case for all visual graphs.</p>
+ * 
+ * <p>When {@link #setIncremental(boolean) incremental} layout is enabled,
+ * expanding or collapsing nodes only recomputes the contours of the
+ * changed subtrees and of their ancestors. To make this possible, every
+ * modification made while combining the children of a node is recorded
+ * in an undo log owned by that node. Before a changed subtree is
+ * recomputed, the logs of its ancestors are rolled back from the root
+ * downwards, restoring the state each subtree had before it was merged
+ * with its siblings; the ancestors are then merged again bottom-up.</p>
+ */
+public class ArrayNodeLinkTreeLayout extends NodeLinkTreeLayout {
+
+    // node state flags
+    private static final int IN_TREE  = 1;
+    private static final int EXPANDED = 2;
+    private static final int DIRTY    = 4;
+    private static final int CHANGED  = 8;
+    
+    // fields recorded in the undo log
+    private static final int PRELIM   = 0;
+    private static final int MOD      = 1;
+    private static final int SHIFT    = 2;
+    private static final int CHANGE   = 3;
+    private static final int THREAD   = 4;
+    private static final int ANCESTOR = 5;
+    
+    // tree structure of the expanded part of the tree
+    protected int[] m_state  = new int[0];
+    protected int[] m_parent = new int[0];
+    protected int[] m_first  = new int[0];
+    protected int[] m_last   = new int[0];
+    protected int[] m_prev   = new int[0];
+    protected int[] m_next   = new int[0];
+    protected int[] m_number = new int[0];
+    protected int[] m_depth  = new int[0];
+    protected int   m_size   = 0; // number of nodes in the tree
+    
+    // Reingold-Tilford parameters
+    protected double[] m_prelim = new double[0];
+    protected double[] m_mod    = new double[0];
+    protected double[] m_shift  = new double[0];
+    protected double[] m_change = new double[0];
+    protected int[]    m_thread   = new int[0];
+    protected int[]    m_ancestor = new int[0];
+    
+    // node extents in breadth and depth direction
+    protected double[] m_bsize = new double[0];
+    protected double[] m_dsize = new double[0];
+    
+    // traversal state
+    protected int[] m_order  = new int[0]; // breadth-first queue
+    protected int[] m_stack  = new int[0];
+    protected int[] m_cursor = new int[0];
+    protected int[] m_defanc = new int[0];
+    protected double[] m_macc = new double[0];
+    
+    protected double[] m_levels = new double[10];
+    protected int      m_maxLevel = 0;
+    
+    // undo log, entries of the same owner are chained backwards
+    private int[]    m_logHead  = new int[0];
+    private int[]    m_logField = new int[64];
+    private int[]    m_logRow   = new int[64];
+    private int[]    m_logPrev  = new int[64];
+    private double[] m_logValue = new double[64];
+    private int      m_logSize  = 0;
+    private int      m_logLive  = 0;
+    private int      m_owner    = -1;
+    
+    // dirty nodes of an incremental update
+    private int[] m_dirty = new int[16];
+    private int[] m_dkeys = new int[16];
+    
+    private int     m_layoutRoot = -1;
+    private boolean m_vertical;
+    private double  m_sibSpace, m_subSpace;
+    
+    /**
+     * Create a new ArrayNodeLinkTreeLayout. A left-to-right orientation is
+     * assumed.
+     * @param group the data group to layout. Must resolve to a Graph instance.
+     */
+    public ArrayNodeLinkTreeLayout(String group) {
+        super(group);
+    }
+    
+    /**
+     * Create a new ArrayNodeLinkTreeLayout.
+     * @param group the data group to layout. Must resolve to a Graph instance.
+     * @param orientation the orientation of the tree layout. One of
+     * {@link prefux.Constants#ORIENT_LEFT_RIGHT},
+     * {@link prefux.Constants#ORIENT_RIGHT_LEFT},
+     * {@link prefux.Constants#ORIENT_TOP_BOTTOM}, or
+     * {@link prefux.Constants#ORIENT_BOTTOM_TOP}.
+     * @param dspace the spacing to maintain between depth levels of the tree
+     * @param bspace the spacing to maintain between sibling nodes
+     * @param tspace the spacing to maintain between neighboring subtrees
+     */
+    public ArrayNodeLinkTreeLayout(String group, int orientation,
+            double dspace, double bspace, double tspace)
+    {
+        super(group, orientation, dspace, bspace, tspace);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * @see prefux.action.Action#run(double)
+     */
+    public void run(double frac) {
+        Graph g = (Graph)m_vis.getGroup(m_group);
+        VisualTable nodes = (VisualTable)g.getNodeTable();
+        TreeChangeTracker tracker = getChangeTracker(g, VisualItem.EXPANDED);
+        
+        Point2D a = getLayoutAnchor();
+        m_ax = a.getX();
+        m_ay = a.getY();
+        
+        NodeItem rootItem = getLayoutRoot();
+        int root = rootItem.getRow();
+        Tree tree = g.getSpanningTree(rootItem);
+        
+        boolean vert = isVertical();
+        double bspace = getBreadthSpacing(), tspace = getSubtreeSpacing();
+        boolean full = ( tracker == null || tracker.isInvalid()
+            || root != m_layoutRoot || vert != m_vertical
+            || bspace != m_sibSpace || tspace != m_subSpace
+            || nodes.getMaximumRow() >= m_state.length );
+        m_layoutRoot = root;
+        m_vertical = vert;
+        m_sibSpace = bspace;
+        m_subSpace = tspace;
+        
+        // do first pass - compute breadth information
+        if ( full || !update(tree, nodes, root, tracker) ) {
+            ensureCapacity(nodes.getMaximumRow()+1);
+            layout(tree, nodes, root, tracker != null);
+        }
+        if ( tracker != null ) tracker.clear();
+        
+        // collect and sum up the depth info
+        determineDepths(root);
+        
+        // do second pass - assign layout positions
+        secondWalk(nodes, root);
+    }
+    
+    /**
+     * Grow all row-indexed arrays to hold at least the given number of rows.
+     * @param n the required number of rows
+     */
+    protected void ensureCapacity(int n) {
+        if ( m_parent.length >= n ) return;
+        n = Math.max(n, 3*m_parent.length/2);
+        m_state  = ArrayLib.resize(m_state, n);
+        m_parent = ArrayLib.resize(m_parent, n);
+        m_first  = ArrayLib.resize(m_first, n);
+        m_last   = ArrayLib.resize(m_last, n);
+        m_prev   = ArrayLib.resize(m_prev, n);
+        m_next   = ArrayLib.resize(m_next, n);
+        m_number = ArrayLib.resize(m_number, n);
+        m_depth  = ArrayLib.resize(m_depth, n);
+        m_prelim = ArrayLib.resize(m_prelim, n);
+        m_mod    = ArrayLib.resize(m_mod, n);
+        m_shift  = ArrayLib.resize(m_shift, n);
+        m_change = ArrayLib.resize(m_change, n);
+        m_thread   = ArrayLib.resize(m_thread, n);
+        m_ancestor = ArrayLib.resize(m_ancestor, n);
+        m_bsize  = ArrayLib.resize(m_bsize, n);
+        m_dsize  = ArrayLib.resize(m_dsize, n);
+        m_order  = ArrayLib.resize(m_order, n);
+        m_stack  = ArrayLib.resize(m_stack, n);
+        m_cursor = ArrayLib.resize(m_cursor, n);
+        m_defanc = ArrayLib.resize(m_defanc, n);
+        m_macc   = ArrayLib.resize(m_macc, n);
+        m_logHead = ArrayLib.resize(m_logHead, n);
+    }
+    
+    /**
+     * Computes the preliminary breadth positions of the complete tree.
+     * @param log true to record the undo log needed for later incremental
+     * updates
+     */
+    protected void layout(Tree tree, VisualTable nodes, int root, boolean log)
+    {
+        Arrays.fill(m_state, 0);
+        m_logSize = m_logLive = 0;
+        m_owner = -1;
+        
+        m_parent[root] = m_prev[root] = m_next[root] = -1;
+        m_number[root] = 0;
+        m_depth[root] = 0;
+        initNode(nodes, root);
+        m_size = 1 + buildSubtree(tree, nodes, root);
+        
+        firstWalk(root, log);
+        place(root);
+    }
+    
+    /**
+     * Incrementally updates the preliminary breadth positions after nodes
+     * were expanded or collapsed.
+     * @return true if the update succeeded, false if a complete layout
+     * is required instead
+     */
+    protected boolean update(Tree tree, VisualTable nodes, int root,
+                             TreeChangeTracker tracker)
+    {
+        // too much garbage in the undo log, start over
+        if ( m_logSize > 4*m_logLive + 4096 ) return false;
+        
+        // mark changed nodes and their ancestors as dirty
+        int nd = 0, nc = 0;
+        for ( int i=0; i<tracker.getChangeCount(); ++i ) {
+            int v = tracker.getChangedRow(i);
+            if ( v >= m_state.length || (m_state[v] & IN_TREE) == 0 ||
+                 nodes.isExpanded(v) == ((m_state[v] & EXPANDED) != 0) )
+                continue;
+            m_state[v] |= CHANGED;
+            ++nc;
+            for ( int u=v; u>=0 && (m_state[u] & DIRTY)==0; u=m_parent[u] ) {
+                m_state[u] |= DIRTY;
+                if ( nd == m_dirty.length ) {
+                    m_dirty = ArrayLib.resize(m_dirty, 2*nd);
+                    m_dkeys = ArrayLib.resize(m_dkeys, 2*nd);
+                }
+                m_dirty[nd++] = u;
+            }
+        }
+        if ( 4*nc > m_size ) {
+            // large portion of the tree changed, recompute everything
+            for ( int i=0; i<nd; ++i )
+                m_state[m_dirty[i]] &= ~(DIRTY | CHANGED);
+            return false;
+        }
+        
+        // order dirty nodes by depth
+        for ( int i=0; i<nd; ++i )
+            m_dkeys[i] = m_depth[m_dirty[i]];
+        ArrayLib.sort(m_dkeys, m_dirty, nd);
+        
+        // roll back the merges of the dirty nodes, from the root downwards
+        for ( int i=0; i<nd; ++i )
+            undo(m_dirty[i]);
+        
+        // update the structure below the changed nodes
+        for ( int i=0; i<nd; ++i ) {
+            int v = m_dirty[i];
+            if ( (m_state[v] & (IN_TREE|CHANGED)) != (IN_TREE|CHANGED) )
+                continue;
+            if ( (m_state[v] & EXPANDED) != 0 ) {
+                for ( int c = m_first[v]; c >= 0; c = m_next[c] )
+                    clearSubtree(c);
+                m_first[v] = m_last[v] = -1;
+                m_state[v] &= ~EXPANDED;
+            } else {
+                m_state[v] |= EXPANDED;
+                m_size += buildSubtree(tree, nodes, v);
+            }
+        }
+        
+        // redo the merges bottom-up
+        for ( int i=nd; --i >= 0; ) {
+            int v = m_dirty[i];
+            if ( (m_state[v] & IN_TREE) == 0 ) {
+                // removed by a collapsed ancestor
+            } else if ( (m_state[v] & CHANGED) != 0 ) {
+                firstWalk(v, true);
+            } else {
+                merge(v);
+            }
+            m_state[v] &= ~(DIRTY | CHANGED);
+        }
+        m_owner = -1;
+        place(root);
+        return true;
+    }
+    
+    /**
+     * Collects the expanded part of the tree below the given node in
+     * breadth-first order, initializing the structure and layout parameters
+     * of each node. The node itself must already be initialized.
+     * @return the number of nodes added to the tree
+     */
+    protected int buildSubtree(Tree tree, VisualTable nodes, int top) {
+        int count = 0;
+        m_order[count++] = top;
+        
+        for ( int i=0; i<count; ++i ) {
+            int v = m_order[i];
+            int prev = -1;
+            int cc = nodes.isExpanded(v) ? tree.getChildCount(v) : 0;
+            for ( int k=0; k<cc; ++k ) {
+                int c = tree.getChildRow(v, k);
+                m_order[count++] = c;
+                m_parent[c] = v;
+                m_prev[c] = prev;
+                m_next[c] = -1;
+                m_number[c] = k;
+                m_depth[c] = m_depth[v] + 1;
+                initNode(nodes, c);
+                if ( prev < 0 ) m_first[v] = c; else m_next[prev] = c;
+                prev = c;
+            }
+            m_last[v] = prev;
+        }
+        return count-1;
+    }
+    
+    /**
+     * Resets the layout parameters of a node and caches its extents.
+     */
+    protected void initNode(VisualTable nodes, int v) {
+        m_state[v] = IN_TREE | (nodes.isExpanded(v) ? EXPANDED : 0);
+        m_first[v] = m_last[v] = -1;
+        m_prelim[v] = m_mod[v] = m_shift[v] = m_change[v] = 0;
+        m_thread[v] = -1;
+        m_ancestor[v] = v;
+        m_logHead[v] = -1;
+        Rectangle2D b = nodes.getBounds(v);
+        if ( b == null ) {
+            m_bsize[v] = m_dsize[v] = 0;
+        } else {
+            m_bsize[v] = m_vertical ? b.getWidth() : b.getHeight();
+            m_dsize[v] = m_vertical ? b.getHeight() : b.getWidth();
+        }
+    }
+    
+    /**
+     * Removes a node and all of its descendants from the tree, discarding
+     * their undo logs.
+     */
+    private void clearSubtree(int top) {
+        for ( int v = top; v >= 0; v = nextPreorder(v, top) ) {
+            drop(v);
+            m_state[v] = 0;
+            --m_size;
+        }
+    }
+    
+    private int nextPreorder(int v, int top) {
+        if ( m_first[v] >= 0 )
+            return m_first[v];
+        for ( ; v != top; v = m_parent[v] ) {
+            if ( m_next[v] >= 0 ) return m_next[v];
+        }
+        return -1;
+    }
+    
+    private boolean isVertical() {
+        int o = getOrientation();
+        return ( o == Constants.ORIENT_TOP_BOTTOM ||
+                 o == Constants.ORIENT_BOTTOM_TOP );
+    }
+    
+    private double spacing(int l, int r, boolean siblings) {
+        return (siblings ? m_sibSpace : m_subSpace) + 
+            0.5 * (m_bsize[l] + m_bsize[r]);
+    }
+    
+    private void updateDepths(int depth, int v) {
+        if ( m_levels.length <= depth )
+            m_levels = ArrayLib.resize(m_levels, Math.max(depth+1, 3*depth/2));
+        m_levels[depth] = Math.max(m_levels[depth], m_dsize[v]);
+        m_maxLevel = Math.max(m_maxLevel, depth);
+    }
+    
+    private void determineDepths(int root) {
+        Arrays.fill(m_levels, 0);
+        m_maxLevel = 0;
+        for ( int v = root; v >= 0; v = nextPreorder(v, root) )
+            updateDepths(m_depth[v]+1, v);
+        
+        double dspace = getDepthSpacing();
+        for ( int i=1; i<m_maxLevel; ++i )
+            m_levels[i] += m_levels[i-1] + dspace;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Undo Log
+    
+    /**
+     * Records the current value of a field before it is modified while
+     * merging the children of the current owner node.
+     */
+    private void log(int field, int row) {
+        if ( m_owner < 0 ) return;
+        
+        if ( m_logSize == m_logRow.length ) {
+            int n = 2*m_logSize;
+            m_logField = ArrayLib.resize(m_logField, n);
+            m_logRow   = ArrayLib.resize(m_logRow, n);
+            m_logPrev  = ArrayLib.resize(m_logPrev, n);
+            m_logValue = ArrayLib.resize(m_logValue, n);
+        }
+        double value;
+        switch ( field ) {
+        case PRELIM:   value = m_prelim[row];   break;
+        case MOD:      value = m_mod[row];      break;
+        case SHIFT:    value = m_shift[row];    break;
+        case CHANGE:   value = m_change[row];   break;
+        case THREAD:   value = m_thread[row];   break;
+        default:       value = m_ancestor[row]; break;
+        }
+        int e = m_logSize++;
+        m_logField[e] = field;
+        m_logRow[e]   = row;
+        m_logValue[e] = value;
+        m_logPrev[e]  = m_logHead[m_owner];
+        m_logHead[m_owner] = e;
+        ++m_logLive;
+    }
+    
+    /**
+     * Rolls back all modifications recorded for the given owner node, in
+     * reverse order.
+     */
+    private void undo(int owner) {
+        for ( int e = m_logHead[owner]; e >= 0; e = m_logPrev[e] ) {
+            int row = m_logRow[e];
+            double value = m_logValue[e];
+            switch ( m_logField[e] ) {
+            case PRELIM:   m_prelim[row]   = value;      break;
+            case MOD:      m_mod[row]      = value;      break;
+            case SHIFT:    m_shift[row]    = value;      break;
+            case CHANGE:   m_change[row]   = value;      break;
+            case THREAD:   m_thread[row]   = (int)value; break;
+            default:       m_ancestor[row] = (int)value; break;
+            }
+        }
+        drop(owner);
+    }
+    
+    /**
+     * Discards the log entries of the given owner node.
+     */
+    private void drop(int owner) {
+        for ( int e = m_logHead[owner]; e >= 0; e = m_logPrev[e] )
+            --m_logLive;
+        m_logHead[owner] = -1;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Iterative post-order traversal computing preliminary positions for
+     * the subtree below the given node. A node is finished once all of its
+     * children were visited; it is then placed next to its left sibling
+     * and apportioned against it. The top node itself is not placed.
+     * @param log true to record the modifications in the undo log
+     */
+    protected void firstWalk(int top, boolean log) {
+        int sp = 0;
+        m_stack[sp++] = top;
+        m_cursor[top] = m_defanc[top] = m_first[top];
+        
+        while ( sp > 0 ) {
+            int v = m_stack[sp-1];
+            int c = m_cursor[v];
+            if ( c >= 0 ) {
+                // descend into the next child
+                m_cursor[v] = m_next[c];
+                m_cursor[c] = m_defanc[c] = m_first[c];
+                m_stack[sp++] = c;
+            } else {
+                // all children done, finish the node
+                --sp;
+                if ( m_first[v] >= 0 ) {
+                    m_owner = log ? v : -1;
+                    executeShifts(v);
+                }
+                if ( v != top ) {
+                    int p = m_parent[v];
+                    m_owner = log ? p : -1;
+                    place(v);
+                    m_defanc[p] = apportion(v, m_defanc[p]);
+                }
+            }
+        }
+        m_owner = -1;
+    }
+    
+    /**
+     * Merges the children of a node, whose subtrees are already laid out.
+     */
+    protected void merge(int v) {
+        m_owner = v;
+        int a = m_first[v];
+        for ( int c = m_first[v]; c >= 0; c = m_next[c] ) {
+            place(c);
+            a = apportion(c, a);
+        }
+        if ( m_first[v] >= 0 )
+            executeShifts(v);
+        m_owner = -1;
+    }
+    
+    /**
+     * Computes the preliminary position of a node from its left sibling and,
+     * for inner nodes, the midpoint of its children.
+     */
+    protected void place(int v) {
+        int l = m_prev[v];
+        log(PRELIM, v);
+        if ( m_first[v] < 0 ) {
+            m_prelim[v] = ( l < 0 ? 0 : m_prelim[l] + spacing(l, v, true) );
+        } else {
+            double midpoint = 0.5 * 
+                (m_prelim[m_first[v]] + m_prelim[m_last[v]]);
+            if ( l >= 0 ) {
+                m_prelim[v] = m_prelim[l] + spacing(l, v, true);
+                log(MOD, v);
+                m_mod[v] = m_prelim[v] - midpoint;
+            } else {
+                m_prelim[v] = midpoint;
+            }
+        }
+    }
+    
+    protected int apportion(int v, int a) {
+        int w = m_prev[v];
+        if ( w >= 0 ) {
+            int vip, vim, vop, vom;
+            double sip, sim, sop, som;
+            
+            vip = vop = v;
+            vim = w;
+            vom = m_first[m_parent[v]];
+            
+            sip = m_mod[vip];
+            sop = m_mod[vop];
+            sim = m_mod[vim];
+            som = m_mod[vom];
+            
+            int nr = nextRight(vim);
+            int nl = nextLeft(vip);
+            while ( nr >= 0 && nl >= 0 ) {
+                vim = nr;
+                vip = nl;
+                vom = nextLeft(vom);
+                vop = nextRight(vop);
+                log(ANCESTOR, vop);
+                m_ancestor[vop] = v;
+                double shift = (m_prelim[vim] + sim) - 
+                    (m_prelim[vip] + sip) + spacing(vim, vip, false);
+                if ( shift > 0 ) {
+                    moveSubtree(ancestor(vim, v, a), v, shift);
+                    sip += shift;
+                    sop += shift;
+                }
+                sim += m_mod[vim];
+                sip += m_mod[vip];
+                som += m_mod[vom];
+                sop += m_mod[vop];
+                
+                nr = nextRight(vim);
+                nl = nextLeft(vip);
+            }
+            if ( nr >= 0 && nextRight(vop) < 0 ) {
+                log(THREAD, vop);
+                log(MOD, vop);
+                m_thread[vop] = nr;
+                m_mod[vop] += sim - sop;
+            }
+            if ( nl >= 0 && nextLeft(vom) < 0 ) {
+                log(THREAD, vom);
+                log(MOD, vom);
+                m_thread[vom] = nl;
+                m_mod[vom] += sip - som;
+                a = v;
+            }
+        }
+        return a;
+    }
+    
+    private int nextLeft(int v) {
+        int c = m_first[v];
+        return ( c >= 0 ? c : m_thread[v] );
+    }
+    
+    private int nextRight(int v) {
+        int c = m_last[v];
+        return ( c >= 0 ? c : m_thread[v] );
+    }
+    
+    protected void moveSubtree(int wm, int wp, double shift) {
+        double subtrees = m_number[wp] - m_number[wm];
+        log(CHANGE, wp);
+        log(SHIFT, wp);
+        log(CHANGE, wm);
+        log(PRELIM, wp);
+        log(MOD, wp);
+        m_change[wp] -= shift/subtrees;
+        m_shift[wp] += shift;
+        m_change[wm] += shift/subtrees;
+        m_prelim[wp] += shift;
+        m_mod[wp] += shift;
+    }
+    
+    protected void executeShifts(int v) {
+        double shift = 0, change = 0;
+        for ( int c = m_last[v]; c >= 0; c = m_prev[c] ) {
+            log(PRELIM, c);
+            log(MOD, c);
+            m_prelim[c] += shift;
+            m_mod[c] += shift;
+            change += m_change[c];
+            shift += m_shift[c] + change;
+        }
+    }
+    
+    private int ancestor(int vim, int v, int a) {
+        int anc = m_ancestor[vim];
+        return ( m_parent[anc] == m_parent[v] ? anc : a );
+    }
+    
+    /**
+     * Assigns the final positions in pre-order, accumulating the
+     * modifiers of all ancestors of each node.
+     */
+    protected void secondWalk(VisualTable nodes, int root) {
+        for ( int v = root; v >= 0; v = nextPreorder(v, root) ) {
+            int p = ( v == root ? -1 : m_parent[v] );
+            m_macc[v] = ( p < 0 ? -m_prelim[root] : m_macc[p] + m_mod[p] );
+            
+            NodeItem n = (NodeItem)nodes.getItem(v);
+            NodeItem pn = ( p < 0 ? null : (NodeItem)nodes.getItem(p) );
+            setBreadth(n, pn, m_prelim[v] + m_macc[v]);
+            setDepth(n, pn, m_levels[m_depth[v]]);
+        }
+    }
+    
+} // end of class ArrayNodeLinkTreeLayout
@@ -30,6 +30,7 @@
  */
 package prefux.action.layout.graph;
 
+import java.util.BitSet;
 import java.util.Iterator;
 
 import prefux.data.Graph;
@@ -38,6 +39,7 @@ import prefux.data.Schema;
 import prefux.data.tuple.TupleSet;
 import prefux.data.util.Point2D;
 import prefux.visual.NodeItem;
+import prefux.visual.VisualItem;
 
 
 /**
@@ -55,6 +57,10 @@ public class BalloonTreeLayout extends TreeLayout {
 
     private int m_minRadius = 2;
     
+    // rows with up-to-date subtree parameters, used for incremental layout
+    private BitSet m_valid = new BitSet();
+    private NodeItem m_validRoot;
+    
     /**
      * Create a new BalloonTreeLayout
      * @param group the data group to layout. Must resolve to a Graph
@@ -89,6 +95,7 @@ public class BalloonTreeLayout extends TreeLayout {
      */
     public void setMinRadius(int minRadius) {
         m_minRadius = minRadius;
+        m_valid.clear();
     }
     
     /**
@@ -100,7 +107,28 @@ public class BalloonTreeLayout extends TreeLayout {
         
         Point2D anchor = getLayoutAnchor();
         NodeItem n = getLayoutRoot();
+        
+        // determine which subtree parameters need to be recomputed
+        TreeChangeTracker tracker = getChangeTracker(g, VisualItem.VISIBLE);
+        if ( tracker == null || tracker.isInvalid() || n != m_validRoot ) {
+            m_valid.clear();
+            m_validRoot = n;
+        } else {
+            for ( int i=0; i<tracker.getChangeCount(); ++i )
+                invalidate(g.getNode(tracker.getChangedRow(i)));
+        }
+        
         layout(n,anchor.getX(),anchor.getY());
+        if ( tracker != null ) tracker.clear();
+    }
+    
+    /**
+     * Marks the cached parameters of the given node and all its
+     * ancestors as out of date.
+     */
+    private void invalidate(Node n) {
+        for ( ; n != null; n = n.getParent() )
+            m_valid.clear(n.getRow());
     }
     
     private void layout(NodeItem n, double x, double y) {
@@ -109,6 +137,9 @@ public class BalloonTreeLayout extends TreeLayout {
     }
     
     private void firstWalk(NodeItem n) {
+        // subtrees unchanged since the last run keep their parameters
+        if ( m_valid.get(n.getRow()) ) return;
+        
         Params np = getParams(n);
         np.d = 0;
         double s = 0;
@@ -124,6 +155,7 @@ public class BalloonTreeLayout extends TreeLayout {
         }
         adjustChildren(np, s);
         setRadius(np);
+        m_valid.set(n.getRow());
     }
     
     private void adjustChildren(Params np, double s) {
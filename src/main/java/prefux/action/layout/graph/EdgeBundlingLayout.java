@@ -0,0 +1,656 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action.layout.graph;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import prefux.action.layout.Layout;
+import prefux.data.Graph;
+import prefux.data.Schema;
+import prefux.data.Table;
+import prefux.data.tuple.TupleSet;
+import prefux.util.PrefuseLib;
+import prefux.visual.EdgeItem;
+import prefux.visual.VisualItem;
+
+/**
+ * <p>Layout that bundles the edges of a graph using the force-directed edge
+ * bundling algorithm of Holten and van Wijk. Every edge is subdivided into
+ * a polyline whose control points are attracted by the control points of
+ * compatible edges, that is, edges of similar length, orientation and
+ * position, while a spring force keeps each polyline smooth. The resulting
+ * control points, excluding the two end points, are stored as a
+ * <code>double[]</code> of alternating x and y coordinates in the
+ * {@link #CONTROL_POINTS} field of each visible edge. Self-loops and
+ * invisible edges are assigned <code>null</code>.</p>
+ * 
+ * <p>The layout runs a number of cycles. Each cycle doubles the number of
+ * control points per edge, halves the step size and performs two thirds
+ * of the iterations of the previous cycle. Compatible edges are found
+ * using a uniform grid over the edge midpoints, so that only nearby edges
+ * are compared, and only the most compatible edges are kept for each edge
+ * (see {@link #setMaxCompatibleEdges(int)}).</p>
+ * 
+ * <p>With the default settings, bundling takes time roughly linear in the
+ * number of edges, but with a large constant: about 47 seconds for 200,000
+ * edges on a single core. The compatibility computation and the iterations
+ * are therefore run in parallel by default, using the common fork-join
+ * pool (see {@link #setParallel(boolean)}). Fewer cycles or iterations, a
+ * higher compatibility threshold or fewer compatible edges per edge reduce
+ * the cost further.</p>
+ */
+public class EdgeBundlingLayout extends Layout {
+
+    private static final double EPSILON = 1e-6;
+    
+    protected String m_edgeGroup;
+    
+    private double m_threshold = 0.6;
+    private double m_spring    = 0.1;
+    private double m_step      = 0.1;
+    private int    m_cycles    = 6;
+    private int    m_iterations = 90;
+    private int    m_maxCompatible = 32;
+    private boolean m_parallel = true;
+    
+    // per-run state
+    private int m_count;
+    private double[] m_sx, m_sy, m_tx, m_ty, m_len;
+    private double[] m_mx, m_my, m_ux, m_uy;
+    private int[][] m_nbrs;
+    private double[][] m_weights;
+    
+    /**
+     * Create a new EdgeBundlingLayout.
+     * @param graph the data group to layout. Must resolve to a Graph
+     * instance.
+     */
+    public EdgeBundlingLayout(String graph) {
+        super(graph);
+        m_edgeGroup = PrefuseLib.getGroupName(graph, Graph.EDGES);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Get the minimum compatibility two edges must have to attract each
+     * other.
+     * @return the compatibility threshold, between 0 and 1
+     */
+    public double getCompatibilityThreshold() {
+        return m_threshold;
+    }
+    
+    /**
+     * Set the minimum compatibility two edges must have to attract each
+     * other. Higher values bundle fewer edges, but are faster to compute.
+     * The default is 0.6.
+     * @param threshold the compatibility threshold, greater than 0 and at
+     * most 1
+     */
+    public void setCompatibilityThreshold(double threshold) {
+        if ( threshold <= 0 || threshold > 1 )
+            throw new IllegalArgumentException(
+                "Threshold must be greater than 0 and at most 1.");
+        m_threshold = threshold;
+    }
+    
+    /**
+     * Get the spring constant keeping the polylines smooth.
+     * @return the spring constant
+     */
+    public double getSpringConstant() {
+        return m_spring;
+    }
+    
+    /**
+     * Set the spring constant keeping the polylines smooth. The default
+     * is 0.1.
+     * @param k the spring constant
+     */
+    public void setSpringConstant(double k) {
+        m_spring = k;
+    }
+    
+    /**
+     * Get the step size used for the first cycle.
+     * @return the initial step size
+     */
+    public double getStepSize() {
+        return m_step;
+    }
+    
+    /**
+     * Set the step size used for the first cycle. The default is 0.1.
+     * @param step the initial step size
+     */
+    public void setStepSize(double step) {
+        m_step = step;
+    }
+    
+    /**
+     * Get the number of subdivision cycles.
+     * @return the number of cycles
+     */
+    public int getCycles() {
+        return m_cycles;
+    }
+    
+    /**
+     * Set the number of subdivision cycles. The last cycle places
+     * 2<sup>cycles-1</sup> control points on each edge. The default is 6.
+     * @param cycles the number of cycles
+     */
+    public void setCycles(int cycles) {
+        m_cycles = cycles;
+    }
+    
+    /**
+     * Get the number of iterations run in the first cycle.
+     * @return the initial number of iterations
+     */
+    public int getIterations() {
+        return m_iterations;
+    }
+    
+    /**
+     * Set the number of iterations run in the first cycle. The default
+     * is 90.
+     * @param iterations the initial number of iterations
+     */
+    public void setIterations(int iterations) {
+        m_iterations = iterations;
+    }
+    
+    /**
+     * Get the maximum number of compatible edges considered per edge.
+     * @return the maximum number of compatible edges
+     */
+    public int getMaxCompatibleEdges() {
+        return m_maxCompatible;
+    }
+    
+    /**
+     * Set the maximum number of compatible edges considered per edge. Only
+     * the most compatible edges are kept, which bounds the cost of each
+     * iteration on dense graphs. The default is 32; use
+     * <code>Integer.MAX_VALUE</code> to keep all compatible edges.
+     * @param max the maximum number of compatible edges, at least 1
+     */
+    public void setMaxCompatibleEdges(int max) {
+        if ( max < 1 )
+            throw new IllegalArgumentException(
+                "At least one compatible edge must be allowed.");
+        m_maxCompatible = max;
+    }
+    
+    /**
+     * Indicates if the layout is computed in parallel.
+     * @return true if edges are processed in parallel
+     */
+    public boolean isParallel() {
+        return m_parallel;
+    }
+    
+    /**
+     * Set if the layout should be computed in parallel, using the common
+     * fork-join pool. The default is true.
+     * @param parallel true to process edges in parallel
+     */
+    public void setParallel(boolean parallel) {
+        m_parallel = parallel;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * @see prefux.action.Action#run(double)
+     */
+    public void run(double frac) {
+        TupleSet ts = m_vis.getGroup(m_edgeGroup);
+        if ( ts == null ) return;
+        initSchema(ts);
+        
+        // gather the edges to bundle
+        EdgeItem[] edges = new EdgeItem[ts.getTupleCount()];
+        int m = 0;
+        for ( Iterator<?> iter = ts.tuples(); iter.hasNext(); ) {
+            EdgeItem e = (EdgeItem)iter.next();
+            VisualItem s = e.getSourceItem(), t = e.getTargetItem();
+            if ( e.isVisible() && s != t ) {
+                double dx = t.getX()-s.getX(), dy = t.getY()-s.getY();
+                if ( dx*dx + dy*dy > EPSILON ) {
+                    edges[m++] = e;
+                    continue;
+                }
+            }
+            e.set(CONTROL_POINTS, null);
+        }
+        if ( m == 0 ) return;
+        
+        double[] sx = new double[m], sy = new double[m];
+        double[] tx = new double[m], ty = new double[m];
+        for ( int i=0; i<m; ++i ) {
+            VisualItem s = edges[i].getSourceItem();
+            VisualItem t = edges[i].getTargetItem();
+            sx[i] = s.getX(); sy[i] = s.getY();
+            tx[i] = t.getX(); ty[i] = t.getY();
+        }
+        setEdges(sx, sy, tx, ty);
+        computeCompatibility(edges);
+        
+        // start with a single control point at the center of each edge
+        double[][] pts = new double[m][];
+        for ( int i=0; i<m; ++i ) {
+            pts[i] = new double[] {
+                (m_sx[i]+m_tx[i])/2, (m_sy[i]+m_ty[i])/2 };
+        }
+        
+        int np = 1, iters = m_iterations;
+        double step = m_step;
+        for ( int cycle=0; cycle<m_cycles; ++cycle ) {
+            if ( cycle > 0 ) {
+                np *= 2;
+                step /= 2;
+                iters = (2*iters)/3;
+                final double[][] cur = pts;
+                final int n = np;
+                forEachEdge(i -> cur[i] = subdivide(i, cur[i], n));
+            }
+            double[][] next = new double[m][2*np];
+            for ( int it=0; it<iters; ++it ) {
+                final double[][] cur = pts, nxt = next;
+                final int n = np;
+                final double s = step;
+                forEachEdge(i -> iterate(i, cur, nxt[i], n, s));
+                next = pts;
+                pts = nxt;
+            }
+        }
+        
+        // store the control points, coalescing the update events
+        Table table = edges[0].getTable();
+        boolean deferred = table.beginDeferredUpdates();
+        int[] rows = new int[m];
+        try {
+            for ( int i=0; i<m; ++i ) {
+                edges[i].set(CONTROL_POINTS, pts[i]);
+                rows[i] = edges[i].getRow();
+            }
+        } finally {
+            if ( deferred ) {
+                Arrays.sort(rows);
+                table.endDeferredUpdates(rows, m);
+            }
+        }
+        
+        m_sx = m_sy = m_tx = m_ty = m_len = null;
+        m_mx = m_my = m_ux = m_uy = null;
+        m_nbrs = null;
+        m_weights = null;
+    }
+    
+    /**
+     * Sets the end points of the edges to bundle and computes their
+     * lengths, midpoints and unit direction vectors. The edges must have
+     * distinct end points.
+     */
+    void setEdges(double[] sx, double[] sy, double[] tx, double[] ty) {
+        int m = sx.length;
+        m_count = m;
+        m_sx = sx; m_sy = sy;
+        m_tx = tx; m_ty = ty;
+        m_len = new double[m];
+        m_mx = new double[m]; m_my = new double[m];
+        m_ux = new double[m]; m_uy = new double[m];
+        for ( int i=0; i<m; ++i ) {
+            double dx = tx[i]-sx[i], dy = ty[i]-sy[i];
+            m_len[i] = Math.sqrt(dx*dx + dy*dy);
+            m_mx[i] = (sx[i]+tx[i])/2;
+            m_my[i] = (sy[i]+ty[i])/2;
+            m_ux[i] = dx/m_len[i];
+            m_uy[i] = dy/m_len[i];
+        }
+    }
+    
+    private void forEachEdge(IntConsumer f) {
+        IntStream range = IntStream.range(0, m_count);
+        (m_parallel ? range.parallel() : range).forEach(f);
+    }
+    
+    // ------------------------------------------------------------------------
+    // Compatibility
+    
+    /**
+     * Computes the most compatible edges of each edge. Compatible edges that
+     * run in the opposite direction are stored as the bitwise complement of
+     * their index, so that their control points are matched in reverse.
+     * The edges, along with their coordinates, are first reordered by the
+     * grid cell of their midpoint, so that nearby edges are also close in
+     * memory.
+     */
+    private void computeCompatibility(EdgeItem[] edges) {
+        final int m = m_count;
+        double t = m_threshold;
+        
+        // each compatibility factor must reach the threshold. The scale
+        // compatibility bounds the ratio of the edge lengths, and with it
+        // the average length; the position compatibility then bounds the
+        // distance between the edge midpoints relative to the edge length.
+        double b = 2 - 2/t;
+        double amax = (-b + Math.sqrt(b*b + 4)) / 2;
+        final double reach = amax * (1-t) / t;
+        
+        double minx = Double.MAX_VALUE, miny = Double.MAX_VALUE;
+        double maxx = -Double.MAX_VALUE, maxy = -Double.MAX_VALUE, sum = 0;
+        for ( int i=0; i<m; ++i ) {
+            double x = m_mx[i], y = m_my[i];
+            minx = Math.min(minx, x); maxx = Math.max(maxx, x);
+            miny = Math.min(miny, y); maxy = Math.max(maxy, y);
+            sum += m_len[i];
+        }
+        // size the cells by the average reach, but keep the grid at most a
+        // few times larger than the number of edges
+        double cell = Math.max(reach*sum/m, EPSILON);
+        double area = ((maxx-minx)/cell + 1) * ((maxy-miny)/cell + 1);
+        if ( area > 4*m )
+            cell *= Math.sqrt(area/(4*m));
+        final double size = cell, x0 = minx, y0 = miny;
+        final int cols = (int)((maxx-minx)/cell) + 1;
+        final int rows = (int)((maxy-miny)/cell) + 1;
+        
+        // counting sort of the edges by grid cell
+        int[] cellOf = new int[m];
+        final int[] start = new int[cols*rows+1];
+        for ( int i=0; i<m; ++i ) {
+            int cx = (int)((m_mx[i] - x0)/cell);
+            int cy = (int)((m_my[i] - y0)/cell);
+            cellOf[i] = cy*cols + cx;
+            ++start[cellOf[i]+1];
+        }
+        for ( int c=0; c<cols*rows; ++c )
+            start[c+1] += start[c];
+        int[] pos = Arrays.copyOf(start, cols*rows);
+        int[] order = new int[m];
+        for ( int i=0; i<m; ++i )
+            order[pos[cellOf[i]]++] = i;
+        
+        EdgeItem[] e = edges.clone();
+        for ( int i=0; i<m; ++i )
+            edges[i] = e[order[i]];
+        m_sx = permute(m_sx, order); m_sy = permute(m_sy, order);
+        m_tx = permute(m_tx, order); m_ty = permute(m_ty, order);
+        m_len = permute(m_len, order);
+        m_mx = permute(m_mx, order); m_my = permute(m_my, order);
+        m_ux = permute(m_ux, order); m_uy = permute(m_uy, order);
+        
+        m_nbrs = new int[m][];
+        m_weights = new double[m][];
+        forEachEdge(i -> {
+            double r = reach * m_len[i];
+            int cx = (int)((m_mx[i]-x0)/size), cy = (int)((m_my[i]-y0)/size);
+            int k = (int)Math.ceil(r/size);
+            int cx0 = Math.max(0, cx-k), cx1 = Math.min(cols-1, cx+k);
+            int cap = Math.min(m_maxCompatible, 8);
+            int[] nbrs = new int[cap];
+            double[] w = new double[cap];
+            int n = 0;
+            for ( int y=Math.max(0, cy-k); y<=Math.min(rows-1, cy+k); ++y ) {
+                // the cells of a grid row are contiguous
+                int j1 = start[y*cols + cx1 + 1];
+                for ( int o=start[y*cols + cx0]; o<j1; ++o ) {
+                    if ( o == i ) continue;
+                    double dx = m_mx[o]-m_mx[i], dy = m_my[o]-m_my[i];
+                    if ( dx*dx + dy*dy > r*r ) continue;
+                    double c = compatibility(i, o);
+                    if ( c < m_threshold ) continue;
+                    int q = m_ux[i]*m_ux[o] + m_uy[i]*m_uy[o] < 0 ? ~o : o;
+                    if ( n < m_maxCompatible ) {
+                        if ( n == nbrs.length ) {
+                            int l = (int)Math.min(2L*n, m_maxCompatible);
+                            nbrs = Arrays.copyOf(nbrs, l);
+                            w = Arrays.copyOf(w, l);
+                        }
+                        nbrs[n] = q;
+                        w[n] = c;
+                        siftUp(nbrs, w, n++);
+                    } else if ( c > w[0] ) {
+                        // replace the least compatible edge kept
+                        nbrs[0] = q;
+                        w[0] = c;
+                        siftDown(nbrs, w, n);
+                    }
+                }
+            }
+            m_nbrs[i] = Arrays.copyOf(nbrs, n);
+            m_weights[i] = Arrays.copyOf(w, n);
+        });
+    }
+    
+    private static double[] permute(double[] a, int[] order) {
+        double[] b = new double[a.length];
+        for ( int i=0; i<a.length; ++i )
+            b[i] = a[order[i]];
+        return b;
+    }
+    
+    /**
+     * Restores the min-heap order of the compatible edges, ordered by
+     * weight, after an entry was appended at the given position.
+     */
+    private static void siftUp(int[] nbrs, double[] w, int k) {
+        while ( k > 0 ) {
+            int parent = (k-1) >>> 1;
+            if ( w[parent] <= w[k] ) break;
+            swap(nbrs, w, parent, k);
+            k = parent;
+        }
+    }
+    
+    /**
+     * Restores the min-heap order of the first n compatible edges after
+     * the root entry was replaced.
+     */
+    private static void siftDown(int[] nbrs, double[] w, int n) {
+        int k = 0;
+        while ( true ) {
+            int c = 2*k+1;
+            if ( c >= n ) break;
+            if ( c+1 < n && w[c+1] < w[c] ) ++c;
+            if ( w[k] <= w[c] ) break;
+            swap(nbrs, w, k, c);
+            k = c;
+        }
+    }
+    
+    private static void swap(int[] nbrs, double[] w, int i, int j) {
+        int tn = nbrs[i]; nbrs[i] = nbrs[j]; nbrs[j] = tn;
+        double tw = w[i]; w[i] = w[j]; w[j] = tw;
+    }
+    
+    
+    /**
+     * Computes the compatibility of two edges as the product of their
+     * angle, scale, position and visibility compatibilities.
+     */
+    double compatibility(int p, int q) {
+        double ca = Math.abs(m_ux[p]*m_ux[q] + m_uy[p]*m_uy[q]);
+        if ( ca < m_threshold ) return 0;
+        
+        double lp = m_len[p], lq = m_len[q];
+        double lavg = (lp+lq)/2;
+        double cs = 2 / (lavg/Math.min(lp, lq) + Math.max(lp, lq)/lavg);
+        double c = ca * cs;
+        if ( c < m_threshold ) return 0;
+        
+        double dx = m_mx[p]-m_mx[q], dy = m_my[p]-m_my[q];
+        double d = Math.sqrt(dx*dx + dy*dy);
+        c *= lavg / (lavg + d);
+        if ( c < m_threshold ) return 0;
+        
+        return c * Math.min(visibility(p, q), visibility(q, p));
+    }
+    
+    /**
+     * Computes the visibility of edge q from edge p, by projecting q onto
+     * the line through p and comparing the midpoint of the projection with
+     * the midpoint of p.
+     */
+    double visibility(int p, int q) {
+        double dx = m_tx[p]-m_sx[p], dy = m_ty[p]-m_sy[p];
+        double l2 = dx*dx + dy*dy;
+        double u0 = ((m_sx[q]-m_sx[p])*dx + (m_sy[q]-m_sy[p])*dy) / l2;
+        double u1 = ((m_tx[q]-m_sx[p])*dx + (m_ty[q]-m_sy[p])*dy) / l2;
+        double ilen = Math.abs(u1-u0) * Math.sqrt(l2);
+        if ( ilen < EPSILON ) return 0;
+        double um = (u0+u1)/2;
+        double imx = m_sx[p] + um*dx, imy = m_sy[p] + um*dy;
+        double ix = m_mx[p]-imx, iy = m_my[p]-imy;
+        double v = 1 - 2*Math.sqrt(ix*ix + iy*iy)/ilen;
+        return Math.max(v, 0);
+    }
+    
+    // ------------------------------------------------------------------------
+    // Iteration
+    
+    /**
+     * Computes the next control points of an edge from the current ones.
+     */
+    private void iterate(int e, double[][] cur, double[] next,
+                         int np, double step)
+    {
+        double[] p = cur[e];
+        int[] nbrs = m_nbrs[e];
+        double[] w = m_weights[e];
+        double kp = m_spring / (m_len[e]*(np+1));
+        
+        for ( int i=0; i<np; ++i ) {
+            double px = p[2*i], py = p[2*i+1];
+            double ax = i==0 ? m_sx[e] : p[2*i-2];
+            double ay = i==0 ? m_sy[e] : p[2*i-1];
+            double bx = i==np-1 ? m_tx[e] : p[2*i+2];
+            double by = i==np-1 ? m_ty[e] : p[2*i+3];
+            
+            // spring force towards the neighboring points
+            double fx = kp*(ax - px + bx - px);
+            double fy = kp*(ay - py + by - py);
+            
+            // attraction to the matching points of compatible edges
+            for ( int k=0; k<nbrs.length; ++k ) {
+                int o = nbrs[k], j = i;
+                if ( o < 0 ) {
+                    o = ~o;
+                    j = np-1-i;
+                }
+                double dx = cur[o][2*j]-px, dy = cur[o][2*j+1]-py;
+                double d = Math.sqrt(dx*dx + dy*dy);
+                if ( d > EPSILON ) {
+                    fx += w[k]*dx/d;
+                    fy += w[k]*dy/d;
+                }
+            }
+            next[2*i]   = px + step*fx;
+            next[2*i+1] = py + step*fy;
+        }
+    }
+    
+    /**
+     * Resamples the polyline of an edge into the given number of control
+     * points, spaced evenly along its length.
+     */
+    double[] subdivide(int e, double[] p, int np) {
+        int n = p.length/2;
+        // polyline including the end points
+        double[] x = new double[n+2], y = new double[n+2];
+        x[0] = m_sx[e]; y[0] = m_sy[e];
+        for ( int i=0; i<n; ++i ) {
+            x[i+1] = p[2*i];
+            y[i+1] = p[2*i+1];
+        }
+        x[n+1] = m_tx[e]; y[n+1] = m_ty[e];
+        
+        double total = 0;
+        double[] len = new double[n+2];
+        for ( int i=1; i<n+2; ++i ) {
+            double dx = x[i]-x[i-1], dy = y[i]-y[i-1];
+            len[i] = Math.sqrt(dx*dx + dy*dy);
+            total += len[i];
+        }
+        
+        double[] q = new double[2*np];
+        double seg = total/(np+1), walked = 0, target = seg;
+        int k = 0;
+        for ( int i=1; i<n+2 && k<np; ++i ) {
+            double l = len[i];
+            while ( k < np && walked + l >= target ) {
+                double f = l < EPSILON ? 0 : (target-walked)/l;
+                q[2*k]   = x[i-1] + f*(x[i]-x[i-1]);
+                q[2*k+1] = y[i-1] + f*(y[i]-y[i-1]);
+                ++k;
+                target += seg;
+            }
+            walked += l;
+        }
+        // guard against rounding at the far end
+        for ( ; k<np; ++k ) {
+            q[2*k]   = x[n+1];
+            q[2*k+1] = y[n+1];
+        }
+        return q;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Control Points Schema
+    
+    /**
+     * The data field in which the control points of bundled edges are
+     * stored, as a <code>double[]</code> of alternating x and y coordinates
+     * that excludes the end points of the edge.
+     */
+    public static final String CONTROL_POINTS = "_controlPoints";
+    /**
+     * The schema for the control points computed by this layout.
+     */
+    public static final Schema CONTROL_POINTS_SCHEMA = new Schema();
+    static {
+        CONTROL_POINTS_SCHEMA.addColumn(CONTROL_POINTS, double[].class);
+    }
+    
+    protected void initSchema(TupleSet ts) {
+        try {
+            ts.addColumns(CONTROL_POINTS_SCHEMA);
+        } catch ( IllegalArgumentException iae ) {};
+    }
+
+} // end of class EdgeBundlingLayout
@@ -32,7 +32,6 @@ package prefux.action.layout.graph;
 
 import java.util.Iterator;
 
-import javafx.application.Platform;
 import javafx.geometry.Rectangle2D;
 
 import org.apache.logging.log4j.LogManager;
@@ -42,7 +41,6 @@ import prefux.data.Graph;
 import prefux.data.Schema;
 import prefux.data.tuple.TupleSet;
 import prefux.data.util.Point2D;
-import prefux.render.EdgeRenderer;
 import prefux.util.PrefuseLib;
 import prefux.util.force.DragForce;
 import prefux.util.force.ForceItem;
@@ -387,10 +385,6 @@ public class ForceDirectedLayout extends Layout {
 			setX(item, referrer, x);
 			setY(item, referrer, y);
 		}
-
-		Platform.runLater(() -> {
-			EdgeRenderer.calcArrowHeadsAngle();
-		});
 	}
 
 	/**
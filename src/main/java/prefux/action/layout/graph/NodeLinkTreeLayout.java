@@ -70,7 +70,7 @@ public class NodeLinkTreeLayout extends TreeLayout {
     private double[] m_depths = new double[10];
     private int      m_maxDepth = 0;
     
-    private double m_ax, m_ay; // for holding anchor co-ordinates
+    protected double m_ax, m_ay; // for holding anchor co-ordinates
     
     /**
      * Create a new NodeLinkTreeLayout. A left-to-right orientation is assumed.
@@ -449,7 +449,13 @@ public class NodeLinkTreeLayout extends TreeLayout {
         np.clear();
     }
     
-    private void setBreadth(NodeItem n, NodeItem p, double b) {
+    /**
+     * Set the breadth coordinate of a node, relative to the layout anchor.
+     * @param n the node to position
+     * @param p the parent node, used as referrer for the start position
+     * @param b the breadth offset from the layout anchor
+     */
+    protected void setBreadth(NodeItem n, NodeItem p, double b) {
         switch ( m_orientation ) {
         case Constants.ORIENT_LEFT_RIGHT:
         case Constants.ORIENT_RIGHT_LEFT:
@@ -464,7 +470,13 @@ public class NodeLinkTreeLayout extends TreeLayout {
         }
     }
     
-    private void setDepth(NodeItem n, NodeItem p, double d) {
+    /**
+     * Set the depth coordinate of a node, relative to the layout anchor.
+     * @param n the node to position
+     * @param p the parent node, used as referrer for the start position
+     * @param d the depth offset from the layout anchor
+     */
+    protected void setDepth(NodeItem n, NodeItem p, double d) {
         switch ( m_orientation ) {
         case Constants.ORIENT_LEFT_RIGHT:
             setX(n, p, m_ax + d);
@@ -30,6 +30,7 @@
  */
 package prefux.action.layout.graph;
 
+import java.util.BitSet;
 import java.util.Iterator;
 
 import javafx.geometry.Rectangle2D;
@@ -41,6 +42,7 @@ import prefux.data.util.Point2D;
 import prefux.util.ArrayLib;
 import prefux.util.MathLib;
 import prefux.visual.NodeItem;
+import prefux.visual.VisualItem;
 
 
 /**
@@ -73,6 +75,10 @@ public class RadialTreeLayout extends TreeLayout {
     protected Point2D m_origin;
     protected NodeItem m_prevRoot;
     
+    // rows with up-to-date angular widths, used for incremental layout
+    protected BitSet m_valid = new BitSet();
+    protected NodeItem m_validRoot;
+    
     /**
      * Creates a new RadialTreeLayout. Automatic scaling of the radius
      * values to fit the layout bounds is enabled by default.
@@ -162,9 +168,19 @@ public class RadialTreeLayout extends TreeLayout {
         Params np = (Params)n.get(PARAMS);
 
 	g.getSpanningTree(n);
+	
+        // determine which angular widths need to be recomputed
+        TreeChangeTracker tracker = getChangeTracker(g, VisualItem.EXPANDED);
+        if ( tracker == null || tracker.isInvalid() || n != m_validRoot ) {
+            m_valid.clear();
+            m_validRoot = n;
+        } else {
+            for ( int i=0; i<tracker.getChangeCount(); ++i )
+                invalidate(g.getNode(tracker.getChangedRow(i)));
+        }
         
         // calc relative widths and maximum tree depth
-        // performs one pass over the tree
+        // performs one pass over the changed parts of the tree
         m_maxDepth = 0;
         calcAngularWidth(n, 0);
         
@@ -179,6 +195,17 @@ public class RadialTreeLayout extends TreeLayout {
         setX(n, null, m_origin.getX());
         setY(n, null, m_origin.getY());
         np.angle = m_theta2-m_theta1;
+        
+        if ( tracker != null ) tracker.clear();
+    }
+    
+    /**
+     * Marks the cached angular widths of the given node and all its
+     * ancestors as out of date.
+     */
+    private void invalidate(Node n) {
+        for ( ; n != null; n = n.getParent() )
+            m_valid.clear(n.getRow());
     }
     
     /**
@@ -188,6 +215,7 @@ public class RadialTreeLayout extends TreeLayout {
     public void reset() {
     	super.reset();
     	m_prevRoot = null;
+    	m_validRoot = null;
     }
     
     protected void setScale(Rectangle2D bounds) {
@@ -245,10 +273,20 @@ public class RadialTreeLayout extends TreeLayout {
      * 
      * This method also updates the base angle value for nodes 
      * to ensure proper ordering of nodes.
+     * 
+     * Subtrees whose widths are still valid from a previous run are not
+     * traversed again.
      */
     private double calcAngularWidth(NodeItem n, int d) {
+        Params np = (Params)n.get(PARAMS);
+        if ( m_valid.get(n.getRow()) ) {
+            m_maxDepth = Math.max(m_maxDepth, d + np.height);
+            return np.width;
+        }
+        
         if ( d > m_maxDepth ) m_maxDepth = d;       
         double aw = 0;
+        int height = 0;
         
         Rectangle2D bounds = n.getBounds();
         double w = bounds.getWidth(), h = bounds.getHeight();
@@ -259,12 +297,15 @@ public class RadialTreeLayout extends TreeLayout {
             while ( childIter.hasNext() ) {
                 NodeItem c = (NodeItem)childIter.next();
                 aw += calcAngularWidth(c,d+1);
+                height = Math.max(height, 1+((Params)c.get(PARAMS)).height);
             }
             aw = Math.max(diameter, aw);
         } else {
             aw = diameter;
         }
-        ((Params)n.get(PARAMS)).width = aw;
+        np.width = aw;
+        np.height = height;
+        m_valid.set(n.getRow());
         return aw;
     }
     
@@ -388,10 +429,12 @@ public class RadialTreeLayout extends TreeLayout {
     public static class Params implements Cloneable {
         double width;
         double angle;
+        int height;
         public Object clone() {
             Params p = new Params();
             p.width = this.width;
             p.angle = this.angle;
+            p.height = this.height;
             return p;
         }
     }
@@ -31,18 +31,20 @@
 package prefux.action.layout.graph;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import javafx.geometry.Rectangle2D;
 import prefux.data.Graph;
 import prefux.data.Schema;
-import prefux.data.tuple.TupleSet;
-import prefux.data.util.TreeNodeIterator;
+import prefux.data.Tree;
+import prefux.util.ArrayLib;
 import prefux.visual.NodeItem;
 import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
 
 
 /**
@@ -65,6 +67,22 @@ import prefux.visual.VisualItem;
  * <a href="http://www.cs.umd.edu/hcil/treemap-history/">
  * http://www.cs.umd.edu/hcil/treemap-history/</a>.
  * </p>
+ * <p>
+ * The layout works on a snapshot of the tree held in primitive arrays
+ * indexed by node row. Once the children of a node are squarified, the
+ * subtrees below them are independent of each other; subtrees larger
+ * than the {@link #setParallelThreshold(int) parallel threshold} are
+ * squarified as separate tasks of the common fork-join pool, each using
+ * its own sorting and row buffers. The computed bounds are applied to
+ * the visual items afterwards on the calling thread.
+ * </p>
+ * <p>
+ * When {@link #setIncremental(boolean) incremental} layout is enabled,
+ * only the ancestors of nodes whose size or expanded state changed are
+ * squarified again, together with any subtree whose bounds moved as a
+ * result. Subtrees keeping both their contents and their bounds are
+ * left untouched.
+ * </p>
  *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -78,18 +96,48 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
         AREA_SCHEMA.addColumn(AREA, double.class);
     }
     
-    private static Comparator s_cmp = new Comparator() {
-        public int compare(Object o1, Object o2) {
-            double s1 = ((VisualItem)o1).getDouble(AREA);
-            double s2 = ((VisualItem)o2).getDouble(AREA);
-            return ( s1>s2 ? 1 : (s1<s2 ? -1 : 0));
-        }
-    };
-    private ArrayList m_kids = new ArrayList();
-    private ArrayList m_row  = new ArrayList();
-    private Rectangle2D m_r  = Rectangle2D.EMPTY;
+    /** Default minimum subtree size for parallel layout. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
     
+    // node flags
+    private static final int IN_TREE = 1;
+    private static final int DIRTY   = 2; // contents of the subtree changed
+    private static final int MOVED   = 4; // bounds of the node changed
+    private static final int LAID    = 8; // bounds computed in this run
+    
+    private Rectangle2D m_r  = Rectangle2D.EMPTY;
     private double m_frame; // space between parents border and children
+    private int m_threshold = DEFAULT_PARALLEL_THRESHOLD;
+    
+    // snapshot of the tree structure, indexed by row
+    private int[] m_flags  = new int[0];
+    private int[] m_parent = new int[0];
+    private int[] m_first  = new int[0];
+    private int[] m_next   = new int[0];
+    private int[] m_depth  = new int[0];
+    private int[] m_count  = new int[0]; // number of nodes in the subtree
+    private int[] m_order  = new int[0]; // nodes in pre-order
+    private int   m_size   = 0;
+    
+    // unscaled sizes, scaled areas and computed bounds, indexed by row
+    private double[] m_raw  = new double[0];
+    private double[] m_area = new double[0];
+    private double[] m_x = new double[0], m_y = new double[0];
+    private double[] m_w = new double[0], m_h = new double[0];
+    private double   m_scale;
+    
+    // state of the previous layout, used for incremental layout
+    private int m_layoutRoot = -1;
+    private Rectangle2D m_prevR = null;
+    private double m_prevFrame = -1;
+    private int[] m_dirty = new int[16];
+    private int[] m_dkeys = new int[16];
+    
+    private ThreadLocal<Buffer> m_buffers = new ThreadLocal<Buffer>() {
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
     
     /**
      * Creates a new SquarifiedTreeMapLayout with no spacing between
@@ -136,219 +184,407 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
         return m_frame;
     }
     
+    /**
+     * Gets the minimum number of nodes a subtree must contain to be
+     * squarified as a separate parallel task.
+     * @return the parallel threshold
+     */
+    public int getParallelThreshold() {
+        return m_threshold;
+    }
+    
+    /**
+     * Sets the minimum number of nodes a subtree must contain to be
+     * squarified as a separate parallel task. Use
+     * {@link Integer#MAX_VALUE} to always run the layout on the calling
+     * thread.
+     * @param threshold the parallel threshold, must be positive
+     */
+    public void setParallelThreshold(int threshold) {
+        if ( threshold < 1 )
+            throw new IllegalArgumentException(
+                    "Parallel threshold must be positive.");
+        m_threshold = threshold;
+    }
+    
     /**
      * @see prefux.action.Action#run(double)
      */
     public void run(double frac) {
         // setup
-        NodeItem root = getLayoutRoot();
+        Graph g = (Graph)m_vis.getGroup(m_group);
+        VisualTable nodes = (VisualTable)g.getNodeTable();
+        g.getNodes().addColumns(AREA_SCHEMA);
+        TreeChangeTracker tracker = getChangeTracker(g,
+                VisualItem.SIZE, VisualItem.EXPANDED);
+        
+        NodeItem rootItem = getLayoutRoot();
+        int root = rootItem.getRow();
         Rectangle2D b = getLayoutBounds();
         m_r = new Rectangle2D(b.getMinX(), b.getMinY(), b.getWidth()-1, b.getHeight()-1);
         
         // process size values
-        computeAreas(root);
+        boolean full = ( tracker == null || tracker.isInvalid() 
+            || root != m_layoutRoot || !m_r.equals(m_prevR)
+            || m_frame != m_prevFrame
+            || nodes.getMaximumRow() >= m_flags.length
+            || !update(nodes, tracker) );
+        if ( full ) {
+            buildTree(g.getSpanningTree(rootItem), nodes, root);
+            computeAreas(nodes);
+        }
+        if ( tracker != null ) tracker.clear();
+        m_layoutRoot = root;
+        m_prevR = m_r;
+        m_prevFrame = m_frame;
+        
+        // scale sizes by display area factor
+        double area = m_r.getWidth()*m_r.getHeight();
+        m_scale = area/m_raw[root];
         
         // layout root node
-        setX(root, null, 0);
-        setY(root, null, 0);        
-        root.setBounds(0, 0, m_r.getWidth(), m_r.getHeight());
-
+        m_x[root] = m_y[root] = 0;
+        m_w[root] = m_r.getWidth();
+        m_h[root] = m_r.getHeight();
+        m_area[root] = m_raw[root]*m_scale;
+        m_flags[root] |= LAID;
+        
         // layout the tree
-        updateArea(root, m_r);
-        layout(root, m_r);
+        if ( (m_flags[root] & DIRTY) != 0 && m_raw[root] > 0 ) {
+            if ( m_count[root] < m_threshold ) {
+                layout(root);
+            } else {
+                ForkJoinPool.commonPool().invoke(new SquarifyTask(root));
+            }
+        }
+        
+        // apply the computed bounds
+        for ( int i=0; i<m_size; ++i ) {
+            int v = m_order[i];
+            if ( (m_flags[v] & LAID) != 0 ) {
+                NodeItem n = (NodeItem)nodes.getItem(v);
+                NodeItem p = ( m_parent[v] < 0 ? null
+                             : (NodeItem)nodes.getItem(m_parent[v]) );
+                setX(n, p, m_x[v]);
+                setY(n, p, m_y[v]);
+                n.setBounds(m_x[v], m_y[v], m_w[v], m_h[v]);
+                n.setDouble(AREA, m_area[v]);
+            }
+            m_flags[v] &= IN_TREE;
+        }
     }
     
     /**
-     * Compute the pixel areas of nodes based on their size values.
+     * Takes a snapshot of the tree structure below the given root.
      */
-    private void computeAreas(NodeItem root) {
-        int leafCount = 0;
-        
-        // ensure area data column exists
-        Graph g = (Graph)m_vis.getGroup(m_group);
-        TupleSet nodes = g.getNodes();
-        nodes.addColumns(AREA_SCHEMA);
-        
-        // reset all sizes to zero
-        Iterator iter = new TreeNodeIterator(root);
-        while ( iter.hasNext() ) {
-            NodeItem n = (NodeItem)iter.next();
-            n.setDouble(AREA, 0);
+    private void buildTree(Tree tree, VisualTable nodes, int root) {
+        int n = nodes.getMaximumRow()+1;
+        if ( m_flags.length < n ) {
+            n = Math.max(n, 3*m_flags.length/2);
+            m_flags  = new int[n];
+            m_parent = new int[n];
+            m_first  = new int[n];
+            m_next   = new int[n];
+            m_depth  = new int[n];
+            m_count  = new int[n];
+            m_order  = new int[n];
+            m_raw    = new double[n];
+            m_area   = new double[n];
+            m_x = new double[n]; m_y = new double[n];
+            m_w = new double[n]; m_h = new double[n];
+        } else {
+            Arrays.fill(m_flags, 0);
         }
         
-        // set raw sizes, compute leaf count
-        iter = new TreeNodeIterator(root, false);
-        while ( iter.hasNext() ) {
-            NodeItem n = (NodeItem)iter.next();
-            double area = 0;
-            if ( n.getChildCount() == 0 ) {
-            	area = n.getSize();
-            	++leafCount;
-            } else if ( n.isExpanded() ) {
-            	NodeItem c = (NodeItem)n.getFirstChild();
-            	for (; c!=null; c = (NodeItem)c.getNextSibling()) {
-            		area += c.getDouble(AREA);
-            		++leafCount;
-            	}
+        // collect nodes in pre-order, using m_count as the stack
+        int sp = 0;
+        m_size = 0;
+        m_count[sp++] = root;
+        m_parent[root] = m_next[root] = -1;
+        m_depth[root] = 0;
+        while ( sp > 0 ) {
+            int v = m_count[--sp];
+            m_order[m_size++] = v;
+            m_flags[v] = IN_TREE | DIRTY;
+            m_first[v] = -1;
+            for ( int i=tree.getChildCount(v); --i >= 0; ) {
+                int c = tree.getChildRow(v, i);
+                m_parent[c] = v;
+                m_depth[c] = m_depth[v] + 1;
+                m_next[c] = m_first[v];
+                m_first[v] = c;
+                m_count[sp++] = c;
             }
-            n.setDouble(AREA, area);
-            
         }
         
-        // scale sizes by display area factor
-        Rectangle2D b = getLayoutBounds();
-        double area = (b.getWidth()-1)*(b.getHeight()-1);
-        double scale = area/root.getDouble(AREA);
-        iter = new TreeNodeIterator(root);
-        while ( iter.hasNext() ) {
-            NodeItem n = (NodeItem)iter.next();
-            n.setDouble(AREA, n.getDouble(AREA)*scale);
+        // compute subtree sizes
+        for ( int i=m_size; --i >= 0; ) {
+            int v = m_order[i], count = 1;
+            for ( int c = m_first[v]; c >= 0; c = m_next[c] )
+                count += m_count[c];
+            m_count[v] = count;
         }
     }
     
     /**
-     * Compute the tree map layout.
+     * Compute the unscaled areas of nodes based on their size values.
      */
-    private void layout(NodeItem p, Rectangle2D r) {
-        // create sorted list of children
-        Iterator childIter = p.children();
-        while ( childIter.hasNext() )
-            m_kids.add(childIter.next());
-        Collections.sort(m_kids, s_cmp);
+    private void computeAreas(VisualTable nodes) {
+        for ( int i=m_size; --i >= 0; )
+            computeArea(nodes, m_order[i]);
+    }
+    
+    private void computeArea(VisualTable nodes, int v) {
+        double area = 0;
+        if ( m_first[v] < 0 ) {
+            area = nodes.getSize(v);
+        } else if ( nodes.isExpanded(v) ) {
+            for ( int c = m_first[v]; c >= 0; c = m_next[c] )
+                area += m_raw[c];
+        }
+        m_raw[v] = area;
+    }
+    
+    /**
+     * Marks the ancestors of changed nodes as dirty and recomputes their
+     * unscaled areas.
+     * @return true if the update succeeded, false if a complete layout is
+     * required instead
+     */
+    private boolean update(VisualTable nodes, TreeChangeTracker tracker) {
+        int nd = 0;
+        for ( int i=0; i<tracker.getChangeCount(); ++i ) {
+            int v = tracker.getChangedRow(i);
+            if ( (m_flags[v] & IN_TREE) == 0 ) continue;
+            for ( ; v >= 0 && (m_flags[v] & DIRTY) == 0; v = m_parent[v] ) {
+                m_flags[v] |= DIRTY;
+                if ( nd == m_dirty.length ) {
+                    m_dirty = ArrayLib.resize(m_dirty, 2*nd);
+                    m_dkeys = ArrayLib.resize(m_dkeys, 2*nd);
+                }
+                m_dirty[nd++] = v;
+            }
+        }
+        if ( 4*nd > m_size ) return false;
         
-        // do squarified layout of siblings
-        double w = Math.min(r.getWidth(),r.getHeight());
-        squarify(m_kids, m_row, w, r); 
-        m_kids.clear(); // clear m_kids
+        // recompute areas bottom-up
+        for ( int i=0; i<nd; ++i )
+            m_dkeys[i] = -m_depth[m_dirty[i]];
+        ArrayLib.sort(m_dkeys, m_dirty, nd);
+        for ( int i=0; i<nd; ++i )
+            computeArea(nodes, m_dirty[i]);
+        return true;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Compute the tree map layout of the subtree below the given node,
+     * whose bounds are already set. Large changed subtrees are forked
+     * as parallel tasks.
+     */
+    private void layout(int p) {
+        squarify(p, m_buffers.get());
         
         // recurse
-        childIter = p.children();
-        while ( childIter.hasNext() ) {
-            NodeItem c = (NodeItem)childIter.next();
-            if ( c.getChildCount() > 0 && c.getDouble(AREA) > 0 ) {
-                updateArea(c,r);
-                layout(c, r);
+        List<SquarifyTask> tasks = null;
+        for ( int c = m_first[p]; c >= 0; c = m_next[c] ) {
+            if ( m_first[c] < 0 || !(m_area[c] > 0) ||
+                 (m_flags[c] & (DIRTY|MOVED)) == 0 )
+                continue;
+            if ( m_count[c] >= m_threshold ) {
+                if ( tasks == null ) tasks = new ArrayList<SquarifyTask>();
+                tasks.add(new SquarifyTask(c));
+            } else {
+                layout(c);
             }
         }
+        if ( tasks != null )
+            ForkJoinTask.invokeAll(tasks);
     }
     
-    private void updateArea(NodeItem n, Rectangle2D r) {
-        Rectangle2D b = n.getBounds();
-        if ( m_frame == 0.0 ) {
-            // if no framing, simply update bounding rectangle
-            r= b;
-            return;
-        }
-        
-        // compute area loss due to frame
-        double dA = 2*m_frame*(b.getWidth()+b.getHeight()-2*m_frame);
-        double A = n.getDouble(AREA) - dA;
+    /**
+     * Computes the areas of the children of a node, accounting for
+     * the frame, and squarifies them into the node's bounds.
+     */
+    private void squarify(int p, Buffer buf) {
+        double rx = m_x[p], ry = m_y[p], rw = m_w[p], rh = m_h[p];
         
-        // compute renormalization factor
-        double s = 0;
-        Iterator childIter = n.children();
-        while ( childIter.hasNext() )
-            s += ((NodeItem)childIter.next()).getDouble(AREA);
-        double t = A/s;
+        // compute children areas
+        for ( int c = m_first[p]; c >= 0; c = m_next[c] )
+            m_area[c] = m_raw[c]*m_scale;
+        if ( m_frame != 0.0 ) {
+            // compute area loss due to frame
+            double dA = 2*m_frame*(rw+rh-2*m_frame);
+            double A = m_area[p] - dA;
+            
+            // re-normalize children areas
+            double s = 0;
+            for ( int c = m_first[p]; c >= 0; c = m_next[c] )
+                s += m_area[c];
+            double t = A/s;
+            for ( int c = m_first[p]; c >= 0; c = m_next[c] )
+                m_area[c] *= t;
+            
+            rx += m_frame; ry += m_frame;
+            rw -= 2*m_frame; rh -= 2*m_frame;
+        }
         
-        // re-normalize children areas
-        childIter = n.children();
-        while ( childIter.hasNext() ) {
-            NodeItem c = (NodeItem)childIter.next();
-            c.setDouble(AREA, c.getDouble(AREA)*t);
+        // create sorted list of children, ignoring negative areas
+        int len = 0;
+        for ( int c = m_first[p]; c >= 0; c = m_next[c] ) {
+            if ( m_area[c] <= 0.0 ) continue;
+            buf.ensureCapacity(len+1);
+            buf.kids[len] = c;
+            buf.areas[len++] = m_area[c];
         }
+        buf.sort(len);
         
-        // set bounding rectangle and return
-        r = new Rectangle2D(b.getMinX()+m_frame,       b.getMinY()+m_frame, 
-                  b.getWidth()-2*m_frame, b.getHeight()-2*m_frame);
-        return;
-    }
-    
-    private void squarify(List c, List row, double w, Rectangle2D r) {
+        // do squarified layout of siblings, largest first. the current
+        // row consists of the items at indices [len, top)
+        double w = Math.min(rw, rh);
         double worst = Double.MAX_VALUE, nworst;
-        int len;
-        
-        while ( (len=c.size()) > 0 ) {
-            // add item to the row list, ignore if negative area
-            VisualItem item = (VisualItem) c.get(len-1);
-            double a = item.getDouble(AREA);
-            if (a <= 0.0) {
-                c.remove(len-1);
-                continue;
-            }
-            row.add(item);
-            
-            nworst = worst(row, w);
-            if ( nworst <= worst ) {
-                c.remove(len-1);
+        double s = 0, rmax = 0;
+        int top = len;
+        while ( len > 0 ) {
+            // add item to the row list
+            double a = buf.areas[len-1];
+            double ns = s + a;
+            double nmax = ( len == top ? a : rmax );
+            nworst = worst(ns, nmax, a, w);
+            if ( nworst <= worst || len == top ) {
+                --len;
+                s = ns;
+                rmax = nmax;
                 worst = nworst;
             } else {
-                row.remove(row.size()-1); // remove the latest addition
-                r = layoutRow(row, w, r); // layout the current row
-                w = Math.min(r.getWidth(),r.getHeight()); // recompute w
-                row.clear(); // clear the row
+                // layout the current row
+                double h = ( w==0 ? 0 : s/w );
+                boolean horiz = ( w == rw );
+                layoutRow(buf, len, top, h, horiz, rx, ry);
+                if ( horiz ) {
+                    ry += h; rh -= h;
+                } else {
+                    rx += h; rw -= h;
+                }
+                w = Math.min(rw, rh); // recompute w
+                top = len; // clear the row
+                s = 0;
                 worst = Double.MAX_VALUE;
             }
         }
-        if ( row.size() > 0 ) {
-            r = layoutRow(row, w, r); // layout the current row
-            row.clear(); // clear the row
+        if ( top > len ) {
+            double h = ( w==0 ? 0 : s/w );
+            layoutRow(buf, len, top, h, w == rw, rx, ry);
         }
     }
-
-    private double worst(List rlist, double w) {
-        double rmax = Double.MIN_VALUE, rmin = Double.MAX_VALUE, s = 0.0;
-        Iterator iter = rlist.iterator();
-        while ( iter.hasNext() ) {
-            double r = ((VisualItem)iter.next()).getDouble(AREA);
-            rmin = Math.min(rmin, r);
-            rmax = Math.max(rmax, r);
-            s += r;
-        }
+    
+    private static double worst(double s, double rmax, double rmin, double w) {
         s = s*s; w = w*w;
         return Math.max(w*rmax/s, s/(w*rmin));
     }
     
-    private Rectangle2D layoutRow(List row, double w, Rectangle2D r) {        
-        double s = 0; // sum of row areas
-        Iterator rowIter = row.iterator();
-        while ( rowIter.hasNext() )
-            s += ((VisualItem)rowIter.next()).getDouble(AREA);
-        double x = r.getMinX(), y = r.getMinY(), d = 0;
-        double h = w==0 ? 0 : s/w;
-        boolean horiz = (w == r.getWidth());
-        
-        // set node positions and dimensions
-        rowIter = row.iterator();
-        while ( rowIter.hasNext() ) {
-            NodeItem n = (NodeItem)rowIter.next();
-            NodeItem p = (NodeItem)n.getParent();
-            if ( horiz ) {
-                setX(n, p, x+d);
-                setY(n, p, y);
-            } else {
-                setX(n, p, x);
-                setY(n, p, y+d);
-            }
-            double nw = n.getDouble(AREA)/h;
+    private void layoutRow(Buffer buf, int start, int end, double h,
+                           boolean horiz, double x, double y)
+    {
+        double d = 0;
+        for ( int i=end; --i >= start; ) {
+            double nw = buf.areas[i]/h;
             if ( horiz ) {
-                setNodeDimensions(n,nw,h);
-                d += nw;
+                setNodeBounds(buf.kids[i], x+d, y, nw, h);
             } else {
-                setNodeDimensions(n,h,nw);
-                d += nw;
+                setNodeBounds(buf.kids[i], x, y+d, h, nw);
             }
+            d += nw;
+        }
+    }
+    
+    private void setNodeBounds(int n, double x, double y, double w, double h) {
+        int flags = m_flags[n] | LAID;
+        if ( x != m_x[n] || y != m_y[n] || w != m_w[n] || h != m_h[n] )
+            flags |= MOVED;
+        m_flags[n] = flags;
+        m_x[n] = x; m_y[n] = y;
+        m_w[n] = w; m_h[n] = h;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Fork-join task squarifying a subtree.
+     */
+    private class SquarifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int m_node;
+        
+        SquarifyTask(int node) {
+            m_node = node;
+        }
+        protected void compute() {
+            layout(m_node);
         }
-        // update space available in rectangle r
-        if ( horiz )
-            r = new Rectangle2D(x,y+h,r.getWidth(),r.getHeight()-h);
-        else
-            r = new Rectangle2D(x+h,y,r.getWidth()-h,r.getHeight());
-        return r;
     }
     
-    private void setNodeDimensions(NodeItem n, double w, double h) {
-        n.setBounds(n.getX(), n.getY(), w, h);
+    /**
+     * Per-thread buffers used to sort and squarify the children of a node.
+     */
+    private static class Buffer {
+        int[]    kids  = new int[16];
+        double[] areas = new double[16];
+        int[]    tkids  = new int[16];
+        double[] tareas = new double[16];
+        
+        void ensureCapacity(int n) {
+            if ( kids.length >= n ) return;
+            n = Math.max(n, 2*kids.length);
+            kids   = ArrayLib.resize(kids, n);
+            areas  = ArrayLib.resize(areas, n);
+            tkids  = new int[n];
+            tareas = new double[n];
+        }
+        
+        /**
+         * Stable sort of the first n children by increasing area.
+         */
+        void sort(int n) {
+            // insertion sort of small runs
+            int run = 16;
+            for ( int lo=0; lo<n; lo+=run ) {
+                int hi = Math.min(lo+run, n);
+                for ( int j=lo+1; j<hi; ++j ) {
+                    double a = areas[j];
+                    int k = kids[j], i = j-1;
+                    for ( ; i >= lo && areas[i] > a; --i ) {
+                        areas[i+1] = areas[i];
+                        kids[i+1] = kids[i];
+                    }
+                    areas[i+1] = a;
+                    kids[i+1] = k;
+                }
+            }
+            // merge runs
+            for ( ; run < n; run *= 2 ) {
+                for ( int lo=0; lo+run < n; lo += 2*run ) {
+                    int mid = lo+run, hi = Math.min(lo+2*run, n);
+                    int i = lo, j = mid, t = lo;
+                    while ( i < mid && j < hi ) {
+                        if ( areas[j] < areas[i] ) {
+                            tareas[t] = areas[j]; tkids[t++] = kids[j++];
+                        } else {
+                            tareas[t] = areas[i]; tkids[t++] = kids[i++];
+                        }
+                    }
+                    for ( ; i < mid; ++i, ++t ) {
+                        tareas[t] = areas[i]; tkids[t] = kids[i];
+                    }
+                    for ( ; j < hi; ++j, ++t ) {
+                        tareas[t] = areas[j]; tkids[t] = kids[j];
+                    }
+                    System.arraycopy(tareas, lo, areas, lo, hi-lo);
+                    System.arraycopy(tkids, lo, kids, lo, hi-lo);
+                }
+            }
+        }
     }
     
 } // end of class SquarifiedTreeMapLayout
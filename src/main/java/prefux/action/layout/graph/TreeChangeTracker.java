@@ -0,0 +1,184 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action.layout.graph;
+
+import java.util.BitSet;
+
+import prefux.data.Graph;
+import prefux.data.Table;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.util.ArrayLib;
+
+/**
+ * <p>Records the node rows of a graph whose values in the given data
+ * fields (typically {@link prefux.visual.VisualItem#EXPANDED} or
+ * {@link prefux.visual.VisualItem#VISIBLE}) changed since the last call to
+ * {@link #clear()}. Tree layouts use this information to recompute only
+ * the parts of a layout affected by expanding, collapsing, showing or
+ * hiding nodes.</p>
+ * 
+ * <p>Row insertions or deletions in the node or edge table change the
+ * structure of the tree, in which case the tracker is marked as invalid
+ * and a complete layout is required.</p>
+ */
+public class TreeChangeTracker implements TableListener {
+
+    private String[] m_fields;
+    private Table  m_nodes;
+    private Table  m_edges;
+    
+    private boolean m_invalid = true;
+    private BitSet  m_marked  = new BitSet();
+    private int[]   m_rows    = new int[16];
+    private int     m_count   = 0;
+    
+    /**
+     * Create a new TreeChangeTracker.
+     * @param fields the data fields of the node table to monitor
+     */
+    public TreeChangeTracker(String... fields) {
+        m_fields = fields;
+    }
+    
+    /**
+     * Get the data fields monitored by this tracker.
+     * @return the monitored data fields
+     */
+    public String[] getFields() {
+        return m_fields;
+    }
+    
+    /**
+     * Start monitoring the given graph. If the tracker was attached to
+     * another graph, it is detached from it and marked as invalid.
+     * @param g the Graph to monitor
+     */
+    public void attach(Graph g) {
+        Table nodes = g.getNodeTable(), edges = g.getEdgeTable();
+        if ( nodes == m_nodes && edges == m_edges )
+            return;
+        detach();
+        m_nodes = nodes;
+        m_edges = edges;
+        m_nodes.addTableListener(this);
+        m_edges.addTableListener(this);
+        invalidate();
+    }
+    
+    /**
+     * Stop monitoring the currently attached graph, if any.
+     */
+    public void detach() {
+        if ( m_nodes != null ) m_nodes.removeTableListener(this);
+        if ( m_edges != null ) m_edges.removeTableListener(this);
+        m_nodes = m_edges = null;
+        invalidate();
+    }
+    
+    /**
+     * Mark this tracker as invalid, indicating that the recorded changes
+     * are not sufficient to update a layout and a complete layout is needed.
+     */
+    public void invalidate() {
+        m_invalid = true;
+    }
+    
+    /**
+     * Indicates if a complete layout is needed.
+     * @return true if the tracker is invalid, false if the recorded changes
+     * describe all relevant modifications since the last call to
+     * {@link #clear()}.
+     */
+    public boolean isInvalid() {
+        return m_invalid;
+    }
+    
+    /**
+     * Get the number of distinct rows whose monitored value changed.
+     * @return the number of changed rows
+     */
+    public int getChangeCount() {
+        return m_count;
+    }
+    
+    /**
+     * Get a changed row.
+     * @param i the index of the change, between zero and
+     * {@link #getChangeCount()}-1
+     * @return the changed row
+     */
+    public int getChangedRow(int i) {
+        return m_rows[i];
+    }
+    
+    /**
+     * Discard all recorded changes and mark this tracker as valid. Called
+     * by layouts once the changes have been processed.
+     */
+    public void clear() {
+        for ( int i=0; i<m_count; ++i )
+            m_marked.clear(m_rows[i]);
+        m_count = 0;
+        m_invalid = false;
+    }
+    
+    /**
+     * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( type != EventConstants.UPDATE ) {
+            // row insertions and deletions change the tree structure,
+            // column insertions and deletions can be safely ignored
+            if ( col == EventConstants.ALL_COLUMNS )
+                m_invalid = true;
+        } else if ( t == m_nodes && !m_invalid && isMonitored(t, col) ) {
+            for ( int r=start; r<=end; ++r ) {
+                if ( m_marked.get(r) ) continue;
+                m_marked.set(r);
+                if ( m_count == m_rows.length )
+                    m_rows = ArrayLib.resize(m_rows, 2*m_count);
+                m_rows[m_count++] = r;
+            }
+        }
+    }
+    
+    private boolean isMonitored(Table t, int col) {
+        if ( col == EventConstants.ALL_COLUMNS )
+            return true;
+        for ( int i=0; i<m_fields.length; ++i ) {
+            if ( col == t.getColumnNumber(m_fields[i]) )
+                return true;
+        }
+        return false;
+    }
+    
+} // end of class TreeChangeTracker
@@ -30,6 +30,8 @@
  */
 package prefux.action.layout.graph;
 
+import java.util.Arrays;
+
 import prefux.action.layout.Layout;
 import prefux.data.Graph;
 import prefux.data.Tree;
@@ -45,6 +47,9 @@ import prefux.visual.NodeItem;
 public abstract class TreeLayout extends Layout {
 
     protected NodeItem m_root;
+    
+    protected boolean m_incremental = false;
+    protected TreeChangeTracker m_tracker;
 
     /**
      * Create a new TreeLayout.
@@ -103,12 +108,71 @@ public abstract class TreeLayout extends Layout {
         }
     }
     
+    /**
+     * Indicates if this layout updates incrementally, recomputing only the
+     * parts of the layout affected by changes to the tree since the last run.
+     * @return true if incremental layout is enabled, false otherwise
+     */
+    public boolean isIncremental() {
+        return m_incremental;
+    }
+    
+    /**
+     * Set whether this layout should update incrementally. When enabled, the
+     * layout listens to changes of the backing graph and recomputes only the
+     * subtrees affected by nodes being expanded, collapsed, shown or hidden.
+     * Node sizes are cached between runs, so {@link #invalidate()} should
+     * be called when node bounds change by other means. Subclasses not
+     * supporting incremental updates ignore this setting.
+     * @param b true to enable incremental layout, false to always compute
+     * the complete layout
+     */
+    public void setIncremental(boolean b) {
+        m_incremental = b;
+        if ( !b && m_tracker != null ) {
+            m_tracker.detach();
+            m_tracker = null;
+        }
+    }
+    
+    /**
+     * Forces the next run of an incremental layout to recompute the
+     * complete layout.
+     */
+    public void invalidate() {
+        if ( m_tracker != null )
+            m_tracker.invalidate();
+    }
+    
+    /**
+     * Returns the change tracker monitoring the given graph, creating and
+     * attaching it as needed. Returns null if incremental layout is disabled.
+     * @param g the Graph being laid out
+     * @param fields the node data fields the layout depends on, such as
+     * the expanded or visible flags that determine which nodes are part of
+     * the layout
+     * @return the change tracker, or null if incremental layout is disabled
+     */
+    protected TreeChangeTracker getChangeTracker(Graph g, String... fields) {
+        if ( !m_incremental )
+            return null;
+        if ( m_tracker == null ||
+             !Arrays.equals(fields, m_tracker.getFields()) )
+        {
+            if ( m_tracker != null ) m_tracker.detach();
+            m_tracker = new TreeChangeTracker(fields);
+        }
+        m_tracker.attach(g);
+        return m_tracker;
+    }
+    
     /**
      * Clears references to graph tuples.  The group and visualization are
      * retained.
      */
     public void reset() {
     	m_root = null;
+    	invalidate();
     }
 
 } // end of abstract class TreeLayout
@@ -30,6 +30,8 @@
  */
 package prefux.activity;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import prefux.util.collections.CopyOnWriteArrayList;
 
 
@@ -46,7 +48,15 @@ public abstract class Activity {
     public static final long INFINITY = -1L; // specifies infinite duration
     public static final long DEFAULT_STEP_TIME = 15L;
     
+    /** Priority of activities that may be deferred to a later frame. */
+    public static final int PRIORITY_LOW = -10;
+    /** Default activity priority. */
+    public static final int PRIORITY_NORMAL = 0;
+    /** Priority of activities that should run before all others. */
+    public static final int PRIORITY_HIGH = 10;
+    
     private boolean m_enabled = true;
+    private int m_priority = PRIORITY_NORMAL;
     private Pacer m_pacer;
     
     private long m_startTime = -1L;
@@ -54,7 +64,8 @@ public abstract class Activity {
     private long m_stepTime  = -1L;
     private long m_nextTime  = -1L;
     private boolean m_isRunning = false;
-    private boolean m_isScheduled = false;
+    private final AtomicBoolean m_isScheduled = new AtomicBoolean(false);
+    private volatile int m_scheduleId = 0;
     
     private CopyOnWriteArrayList m_listeners;
     
@@ -76,7 +87,7 @@ public abstract class Activity {
      * @see prefux.activity.Activity#Activity(long, long, long)
      */
     public Activity(long duration, long stepTime) {
-        this(duration, stepTime, System.currentTimeMillis());
+        this(duration, stepTime, ActivityManager.currentTime());
     }
     
     /**
@@ -230,23 +241,34 @@ public abstract class Activity {
      *  with the ActivityManager
      * @return true if scheduled, false otherwise
      */
-    public synchronized boolean isScheduled() {
-        return m_isScheduled;
+    public boolean isScheduled() {
+        return m_isScheduled.get();
     }
     
     /**
      * Sets whether or not this Activity has been scheduled. This method should
      * only be called by the ActivityManager.
      * @param s the scheduling state of this Activity
+     * @return true if the scheduling state changed
      */
-    void setScheduled(boolean s) {
-        boolean fire;
-        synchronized ( this ) {
-            fire = (s && !m_isScheduled);
-            m_isScheduled = s;
-        }
-        if ( fire )
+    boolean setScheduled(boolean s) {
+        if ( !m_isScheduled.compareAndSet(!s, s) )
+            return false;
+        if ( s ) {
+            ++m_scheduleId;
             fireActivityScheduled();
+        }
+        return true;
+    }
+    
+    /**
+     * Returns an id identifying the current scheduling of this Activity,
+     * changed whenever the Activity is scheduled anew. This method should
+     * only be called by the ActivityManager.
+     * @return the schedule id
+     */
+    int getScheduleId() {
+        return m_scheduleId;
     }
     
     /**
@@ -256,6 +278,8 @@ public abstract class Activity {
     synchronized boolean setRunning(boolean s) {
         boolean b = m_isRunning;
         m_isRunning = s;
+        if ( b != s )
+            ActivityManager.runningChanged(s);
         return b;
     }
     
@@ -461,4 +485,26 @@ public abstract class Activity {
         m_enabled = s;
     }
     
+    /**
+     * Returns the priority of this activity. When activities are stepped
+     * in sync with the display (see
+     * {@link ActivityManager#setFrameClocked(boolean)}), activities are run
+     * in order of decreasing priority, and activities with a priority below
+     * {@link #PRIORITY_NORMAL} are deferred to the next frame if the frame
+     * budget has been used up.
+     * @return the priority of this activity
+     */
+    public int getPriority() {
+        return m_priority;
+    }
+    
+    /**
+     * Sets the priority of this activity.
+     * @param priority the new priority, {@link #PRIORITY_NORMAL} by default
+     * @see #getPriority()
+     */
+    public void setPriority(int priority) {
+        m_priority = priority;
+    }
+    
 } // end of class Activity
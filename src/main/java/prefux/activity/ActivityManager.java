@@ -31,7 +31,18 @@
 package prefux.activity;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
 
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import prefux.util.PrefuseConfig;
 
 
@@ -60,6 +71,22 @@ import prefux.util.PrefuseConfig;
  * instance, also provides a useful level of indirection, allowing actions
  * to be changed dynamically without changes to code in other locations.
  * </p>
+ * 
+ * <p>By default, activities are stepped on the ActivityManager thread
+ * whenever they are due. Alternatively, activities can be stepped in sync
+ * with the JavaFX pulse (see {@link #setFrameClocked(boolean)}): a single
+ * AnimationTimer then steps all due activities once per frame, using the
+ * frame time, so that animation steps and rendering neither drift apart nor
+ * update twice between frames. Within a frame, activities run in order of
+ * decreasing {@link Activity#getPriority() priority}. If the activities of
+ * a frame exceed the frame budget, the remaining low priority activities
+ * are deferred to the next frame rather than stalling the display. All
+ * times are taken from a monotonic clock, see {@link #currentTime()}.</p>
+ * 
+ * <p>Scheduled activities are kept in a queue ordered by the time they are
+ * next due, so that each step only touches the activities that are due.
+ * Activities are submitted through a concurrent queue, so scheduling does
+ * not contend with the stepping thread.</p>
  *
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see Activity
@@ -67,22 +94,66 @@ import prefux.util.PrefuseConfig;
  */
 public class ActivityManager extends Thread {
     
-    private static ActivityManager s_instance;
+    private static final Logger s_logger
+        = Logger.getLogger(ActivityManager.class.getName());
+    
+    /** Offset of the monotonic clock, aligned with the system time. */
+    private static final long s_epoch
+        = System.currentTimeMillis() - System.nanoTime()/1000000L;
+    
+    private static volatile ActivityManager s_instance;
+    
+    private static volatile boolean s_frameClock
+        = PrefuseConfig.getBoolean("activity.frameClock");
+    private static volatile long s_frameBudget
+        = PrefuseConfig.getLong("activity.frameBudget");
+    
+    /** Orders queue entries by decreasing activity priority. */
+    private static final Comparator<Entry> PRIORITY_ORDER
+        = new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return Integer.compare(b.activity.getPriority(),
+                                       a.activity.getPriority());
+            }
+        };
+    
+    /** Number of activities currently running. */
+    private static final AtomicInteger s_running = new AtomicInteger();
+    
+    /** Activities submitted for scheduling, not yet in the queue. */
+    private final ConcurrentLinkedQueue<Entry> m_inbox;
+    /** Scheduled activities, ordered by the time they are next due. */
+    private final PriorityQueue<Entry> m_queue;
+    /** The currently scheduled activities. */
+    private final Set<Activity> m_scheduled;
+    /** Activities due in the current step. */
+    private final ArrayList<Entry> m_due;
+    private volatile long    m_nextTime;
+    private volatile boolean m_run;
     
-    private ArrayList<Activity> m_activities;
-    private ArrayList<Activity> m_tmp;
-    private long      m_nextTime;
-    private boolean   m_run;
+    private final Object m_timerLock = new Object();
+    private AnimationTimer m_timer;
+    private volatile boolean m_timerActive = false;
+    private volatile long m_frames = 0;
+    private volatile long m_overruns = 0;
+    private volatile long m_deferred = 0;
+    private volatile long m_overdue = 0;
     
     /**
      * Returns the active ActivityManager instance.
      * @return the ActivityManager
      */
-    private synchronized static ActivityManager getInstance() {
-        if ( s_instance == null || !s_instance.isAlive() ) {
-            s_instance = new ActivityManager();
+    private static ActivityManager getInstance() {
+        ActivityManager am = s_instance;
+        if ( am != null && am.isAlive() ) {
+            return am;
+        }
+        synchronized ( ActivityManager.class ) {
+            if ( s_instance == null || !s_instance.isAlive() ) {
+                s_instance = new ActivityManager();
+            }
+            return s_instance;
         }
-        return s_instance;
     }
     
     /**
@@ -90,9 +161,12 @@ public class ActivityManager extends Thread {
      */
     private ActivityManager() {
         super("prefuse_ActivityManager");
-        m_activities = new ArrayList<>();
-        m_tmp = new ArrayList<>();
+        m_inbox = new ConcurrentLinkedQueue<>();
+        m_queue = new PriorityQueue<>();
+        m_scheduled = ConcurrentHashMap.newKeySet();
+        m_due = new ArrayList<>();
         m_nextTime = Long.MAX_VALUE;
+        m_run = true;
         
         int priority = PrefuseConfig.getInt("activity.threadPriority");
         if ( priority >= Thread.MIN_PRIORITY && 
@@ -104,6 +178,112 @@ public class ActivityManager extends Thread {
         this.start();
     }
     
+    /**
+     * Returns the current time in milliseconds, as used for scheduling
+     * activities. The time is taken from a monotonic clock, aligned with
+     * {@link System#currentTimeMillis()} when this class is loaded, so that
+     * adjustments of the system clock do not disturb running activities.
+     * @return the current time in milliseconds
+     */
+    public static long currentTime() {
+        return s_epoch + System.nanoTime()/1000000L;
+    }
+    
+    /**
+     * Indicates if activities are stepped in sync with the JavaFX pulse.
+     * @return true if activities are stepped once per frame, false if
+     * they are stepped on the ActivityManager thread
+     */
+    public static boolean isFrameClocked() {
+        return s_frameClock;
+    }
+    
+    /**
+     * Sets if activities are stepped in sync with the JavaFX pulse. If
+     * enabled, all due activities are stepped once per frame on the JavaFX
+     * application thread. This requires the JavaFX toolkit to be running;
+     * otherwise, activities keep being stepped on the ActivityManager
+     * thread.
+     * @param b true to step activities once per frame
+     */
+    public static void setFrameClocked(boolean b) {
+        s_frameClock = b;
+        getInstance()._frameClockChanged();
+    }
+    
+    /**
+     * Returns the time activities may take per frame before low priority
+     * activities are deferred to the next frame.
+     * @return the frame budget in milliseconds
+     */
+    public static long getFrameBudget() {
+        return s_frameBudget;
+    }
+    
+    /**
+     * Sets the time activities may take per frame before low priority
+     * activities are deferred to the next frame.
+     * @param millis the frame budget in milliseconds
+     */
+    public static void setFrameBudget(long millis) {
+        s_frameBudget = millis;
+    }
+    
+    /**
+     * Returns the number of frames in which activities have been stepped.
+     * @return the number of stepped frames
+     */
+    public static long getFrameCount() {
+        return getInstance().m_frames;
+    }
+    
+    /**
+     * Returns the number of frames in which the activities exceeded the
+     * frame budget.
+     * @return the number of frame budget overruns
+     */
+    public static long getOverrunCount() {
+        return getInstance().m_overruns;
+    }
+    
+    /**
+     * Returns the number of activity steps that were deferred to a later
+     * frame because the frame budget was exceeded.
+     * @return the number of deferred activity steps
+     */
+    public static long getDeferredCount() {
+        return getInstance().m_deferred;
+    }
+    
+    /**
+     * Returns the number of activities that have been started, but have
+     * not yet finished or been cancelled.
+     * @return the number of running activities
+     */
+    public static int getRunningCount() {
+        return s_running.get();
+    }
+    
+    /**
+     * Returns the number of activity steps that were run later than due
+     * by more than their step time, e.g., because the manager was busy
+     * with other activities.
+     * @return the number of overdue activity steps
+     */
+    public static long getOverdueCount() {
+        return getInstance().m_overdue;
+    }
+    
+    /**
+     * Called by activities when their running state changes.
+     */
+    static void runningChanged(boolean running) {
+        if ( running )
+            s_running.incrementAndGet();
+        else
+            s_running.decrementAndGet();
+    }
+    
     /**
      * Stops the activity manager thread. All scheduled actvities are
      * canceled, and then the thread is then notified to stop running.
@@ -131,7 +311,7 @@ public class ActivityManager extends Thread {
      * @param a the Activity to schedule
      */
     static void scheduleNow(Activity a) {
-        getInstance()._schedule(a, System.currentTimeMillis());
+        getInstance()._schedule(a, currentTime());
     }
     
     /**
@@ -202,35 +382,203 @@ public class ActivityManager extends Thread {
      * Stops the activity manager thread. All scheduled actvities are
      * canceled, and then the thread is then notified to stop running.
      */
-    private synchronized void _stop() {
-        while ( m_activities.size() > 0 ) {
-            Activity a = (Activity)m_activities.get(m_activities.size()-1);
+    private void _stop() {
+        for ( Activity a : m_scheduled.toArray(new Activity[0]) )
             a.cancel();
-        }
-        _setRunning(false);
-        notify();
+        m_run = false;
+        LockSupport.unpark(this);
     }
     
     /**
-     * Schedules an Activity with the manager.
+     * Schedules an Activity with the manager. Submission does not lock the
+     * manager: the activity is handed over through a concurrent queue and
+     * picked up by the thread that steps activities.
      * @param a the Activity to schedule
      */
     private void _schedule(Activity a, long startTime) {
         if ( a.isScheduled() ) {
-        	try { notifyAll(); } catch ( Exception e ) {}
+            LockSupport.unpark(this);
             return; // already scheduled, do nothing
         }
         a.setStartTime(startTime);
-        synchronized ( this ) {
-            m_activities.add(a);
-            a.setScheduled(true);
-            if ( startTime < m_nextTime ) { 
-               m_nextTime = startTime;
-               notify();
+        if ( !a.setScheduled(true) ) {
+            return; // scheduled concurrently
+        }
+        m_scheduled.add(a);
+        m_inbox.offer(new Entry(a, startTime));
+        if ( s_frameClock ) {
+            _startTimer();
+        }
+        if ( startTime < m_nextTime ) {
+            LockSupport.unpark(this);
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Frame Clock
+    
+    /**
+     * Switches between stepping activities on the ActivityManager thread
+     * and stepping them once per frame.
+     */
+    private void _frameClockChanged() {
+        if ( s_frameClock && !m_scheduled.isEmpty() )
+            _startTimer();
+        LockSupport.unpark(this);
+    }
+    
+    /**
+     * Starts the frame timer, if not already running.
+     */
+    private void _startTimer() {
+        if ( m_timerActive ) return;
+        synchronized ( m_timerLock ) {
+            if ( m_timerActive ) return;
+            if ( m_timer == null ) {
+                m_timer = new AnimationTimer() {
+                    public void handle(long now) {
+                        _frame(now);
+                    }
+                };
+            }
+            try {
+                if ( Platform.isFxApplicationThread() ) {
+                    m_timer.start();
+                } else {
+                    Platform.runLater(m_timer::start);
+                }
+                m_timerActive = true;
+            } catch ( IllegalStateException e ) {
+                // toolkit not running, keep stepping on the manager thread
+                s_logger.warning("JavaFX is not running, "
+                        + "activities are not stepped per frame.");
+                s_frameClock = false;
+                LockSupport.unpark(this);
+            }
+        }
+    }
+    
+    /**
+     * Steps all due activities for a single frame. Called by the frame
+     * timer on the JavaFX application thread.
+     * @param now the frame time in nanoseconds
+     */
+    private void _frame(long now) {
+        synchronized ( m_timerLock ) {
+            if ( !s_frameClock || m_scheduled.isEmpty() ) {
+                // nothing to animate, stop requesting frames
+                m_timer.stop();
+                m_timerActive = false;
+                return;
             }
         }
+        ++m_frames;
+        long deadline = System.nanoTime() + s_frameBudget*1000000L;
+        _step(s_epoch + now/1000000L, deadline);
     }
     
+    // ------------------------------------------------------------------------
+    // Stepping
+    
+    /**
+     * Steps all due activities. Only the activities due at the current time
+     * are taken from the time-ordered queue; all others are left untouched.
+     * @param currentTime the time of this step in milliseconds
+     * @param deadline the value of {@link System#nanoTime()} after which
+     * low priority activities are deferred, or Long.MAX_VALUE to run all
+     * due activities
+     * @return the time at which the next activity is due, or
+     * Long.MAX_VALUE if no activity is scheduled
+     */
+    private long _step(long currentTime, long deadline) {
+        synchronized ( m_queue ) {
+            // take over newly scheduled activities
+            Entry e;
+            while ( (e=m_inbox.poll()) != null )
+                m_queue.add(e);
+            
+            // collect the activities that are due
+            while ( (e=m_queue.peek()) != null && e.time <= currentTime ) {
+                m_queue.poll();
+                if ( !e.isValid() ) continue; // cancelled or rescheduled
+                m_due.add(e);
+                
+                // unschedule activities that won't be run again
+                if ( currentTime >= e.activity.getStopTime() )
+                    _unschedule(e.activity);
+                // count steps that are late by more than their step time
+                if ( currentTime - e.time > Math.max(e.activity.getStepTime(),
+                                                     Activity.DEFAULT_STEP_TIME) )
+                    ++m_overdue;
+            }
+            
+            boolean framed = ( deadline != Long.MAX_VALUE );
+            if ( framed && m_due.size() > 1 )
+                Collections.sort(m_due, PRIORITY_ORDER); // stable sort
+            
+            boolean overrun = false;
+            for ( int i=0; i<m_due.size(); i++ ) {
+                e = m_due.get(i);
+                Activity a = e.activity;
+                if ( framed && a.getPriority() < Activity.PRIORITY_NORMAL
+                        && System.nanoTime() > deadline )
+                {
+                    // out of time, try again in the next frame
+                    overrun = true;
+                    ++m_deferred;
+                    _defer(e);
+                    continue;
+                }
+                // run the activity - the activity will check for
+                // itself if it should perform any action or not
+                long s = a.runActivity(currentTime);
+                // re-queue the activity if it will be run again
+                if ( s >= 0 && e.isValid() ) {
+                    e.time = currentTime + s;
+                    m_queue.add(e);
+                }
+            }
+            if ( overrun || (framed && System.nanoTime() > deadline) )
+                ++m_overruns;
+            
+            // clear the temporary list
+            m_due.clear();
+            
+            e = m_queue.peek();
+            return ( e == null ? Long.MAX_VALUE : e.time );
+        }
+    }
+    
+    /**
+     * Keeps a deferred activity scheduled, in case it has been unscheduled
+     * as due to finish in this step.
+     */
+    private void _defer(Entry e) {
+        if ( !e.isValid() ) {
+            Activity a = e.activity;
+            if ( a.isScheduled() || !a.setScheduled(true) )
+                return; // rescheduled or cancelled in the meantime
+            m_scheduled.add(a);
+            e = new Entry(a, e.time);
+        }
+        m_queue.add(e);
+    }
+    
+    /**
+     * Marks an activity as no longer scheduled. Queue entries of the
+     * activity become invalid and are discarded when reached.
+     * @return true if the activity was scheduled
+     */
+    private boolean _unschedule(Activity a) {
+        if ( a.setScheduled(false) ) {
+            m_scheduled.remove(a);
+            return true;
+        }
+        return false;
+    }
+    
+    // ------------------------------------------------------------------------
+    
     /**
      * Schedules an Activity to start immediately after another Activity.
      * The second Activity will be scheduled to start immediately after the
@@ -290,71 +638,19 @@ public class ActivityManager extends Thread {
          * OR THE USE OR OTHER DEALINGS IN THE CONTRIBUTION,
          * WHETHER TOGETHER WITH THE SOFTWARE TO WHICH THE CONTRIBUTION RELATES OR ON A STAND ALONE BASIS.
     	 */
-        boolean fire = false;
-        //removeActivity synchronizes on this, we need to lock this
-        //before we lock the activity to avoid deadlock
-        synchronized ( this ) {
-        	synchronized(a)
-        	{
-        		if ( a.isScheduled() ) {
-        			// attempt to remove this activity, if the remove fails,
-        			// this activity is not currently scheduled with the manager
-        			_removeActivity(a);
-        			fire = true;
-        		}
-        		a.setRunning(false);
-        	}
-        }
+        // the queue entry of the activity is discarded once it is reached
+        boolean fire = _unschedule(a);
+        a.setRunning(false);
         if ( fire )
             a.fireActivityCancelled();
     }
     
-    /**
-     * Removes an Activity from this manager, called by an
-     * Activity when it finishes or is cancelled. Application 
-     * code should not call this method! Instead, use 
-     * Activity.cancel() to stop a sheduled or running Activity.
-     * @param a
-     * @return true if the activity was found and removed, false
-     *  if the activity is not scheduled with this manager.
-     */
-    private boolean _removeActivity(Activity a) {
-        boolean r;
-        synchronized ( this ) {
-            r = m_activities.remove(a);
-            if ( r ) {
-                if ( m_activities.size() == 0 ) {
-                    m_nextTime = Long.MAX_VALUE;
-                }
-            }
-        }
-        if ( r ) {
-            a.setScheduled(false);
-        }
-        return r;
-    }
-    
     /**
      * Returns the number of scheduled activities
      * @return the number of scheduled activities
      */
-    private synchronized int _activityCount() {
-        return m_activities.size();
-    }
-    
-    /**
-     * Sets the running flag for the ActivityManager instance.
-     */
-    private synchronized void _setRunning(boolean b) {
-        m_run = b;
-    }
-    
-    /**
-     * Used by the activity loop to determine if the ActivityManager
-     * thread should keep running or exit.
-     */
-    private synchronized boolean _keepRunning() {
-        return m_run;
+    private int _activityCount() {
+        return m_scheduled.size();
     }
     
     /**
@@ -362,60 +658,58 @@ public class ActivityManager extends Thread {
      * initialization of the ActivityManager.
      */
     public void run() {
-        _setRunning(true);
-        while ( _keepRunning() ) {
-            if ( _activityCount() > 0 ) {
-                long currentTime = System.currentTimeMillis();
-                long t = -1;
-                
-                synchronized (this) {
-                    // copy content of activities, as new activities might
-                    // be added while we process the current ones
-                    for ( int i=0; i<m_activities.size(); i++ ) {
-                        Activity a = (Activity)m_activities.get(i);
-                        m_tmp.add(a);
-                        
-                        // remove activities that won't be run again
-                        if ( currentTime >= a.getStopTime() )
-                        {
-                            m_activities.remove(i--);
-                            a.setScheduled(false);
-                        }
-                    }
-                    // if no activities left, reflect that in the next time
-                    if ( m_activities.size() == 0 ) {
-                        m_nextTime = Long.MAX_VALUE;
-                    }
-                }
-                
-                for ( int i=0; i<m_tmp.size(); i++ ) {
-                    // run the activity - the activity will check for
-                    // itself if it should perform any action or not
-                    Activity a = (Activity)m_tmp.get(i);
-                    long s = a.runActivity(currentTime);
-                    // compute minimum time for next activity cycle
-                    t = (s<0 ? t : t<0 ? s : Math.min(t,s));
-                }
-
-                // clear the temporary list
-                m_tmp.clear();
-                
-                if ( t == -1 ) continue;
-                
-                // determine the next time we should run
-                try {
-                    synchronized (this) { wait(t); }
-                } catch (InterruptedException e) { }
-                
+        while ( m_run ) {
+            long next = Long.MAX_VALUE;
+            m_nextTime = Long.MIN_VALUE; // awake, no need to wake us up
+            if ( !s_frameClock ) {
+                next = _step(currentTime(), Long.MAX_VALUE);
+            }
+            
+            // publish the wake up time, then make sure no activity
+            // has been submitted in the meantime
+            m_nextTime = next;
+            if ( !s_frameClock && !m_inbox.isEmpty() )
+                continue;
+            
+            if ( next == Long.MAX_VALUE ) {
+                // nothing to do, or stepped by the frame timer,
+                // chill out until notified
+                LockSupport.park(this);
             } else {
-                // nothing to do, chill out until notified
-                try {
-                    synchronized (this) { wait(); }
-                } catch (InterruptedException e) { }
+                long t = next - currentTime();
+                if ( t > 0 )
+                    LockSupport.parkNanos(this, t*1000000L);
             }
         }
     }
     
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Queue entry of a scheduled activity, ordered by the time at which
+     * the activity is next due.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final Activity activity;
+        final int id;
+        long time;
+        
+        Entry(Activity a, long time) {
+            this.activity = a;
+            this.id = a.getScheduleId();
+            this.time = time;
+        }
+        
+        /** Indicates if the activity is still scheduled by this entry. */
+        boolean isValid() {
+            return activity.isScheduled() && activity.getScheduleId() == id;
+        }
+        
+        public int compareTo(Entry e) {
+            return Long.compare(time, e.time);
+        }
+    }
+    
     public class ScheduleAfterActivity extends ActivityAdapter {
         Activity after;
         boolean remove;
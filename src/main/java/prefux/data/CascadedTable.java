@@ -388,12 +388,12 @@ public class CascadedTable extends Table {
     /**
      * @see prefux.data.Table#addRows(int)
      */
-    public void addRows(int nrows) {
+    public int[] addRows(int nrows) {
         if ( m_parent != null ) {
             throw new IllegalStateException(
                 "Add rows not supported for CascadedTable.");
         } else {
-            super.addRows(nrows);
+            return super.addRows(nrows);
         }
     }
     
@@ -409,6 +409,18 @@ public class CascadedTable extends Table {
         }
     }
 
+    /**
+     * @see prefux.data.Table#removeRows(int[])
+     */
+    public int removeRows(int[] rows) {
+        if ( m_parent != null ) {
+            throw new IllegalStateException(
+                "Remove row not supported for CascadedTable.");
+        } else {
+            return super.removeRows(rows);
+        }
+    }
+
     /**
      * Internal method for adding a new cascaded row backed by
      * the given parent row.
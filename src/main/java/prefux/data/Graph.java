@@ -1365,7 +1365,7 @@ public class Graph extends CompositeTupleSet {
                     if ( col == EventConstants.ALL_COLUMNS ) {
                         boolean added = type==EventConstants.INSERT;
                         for ( int r=start; r<=end; ++r )
-                            updateDegrees(start, added?1:-1);
+                            updateDegrees(r, added?1:-1);
                     }
                 }
                 // clear the spanning tree reference
@@ -31,6 +31,7 @@
 package prefux.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -142,6 +143,10 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      * used to expedite handling of column updates. */
     protected int m_lastCol = -1;
     
+    /** Columns whose events are deferred, or null if update events are
+     * currently delivered immediately. */
+    private volatile ArrayList<Column> m_deferred = null;
+    
     /** A cached schema instance, loaded lazily */
     protected Schema m_schema;
     
@@ -365,13 +370,24 @@ public class Table extends AbstractTupleSet implements ColumnListener {
     /**
      * Add a given number of rows to this table. All data columns will be
      * notified and will take on the appropriate default values for the
-     * added rows.
+     * added rows. A single insert event is fired for each run of
+     * consecutive row numbers, rather than one event per row.
      * @param nrows the number of rows to add.
+     * @return the row numbers of the newly added rows
      */
-    public void addRows(int nrows) {
-        for ( int i=0; i<nrows; ++i ) {
-            addRow();
+    public int[] addRows(int nrows) {
+        int[] rows = new int[Math.max(0, nrows)];
+        if ( rows.length == 0 ) return rows;
+        
+        for ( int i=0; i<rows.length; ++i ) {
+            rows[i] = m_rows.addRow();
         }
+        updateRowCount();
+        
+        int[] sorted = rows.clone();
+        Arrays.sort(sorted);
+        fireTableEvents(sorted, sorted.length, TableModelEvent.INSERT);
+        return rows;
     }
     
     /**
@@ -418,6 +434,53 @@ public class Table extends AbstractTupleSet implements ColumnListener {
         return false;
     }
     
+    /**
+     * Removes a set of rows from this table. A single delete event is fired
+     * for each run of consecutive row numbers, before any of the rows is
+     * invalidated.
+     * @param rows the rows to delete, invalid rows are ignored
+     * @return the number of deleted rows
+     */
+    public int removeRows(int[] rows) {
+        int[] valid = rows.clone();
+        Arrays.sort(valid);
+        int n = 0;
+        for ( int i=0; i<valid.length; ++i ) {
+            int row = valid[i];
+            if ( (n == 0 || valid[n-1] != row) && m_rows.isValidRow(row) )
+                valid[n++] = row;
+        }
+        if ( n == 0 ) return 0;
+        
+        // as in removeRow, fire update *BEFORE* clearing values
+        fireTableEvents(valid, n, TableModelEvent.DELETE);
+        for ( int i=0; i<n; ++i ) {
+            m_tuples.invalidate(valid[i]);
+            m_rows.releaseRow(valid[i]);
+        }
+        for ( Iterator<Column> cols = getColumns(); cols.hasNext(); ) {
+            Column c = (Column)cols.next();
+            for ( int i=0; i<n; ++i )
+                c.revertToDefault(valid[i]);
+        }
+        return n;
+    }
+    
+    /**
+     * Fire a table event on all columns for each run of consecutive rows
+     * within the first n entries of the given sorted array.
+     */
+    private void fireTableEvents(int[] rows, int n, int type) {
+        int r0 = rows[0];
+        for ( int i=1; i<=n; ++i ) {
+            if ( i == n || rows[i] != rows[i-1]+1 ) {
+                fireTableEvent(r0, rows[i-1], 
+                               TableModelEvent.ALL_COLUMNS, type);
+                if ( i < n ) r0 = rows[i];
+            }
+        }
+    }
+    
     /**
      * Clear this table, removing all rows.
      * @see prefux.data.tuple.TupleSet#clear()
@@ -1864,6 +1927,62 @@ public class Table extends AbstractTupleSet implements ColumnListener {
         }
     }
     
+    // -- Deferred Updates ----------------------------------------------------
+    
+    /**
+     * Starts deferring update events. Until {@link #endDeferredUpdates(int[],
+     * int)} is called, value changes in this table's columns are only
+     * recorded, not reported, so that column values of distinct rows may be
+     * written from multiple threads without listeners being invoked
+     * concurrently. This holds for the listeners of the columns as well,
+     * such as indices and column metadata, which are only brought up to
+     * date once deferral ends. Columns inherited from a parent table are
+     * not deferred.
+     * @return true if update events are now deferred, false if update
+     * events were already being deferred
+     */
+    public synchronized boolean beginDeferredUpdates() {
+        if ( m_deferred != null ) return false;
+        ArrayList<Column> deferred = new ArrayList<Column>(m_columns.size());
+        for ( int i=0; i<m_columns.size(); ++i ) {
+            Column c = m_columns.get(i);
+            if ( c.beginDeferredEvents() )
+                deferred.add(c);
+        }
+        m_deferred = deferred;
+        return true;
+    }
+    
+    /**
+     * Indicates if update events are currently being deferred.
+     * @return true if update events are deferred, false otherwise
+     * @see #beginDeferredUpdates()
+     */
+    public boolean isDeferringUpdates() {
+        return m_deferred != null;
+    }
+    
+    /**
+     * Stops deferring update events and fires the coalesced updates: each
+     * modified column fires one update event for each run of consecutive
+     * rows among the given rows, which this table reports as table events.
+     * @param rows the rows that may have been modified, sorted in
+     * ascending order
+     * @param n the number of entries of the rows array to use
+     * @see #beginDeferredUpdates()
+     */
+    public void endDeferredUpdates(int[] rows, int n) {
+        ArrayList<Column> deferred;
+        synchronized ( this ) {
+            deferred = m_deferred;
+            m_deferred = null;
+        }
+        if ( deferred == null ) return;
+        
+        for ( int i=0; i<deferred.size(); ++i )
+            deferred.get(i).endDeferredEvents(rows, n);
+    }
+    
     // -- TableListeners ------------------------------------------------------
     
     /**
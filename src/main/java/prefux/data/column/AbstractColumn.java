@@ -34,6 +34,7 @@ import java.util.Date;
 
 import prefux.data.DataTypeException;
 import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
 import prefux.data.parser.DataParseException;
 import prefux.data.parser.DataParser;
 import prefux.data.parser.ObjectParser;
@@ -56,6 +57,9 @@ public abstract class AbstractColumn implements Column {
     
     protected CopyOnWriteArrayList m_listeners;
     
+    private volatile boolean m_deferring = false;
+    private volatile boolean m_deferredChange = false;
+    
     /**
      * Create a new AbstractColumn of type Object.
      */
@@ -162,10 +166,52 @@ public abstract class AbstractColumn implements Column {
         m_listeners.remove(listener);
     }
     
+    /**
+     * @see prefux.data.column.Column#beginDeferredEvents()
+     */
+    public synchronized boolean beginDeferredEvents() {
+        if ( m_deferring ) return false;
+        m_deferredChange = false;
+        m_deferring = true;
+        return true;
+    }
+    
+    /**
+     * @see prefux.data.column.Column#endDeferredEvents(int[], int)
+     */
+    public void endDeferredEvents(int[] rows, int n) {
+        synchronized ( this ) {
+            if ( !m_deferring ) return;
+            m_deferring = false;
+            if ( !m_deferredChange ) return;
+            m_deferredChange = false;
+        }
+        if ( n == 0 ) return;
+        int r0 = rows[0];
+        for ( int i=1; i<=n; ++i ) {
+            if ( i == n || rows[i] != rows[i-1]+1 ) {
+                fireColumnEvent(EventConstants.UPDATE, r0, rows[i-1]);
+                if ( i < n ) r0 = rows[i];
+            }
+        }
+    }
+    
+    /**
+     * Records a change while events are deferred.
+     * @return true if the change is deferred, false if listeners are to
+     * be notified
+     */
+    private boolean defer() {
+        if ( !m_deferring ) return false;
+        m_deferredChange = true;
+        return true;
+    }
+    
     /**
      * Notifies all registered listeners of a column UPDATE event
      */
     protected final void fireColumnEvent(int type, int start, int end) {
+        if ( defer() ) return;
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, type, start, end);
@@ -177,6 +223,7 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, int prev) {
+        if ( defer() ) return;
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -188,6 +235,7 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, long prev) {
+        if ( defer() ) return;
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -199,6 +247,7 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, float prev) {
+        if ( defer() ) return;
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -210,6 +259,7 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, double prev) {
+        if ( defer() ) return;
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -221,6 +271,7 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, boolean prev) {
+        if ( defer() ) return;
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -232,6 +283,7 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, Object prev) {
+        if ( defer() ) return;
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -114,6 +114,28 @@ public interface Column {
      */
     public void removeColumnListener(ColumnListener listener);
     
+    /**
+     * Starts deferring the events of this column. Until
+     * {@link #endDeferredEvents(int[], int)} is called, value changes are
+     * only recorded, not reported to listeners, so that the values of
+     * distinct rows may be set from multiple threads without listeners
+     * being invoked concurrently.
+     * @return true if events are now deferred, false if events were
+     * already being deferred
+     */
+    public boolean beginDeferredEvents();
+    
+    /**
+     * Stops deferring events. If values were changed while events were
+     * deferred, one update event is fired for each run of consecutive rows
+     * among the given rows.
+     * @param rows the rows that may have been modified, sorted in
+     * ascending order
+     * @param n the number of entries of the rows array to use
+     * @see #beginDeferredEvents()
+     */
+    public void endDeferredEvents(int[] rows, int n);
+    
     
     // ------------------------------------------------------------------------
     // Data Access Methods
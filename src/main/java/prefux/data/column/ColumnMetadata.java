@@ -30,31 +30,64 @@
  */
 package prefux.data.column;
 
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
 
 import prefux.data.Table;
 import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
 import prefux.data.util.Index;
 import prefux.util.DataLib;
+import prefux.util.QuantileSketch;
+import prefux.util.TimeLib;
 import prefux.util.TypeLib;
 import prefux.util.collections.DefaultLiteralComparator;
+import prefux.util.collections.IntIterator;
 
 /**
  * ColumnMetadata stores computed metadata and statistics for a singe column
  * instance. They are created automatically by Table instances and are
  * retrieved using the {@link prefux.data.Table#getMetadata(String)} method.
+ * 
+ * <p>Statistics are computed with a single pass over the column upon first
+ * access. Dynamic metadata instances then maintain the value count, sum and
+ * extrema incrementally as column values are set and table rows are added
+ * or removed, so that repeated queries (e.g., by data-driven encoders and
+ * axis layouts run on every frame) do not require rescanning the table.
+ * Previous values are taken from the column change notifications, no copy
+ * of the column data is kept. The sorted set of distinct values is only
+ * maintained for non-numeric columns and for numeric columns with a low
+ * number of distinct values; for other columns the unique count, median
+ * and ordinal values are computed on demand and cached until the next
+ * change. Changes to a range of values reported without their previous
+ * values widen the extrema in place, the remaining statistics are
+ * recomputed upon their next access.
+ * Numeric columns additionally provide a {@link QuantileSketch} of their
+ * values, which is extended as rows are added and rebuilt lazily once
+ * values are removed or changed.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class ColumnMetadata implements ColumnListener {
+public class ColumnMetadata implements ColumnListener, TableListener {
 
 	// TODO consider refactor. is non-dynamic mode needed? pass Column reference in?
 	
+    /** Maximum number of distinct values tracked for numeric columns. */
+    private static final int MAX_DISTINCT = 1024;
+    
     private Table   m_table;
     private String  m_field;
+    private Column  m_column;
     private boolean m_dynamic;
     private boolean m_init;
+    private boolean m_stale;
+    private boolean m_numeric;
 
     private Comparator m_cmp;
     
@@ -63,12 +96,27 @@ public class ColumnMetadata implements ColumnListener {
     private int m_max;
     private int m_median;
     private int m_unique;
-    private Double m_mean;
-    private Double m_stdev;
-    private Double m_sum;
+    private Object m_minValue;
+    private Object m_maxValue;
     private Object[] m_ordinalA;
     private Map m_ordinalM;
     
+    // incrementally maintained statistics
+    private BitSet m_rows;
+    private int    m_count;
+    private double m_sum;
+    private double m_sumsq;
+    private TreeMap<Object,int[]> m_counts;
+    private QuantileSketch m_sketch;
+    
+    // column row last counted or discounted in response to a table event,
+    // and the value that was used at that time
+    private int     m_lastIdx = -1;
+    private int     m_lastRow;
+    private Object  m_lastValue;
+    private boolean m_lastAdded;
+    private boolean m_lastCounted;
+    
     // ------------------------------------------------------------------------
     
     /**
@@ -88,7 +136,7 @@ public class ColumnMetadata implements ColumnListener {
      * values in the column
      * @param dynamic indicates if this ColumnMetadata should react to
      * changes in the underlying table values. If true, computed values
-     * stored in this metadata object will be invalidated when updates to
+     * stored in this metadata object will be updated when changes to
      * the column data occur.
      */
     public ColumnMetadata(Table table, String column, 
@@ -105,7 +153,17 @@ public class ColumnMetadata implements ColumnListener {
      * listeners.
      */
     public void dispose() {
-        m_table.getColumn(m_field).removeColumnListener(this);
+        if ( m_column != null ) {
+            m_column.removeColumnListener(this);
+            m_table.removeTableListener(this);
+            m_column = null;
+        }
+        m_init = false;
+        m_counts = null;
+        m_rows = null;
+        m_sketch = null;
+        m_lastValue = null;
+        clearCachedValues();
     }
 
     // ------------------------------------------------------------------------
@@ -115,9 +173,8 @@ public class ColumnMetadata implements ColumnListener {
         m_max    = -1;
         m_median = -1;
         m_unique = -1;
-        m_mean   = null;
-        m_stdev  = null;
-        m_sum    = null;
+        m_minValue = null;
+        m_maxValue = null;
         m_ordinalA = null;
         m_ordinalM = null;
     }
@@ -127,33 +184,190 @@ public class ColumnMetadata implements ColumnListener {
      */
     public void calculateValues() {
         clearCachedValues();
-        boolean dyn = m_dynamic;
-        m_dynamic = true;
-        getMinimumRow();
-        getMaximumRow();
-        getMedianRow();
-        getUniqueCount();
-        if ( TypeLib.isNumericType(m_table.getColumnType(m_field)) ) {
-            getMean();
-            getDeviation();
-            getSum();
+        m_numeric = TypeLib.isNumericType(m_table.getColumnType(m_field));
+        m_counts = new TreeMap<Object,int[]>(m_cmp);
+        m_rows = new BitSet(m_table.getMaximumRow()+1);
+        m_count = 0;
+        m_sum = 0;
+        m_sumsq = 0;
+        m_sketch = null;
+        m_lastIdx = -1;
+        m_lastValue = null;
+        
+        IntIterator rows = m_table.rows();
+        while ( rows.hasNext() ) {
+            int row = rows.nextInt();
+            add(row, m_table.get(row, m_field));
         }
-        getOrdinalArray();
-        getOrdinalMap();
         m_init = true;
-        m_dynamic = dyn;
+        m_stale = false;
     }
     
     private void accessCheck() {
         if ( m_init ) return;
         
-        if ( m_dynamic ) {
-          clearCachedValues();
-          m_table.getColumn(m_field).addColumnListener(this);
+        if ( m_dynamic && m_column == null ) {
+            m_column = m_table.getColumn(m_field);
+            m_column.addColumnListener(this);
+            m_table.addTableListener(this);
+        }
+        calculateValues();
+    }
+    
+    /**
+     * Like {@link #accessCheck()}, but also recomputes the statistics that
+     * depend on previous values no longer known after a range update.
+     */
+    private void statsCheck() {
+        accessCheck();
+        if ( m_stale ) calculateValues();
+    }
+    
+    // ------------------------------------------------------------------------
+    // Incremental Maintenance
+    
+    /**
+     * Count the value of a table row not yet included in the statistics.
+     */
+    private void add(int row, Object value) {
+        m_rows.set(row);
+        ++m_count;
+        if ( m_numeric && value instanceof Number ) {
+            double x = ((Number)value).doubleValue();
+            m_sum += x;
+            m_sumsq += x*x;
+            if ( m_sketch != null ) m_sketch.update(x);
+        }
+        
+        if ( m_counts == null ) {
+            m_unique = -1;
+            m_ordinalA = null;
+            m_ordinalM = null;
+        } else {
+            int[] c = m_counts.get(value);
+            if ( c != null ) {
+                ++c[0];
+            } else if ( m_numeric && m_counts.size() == MAX_DISTINCT ) {
+                // too many distinct values, compute those on demand
+                m_counts = null;
+                m_unique = -1;
+                m_ordinalA = null;
+                m_ordinalM = null;
+            } else {
+                m_counts.put(value, new int[] {1});
+                m_ordinalA = null;
+                m_ordinalM = null;
+            }
+        }
+        
+        if ( m_count == 1 ) {
+            m_min = m_max = row;
+            m_minValue = m_maxValue = value;
         } else {
-          calculateValues();
+            if ( m_min != -1 && m_cmp.compare(value, m_minValue) < 0 ) {
+                m_min = row;
+                m_minValue = value;
+            }
+            if ( m_max != -1 && m_cmp.compare(value, m_maxValue) > 0 ) {
+                m_max = row;
+                m_maxValue = value;
+            }
         }
-        m_init = true;
+        m_median = -1;
+    }
+    
+    /**
+     * Remove the counted value of a table row from the statistics.
+     */
+    private void remove(int row, Object value) {
+        m_rows.clear(row);
+        --m_count;
+        if ( m_numeric && value instanceof Number ) {
+            double x = ((Number)value).doubleValue();
+            m_sum -= x;
+            m_sumsq -= x*x;
+            m_sketch = null;
+        }
+        
+        uncount(value);
+        if ( row == m_min ) { m_min = -1; m_minValue = null; }
+        if ( row == m_max ) { m_max = -1; m_maxValue = null; }
+        m_median = -1;
+    }
+    
+    /**
+     * Remove one occurrence of a value from the distinct value counts.
+     */
+    private void uncount(Object value) {
+        if ( m_counts == null ) {
+            m_unique = -1;
+            m_ordinalA = null;
+            m_ordinalM = null;
+        } else {
+            int[] c = m_counts.get(value);
+            if ( c != null && --c[0] == 0 ) {
+                m_counts.remove(value);
+                m_ordinalA = null;
+                m_ordinalM = null;
+            }
+        }
+    }
+    
+    /**
+     * Update the statistics for a single changed column value.
+     * @param idx the changed column row
+     * @param prev the previous value
+     */
+    private void update(int idx, Object prev) {
+        if ( !m_init ) return;
+        int col = m_table.getColumnNumber(m_field);
+        if ( col < 0 ) return;
+        
+        if ( idx == m_lastIdx ) {
+            // the row may have been added or removed by a table event that
+            // was triggered by this very change (e.g., filtering of a
+            // cascaded table) and thus counted with the new value already
+            m_lastIdx = -1;
+            if ( m_lastAdded ) {
+                prev = m_lastValue;
+            } else {
+                if ( !equal(prev, m_lastValue) ) {
+                    // the new value was discounted, discount the old one
+                    add(m_lastRow, m_lastValue);
+                    if ( !m_lastCounted ) uncount(m_lastValue);
+                    remove(m_lastRow, prev);
+                }
+                return;
+            }
+        }
+        
+        int row = m_table.getTableRow(idx, col);
+        if ( row < 0 || !m_rows.get(row) ) {
+            // not (yet) part of the table, counted upon row insertion
+            return;
+        }
+        Object value = m_table.get(row, m_field);
+        if ( !equal(prev, value) ) {
+            remove(row, prev);
+            add(row, value);
+        }
+    }
+    
+    private static boolean equal(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+    
+    /**
+     * Find a counted table row holding a value equal to the given one.
+     */
+    private int findRow(Object value) {
+        for ( int r = m_rows.nextSetBit(0); r >= 0;
+              r = m_rows.nextSetBit(r+1) )
+        {
+            if ( m_cmp.compare(value, m_table.get(r, m_field)) == 0 )
+                return r;
+        }
+        return -1;
     }
     
     // ------------------------------------------------------------------------
@@ -173,6 +387,7 @@ public class ColumnMetadata implements ColumnListener {
     public void setComparator(Comparator c) {
         m_cmp = c;
         clearCachedValues();
+        if ( m_init ) calculateValues();
     }
     
     /**
@@ -183,20 +398,52 @@ public class ColumnMetadata implements ColumnListener {
         return m_default;
     }
     
+    /**
+     * Get the number of values (i.e., valid table rows) in the column.
+     * Duplicates are counted.
+     * @return the number of values in the column
+     */
+    public int getCount() {
+        accessCheck();
+        return m_count;
+    }
+    
+    /**
+     * Get the minimum column value, or null if the column is empty.
+     * @return the minimum column value
+     */
+    public Object getMinimum() {
+        int row = getMinimumRow();
+        return row < 0 ? null : m_minValue;
+    }
+    
+    /**
+     * Get the maximum column value, or null if the column is empty.
+     * @return the maximum column value
+     */
+    public Object getMaximum() {
+        int row = getMaximumRow();
+        return row < 0 ? null : m_maxValue;
+    }
+    
     /**
      * Get the row index of the minimum column value. If there are multiple
      * minima, only one is returned.
-     * @return the row index of the minimum column value.
+     * @return the row index of the minimum column value, or -1 if the
+     * column is empty.
      */
     public int getMinimumRow() {
         accessCheck();
-        if ( m_min == -1 && m_dynamic ) {
+        if ( m_min == -1 && m_count > 0 ) {
             Index idx = m_table.getIndex(m_field);
             if ( idx != null ) {
                 m_min = idx.minimum();
+            } else if ( m_counts != null && !m_stale ) {
+                m_min = findRow(m_counts.firstKey());
             } else {
                 m_min = DataLib.min(m_table.tuples(), m_field, m_cmp).getRow();
             }
+            m_minValue = m_table.get(m_min, m_field);
         }
         return m_min;
     }
@@ -204,31 +451,48 @@ public class ColumnMetadata implements ColumnListener {
     /**
      * Get the row index of the maximum column value. If there are multiple
      * maxima, only one is returned.
-     * @return the row index of the maximum column value.
+     * @return the row index of the maximum column value, or -1 if the
+     * column is empty.
      */
     public int getMaximumRow() {
         accessCheck();
-        if ( m_max == -1 && m_dynamic ) {
+        if ( m_max == -1 && m_count > 0 ) {
             Index idx = m_table.getIndex(m_field);
             if ( idx != null ) {
                 m_max = idx.maximum();
+            } else if ( m_counts != null && !m_stale ) {
+                m_max = findRow(m_counts.lastKey());
             } else {
                 m_max = DataLib.max(m_table.tuples(), m_field, m_cmp).getRow();
             }
+            m_maxValue = m_table.get(m_max, m_field);
         }
         return m_max;
     }
     
     /**
      * Get the row index of the median column value.
-     * @return the row index of the median column value
+     * @return the row index of the median column value, or -1 if the
+     * column is empty.
      */
     public int getMedianRow() {
-        accessCheck();
-        if ( m_median == -1 && m_dynamic ) {
+        statsCheck();
+        if ( m_median == -1 && m_count > 0 ) {
             Index idx = m_table.getIndex(m_field);
             if ( idx != null ) {
-                m_max = idx.median();
+                m_median = idx.median();
+            } else if ( m_counts != null ) {
+                // walk the value counts up to the middle position
+                int k = m_count/2;
+                Iterator<Map.Entry<Object,int[]>> iter =
+                    m_counts.entrySet().iterator();
+                while ( iter.hasNext() ) {
+                    Map.Entry<Object,int[]> e = iter.next();
+                    if ( (k -= e.getValue()[0]) < 0 ) {
+                        m_median = findRow(e.getKey());
+                        break;
+                    }
+                }
             } else {
                 m_median = DataLib.median(
                                 m_table.tuples(), m_field, m_cmp).getRow();
@@ -242,8 +506,11 @@ public class ColumnMetadata implements ColumnListener {
      * @return the number of unique values in the column
      */
     public int getUniqueCount() {
-        accessCheck();
-        if ( m_unique == -1 && m_dynamic ) {
+        statsCheck();
+        if ( m_counts != null ) {
+            return m_counts.size();
+        }
+        if ( m_unique == -1 ) {
             Index idx = m_table.getIndex(m_field);
             if ( idx != null ) {
                 m_unique = idx.uniqueCount();
@@ -256,45 +523,60 @@ public class ColumnMetadata implements ColumnListener {
     
     /**
      * Get the mean value of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * does not contain numeric values, NaN is returned.
      * @return the mean of numeric values in the column
      */
     public double getMean() {
-        accessCheck();
-        if ( m_mean == null && m_dynamic ) {
-            m_mean = new Double(DataLib.mean(m_table.tuples(), m_field));
-        }
-        return m_mean.doubleValue();
+        statsCheck();
+        return m_numeric ? m_sum / m_count : Double.NaN;
     }
     
     /**
-     * Get the standard deviation of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * Get the standard deviation of numeric values in the column. If this
+     * column does not contain numeric values, NaN is returned.
      * @return the standard deviation of numeric values in the column
      */
     public double getDeviation() {
-        accessCheck();
-        if ( m_stdev == null && m_dynamic ) {
-            m_stdev = new Double(
-                    DataLib.deviation(m_table.tuples(), m_field, getMean()));
-        }
-        return m_stdev.doubleValue();
+        statsCheck();
+        if ( !m_numeric ) return Double.NaN;
+        double mean = m_sum / m_count;
+        return Math.sqrt(Math.max(0, m_sumsq/m_count - mean*mean));
     }
     
     /**
      * Get the sum of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * does not contain numeric values, NaN is returned.
      * @return the sum of numeric values in the column
      */
     public double getSum() {
-        accessCheck();
-        if ( m_sum == null && m_dynamic ) {
-            m_sum = new Double(DataLib.sum(m_table.tuples(), m_field));
+        statsCheck();
+        return m_numeric ? m_sum : Double.NaN;
+    }
+    
+    /**
+     * Get a sketch of the distribution of numeric values in the column,
+     * supporting approximate quantile queries. The returned sketch is
+     * owned by this metadata instance and must not be modified; to combine
+     * it with other sketches, merge it into a new {@link QuantileSketch}.
+     * If this column does not contain numeric values, this method will
+     * result in an exception being thrown.
+     * @return a quantile sketch of the numeric values in the column
+     */
+    public QuantileSketch getQuantileSketch() {
+        statsCheck();
+        if ( !m_numeric ) {
+            throw new IllegalStateException(
+                "Column does not contain numeric values: "+m_field);
+        }
+        if ( m_sketch == null ) {
+            m_sketch = new QuantileSketch();
+            for ( int r = m_rows.nextSetBit(0); r >= 0;
+                  r = m_rows.nextSetBit(r+1) )
+            {
+                m_sketch.update(m_table.getDouble(r, m_field));
+            }
         }
-        return m_sum.doubleValue();
+        return m_sketch;
     }
     
     /**
@@ -302,9 +584,14 @@ public class ColumnMetadata implements ColumnListener {
      * @return an array of all unique column values, in sorted order.
      */
     public Object[] getOrdinalArray() {
-        accessCheck();
-        if ( m_ordinalA == null && m_dynamic ) {
-            m_ordinalA = DataLib.ordinalArray(m_table.tuples(),m_field,m_cmp);
+        statsCheck();
+        if ( m_ordinalA == null ) {
+            if ( m_counts != null ) {
+                m_ordinalA = m_counts.keySet().toArray();
+            } else {
+                m_ordinalA = DataLib.ordinalArray(
+                                m_table.tuples(), m_field, m_cmp);
+            }
         }
         return m_ordinalA;
     }
@@ -317,66 +604,142 @@ public class ColumnMetadata implements ColumnListener {
      * in the values' sort order
      */
     public Map getOrdinalMap() {
-        accessCheck();
-        if ( m_ordinalM == null && m_dynamic ) {
+        statsCheck();
+        if ( m_ordinalM == null ) {
             Object[] a = getOrdinalArray();
             m_ordinalM = new HashMap();
             for ( int i=0; i<a.length; ++i )
                 m_ordinalM.put(a[i], new Integer(i));
-            //m_ordinalM = DataLib.ordinalMap(m_table.tuples(), m_field, m_cmp);
         }
         return m_ordinalM;
     }
     
     // ------------------------------------------------------------------------
     
+    /**
+     * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( !m_init || col != EventConstants.ALL_COLUMNS ) return;
+        
+        int c = m_table.getColumnNumber(m_field);
+        if ( type == EventConstants.INSERT ) {
+            for ( int r=start; r<=end; ++r ) {
+                if ( m_table.isValidRow(r) && !m_rows.get(r) ) {
+                    Object value = m_table.get(r, m_field);
+                    add(r, value);
+                    remember(m_table.getColumnRow(r, c), r, value, true);
+                }
+            }
+        } else if ( type == EventConstants.DELETE ) {
+            // rows are removed before their values are cleared
+            for ( int r=start; r<=end; ++r ) {
+                if ( m_rows.get(r) ) {
+                    Object value = m_table.get(r, m_field);
+                    m_lastCounted = ( m_counts == null
+                                      || m_counts.containsKey(value) );
+                    remove(r, value);
+                    remember(m_table.getColumnRow(r, c), r, value, false);
+                }
+            }
+        }
+    }
+    
+    private void remember(int idx, int row, Object value, boolean added) {
+        m_lastIdx = idx;
+        m_lastRow = row;
+        m_lastValue = value;
+        m_lastAdded = added;
+    }
+    
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
      */
     public void columnChanged(Column src, int type, int start, int end) {
-        clearCachedValues();
+        if ( !m_init || type != EventConstants.UPDATE ) return;
+        int col = m_table.getColumnNumber(m_field);
+        if ( col < 0 ) return;
+        
+        // previous values are unknown: keep the extrema up to date and
+        // recompute the other statistics upon their next access
+        for ( int idx=start; idx<=end; ++idx ) {
+            int row = m_table.getTableRow(idx, col);
+            if ( row < 0 || !m_rows.get(row) ) continue;
+            Object value = m_table.get(row, m_field);
+            
+            if ( row == m_min ) {
+                if ( m_cmp.compare(value, m_minValue) <= 0 )
+                    m_minValue = value;
+                else { m_min = -1; m_minValue = null; }
+            } else if ( m_min != -1 && m_cmp.compare(value, m_minValue) < 0 ) {
+                m_min = row;
+                m_minValue = value;
+            }
+            if ( row == m_max ) {
+                if ( m_cmp.compare(value, m_maxValue) >= 0 )
+                    m_maxValue = value;
+                else { m_max = -1; m_maxValue = null; }
+            } else if ( m_max != -1 && m_cmp.compare(value, m_maxValue) > 0 ) {
+                m_max = row;
+                m_maxValue = value;
+            }
+        }
+        m_lastIdx = -1;
+        m_stale = true;
+        m_median = -1;
+        m_unique = -1;
+        m_ordinalA = null;
+        m_ordinalM = null;
+        m_sketch = null;
     }
     
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, boolean)
      */
     public void columnChanged(Column src, int idx, boolean prev) {
-        columnChanged(src, 0, idx, idx);
+        update(idx, Boolean.valueOf(prev));
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, double)
      */
     public void columnChanged(Column src, int idx, double prev) {
-        columnChanged(src, 0, idx, idx);
+        update(idx, new Double(prev));
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, float)
      */
     public void columnChanged(Column src, int idx, float prev) {
-        columnChanged(src, 0, idx, idx);
+        update(idx, new Float(prev));
     }
     
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int)
      */
     public void columnChanged(Column src, int idx, int prev) {
-        columnChanged(src, 0, idx, idx);
+        if ( m_table.getColumnType(m_field) == byte.class )
+            update(idx, new Byte((byte)prev));
+        else
+            update(idx, new Integer(prev));
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, long)
      */
     public void columnChanged(Column src, int idx, long prev) {
-        columnChanged(src, 0, idx, idx);
+        Class type = m_table.getColumnType(m_field);
+        if ( Date.class.isAssignableFrom(type) )
+            update(idx, TimeLib.getDate(type, prev));
+        else
+            update(idx, new Long(prev));
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, java.lang.Object)
      */
     public void columnChanged(Column src, int idx, Object prev) {
-        columnChanged(src, 0, idx, idx);
+        update(idx, prev);
     }
     
 } // end of class ColumnMetadata
@@ -34,6 +34,7 @@ import java.util.Arrays;
 
 import prefux.data.DataReadOnlyException;
 import prefux.data.DataTypeException;
+import prefux.data.event.EventConstants;
 
 /**
  * Column implementation for storing double values.
@@ -131,6 +132,51 @@ public class DoubleColumn extends AbstractColumn {
         }
     }
 
+    // ------------------------------------------------------------------------
+    // Bulk Interpolation
+    
+    /**
+     * Sets the values at the given rows to the linear interpolation
+     * <code>start + frac*(end-start)</code> of a start and an end column.
+     * Rather than one update event per changed value, one update event is
+     * fired for each run of consecutive modified rows. Rows are expected
+     * in ascending order; unordered rows only result in more events.
+     * @param start the column holding the starting values
+     * @param end the column holding the ending values
+     * @param frac the interpolation fraction, typically between 0 and 1
+     * @param rows the column rows to update, in ascending order
+     * @param from the first index into the rows array to process
+     * @param to one past the last index into the rows array to process
+     */
+    public void interpolate(DoubleColumn start, DoubleColumn end,
+                            double frac, int[] rows, int from, int to)
+    {
+        if ( m_readOnly ) {
+            throw new DataReadOnlyException();
+        }
+        double[] v = m_values, s = start.m_values, e = end.m_values;
+        int r0 = -1, r1 = -1;
+        for ( int i=from; i<to; ++i ) {
+            int r = rows[i];
+            if ( r < 0 || r >= m_size ) {
+                throw new IllegalArgumentException(
+                        "Row index out of bounds: "+r);
+            }
+            double val = s[r] + frac*(e[r]-s[r]);
+            if ( v[r] != val ) {
+                v[r] = val;
+                if ( r0 < 0 || r != r1+1 ) {
+                    if ( r0 >= 0 )
+                        fireColumnEvent(EventConstants.UPDATE, r0, r1);
+                    r0 = r;
+                }
+                r1 = r;
+            }
+        }
+        if ( r0 >= 0 )
+            fireColumnEvent(EventConstants.UPDATE, r0, r1);
+    }
+
     // ------------------------------------------------------------------------
     // Data Type Convenience Methods
     
@@ -32,6 +32,9 @@
 package prefux.data.expression.parser;
 
 import java.io.StringReader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import prefux.data.expression.AndPredicate;
@@ -63,7 +66,11 @@ import prefux.util.StringLib;
  * later retrieved using the {@link #getError()} method. One can also
  * use the {@link #parse(String, boolean)} with a <code>true</code>
  * boolean argument to request that Exceptions be thrown when
- * errors occur.
+ * errors occur. Parsing may be performed concurrently from multiple
+ * threads, as each thread uses its own parser instance. The
+ * {@link #parseCached(String)} method additionally keeps a bounded cache
+ * of recently parsed expressions, avoiding repeated parsing of
+ * frequently used expression strings.
  * 
  * <h1>Prefuse Expression Language Reference</h1>
  * <p>
@@ -499,35 +506,52 @@ public class ExpressionParser implements ExpressionParserConstants {
         private static final Logger s_logger
             = Logger.getLogger(ExpressionParser.class.getName());
 
-    private static boolean s_init = false;
-    private static Throwable s_error;
+    /** The default maximum number of entries in the expression cache. */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /** Parser instances, one per thread, re-initialized for each parse. */
+    private static final ThreadLocal<ExpressionParser> s_parser
+        = new ThreadLocal<ExpressionParser>();
+    /** The last error generated on each thread. */
+    private static final ThreadLocal<Throwable> s_error
+        = new ThreadLocal<Throwable>();
+
+    private static int s_cacheSize = DEFAULT_CACHE_SIZE;
+    /** Parsed expressions, or the errors of failed parses, by text. */
+    private static final Map<String,Object> s_cache
+        = new LinkedHashMap<String,Object>(16, .75F, true) {
+            public boolean removeEldestEntry(Map.Entry<String,Object> e) {
+                return size() > s_cacheSize;
+            }
+        };
 
     /**
-     * Parse an expression.
+     * Parse an expression. Parsing is thread-safe, as each thread uses
+     * its own parser instance.
      * @param expr the expression text to parse
      * @param throwsException true if this method should throw an
      * exception if an error occurs or should fail quietly
      * @return the parsed Expression, or null if the parse failed
      * and throwsException is false
      */
-    public synchronized static Expression parse(String expr,
-                                                boolean throwsException)
+    public static Expression parse(String expr, boolean throwsException)
     {
         // initialize the parser
-        if ( !s_init ) {
-            new ExpressionParser(new StringReader(expr));
-            s_init = true;
+        ExpressionParser parser = s_parser.get();
+        if ( parser == null ) {
+            parser = new ExpressionParser(new StringReader(expr));
+            s_parser.set(parser);
         } else {
-            ExpressionParser.ReInit(new StringReader(expr));
+            parser.ReInit(new StringReader(expr));
         }
         // attempt to parse the expression
         try {
-            Expression e = Parse();
-            s_error = null;
+            Expression e = parser.Parse();
+            s_error.set(null);
             s_logger.info("Parsed Expression: "+e);
             return e;
         } catch ( ParseException t ) {
-            s_error = t;
+            s_error.set(t);
             if ( throwsException ) {
                 throw t;
             } else {
@@ -545,7 +569,7 @@ public class ExpressionParser implements ExpressionParserConstants {
      * @param expr the expression text to parse
      * @return the parsed Expression, or null if the parse failed
      */
-    public synchronized static Expression parse(String expr) {
+    public static Expression parse(String expr) {
         return parse(expr, false);
     }
     
@@ -556,24 +580,112 @@ public class ExpressionParser implements ExpressionParserConstants {
      * @param expr the expression text to parse
      * @return the parsed Expression, or null if the parse failed
      */
-    public synchronized static Predicate predicate(String expr) {
-        Expression ex = parse(expr, false);
+    public static Predicate predicate(String expr) {
+        return asPredicate(parse(expr, false));
+    }
+
+    /**
+     * Parse an expression, reusing a previously parsed instance for the
+     * same text if available. Parsed expressions are kept in a bounded
+     * cache of recently used expressions. The returned instance is shared
+     * and must be treated as immutable; callers that intend to modify the
+     * expression or register listeners on it should use
+     * {@link #parse(String)} instead. This method does not throw an
+     * exception if a parse error occurs. Use {@link #getError()} to access
+     * any generated exceptions. Parse errors are cached as well, so that
+     * invalid text is not parsed (and reported) again on every call.
+     * @param expr the expression text to parse
+     * @return the parsed Expression, or null if the parse failed
+     */
+    public static Expression parseCached(String expr) {
+        Object cached;
+        synchronized ( s_cache ) {
+            cached = s_cache.get(expr);
+        }
+        if ( cached instanceof Expression ) {
+            s_error.set(null);
+            return (Expression)cached;
+        } else if ( cached != null ) {
+            s_error.set((Throwable)cached);
+            return null;
+        }
+        // parse outside of the lock, concurrent misses are harmless
+        Expression e = parse(expr, false);
+        cached = ( e != null ? e : s_error.get() );
+        if ( cached != null ) {
+            synchronized ( s_cache ) {
+                s_cache.put(expr, cached);
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Parse an expression as a predicate, reusing a previously parsed
+     * instance for the same text if available. The returned instance is
+     * shared and must be treated as immutable.
+     * @param expr the expression text to parse
+     * @return the parsed Expression, or null if the parse failed
+     * @see #parseCached(String)
+     */
+    public static Predicate predicateCached(String expr) {
+        return asPredicate(parseCached(expr));
+    }
+
+    private static Predicate asPredicate(Expression ex) {
         if ( ex == null ) {
             return null;
         } else if ( ex instanceof Predicate ) {
             return (Predicate) ex;
         } else {
-            s_error = new ClassCastException("Expression is not a predicate");
+            s_error.set(
+                new ClassCastException("Expression is not a predicate"));
             return null;
         }
     }
 
     /**
-     * Get the last error, if any, generated by a parse operation.
+     * Get the maximum number of parsed expressions kept in the cache.
+     * @return the expression cache size
+     */
+    public static int getCacheSize() {
+        return s_cacheSize;
+    }
+
+    /**
+     * Set the maximum number of parsed expressions kept in the cache.
+     * A value of zero disables caching.
+     * @param size the expression cache size
+     */
+    public static void setCacheSize(int size) {
+        if ( size < 0 )
+            throw new IllegalArgumentException("Negative cache size.");
+        synchronized ( s_cache ) {
+            s_cacheSize = size;
+            Iterator<String> iter = s_cache.keySet().iterator();
+            for ( int n = s_cache.size(); n > size; --n ) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all entries from the expression cache.
+     */
+    public static void clearCache() {
+        synchronized ( s_cache ) {
+            s_cache.clear();
+        }
+    }
+
+    /**
+     * Get the last error, if any, generated by a parse operation on the
+     * calling thread.
      * @return the last error generated during parsing
      */
-    public synchronized static Throwable getError() {
-        return s_error;
+    public static Throwable getError() {
+        return s_error.get();
     }
 
     /**
@@ -622,21 +734,21 @@ public class ExpressionParser implements ExpressionParserConstants {
 
   // ----------------------------------------------------------------------------
   // Grammar definitions
-  static final public String Name() throws ParseException {
+  final public String Name() throws ParseException {
   Token t;
     t = jj_consume_token(IDENTIFIER);
                    {if (true) return t.image;}
     throw new Error("Missing return statement in function");
   }
 
-  static final public String Quoted() throws ParseException {
+  final public String Quoted() throws ParseException {
   Token t;
     t = jj_consume_token(QUOTED);
                {if (true) return t.image.substring(1,t.image.length()-1);}
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression Parse() throws ParseException {
+  final public Expression Parse() throws ParseException {
   Expression e;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case TRUE:
@@ -670,14 +782,14 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression Expression() throws ParseException {
+  final public Expression Expression() throws ParseException {
   Expression e;
     e = OrExpression();
                      {if (true) return e;}
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression OrExpression() throws ParseException {
+  final public Expression OrExpression() throws ParseException {
   Expression l, r;
     l = XorExpression();
     label_1:
@@ -702,7 +814,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression XorExpression() throws ParseException {
+  final public Expression XorExpression() throws ParseException {
   Expression l, r;
     l = AndExpression();
     label_2:
@@ -727,7 +839,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression AndExpression() throws ParseException {
+  final public Expression AndExpression() throws ParseException {
   Expression l, r;
     l = EqualityExpression();
     label_3:
@@ -752,7 +864,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression EqualityExpression() throws ParseException {
+  final public Expression EqualityExpression() throws ParseException {
   Expression l, r; Token t; int op;
     l = RelationalExpression();
     label_4:
@@ -786,7 +898,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression RelationalExpression() throws ParseException {
+  final public Expression RelationalExpression() throws ParseException {
   Expression l, r; Token t; int op=-1;
     l = AdditiveExpression();
     label_5:
@@ -841,7 +953,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression AdditiveExpression() throws ParseException {
+  final public Expression AdditiveExpression() throws ParseException {
   Expression l, r; Token t; int op=-1;
     l = MultiplicativeExpression();
     label_6:
@@ -889,7 +1001,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression MultiplicativeExpression() throws ParseException {
+  final public Expression MultiplicativeExpression() throws ParseException {
   Expression l, r; Token t; int op=-1;
     l = UnaryExpression();
     label_7:
@@ -937,7 +1049,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression UnaryExpression() throws ParseException {
+  final public Expression UnaryExpression() throws ParseException {
   Expression e; Token t;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case ADD:
@@ -1003,7 +1115,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression UnaryExpressionNotPlusMinus() throws ParseException {
+  final public Expression UnaryExpressionNotPlusMinus() throws ParseException {
   Expression e;
     jj_consume_token(NOT);
     e = UnaryExpression();
@@ -1019,7 +1131,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression PrimaryExpression() throws ParseException {
+  final public Expression PrimaryExpression() throws ParseException {
   Expression e;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case TRUE:
@@ -1056,7 +1168,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression Literal() throws ParseException {
+  final public Expression Literal() throws ParseException {
   Token t;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case INT:
@@ -1100,7 +1212,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression Identifier() throws ParseException {
+  final public Expression Identifier() throws ParseException {
   String s; Function f=null; Expression e;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case QUOTED:
@@ -1166,7 +1278,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static final public Expression IfStatement() throws ParseException {
+  final public Expression IfStatement() throws ParseException {
   Expression p, t, e;
     jj_consume_token(IF);
     p = Expression();
@@ -1180,13 +1292,12 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  static private boolean jj_initialized_once = false;
-  static public ExpressionParserTokenManager token_source;
-  static JavaCharStream jj_input_stream;
-  static public Token token, jj_nt;
-  static private int jj_ntk;
-  static private int jj_gen;
-  static final private int[] jj_la1 = new int[20];
+  public ExpressionParserTokenManager token_source;
+  JavaCharStream jj_input_stream;
+  public Token token, jj_nt;
+  private int jj_ntk;
+  private int jj_gen;
+  final private int[] jj_la1 = new int[20];
   static private int[] jj_la1_0;
   static private int[] jj_la1_1;
   static {
@@ -1201,13 +1312,6 @@ public class ExpressionParser implements ExpressionParserConstants {
    }
 
   public ExpressionParser(java.io.InputStream stream) {
-    if (jj_initialized_once) {
-      System.out.println("ERROR: Second call to constructor of static parser.  You must");
-      System.out.println("       either use ReInit() or set the JavaCC option STATIC to false");
-      System.out.println("       during parser generation.");
-      throw new Error();
-    }
-    jj_initialized_once = true;
     jj_input_stream = new JavaCharStream(stream, 1, 1);
     token_source = new ExpressionParserTokenManager(jj_input_stream);
     token = new Token();
@@ -1216,9 +1320,9 @@ public class ExpressionParser implements ExpressionParserConstants {
     for (int i = 0; i < 20; i++) jj_la1[i] = -1;
   }
 
-  static public void ReInit(java.io.InputStream stream) {
+  public void ReInit(java.io.InputStream stream) {
     jj_input_stream.ReInit(stream, 1, 1);
-    ExpressionParserTokenManager.ReInit(jj_input_stream);
+    token_source.ReInit(jj_input_stream);
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
@@ -1226,13 +1330,6 @@ public class ExpressionParser implements ExpressionParserConstants {
   }
 
   public ExpressionParser(java.io.Reader stream) {
-    if (jj_initialized_once) {
-      System.out.println("ERROR: Second call to constructor of static parser.  You must");
-      System.out.println("       either use ReInit() or set the JavaCC option STATIC to false");
-      System.out.println("       during parser generation.");
-      throw new Error();
-    }
-    jj_initialized_once = true;
     jj_input_stream = new JavaCharStream(stream, 1, 1);
     token_source = new ExpressionParserTokenManager(jj_input_stream);
     token = new Token();
@@ -1241,9 +1338,9 @@ public class ExpressionParser implements ExpressionParserConstants {
     for (int i = 0; i < 20; i++) jj_la1[i] = -1;
   }
 
-  static public void ReInit(java.io.Reader stream) {
+  public void ReInit(java.io.Reader stream) {
     jj_input_stream.ReInit(stream, 1, 1);
-    ExpressionParserTokenManager.ReInit(jj_input_stream);
+    token_source.ReInit(jj_input_stream);
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
@@ -1251,13 +1348,6 @@ public class ExpressionParser implements ExpressionParserConstants {
   }
 
   public ExpressionParser(ExpressionParserTokenManager tm) {
-    if (jj_initialized_once) {
-      System.out.println("ERROR: Second call to constructor of static parser.  You must");
-      System.out.println("       either use ReInit() or set the JavaCC option STATIC to false");
-      System.out.println("       during parser generation.");
-      throw new Error();
-    }
-    jj_initialized_once = true;
     token_source = tm;
     token = new Token();
     jj_ntk = -1;
@@ -1273,10 +1363,10 @@ public class ExpressionParser implements ExpressionParserConstants {
     for (int i = 0; i < 20; i++) jj_la1[i] = -1;
   }
 
-  static final private Token jj_consume_token(int kind) throws ParseException {
+  final private Token jj_consume_token(int kind) throws ParseException {
     Token oldToken;
     if ((oldToken = token).next != null) token = token.next;
-    else token = token.next = ExpressionParserTokenManager.getNextToken();
+    else token = token.next = token_source.getNextToken();
     jj_ntk = -1;
     if (token.kind == kind) {
       jj_gen++;
@@ -1287,35 +1377,35 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw generateParseException();
   }
 
-  static final public Token getNextToken() {
+  final public Token getNextToken() {
     if (token.next != null) token = token.next;
-    else token = token.next = ExpressionParserTokenManager.getNextToken();
+    else token = token.next = token_source.getNextToken();
     jj_ntk = -1;
     jj_gen++;
     return token;
   }
 
-  static final public Token getToken(int index) {
+  final public Token getToken(int index) {
     Token t = token;
     for (int i = 0; i < index; i++) {
       if (t.next != null) t = t.next;
-      else t = t.next = ExpressionParserTokenManager.getNextToken();
+      else t = t.next = token_source.getNextToken();
     }
     return t;
   }
 
-  static final private int jj_ntk() {
+  final private int jj_ntk() {
     if ((jj_nt=token.next) == null)
-      return (jj_ntk = (token.next=ExpressionParserTokenManager.getNextToken()).kind);
+      return (jj_ntk = (token.next=token_source.getNextToken()).kind);
     else
       return (jj_ntk = jj_nt.kind);
   }
 
-  static private java.util.Vector jj_expentries = new java.util.Vector();
-  static private int[] jj_expentry;
-  static private int jj_kind = -1;
+  private java.util.Vector jj_expentries = new java.util.Vector();
+  private int[] jj_expentry;
+  private int jj_kind = -1;
 
-  static public ParseException generateParseException() {
+  public ParseException generateParseException() {
     jj_expentries.removeAllElements();
     boolean[] la1tokens = new boolean[44];
     for (int i = 0; i < 44; i++) {
@@ -1351,10 +1441,10 @@ public class ExpressionParser implements ExpressionParserConstants {
     return new ParseException(token, exptokseq, tokenImage);
   }
 
-  static final public void enable_tracing() {
+  final public void enable_tracing() {
   }
 
-  static final public void disable_tracing() {
+  final public void disable_tracing() {
   }
 
 }
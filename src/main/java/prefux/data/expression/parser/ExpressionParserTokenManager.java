@@ -33,9 +33,9 @@ package prefux.data.expression.parser;
 
 public class ExpressionParserTokenManager implements ExpressionParserConstants
 {
-  public static  java.io.PrintStream debugStream = System.out;
-  public static  void setDebugStream(java.io.PrintStream ds) { debugStream = ds; }
-private static final int jjStopStringLiteralDfa_0(int pos, long active0)
+  public java.io.PrintStream debugStream = System.out;
+  public void setDebugStream(java.io.PrintStream ds) { debugStream = ds; }
+private final int jjStopStringLiteralDfa_0(int pos, long active0)
 {
    switch (pos)
    {
@@ -47,17 +47,17 @@ private static final int jjStopStringLiteralDfa_0(int pos, long active0)
          return -1;
    }
 }
-private static final int jjStartNfa_0(int pos, long active0)
+private final int jjStartNfa_0(int pos, long active0)
 {
    return jjMoveNfa_0(jjStopStringLiteralDfa_0(pos, active0), pos + 1);
 }
-static private final int jjStopAtPos(int pos, int kind)
+private final int jjStopAtPos(int pos, int kind)
 {
    jjmatchedKind = kind;
    jjmatchedPos = pos;
    return pos + 1;
 }
-static private final int jjMoveStringLiteralDfa0_0()
+private final int jjMoveStringLiteralDfa0_0()
 {
    switch(curChar)
    {
@@ -89,9 +89,9 @@ static private final int jjMoveStringLiteralDfa0_0()
          return jjMoveNfa_0(4, 0);
    }
 }
-static private final int jjMoveStringLiteralDfa1_0(long active0)
+private final int jjMoveStringLiteralDfa1_0(long active0)
 {
-   try { curChar = JavaCharStream.readChar(); }
+   try { curChar = input_stream.readChar(); }
    catch(java.io.IOException e) {
       jjStopStringLiteralDfa_0(0, active0);
       return 1;
@@ -109,7 +109,7 @@ static private final int jjMoveStringLiteralDfa1_0(long active0)
    }
    return jjStartNfa_0(0, active0);
 }
-static private final void jjCheckNAdd(int state)
+private final void jjCheckNAdd(int state)
 {
    if (jjrounds[state] != jjround)
    {
@@ -117,18 +117,18 @@ static private final void jjCheckNAdd(int state)
       jjrounds[state] = jjround;
    }
 }
-static private final void jjAddStates(int start, int end)
+private final void jjAddStates(int start, int end)
 {
    do {
       jjstateSet[jjnewStateCnt++] = jjnextStates[start];
    } while (start++ != end);
 }
-static private final void jjCheckNAddTwoStates(int state1, int state2)
+private final void jjCheckNAddTwoStates(int state1, int state2)
 {
    jjCheckNAdd(state1);
    jjCheckNAdd(state2);
 }
-static private final void jjCheckNAddStates(int start, int end)
+private final void jjCheckNAddStates(int start, int end)
 {
    do {
       jjCheckNAdd(jjnextStates[start]);
@@ -158,7 +158,7 @@ static final long[] jjbitVec7 = {
 static final long[] jjbitVec8 = {
    0x3fffffffffffL, 0x0L, 0x0L, 0x0L
 };
-static private final int jjMoveNfa_0(int startState, int curPos)
+private final int jjMoveNfa_0(int startState, int curPos)
 {
    int startsAt = 0;
    jjnewStateCnt = 141;
@@ -966,7 +966,7 @@ static private final int jjMoveNfa_0(int startState, int curPos)
       ++curPos;
       if ((i = jjnewStateCnt) == (startsAt = 141 - (jjnewStateCnt = startsAt)))
          return curPos;
-      try { curChar = JavaCharStream.readChar(); }
+      try { curChar = input_stream.readChar(); }
       catch(java.io.IOException e) { return curPos; }
    }
 }
@@ -1023,14 +1023,12 @@ static final long[] jjtoToken = {
 static final long[] jjtoSkip = {
    0x3eL, 
 };
-static protected JavaCharStream input_stream;
-static private final int[] jjrounds = new int[141];
-static private final int[] jjstateSet = new int[282];
-static protected char curChar;
+protected JavaCharStream input_stream;
+private final int[] jjrounds = new int[141];
+private final int[] jjstateSet = new int[282];
+protected char curChar;
 public ExpressionParserTokenManager(JavaCharStream stream)
 {
-   if (input_stream != null)
-      throw new TokenMgrError("ERROR: Second call to constructor of static lexer. You must use ReInit() to initialize the static variables.", TokenMgrError.STATIC_LEXER_ERROR);
    input_stream = stream;
 }
 public ExpressionParserTokenManager(JavaCharStream stream, int lexState)
@@ -1038,26 +1036,26 @@ public ExpressionParserTokenManager(JavaCharStream stream, int lexState)
    this(stream);
    SwitchTo(lexState);
 }
-static public void ReInit(JavaCharStream stream)
+public void ReInit(JavaCharStream stream)
 {
    jjmatchedPos = jjnewStateCnt = 0;
    curLexState = defaultLexState;
    input_stream = stream;
    ReInitRounds();
 }
-static private final void ReInitRounds()
+private final void ReInitRounds()
 {
    int i;
    jjround = 0x80000001;
    for (i = 141; i-- > 0;)
       jjrounds[i] = 0x80000000;
 }
-static public void ReInit(JavaCharStream stream, int lexState)
+public void ReInit(JavaCharStream stream, int lexState)
 {
    ReInit(stream);
    SwitchTo(lexState);
 }
-static public void SwitchTo(int lexState)
+public void SwitchTo(int lexState)
 {
    if (lexState >= 1 || lexState < 0)
       throw new TokenMgrError("Error: Ignoring invalid lexical state : " + lexState + ". State unchanged.", TokenMgrError.INVALID_LEXICAL_STATE);
@@ -1065,27 +1063,27 @@ static public void SwitchTo(int lexState)
       curLexState = lexState;
 }
 
-static protected Token jjFillToken()
+protected Token jjFillToken()
 {
    Token t = Token.newToken(jjmatchedKind);
    t.kind = jjmatchedKind;
    String im = jjstrLiteralImages[jjmatchedKind];
-   t.image = (im == null) ? JavaCharStream.GetImage() : im;
-   t.beginLine = JavaCharStream.getBeginLine();
-   t.beginColumn = JavaCharStream.getBeginColumn();
-   t.endLine = JavaCharStream.getEndLine();
-   t.endColumn = JavaCharStream.getEndColumn();
+   t.image = (im == null) ? input_stream.GetImage() : im;
+   t.beginLine = input_stream.getBeginLine();
+   t.beginColumn = input_stream.getBeginColumn();
+   t.endLine = input_stream.getEndLine();
+   t.endColumn = input_stream.getEndColumn();
    return t;
 }
 
-static int curLexState = 0;
-static int defaultLexState = 0;
-static int jjnewStateCnt;
-static int jjround;
-static int jjmatchedPos;
-static int jjmatchedKind;
+int curLexState = 0;
+int defaultLexState = 0;
+int jjnewStateCnt;
+int jjround;
+int jjmatchedPos;
+int jjmatchedKind;
 
-public static Token getNextToken() 
+public Token getNextToken() 
 {
   Token matchedToken;
   int curPos = 0;
@@ -1095,7 +1093,7 @@ public static Token getNextToken()
   {   
    try   
    {     
-      curChar = JavaCharStream.BeginToken();
+      curChar = input_stream.BeginToken();
    }     
    catch(java.io.IOException e)
    {        
@@ -1104,9 +1102,9 @@ public static Token getNextToken()
       return matchedToken;
    }
 
-   try { JavaCharStream.backup(0);
+   try { input_stream.backup(0);
       while (curChar <= 32 && (0x100003600L & (1L << curChar)) != 0L)
-         curChar = JavaCharStream.BeginToken();
+         curChar = input_stream.BeginToken();
    }
    catch (java.io.IOException e1) { continue EOFLoop; }
    jjmatchedKind = 0x7fffffff;
@@ -1115,7 +1113,7 @@ public static Token getNextToken()
    if (jjmatchedKind != 0x7fffffff)
    {
       if (jjmatchedPos + 1 < curPos)
-         JavaCharStream.backup(curPos - jjmatchedPos - 1);
+         input_stream.backup(curPos - jjmatchedPos - 1);
       if ((jjtoToken[jjmatchedKind >> 6] & (1L << (jjmatchedKind & 077))) != 0L)
       {
          matchedToken = jjFillToken();
@@ -1126,14 +1124,14 @@ public static Token getNextToken()
          continue EOFLoop;
       }
    }
-   int error_line = JavaCharStream.getEndLine();
-   int error_column = JavaCharStream.getEndColumn();
+   int error_line = input_stream.getEndLine();
+   int error_column = input_stream.getEndColumn();
    String error_after = null;
    boolean EOFSeen = false;
-   try { JavaCharStream.readChar(); JavaCharStream.backup(1); }
+   try { input_stream.readChar(); input_stream.backup(1); }
    catch (java.io.IOException e1) {
       EOFSeen = true;
-      error_after = curPos <= 1 ? "" : JavaCharStream.GetImage();
+      error_after = curPos <= 1 ? "" : input_stream.GetImage();
       if (curChar == '\n' || curChar == '\r') {
          error_line++;
          error_column = 0;
@@ -1142,8 +1140,8 @@ public static Token getNextToken()
          error_column++;
    }
    if (!EOFSeen) {
-      JavaCharStream.backup(1);
-      error_after = curPos <= 1 ? "" : JavaCharStream.GetImage();
+      input_stream.backup(1);
+      error_after = curPos <= 1 ? "" : input_stream.GetImage();
    }
    throw new TokenMgrError(EOFSeen, curLexState, error_line, error_column, error_after, curChar, TokenMgrError.LEXICAL_ERROR);
   }
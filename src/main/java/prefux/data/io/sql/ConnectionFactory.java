@@ -33,8 +33,18 @@ package prefux.data.io.sql;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import prefux.util.PrefuseConfig;
 
 /**
+ * Factory for {@link DatabaseDataSource} instances. Data sources created
+ * for the same database url and user share a {@link ConnectionPool}, whose
+ * size is given by the <code>data.io.sql.poolSize</code> configuration
+ * setting.
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class ConnectionFactory {
@@ -51,6 +61,11 @@ public class ConnectionFactory {
     /** Sub-protocol prefix for JDBC/ODBC bridge connections */
     public static final String SUBPROTOCOL_JDBC_ODBC = "odbc:";
     
+    /** The default maximum number of connections per database. */
+    public static final int DEFAULT_POOL_SIZE = 4;
+    
+    private static final Map<PoolKey,ConnectionPool> s_pools = new HashMap<>();
+    
     // ------------------------------------------------------------------------
     
     /**
@@ -108,8 +123,8 @@ public class ConnectionFactory {
         throws SQLException, ClassNotFoundException
     {
         Class.forName(driver);
-        Connection conn = DriverManager.getConnection(url, user, password);
-        return getDatabaseConnection(conn, handler);
+        return new DatabaseDataSource(
+                getConnectionPool(url, user, password), handler);
     }    
     
     /**
@@ -132,6 +147,73 @@ public class ConnectionFactory {
                 getDefaultHandler());
     }
     
+    // ------------------------------------------------------------------------
+    // Connection Pools
+    
+    /**
+     * Get the shared pool of connections to the given database, creating
+     * it if necessary. A new pool immediately opens a first connection, so
+     * that connection errors are reported right away.
+     * @param url the url for the database, of the form
+     * "jdbc:<database_sub_protocol>://&lt;hostname&gt;/&lt;database_name&gt;
+     * @param user the database username
+     * @param password the database password
+     * @return the connection pool for the database
+     * @throws SQLException if no connection could be opened
+     */
+    public static synchronized ConnectionPool getConnectionPool(
+            final String url, final String user, final String password)
+        throws SQLException
+    {
+        PoolKey key = new PoolKey(url, user, password);
+        ConnectionPool pool = s_pools.get(key);
+        if ( pool == null ) {
+            int size = PrefuseConfig.getInt("data.io.sql.poolSize");
+            pool = new ConnectionPool(
+                () -> DriverManager.getConnection(url, user, password),
+                size < 1 ? DEFAULT_POOL_SIZE : size);
+            pool.release(pool.acquire());
+            s_pools.put(key, pool);
+        }
+        return pool;
+    }
+    
+    /**
+     * Close all shared connection pools. Data sources using these pools
+     * can no longer issue queries afterwards.
+     */
+    public static synchronized void closeConnectionPools() {
+        for ( ConnectionPool pool : s_pools.values() )
+            pool.close();
+        s_pools.clear();
+    }
+    
+    /**
+     * Identifies a shared connection pool. The password is compared, but
+     * never made part of a string.
+     */
+    private static final class PoolKey {
+        private final String m_url, m_user, m_password;
+        
+        PoolKey(String url, String user, String password) {
+            m_url = url;
+            m_user = user;
+            m_password = password;
+        }
+        
+        public boolean equals(Object o) {
+            if ( !(o instanceof PoolKey) ) return false;
+            PoolKey k = (PoolKey)o;
+            return Objects.equals(m_url, k.m_url)
+                && Objects.equals(m_user, k.m_user)
+                && Objects.equals(m_password, k.m_password);
+        }
+        
+        public int hashCode() {
+            return Objects.hash(m_url, m_user);
+        }
+    }
+    
     // ------------------------------------------------------------------------
     // Driver Specific Methods
     
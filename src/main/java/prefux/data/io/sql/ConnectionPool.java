@@ -0,0 +1,234 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of database connections. Connections are opened on demand
+ * up to a maximum number; requests beyond that block until a connection is
+ * released. This allows multiple queries against the same database to be
+ * issued concurrently, e.g. by the {@link DataSourceWorker} threads.
+ * 
+ * @see ConnectionFactory
+ */
+public class ConnectionPool {
+
+    private static final Logger s_logger
+        = Logger.getLogger(ConnectionPool.class.getName());
+    
+    /**
+     * Opens new connections for a pool.
+     */
+    public static interface Source {
+        /**
+         * Open a new database connection.
+         * @return the new connection
+         * @throws SQLException if the connection could not be opened
+         */
+        public Connection open() throws SQLException;
+    }
+    
+    private final Source m_source;
+    private final Deque<Connection> m_idle = new ArrayDeque<>();
+    private int m_maxSize;
+    private int m_open;
+    private boolean m_closed = false;
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Create a new ConnectionPool opening connections from the given source.
+     * @param source the source of new connections
+     * @param maxSize the maximum number of open connections
+     */
+    public ConnectionPool(Source source, int maxSize) {
+        if ( maxSize < 1 )
+            throw new IllegalArgumentException(
+                "Pool size must be at least 1: "+maxSize);
+        m_source = source;
+        m_maxSize = maxSize;
+    }
+    
+    /**
+     * Create a new ConnectionPool around a single, existing connection.
+     * Queries using the pool are thus serialized on that connection.
+     * @param conn the connection to pool
+     */
+    public ConnectionPool(Connection conn) {
+        this(null, 1);
+        m_idle.push(conn);
+        m_open = 1;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Take a connection from the pool, opening a new one if no idle
+     * connection is available and the pool is not yet full. Otherwise,
+     * blocks until a connection is released.
+     * @return a connection, which must be handed back using
+     * {@link #release(Connection)}
+     * @throws SQLException if a new connection could not be opened, or the
+     * pool has been closed
+     */
+    public Connection acquire() throws SQLException {
+        synchronized ( this ) {
+            while ( true ) {
+                if ( m_closed )
+                    throw new SQLException("Connection pool is closed.");
+                Connection c = m_idle.poll();
+                if ( c != null ) {
+                    if ( !isClosed(c) )
+                        return c;
+                    --m_open;
+                } else if ( m_open < m_maxSize && m_source != null ) {
+                    ++m_open; // reserve the slot while opening
+                    break;
+                } else if ( m_open == 0 ) {
+                    throw new SQLException("Pooled connection is closed.");
+                } else {
+                    try {
+                        wait();
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting " +
+                            "for a connection.", e);
+                    }
+                }
+            }
+        }
+        try {
+            return m_source.open();
+        } catch ( SQLException | RuntimeException e ) {
+            synchronized ( this ) {
+                --m_open;
+                notify();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Hand a connection back to the pool. Closed connections are dropped.
+     * @param conn a connection obtained from {@link #acquire()}
+     */
+    public synchronized void release(Connection conn) {
+        if ( m_closed || isClosed(conn) || m_open > m_maxSize ) {
+            --m_open;
+            close(conn);
+        } else {
+            m_idle.push(conn);
+        }
+        notify();
+    }
+    
+    /**
+     * Close all idle connections and reject any further requests.
+     * Connections currently in use are closed when released.
+     */
+    public synchronized void close() {
+        m_closed = true;
+        while ( !m_idle.isEmpty() ) {
+            close(m_idle.pop());
+            --m_open;
+        }
+        notifyAll();
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Get the maximum number of open connections.
+     * @return the maximum pool size
+     */
+    public synchronized int getMaxSize() {
+        return m_maxSize;
+    }
+    
+    /**
+     * Set the maximum number of open connections. Surplus connections are
+     * closed as they are released. Has no effect on pools wrapping a
+     * single existing connection.
+     * @param maxSize the maximum pool size
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if ( maxSize < 1 )
+            throw new IllegalArgumentException(
+                "Pool size must be at least 1: "+maxSize);
+        if ( m_source == null ) return;
+        m_maxSize = maxSize;
+        while ( m_open > m_maxSize && !m_idle.isEmpty() ) {
+            close(m_idle.pop());
+            --m_open;
+        }
+        notifyAll();
+    }
+    
+    /**
+     * Get the number of currently open connections, in use or idle.
+     * @return the number of open connections
+     */
+    public synchronized int getOpenCount() {
+        return m_open;
+    }
+    
+    /**
+     * Get the number of open connections currently not in use.
+     * @return the number of idle connections
+     */
+    public synchronized int getIdleCount() {
+        return m_idle.size();
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    private static boolean isClosed(Connection c) {
+        try {
+            return c.isClosed();
+        } catch ( SQLException e ) {
+            return true;
+        }
+    }
+    
+    private static void close(Connection c) {
+        try {
+            c.close();
+        } catch ( SQLException e ) {
+            s_logger.warning("Error closing connection: "+e.getMessage());
+        }
+    }
+    
+} // end of class ConnectionPool
@@ -30,102 +30,356 @@
  */
 package prefux.data.io.sql;
 
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import prefux.data.Table;
 import prefux.data.io.DataIOException;
 import prefux.util.PrefuseConfig;
 import prefux.util.StringLib;
-import prefux.util.collections.CopyOnWriteArrayList;
 
 /**
- * Worker thread that asynchronously handles a queue of jobs, with each job
- * responsible for issuing a query and processing the results. Currently
- * involves just a single thread, in the future this may be expanded to
- * thread pool for greater concurrency.
+ * Pool of worker threads that asynchronously handles a queue of jobs, with
+ * each job responsible for issuing a query and processing the results. Jobs
+ * are issued in order of their priority, and in submission order among jobs
+ * of equal priority. The number of threads is bounded by the
+ * <code>data.io.worker.threads</code> configuration setting, see
+ * {@link #setThreadCount(int)}. Idle threads terminate after a while and
+ * are recreated on demand.
+ * 
+ * <p>A job submitted with the supersede flag cancels all pending or running
+ * jobs that were submitted with that flag for the same table. This allows
+ * dynamic queries, e.g. issued while the user drags a slider, to abandon
+ * queries whose results are no longer of interest. Running queries are
+ * cancelled through {@link java.sql.Statement#cancel()}.</p>
+ * 
+ * <p>Jobs for different tables run concurrently, while jobs for the same
+ * table run one at a time, so that their results are not interleaved. A
+ * job waiting for the table is processed once the preceding job for that
+ * table is done, again in order of priority and submission.</p>
+ * 
+ * <p>The worker keeps statistics on the number of processed jobs, queue
+ * wait times and query latencies, available through the static accessor
+ * methods of this class.</p>
  *  
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see DatabaseDataSource
  */
-public class DataSourceWorker extends Thread {
+public class DataSourceWorker {
 
     private static Logger s_logger
         = Logger.getLogger(DataSourceWorker.class.getName());
     
-    // TODO: in future, may want to expand this to a thread pool
-    private static DataSourceWorker s_instance;
+    /** The default number of worker threads. */
+    public static final int DEFAULT_THREADS = 2;
     
-    private static CopyOnWriteArrayList s_queue;
+    private static ThreadPoolExecutor s_executor;
+    private static int s_threads = -1;
+    
+    private static final AtomicLong s_sequence = new AtomicLong();
+    // the latest superseding job per table
+    private static final Map<Table,Entry> s_current = new IdentityHashMap<>();
+    // the running job per table, and the jobs waiting for it
+    private static final Map<Table,Entry> s_running = new IdentityHashMap<>();
+    private static final Map<Table,PriorityQueue<Job>> s_waiting
+        = new IdentityHashMap<>();
+    
+    // statistics
+    private static final AtomicLong s_completed = new AtomicLong();
+    private static final AtomicLong s_failed    = new AtomicLong();
+    private static final AtomicLong s_cancelled = new AtomicLong();
+    private static final AtomicLong s_waitTime  = new AtomicLong();
+    private static final AtomicLong s_latency   = new AtomicLong();
+    private static final AtomicLong s_maxLatency = new AtomicLong();
+    
+    private DataSourceWorker() {
+        // prevent instantiation
+    }
     
     /**
-     * Submit a job to the worker thread.
+     * Submit a job to the worker threads.
      * @param e an {@link DataSourceWorker.Entry} instance that contains
      * the parameters of the job.
      */
     public synchronized static void submit(Entry e)
     {
-        // perform lazily initialization as needed
-        if ( s_queue == null )
-            s_queue = new CopyOnWriteArrayList();
-        if ( s_instance == null )
-            s_instance = new DataSourceWorker();
-        
-        // queue it up
-        s_queue.add(e);
-        
-        // wake up a sleepy thread
-        synchronized ( s_instance ) {
-            s_instance.notify();
+        if ( e.supersede && e.table != null ) {
+            Entry prev = s_current.put(e.table, e);
+            if ( prev != null ) prev.cancel();
+        }
+        e.m_seq = s_sequence.getAndIncrement();
+        e.m_submitTime = System.nanoTime();
+        getExecutor().execute(e.m_job);
+    }
+    
+    /**
+     * Remove a cancelled job from the queue, if it has not been started.
+     */
+    private synchronized static void dequeue(Entry e) {
+        PriorityQueue<Job> waiting =
+            e.table == null ? null : s_waiting.get(e.table);
+        if ( (waiting != null && waiting.remove(e.m_job)) ||
+             (s_executor != null && s_executor.remove(e.m_job)) )
+        {
+            e.finish(false);
+        }
+    }
+    
+    /**
+     * Claim the table of a job about to run. If another job for the table
+     * is running, the job is set aside until that job is done.
+     * @return true if the job may run, false if it has been set aside
+     */
+    private synchronized static boolean claim(Entry e) {
+        if ( e.table == null ) return true;
+        Entry running = s_running.get(e.table);
+        if ( running == null ) {
+            s_running.put(e.table, e);
+            return true;
+        } else if ( running == e ) {
+            return true;
+        }
+        PriorityQueue<Job> waiting = s_waiting.get(e.table);
+        if ( waiting == null ) {
+            waiting = new PriorityQueue<>();
+            s_waiting.put(e.table, waiting);
         }
+        waiting.add(e.m_job);
+        return false;
+    }
+    
+    /**
+     * Remove a finished job from the table of superseding jobs, and hand
+     * its table to the next waiting job.
+     */
+    private synchronized static void finished(Entry e) {
+        if ( e.supersede && e.table != null && s_current.get(e.table) == e )
+            s_current.remove(e.table);
+        if ( e.table == null || s_running.get(e.table) != e )
+            return;
+        PriorityQueue<Job> waiting = s_waiting.get(e.table);
+        Job next = waiting == null ? null : waiting.poll();
+        if ( next == null ) {
+            s_running.remove(e.table);
+            s_waiting.remove(e.table);
+        } else {
+            s_running.put(e.table, next.m_entry);
+            getExecutor().execute(next);
+        }
+    }
+    
+    private static ThreadPoolExecutor getExecutor() {
+        if ( s_executor == null ) {
+            int n = getThreadCount();
+            s_executor = new ThreadPoolExecutor(n, n, 30, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new Factory());
+            s_executor.allowCoreThreadTimeOut(true);
+        }
+        return s_executor;
     }
     
     // ------------------------------------------------------------------------
+    // Configuration
     
     /**
-     * Create a new DataSourceWorker.
+     * Get the maximum number of worker threads.
+     * @return the maximum number of worker threads
      */
-    private DataSourceWorker() {
-        super("prefuse_DatabaseWorker");
-        
-        int priority = PrefuseConfig.getInt("data.io.worker.threadPriority");
-        if ( priority >= Thread.MIN_PRIORITY && 
-             priority <= Thread.MAX_PRIORITY )
-        {
-            this.setPriority(priority);
+    public synchronized static int getThreadCount() {
+        if ( s_threads < 1 ) {
+            int n = PrefuseConfig.getInt("data.io.worker.threads");
+            s_threads = n < 1 ? DEFAULT_THREADS : n;
         }
-        this.setDaemon(true);
-        this.start();
+        return s_threads;
     }
     
     /**
-     * @see java.lang.Runnable#run()
+     * Set the maximum number of worker threads. Note that concurrent
+     * queries issued through the same {@link DatabaseDataSource} are
+     * further bounded by the size of its {@link ConnectionPool}.
+     * @param n the maximum number of worker threads, at least 1
      */
-    public void run() {
-        while ( true ) {
-            Entry e = null;
-            synchronized ( s_queue ) {
-                if ( s_queue.size() > 0 )
-                    e = (Entry)s_queue.remove(0);    
+    public synchronized static void setThreadCount(int n) {
+        if ( n < 1 )
+            throw new IllegalArgumentException(
+                "Thread count must be at least 1: "+n);
+        s_threads = n;
+        if ( s_executor != null ) {
+            if ( n > s_executor.getMaximumPoolSize() ) {
+                s_executor.setMaximumPoolSize(n);
+                s_executor.setCorePoolSize(n);
+            } else {
+                s_executor.setCorePoolSize(n);
+                s_executor.setMaximumPoolSize(n);
             }
-            
-            if ( e != null ) {
-                try {
-                    if ( e.listener != null ) e.listener.preQuery(e);
-                    e.ds.getData(e.table, e.query, e.keyField, e.lock);
-                    if ( e.listener != null ) e.listener.postQuery(e);
-                } catch ( DataIOException dre ) {
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Statistics
+    
+    /**
+     * Get the number of jobs waiting to be processed.
+     * @return the queue depth
+     */
+    public synchronized static int getQueueSize() {
+        int n = s_executor == null ? 0 : s_executor.getQueue().size();
+        for ( PriorityQueue<Job> waiting : s_waiting.values() )
+            n += waiting.size();
+        return n;
+    }
+    
+    /**
+     * Get the number of jobs currently being processed.
+     * @return the number of active jobs
+     */
+    public synchronized static int getActiveCount() {
+        return s_executor == null ? 0 : s_executor.getActiveCount();
+    }
+    
+    /**
+     * Get the number of successfully completed jobs.
+     * @return the number of completed jobs
+     */
+    public static long getCompletedCount() {
+        return s_completed.get();
+    }
+    
+    /**
+     * Get the number of jobs that failed with an error.
+     * @return the number of failed jobs
+     */
+    public static long getFailedCount() {
+        return s_failed.get();
+    }
+    
+    /**
+     * Get the number of cancelled jobs.
+     * @return the number of cancelled jobs
+     */
+    public static long getCancelledCount() {
+        return s_cancelled.get();
+    }
+    
+    /**
+     * Get the average time, in milliseconds, jobs waited in the queue
+     * before being processed.
+     * @return the average queue wait time
+     */
+    public static double getAverageWaitTime() {
+        long n = s_completed.get() + s_failed.get();
+        return n == 0 ? 0 : s_waitTime.get() / (1e6 * n);
+    }
+    
+    /**
+     * Get the average time, in milliseconds, taken to issue a query and
+     * process its results, over all completed or failed jobs.
+     * @return the average query latency
+     */
+    public static double getAverageLatency() {
+        long n = s_completed.get() + s_failed.get();
+        return n == 0 ? 0 : s_latency.get() / (1e6 * n);
+    }
+    
+    /**
+     * Get the maximum time, in milliseconds, taken to issue a query and
+     * process its results.
+     * @return the maximum query latency
+     */
+    public static double getMaxLatency() {
+        return s_maxLatency.get() / 1e6;
+    }
+    
+    /**
+     * Reset all job statistics.
+     */
+    public static void resetStatistics() {
+        s_completed.set(0);
+        s_failed.set(0);
+        s_cancelled.set(0);
+        s_waitTime.set(0);
+        s_latency.set(0);
+        s_maxLatency.set(0);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Creates daemon worker threads with the configured priority.
+     */
+    private static class Factory implements ThreadFactory {
+        private final AtomicInteger m_count = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r,
+                "prefuse_DatabaseWorker-"+m_count.incrementAndGet());
+            int priority =
+                PrefuseConfig.getInt("data.io.worker.threadPriority");
+            if ( priority >= Thread.MIN_PRIORITY && 
+                 priority <= Thread.MAX_PRIORITY )
+            {
+                t.setPriority(priority);
+            }
+            t.setDaemon(true);
+            return t;
+        }
+    }
+    
+    /**
+     * The queued task of an entry, ordered by priority and submission.
+     */
+    private static class Job implements Runnable, Comparable<Job> {
+        private final Entry m_entry;
+        
+        Job(Entry entry) {
+            m_entry = entry;
+        }
+        
+        public int compareTo(Job j) {
+            Entry a = m_entry, b = j.m_entry;
+            if ( a.priority != b.priority )
+                return a.priority > b.priority ? -1 : 1;
+            return Long.compare(a.m_seq, b.m_seq);
+        }
+        
+        public void run() {
+            Entry e = m_entry;
+            if ( !claim(e) ) {
+                return;
+            }
+            if ( !e.start() ) {
+                e.finish(false);
+                return;
+            }
+            boolean ok = false;
+            try {
+                if ( e.listener != null ) e.listener.preQuery(e);
+                e.ds.getData(e.table, e.query, e.keyField, e.lock, e);
+                ok = true;
+            } catch ( DataIOException dre ) {
+                if ( !e.isCancelled() ) {
                     s_logger.warning(dre.getMessage() + "\n" 
                         + StringLib.getStackTrace(dre));
                 }
-            } else {
-                // nothing to do, chill out until notified
-                try {
-                    synchronized (this) { wait(); }
-                } catch (InterruptedException ex) { }
+            } finally {
+                e.finish(ok);
             }
+            if ( ok && !e.isCancelled() && e.listener != null )
+                e.listener.postQuery(e);
         }
     }
     
+    // ------------------------------------------------------------------------
+    
     /**
      * Stores the parameters of a data query and processing job.
      * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -145,6 +399,29 @@ public class DataSourceWorker extends Thread {
          */
         public Entry(DatabaseDataSource ds, Table table, String query,
                      String keyField, Object lock, Listener listener)
+        {
+            this(ds, table, query, keyField, lock, listener, 0, false);
+        }
+        
+        /**
+         * Create a new Entry.
+         * @param ds the DatabaseDataSource to query
+         * @param table the Table for storing the results
+         * @param query the query to issue
+         * @param keyField the key field that should be used to identify
+         * when duplicate results occur
+         * @param lock an optional lock to synchronize on when processing
+         * data and adding it to the Table
+         * @param listener an optional callback listener that allows
+         * notifications to be issued before and after query processing
+         * @param priority the priority of the job, jobs with higher priority
+         * are processed first
+         * @param supersede if true, this job cancels all pending or running
+         * jobs for the same table that were submitted with this flag set
+         */
+        public Entry(DatabaseDataSource ds, Table table, String query,
+                     String keyField, Object lock, Listener listener,
+                     int priority, boolean supersede)
         {
             this.ds = ds;
             this.table = table;
@@ -152,6 +429,8 @@ public class DataSourceWorker extends Thread {
             this.keyField = keyField;
             this.lock = lock;
             this.listener = listener;
+            this.priority = priority;
+            this.supersede = supersede;
         }
         
         /** The DatabaseDataSource to query. */
@@ -169,6 +448,119 @@ public class DataSourceWorker extends Thread {
         /** An optional lock to synchronize on when processing
          * data and adding it to the Table. */
         Object lock;
+        /** The priority of the job. */
+        int priority;
+        /** Indicates if the job supersedes earlier jobs for the table. */
+        boolean supersede;
+        
+        private final Job m_job = new Job(this);
+        private long m_seq;
+        private long m_submitTime, m_startTime, m_endTime;
+        private boolean m_cancelled, m_started, m_done;
+        private Statement m_stmt;
+        
+        /**
+         * Cancel this job. A pending job is removed from the queue, while
+         * the query of a running job is cancelled. The listener is not
+         * notified of the completion of cancelled jobs.
+         * @return true if the job was cancelled, false if it had already
+         * completed or been cancelled
+         */
+        public boolean cancel() {
+            Statement stmt;
+            boolean started;
+            synchronized ( this ) {
+                if ( m_done || m_cancelled ) return false;
+                m_cancelled = true;
+                stmt = m_stmt;
+                started = m_started;
+            }
+            if ( !started ) {
+                dequeue(this);
+            } else if ( stmt != null ) {
+                try {
+                    stmt.cancel();
+                } catch ( SQLException e ) {
+                    s_logger.warning("Error cancelling query: "
+                        + e.getMessage());
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Indicates if this job has been cancelled.
+         * @return true if the job has been cancelled
+         */
+        public synchronized boolean isCancelled() {
+            return m_cancelled;
+        }
+        
+        /**
+         * Indicates if this job has completed, failed or been cancelled.
+         * @return true if the job is done
+         */
+        public synchronized boolean isDone() {
+            return m_done;
+        }
+        
+        /**
+         * Get the time, in milliseconds, this job waited in the queue.
+         * @return the queue wait time, or -1 if the job has not started
+         */
+        public synchronized double getWaitTime() {
+            return m_startTime == 0 ? -1 : (m_startTime-m_submitTime) / 1e6;
+        }
+        
+        /**
+         * Get the time, in milliseconds, taken to issue the query and
+         * process its results.
+         * @return the query latency, or -1 if the job is not done
+         */
+        public synchronized double getLatency() {
+            return m_startTime == 0 || m_endTime == 0
+                ? -1 : (m_endTime-m_startTime) / 1e6;
+        }
+        
+        /**
+         * Register the statement issuing the query of this job.
+         * @return false if the job has been cancelled
+         */
+        synchronized boolean setStatement(Statement stmt) {
+            m_stmt = stmt;
+            return !m_cancelled;
+        }
+        
+        private synchronized boolean start() {
+            if ( m_cancelled || m_done ) return false;
+            m_started = true;
+            m_startTime = System.nanoTime();
+            return true;
+        }
+        
+        private void finish(boolean ok) {
+            long wait, latency;
+            boolean cancelled;
+            synchronized ( this ) {
+                if ( m_done ) return;
+                m_done = true;
+                m_endTime = System.nanoTime();
+                cancelled = m_cancelled;
+                wait = m_started ? m_startTime - m_submitTime : 0;
+                latency = m_started ? m_endTime - m_startTime : 0;
+            }
+            finished(this);
+            if ( cancelled ) {
+                s_cancelled.incrementAndGet();
+                return;
+            }
+            (ok ? s_completed : s_failed).incrementAndGet();
+            s_waitTime.addAndGet(wait);
+            s_latency.addAndGet(latency);
+            long max;
+            while ( latency > (max = s_maxLatency.get()) &&
+                    !s_maxLatency.compareAndSet(max, latency) );
+        }
     }
     
     /**
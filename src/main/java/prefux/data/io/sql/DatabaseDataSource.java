@@ -53,8 +53,7 @@ public class DatabaseDataSource {
     private static final Logger s_logger 
         = Logger.getLogger(DatabaseDataSource.class.getName());
     
-    protected Connection       m_conn;
-    protected Statement        m_stmt;
+    protected ConnectionPool   m_pool;
     DatabaseResultSetProcessor m_resultSetProcessor;
     
     // ------------------------------------------------------------------------
@@ -67,10 +66,28 @@ public class DatabaseDataSource {
      * DatabaseDataSource connections.
      */
     DatabaseDataSource(Connection conn, SQLDataHandler handler) {
-        m_conn = conn;
+        this(new ConnectionPool(conn), handler);
+    }
+    
+    /**
+     * Creates a new DatabaseDataSource issuing queries over connections
+     * taken from the given pool, allowing multiple queries to run
+     * concurrently. This constructor is only package visible, use the
+     * {@link ConnectionFactory} class to create DatabaseDataSource instances.
+     */
+    DatabaseDataSource(ConnectionPool pool, SQLDataHandler handler) {
+        m_pool = pool;
         m_resultSetProcessor = new DatabaseResultSetProcessor(handler);
     }
     
+    /**
+     * Get the pool of connections used by this data source.
+     * @return the connection pool
+     */
+    public ConnectionPool getConnectionPool() {
+        return m_pool;
+    }
+    
     // ------------------------------------------------------------------------
     // Synchronous Data Retrieval
     
@@ -81,7 +98,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(String query) throws DataIOException {
+    public Table getData(String query) throws DataIOException {
         return getData(null, query, null);
     }
 
@@ -94,7 +111,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(String query, String keyField)
+    public Table getData(String query, String keyField)
         throws DataIOException
     {
         return getData(null, query, keyField);
@@ -109,7 +126,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(Table t, String query) 
+    public Table getData(Table t, String query) 
         throws DataIOException
     {
         return getData(t, query, null);
@@ -125,7 +142,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(Table t, String query, String keyField) 
+    public Table getData(Table t, String query, String keyField) 
         throws DataIOException
     {
         return getData(t, query, keyField, null);
@@ -144,17 +161,109 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(Table t, String query, 
+    public Table getData(Table t, String query, 
                                       String keyField, Object lock) 
         throws DataIOException
     {
-        ResultSet rs;
+        return getData(t, query, keyField, lock, null);
+    }
+    
+    /**
+     * Executes a query on behalf of a worker job. The statement is
+     * registered with the job while the query runs, so that the job can be
+     * cancelled.
+     */
+    Table getData(final Table t, String query, final String keyField,
+                  final Object lock, DataSourceWorker.Entry job)
+        throws DataIOException
+    {
+        return execute(query, job, new ResultHandler<Table>() {
+            public Table handle(ResultSet rs) throws DataIOException {
+                return m_resultSetProcessor.process(
+                        t, rs, keyField, lock, false);
+            }
+        });
+    }
+    
+    /**
+     * Executes a query and merges the results into the given table. Rows
+     * are matched on the key field: unmatched results are inserted, matched
+     * rows are only written where values changed, and table rows missing
+     * from the results are removed. Unlike {@link #getData(Table, String,
+     * String, Object)}, re-running the same query on a mostly unchanged
+     * database therefore only fires events for the rows that differ.
+     * @param t the Table to merge the results into. If null, a new table
+     *  is created and indexed on the key field.
+     * @param query the text SQL query to execute
+     * @param keyField the key field identifying rows, may not be null
+     * @param lock an optional Object to use as a lock when performing data
+     *  processing. This lock will be synchronized on whenever the Table is
+     *  modified.
+     * @return a summary of the changes, including the merged Table
+     * @throws DataIOException if an error occurs while executing the query 
+     * or merging the query results into a prefux Table.
+     */
+    public DatabaseResultSetProcessor.MergeResult mergeData(final Table t,
+            String query, final String keyField, final Object lock)
+        throws DataIOException
+    {
+        if ( keyField == null )
+            throw new IllegalArgumentException("No key field provided.");
+        return execute(query, null,
+            new ResultHandler<DatabaseResultSetProcessor.MergeResult>() {
+                public DatabaseResultSetProcessor.MergeResult handle(
+                        ResultSet rs) throws DataIOException
+                {
+                    return m_resultSetProcessor.merge(
+                            t, rs, keyField, lock, true);
+                }
+            });
+    }
+    
+    /**
+     * Callback processing the results of a query.
+     */
+    private interface ResultHandler<T> {
+        T handle(ResultSet rs) throws DataIOException;
+    }
+    
+    /**
+     * Executes a query on a pooled connection and hands the results to the
+     * given handler. If a job is provided, the statement is registered with
+     * the job while the query runs, so that the job can be cancelled.
+     */
+    private <T> T execute(String query, DataSourceWorker.Entry job,
+                          ResultHandler<T> handler)
+        throws DataIOException
+    {
+        Connection conn;
         try {
-            rs = executeQuery(query);
+            conn = m_pool.acquire();
         } catch ( SQLException e ) {
             throw new DataIOException(e);
         }
-        return m_resultSetProcessor.process(t, rs, keyField, lock, false);
+        Statement stmt = null;
+        try {
+            stmt = conn.createStatement();
+            if ( job != null && !job.setStatement(stmt) )
+                throw new DataIOException("Query cancelled: "+query);
+            ResultSet rs = executeQuery(stmt, query);
+            return handler.handle(rs);
+        } catch ( SQLException e ) {
+            throw new DataIOException(e);
+        } finally {
+            if ( job != null )
+                job.setStatement(null);
+            if ( stmt != null ) {
+                try {
+                    stmt.close();
+                } catch ( SQLException e ) {
+                    s_logger.warning("Error closing statement: "
+                        + e.getMessage());
+                }
+            }
+            m_pool.release(conn);
+        }
     }
     
     // ------------------------------------------------------------------------
@@ -232,28 +341,57 @@ public class DatabaseDataSource {
      */
     public void loadData(Table t, String query, String keyField, 
                          Object lock, DataSourceWorker.Listener listener) {
+        loadData(t, query, keyField, lock, listener, 0, false);
+    }
+    
+    /**
+     * Asynchronously executes a query and stores the results in the given 
+     * table instance. All data processing is done in a separate thread of
+     * execution.
+     * @param t the Table in which to store the results
+     * @param query the query to execute
+     * @param keyField the primary key field, comparisons on this field are
+     *  performed to recognize data records already present in the table.
+     *  A null value will result in no key checking.
+     * @param lock an optional Object to use as a lock when performing data
+     *  processing. This lock will be synchronized on whenever the Table is
+     *  modified. A null value will result in no locking.
+     * @param listener an optional listener that will provide notifications
+     *  before the query has been issued and after the query has been 
+     *  processed. This is most useful for post-processing operations.
+     * @param priority the priority of the query, queries with higher
+     *  priority are issued first
+     * @param supersede if true, pending or running queries into the same
+     *  table that have been submitted with this flag set are cancelled
+     * @return the submitted job, which can be used to cancel the query
+     */
+    public DataSourceWorker.Entry loadData(Table t, String query,
+            String keyField, Object lock, DataSourceWorker.Listener listener,
+            int priority, boolean supersede)
+    {
         DataSourceWorker.Entry e = new DataSourceWorker.Entry(
-                this, t, query, keyField, lock, listener);
+                this, t, query, keyField, lock, listener, priority, supersede);
         DataSourceWorker.submit(e);
+        return e;
     }
     
     // ------------------------------------------------------------------------
     
     /**
      * Execute a query and return the corresponding result set
+     * @param stmt the statement to issue the query with
      * @param query the text SQL query to execute
      * @return the ResultSet of the query
      * @throws SQLException if an error occurs issuing the query
      */
-    private ResultSet executeQuery(String query) throws SQLException {
-        if ( m_stmt == null )
-            m_stmt = m_conn.createStatement();
-        
+    private ResultSet executeQuery(Statement stmt, String query)
+        throws SQLException
+    {
         // clock in
         long timein = System.currentTimeMillis();
         
         s_logger.info("Issuing query: "+query);
-        ResultSet rset = m_stmt.executeQuery(query);
+        ResultSet rset = stmt.executeQuery(query);
         
         // clock out
         long time = System.currentTimeMillis()-timein;
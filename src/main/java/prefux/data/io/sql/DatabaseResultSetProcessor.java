@@ -37,8 +37,11 @@ package prefux.data.io.sql;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Objects;
 import java.util.logging.Logger;
 
 import prefux.data.Schema;
@@ -47,6 +50,7 @@ import prefux.data.Tuple;
 import prefux.data.io.DataIOException;
 import prefux.data.util.Index;
 import prefux.data.util.TableIterator;
+import prefux.util.collections.IntIterator;
 
 /**
  * Is responible fpr processing a ResultSet and transfering
@@ -59,7 +63,12 @@ import prefux.data.util.TableIterator;
 public class DatabaseResultSetProcessor {
 
     private static final Logger s_logger = Logger.getLogger(DatabaseResultSetProcessor.class.getName());
+    
+    /** The default number of result rows read per batch when merging. */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    
     protected SQLDataHandler m_handler;
+    private int m_batchSize = DEFAULT_BATCH_SIZE;
 
     /**
      * Creates a new DatabaseResultSetProcessor for reading data from a SQL relational
@@ -127,7 +136,7 @@ public class DatabaseResultSetProcessor {
                     if (row < 0) {
                         row = t.addRow();
                     }
-                    rowsToRemove.remove(row);
+                    rowsToRemove.remove(t.getTuple(row));
                     //process each value in the current row
                     for (int i = 1; i <= ncols; ++i) {
                         m_handler.process(t, row, rset, i);
@@ -159,6 +168,236 @@ public class DatabaseResultSetProcessor {
         return t;
     }
 
+    /**
+     * Get the number of result rows read per batch when merging.
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+    
+    /**
+     * Set the number of result rows read per batch when merging.
+     * @param size the batch size, at least 1
+     */
+    public void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size must be at least 1: " + size);
+        }
+        m_batchSize = size;
+    }
+    
+    /**
+     * Merge the results of a SQL query into a Table, using a key field to
+     * match result rows against existing table rows. The result set is
+     * read in batches into a staging table, whose typed columns serve as
+     * buffers. Each batch is then applied while holding the lock: result
+     * rows without a match are inserted with a single call to
+     * {@link Table#addRows(int)}, and for matched rows only the values
+     * that actually changed are written. Value changes are deferred (see
+     * {@link Table#beginDeferredUpdates()}), so that each column fires a
+     * single update event per run of written rows of a batch, rather than
+     * one event per value. Optionally, table rows without a
+     * counterpart in the result set are removed afterwards with a single
+     * call to {@link Table#removeRows(int[])}. As a result, refreshing a
+     * mostly unchanged result only causes events for the changed rows.
+     * Key values are expected to be unique within the result set.
+     *
+     * @param t the Table to merge results into. If null, a new table with
+     * the appropriate schema is created.
+     * @param rset the SQL query result set
+     * @param key the key field used to match result rows to table rows
+     * @param lock object used for synchronization, the table is used if
+     * null
+     * @param remove if true, rows with no counterpart in the result set
+     * are removed
+     * @return a summary of the changes applied to the table
+     * @throws DataIOException if an error occurs reading the results
+     */
+    public MergeResult merge(Table t, ResultSet rset, String key, Object lock,
+            boolean remove) throws DataIOException {
+        if (key == null) {
+            throw new IllegalArgumentException(
+                    "Merging requires a key field.");
+        }
+        // clock in
+        long timein = System.currentTimeMillis();
+        MergeResult result = new MergeResult();
+
+        try {
+            ResultSetMetaData metadata = rset.getMetaData();
+            int ncols = metadata.getColumnCount();
+            Schema schema = getSchema(metadata, m_handler);
+
+            if (t == null) {
+                t = schema.instantiate();
+                try {
+                    t.index(key);
+                    s_logger.info("Indexed field: " + key);
+                } catch (Exception e) {
+                    s_logger.warning("Error indexing field: " + key);
+                }
+            }
+            result.m_table = t;
+            lock = (lock == null ? t : lock);
+
+            // map staging columns to table columns
+            Table buf = schema.instantiate(m_batchSize);
+            int scols = buf.getColumnCount();
+            int[] tcol = new int[scols];
+            for (int c = 0; c < scols; ++c) {
+                tcol[c] = t.getColumnNumber(buf.getColumnName(c));
+            }
+            int skey = buf.getColumnNumber(key);
+            if (skey < 0 || t.getColumnNumber(key) < 0) {
+                throw new DataIOException(
+                        "Key field not found in results and table: " + key);
+            }
+
+            BitSet seen = new BitSet();
+            int[] match = new int[m_batchSize];
+            int[] written = new int[m_batchSize];
+            boolean more = true;
+            while (more) {
+                // read the next batch into the staging table
+                int n = 0;
+                while (n < m_batchSize && (more = rset.next())) {
+                    for (int i = 1; i <= ncols; ++i) {
+                        m_handler.process(buf, n, rset, i);
+                    }
+                    ++n;
+                }
+                if (n == 0) break;
+
+                synchronized (lock) {
+                    int nins = 0;
+                    for (int i = 0; i < n; ++i) {
+                        match[i] = lookup(t, key, buf.get(i, skey));
+                        if (match[i] < 0) ++nins;
+                    }
+                    int[] added = t.addRows(nins);
+                    int nwritten = 0;
+                    boolean deferred = t.beginDeferredUpdates();
+                    try {
+                        for (int i = 0, k = 0; i < n; ++i) {
+                            int row = match[i];
+                            boolean insert = row < 0;
+                            if (insert) row = added[k++];
+                            boolean changed = false;
+                            for (int c = 0; c < scols; ++c) {
+                                if (tcol[c] >= 0)
+                                    changed |= copy(buf, i, c, t, row,
+                                            tcol[c], insert);
+                            }
+                            seen.set(row);
+                            if (changed)
+                                written[nwritten++] = row;
+                            if (insert)
+                                ++result.m_inserted;
+                            else if (changed)
+                                ++result.m_updated;
+                            else
+                                ++result.m_unchanged;
+                        }
+                    } finally {
+                        if (deferred) {
+                            Arrays.sort(written, 0, nwritten);
+                            t.endDeferredUpdates(written, nwritten);
+                        }
+                    }
+                }
+            }
+
+            if (remove) {
+                synchronized (lock) {
+                    int[] rows = new int[t.getRowCount()];
+                    int n = 0;
+                    for (IntIterator it = t.rows(); it.hasNext();) {
+                        int row = it.nextInt();
+                        if (!seen.get(row)) rows[n++] = row;
+                    }
+                    int[] drop = new int[n];
+                    System.arraycopy(rows, 0, drop, 0, n);
+                    result.m_deleted = t.removeRows(drop);
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataIOException(e);
+        }
+
+        // clock out
+        long time = System.currentTimeMillis() - timein;
+        s_logger.info("Internal merge processing completed: " + result + ", "
+                + (time / 1000) + "." + (time % 1000) + " seconds.");
+
+        return result;
+    }
+
+    /**
+     * Look up the table row for a key value using the key index.
+     */
+    private int lookup(Table t, String key, Object value) {
+        Class type = t.getColumnType(key);
+        Index index = t.index(key);
+        if (value == null) {
+            return type.isPrimitive() ? -1 : index.get((Object) null);
+        } else if (type == int.class) {
+            return index.get(((Number) value).intValue());
+        } else if (type == long.class) {
+            return index.get(((Number) value).longValue());
+        } else if (type == float.class) {
+            return index.get(((Number) value).floatValue());
+        } else if (type == double.class) {
+            return index.get(((Number) value).doubleValue());
+        } else if (!type.isPrimitive()) {
+            return index.get(value);
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Copy a staged value into the table, if it differs from the current
+     * table value or the row is new.
+     * @return true if the value has been written
+     */
+    private static boolean copy(Table buf, int brow, int bcol,
+            Table t, int row, int col, boolean force) {
+        Class type = buf.getColumnType(bcol);
+        if (type != t.getColumnType(col)) {
+            type = Object.class;
+        }
+        if (type == int.class) {
+            int v = buf.getInt(brow, bcol);
+            if (!force && t.getInt(row, col) == v) return false;
+            t.setInt(row, col, v);
+        } else if (type == long.class) {
+            long v = buf.getLong(brow, bcol);
+            if (!force && t.getLong(row, col) == v) return false;
+            t.setLong(row, col, v);
+        } else if (type == float.class) {
+            float v = buf.getFloat(brow, bcol);
+            if (!force && Float.floatToIntBits(t.getFloat(row, col))
+                    == Float.floatToIntBits(v)) return false;
+            t.setFloat(row, col, v);
+        } else if (type == double.class) {
+            double v = buf.getDouble(brow, bcol);
+            if (!force && Double.doubleToLongBits(t.getDouble(row, col))
+                    == Double.doubleToLongBits(v)) return false;
+            t.setDouble(row, col, v);
+        } else if (type == boolean.class) {
+            boolean v = buf.getBoolean(brow, bcol);
+            if (!force && t.getBoolean(row, col) == v) return false;
+            t.setBoolean(row, col, v);
+        } else {
+            Object v = buf.get(brow, bcol);
+            if (!force && Objects.equals(t.get(row, col), v)) return false;
+            t.set(row, col, v);
+        }
+        return true;
+    }
+
     /**
      * See if a retrieved database row is already represented in the given
      * Table.
@@ -226,4 +465,62 @@ public class DatabaseResultSetProcessor {
 
         return schema;
     }
+    
+    /**
+     * Summary of the changes applied to a table by a merge.
+     * @see DatabaseResultSetProcessor#merge(Table, ResultSet, String, Object, boolean)
+     */
+    public static class MergeResult {
+        
+        private Table m_table;
+        private int m_inserted, m_updated, m_deleted, m_unchanged;
+        
+        /**
+         * Get the table the results were merged into.
+         * @return the merged table
+         */
+        public Table getTable() {
+            return m_table;
+        }
+        
+        /**
+         * Get the number of inserted rows.
+         * @return the number of inserted rows
+         */
+        public int getInsertCount() {
+            return m_inserted;
+        }
+        
+        /**
+         * Get the number of existing rows with changed values.
+         * @return the number of updated rows
+         */
+        public int getUpdateCount() {
+            return m_updated;
+        }
+        
+        /**
+         * Get the number of removed rows.
+         * @return the number of deleted rows
+         */
+        public int getDeleteCount() {
+            return m_deleted;
+        }
+        
+        /**
+         * Get the number of existing rows whose values did not change.
+         * @return the number of unchanged rows
+         */
+        public int getUnchangedCount() {
+            return m_unchanged;
+        }
+        
+        /**
+         * @see java.lang.Object#toString()
+         */
+        public String toString() {
+            return m_inserted + " inserted, " + m_updated + " updated, "
+                    + m_deleted + " deleted, " + m_unchanged + " unchanged";
+        }
+    }
 }
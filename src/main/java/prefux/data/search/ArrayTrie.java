@@ -0,0 +1,313 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+import prefux.data.Table;
+import prefux.util.ArrayLib;
+import prefux.util.collections.IntArrayIterator;
+import prefux.util.collections.IntIterator;
+
+
+/**
+ * A compact, array-based alternative to the {@link Trie} data structure for
+ * fast prefix lookup of words. Instead of building a tree of branch and leaf
+ * objects that reference {@link prefux.data.Tuple} instances, this class
+ * keeps two parallel arrays: the indexed words in sorted order and the table
+ * row associated with each word. All words sharing a given prefix occupy a
+ * contiguous range of the arrays, which is located with two binary searches.
+ * Equal words share a single String instance, so the memory cost of the index
+ * is roughly one array slot per (word, row) pair plus the distinct words.
+ *
+ * <p>The index can be built in bulk from a table column using
+ * {@link #index(Table, String, String)}, which sorts all entries once, and
+ * kept up to date incrementally using {@link #addString(String, int)} and
+ * {@link #removeString(String, int)}. Incremental updates shift the arrays
+ * and so cost time linear in the index size; large batches of additions
+ * should use {@link #addStrings(String[], int[], int)} instead, which merges
+ * the new entries into the index in a single pass.</p>
+ *
+ * @see Trie
+ * @see PrefixSearchTupleSet
+ */
+public class ArrayTrie {
+
+    private static final Comparator<Object> CMP = new Comparator<Object>() {
+        public int compare(Object o1, Object o2) {
+            return ((String)o1).compareTo((String)o2);
+        }
+    };
+
+    private String[] m_words = new String[16];
+    private int[]    m_rows  = new int[16];
+    private int      m_size  = 0;
+    private boolean  m_caseSensitive;
+    
+    /**
+     * Create a new ArrayTrie with the specified case-sensitivity.
+     * @param caseSensitive true if the index should be case sensitive for
+     * indexed words, false otherwise.
+     */
+    public ArrayTrie(boolean caseSensitive) {
+        m_caseSensitive = caseSensitive;
+    }
+    
+    /**
+     * Indicates if this ArrayTrie's index takes the case of letters
+     * into account.
+     * @return true if the index is case-sensitive, false otherwise
+     */
+    public boolean isCaseSensitive() {
+        return m_caseSensitive;
+    }
+    
+    /**
+     * Returns the number of (word, row) pairs currently indexed.
+     * @return the number of indexed entries
+     */
+    public int size() {
+        return m_size;
+    }
+    
+    /**
+     * Removes all entries from the index.
+     */
+    public void clear() {
+        m_words = new String[16];
+        m_rows = new int[16];
+        m_size = 0;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Indexing
+    
+    /**
+     * Bulk-indexes a column of a table. The string value of the given field
+     * is tokenized using the provided delimiters and every token is indexed
+     * against the row it came from. All new entries are sorted once and
+     * merged into the existing index.
+     * @param table the table to index
+     * @param field the data field to index
+     * @param delim the delimiter characters, passed to a
+     * {@link java.util.StringTokenizer}
+     */
+    public void index(Table table, String field, String delim) {
+        int col = table.getColumnNumber(field);
+        String[] words = new String[Math.max(16, table.getRowCount())];
+        int[] rows = new int[words.length];
+        int n = 0;
+        for ( IntIterator iter = table.rows(); iter.hasNext(); ) {
+            int row = iter.nextInt();
+            String s = table.getString(row, col);
+            if ( s == null ) continue;
+            StringTokenizer st = new StringTokenizer(s, delim);
+            while ( st.hasMoreTokens() ) {
+                if ( n == words.length ) {
+                    words = Arrays.copyOf(words, 2*n);
+                    rows = ArrayLib.resize(rows, 2*n);
+                }
+                words[n] = st.nextToken();
+                rows[n++] = row;
+            }
+        }
+        addStrings(words, rows, n);
+    }
+    
+    /**
+     * Adds a batch of words to the index. The input arrays are used as
+     * scratch space and their contents will be re-ordered.
+     * @param words the words to add
+     * @param rows the row associated with each word
+     * @param len the number of entries of the arrays to use
+     */
+    public void addStrings(String[] words, int[] rows, int len) {
+        if ( len <= 0 ) return;
+        for ( int i=0; i<len; ++i )
+            words[i] = normalize(words[i]);
+        ArrayLib.sort(words, rows, len, CMP);
+        
+        // share instances of equal words
+        for ( int i=1; i<len; ++i ) {
+            if ( words[i].equals(words[i-1]) )
+                words[i] = words[i-1];
+        }
+        
+        // merge with the current contents
+        String[] nwords = new String[Math.max(16, m_size+len)];
+        int[] nrows = new int[nwords.length];
+        int i = 0, j = 0, k = 0;
+        while ( i < m_size && j < len ) {
+            int c = m_words[i].compareTo(words[j]);
+            if ( c <= 0 ) {
+                if ( c == 0 ) words[j] = m_words[i];
+                nwords[k] = m_words[i];
+                nrows[k++] = m_rows[i++];
+            } else {
+                nwords[k] = words[j];
+                nrows[k++] = rows[j++];
+            }
+        }
+        for ( ; i < m_size; ++i, ++k ) {
+            nwords[k] = m_words[i];
+            nrows[k] = m_rows[i];
+        }
+        for ( ; j < len; ++j, ++k ) {
+            nwords[k] = words[j];
+            nrows[k] = rows[j];
+        }
+        m_words = nwords;
+        m_rows = nrows;
+        m_size = k;
+    }
+    
+    /**
+     * Add a new word to the index, associated with the given row.
+     * @param word the word to add
+     * @param row the row associated with the word
+     */
+    public void addString(String word, int row) {
+        word = normalize(word);
+        int idx = upperBound(word);
+        if ( idx > 0 && m_words[idx-1].equals(word) ) {
+            word = m_words[idx-1];
+        }
+        if ( m_size == m_words.length ) {
+            int cap = 3*m_size/2 + 1;
+            m_words = Arrays.copyOf(m_words, cap);
+            m_rows = ArrayLib.resize(m_rows, cap);
+        }
+        System.arraycopy(m_words, idx, m_words, idx+1, m_size-idx);
+        System.arraycopy(m_rows, idx, m_rows, idx+1, m_size-idx);
+        m_words[idx] = word;
+        m_rows[idx] = row;
+        ++m_size;
+    }
+    
+    /**
+     * Remove a word/row pair from the index.
+     * @param word the word to remove
+     * @param row the associated row to remove
+     * @return true if the pair was found and removed, false otherwise
+     */
+    public boolean removeString(String word, int row) {
+        word = normalize(word);
+        int idx = lowerBound(word);
+        for ( ; idx < m_size && m_words[idx].equals(word); ++idx ) {
+            if ( m_rows[idx] == row ) {
+                int len = m_size - idx - 1;
+                System.arraycopy(m_words, idx+1, m_words, idx, len);
+                System.arraycopy(m_rows, idx+1, m_rows, idx, len);
+                m_words[--m_size] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Lookup
+    
+    /**
+     * Look up the given prefix in this index, returning an iterator over the
+     * rows of all words starting with the prefix. A row is returned once for
+     * every matching word it contains.
+     * @param prefix the prefix to lookup
+     * @return an iterator over the matching rows. A null value is returned
+     * if no match is found.
+     */
+    public IntIterator find(String prefix) {
+        if ( prefix.length() < 1 ) return null;
+        prefix = normalize(prefix);
+        int lo = lowerBound(prefix);
+        int hi = prefixBound(prefix, lo);
+        return ( lo == hi ? null : new IntArrayIterator(m_rows, lo, hi-lo) );
+    }
+    
+    /**
+     * Returns the number of entries whose word starts with the given prefix.
+     * @param prefix the prefix to lookup
+     * @return the number of matching (word, row) pairs
+     */
+    public int count(String prefix) {
+        if ( prefix.length() < 1 ) return 0;
+        prefix = normalize(prefix);
+        int lo = lowerBound(prefix);
+        return prefixBound(prefix, lo) - lo;
+    }
+    
+    private String normalize(String word) {
+        return ( m_caseSensitive ? word : word.toLowerCase(Locale.ROOT) );
+    }
+    
+    /** First index whose word is not less than the key. */
+    private int lowerBound(String key) {
+        int lo = 0, hi = m_size;
+        while ( lo < hi ) {
+            int mid = (lo + hi) >>> 1;
+            if ( m_words[mid].compareTo(key) < 0 )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+    
+    /** First index whose word is greater than the key. */
+    private int upperBound(String key) {
+        int lo = 0, hi = m_size;
+        while ( lo < hi ) {
+            int mid = (lo + hi) >>> 1;
+            if ( m_words[mid].compareTo(key) <= 0 )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+    
+    /** First index at or after lo whose word does not start with prefix. */
+    private int prefixBound(String prefix, int lo) {
+        int hi = m_size;
+        while ( lo < hi ) {
+            int mid = (lo + hi) >>> 1;
+            if ( m_words[mid].startsWith(prefix) )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+    
+} // end of class ArrayTrie
@@ -31,18 +31,30 @@
 
 package prefux.data.search;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.PrefixQuery;
 
+import prefux.data.Table;
 import prefux.data.Tuple;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
 import prefux.util.StringLib;
+import prefux.util.collections.IntIterator;
 import prefux.util.collections.IntObjectHashMap;
 
 /**
@@ -55,6 +67,15 @@ import prefux.util.collections.IntObjectHashMap;
  * used by prefux applications, the Lucene classes must be included on the
  * application classpath.
  * </p> 
+ * 
+ * <p>
+ * Whole table columns can be indexed using {@link #index(Table, String)}.
+ * The index then follows row inserts, updates and deletes of the table.
+ * When the tuple set is backed by a persistent index directory (see
+ * {@link #KeywordSearchTupleSet(File)}), a fingerprint of the indexed
+ * column contents is stored with each {@link #commit() commit}, so that an
+ * unchanged column is not re-indexed when the application is restarted.
+ * </p>
  *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -72,6 +93,14 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
     protected boolean m_storeTermVectors = false;
     
     protected int m_id = 1;
+    protected int m_batchSize = 1000;
+    
+    /** Prefix of the commit data keys storing column fingerprints. */
+    private static final String FINGERPRINT = "prefux-fingerprint:";
+    
+    private Map<String,TableBinding> m_bindings 
+        = new HashMap<String,TableBinding>();
+    private boolean m_persistent = false;
     
     /**
      * Creates a new KeywordSearchFocusSet using an in-memory search index.
@@ -80,6 +109,19 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         m_lucene = new LuceneSearcher();
     }
     
+    /**
+     * Creates a new KeywordSearchTupleSet using a persistent search index
+     * stored in the given directory. Table columns indexed with
+     * {@link #index(Table, String)} are only re-indexed if their contents
+     * differ from the last {@link #commit() committed} state of the index.
+     * @param indexDir the directory holding the search index
+     * @throws IOException if the index directory can not be opened
+     */
+    public KeywordSearchTupleSet(File indexDir) throws IOException {
+        m_lucene = new LuceneSearcher(indexDir);
+        m_persistent = true;
+    }
+    
     /**
      * Creates a new TextSearchFocusSet with the given LuceneSearcher.
      * @param searcher the {@link LuceneSearcher} to use.
@@ -118,12 +160,16 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
             return;
         }
         
-        m_lucene.setReadMode(true);
         try {
-            TopDocs hits = m_lucene.search(query);
-            for ( ScoreDoc doc : hits.scoreDocs) {
-                Tuple t = getMatchingTuple(m_lucene.getIndexSearcher().doc(doc.doc));
-                addInternal(t);
+            Set<TableBinding> stale = collect(query);
+            if ( !stale.isEmpty() ) {
+                // the index does not match the table rows, rebuild it
+                s_logger.warning("Rebuilding stale search index for "
+                        + stale.size() + " table column(s).");
+                for ( TableBinding b : stale )
+                    reindex(b);
+                clearInternal();
+                collect(query);
             }
             Tuple[] add = getTupleCount() > 0 ? toArray() : null;
             fireTupleEvent(add, rem);
@@ -137,21 +183,135 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         
     }
     
+    /**
+     * Adds the Tuples matching the given query to this set.
+     * @return the table bindings whose index entries do not match a row
+     */
+    private Set<TableBinding> collect(String query)
+        throws IOException, ParseException
+    {
+        Set<TableBinding> stale = new HashSet<TableBinding>();
+        for ( Document d : m_lucene.searchDocuments(query) ) {
+            Tuple t = getMatchingTuple(d);
+            if ( t != null ) {
+                addInternal(t);
+                continue;
+            }
+            String key = d.get(LuceneSearcher.ROW);
+            if ( key != null ) {
+                TableBinding b = m_bindings.get(
+                        key.substring(0, key.lastIndexOf('#')));
+                if ( b != null ) stale.add(b);
+            }
+        }
+        return stale;
+    }
+    
     /**
      * Return the Tuple matching the given Lucene Document, if any.
      * @param d the Document to lookup.
      * @return the matching Tuple, or null if none.
      */
     protected Tuple getMatchingTuple(Document d) {
+        String key = d.get(LuceneSearcher.ROW);
+        if ( key != null ) {
+            int idx = key.lastIndexOf('#');
+            TableBinding b = m_bindings.get(key.substring(0, idx));
+            int row = Integer.parseInt(key.substring(idx+1));
+            if ( b == null || !b.table.isValidRow(row) )
+                return null;
+            return b.table.getTuple(row);
+        }
         int id = Integer.parseInt(d.get(LuceneSearcher.ID));
         return (Tuple)m_map.get(id);
     }
     
+    /**
+     * Indexes the given field for every row of the provided table and keeps
+     * the index up to date as rows are added, changed or removed. If this
+     * tuple set uses a persistent index that already holds the column with
+     * identical contents, the existing index entries are reused.
+     * @param table the table to index
+     * @param field the data field to index
+     */
+    public void index(Table table, String field) {
+        String name = field;
+        for ( int i=1; m_bindings.containsKey(name); ++i )
+            name = field + "@" + i;
+        TableBinding b = new TableBinding(name, table, field);
+        m_bindings.put(name, b);
+        
+        String fp = b.fingerprint();
+        if ( !fp.equals(m_lucene.getCommitData().get(FINGERPRINT+name)) )
+            reindex(b);
+        table.addTableListener(b);
+    }
+    
+    /**
+     * Replaces the index entries of a table column with entries for its
+     * current rows.
+     */
+    private void reindex(TableBinding b) {
+        m_lucene.deleteDocuments(new PrefixQuery(
+                new Term(LuceneSearcher.ROW, b.name+"#")));
+        List<Document> batch = new ArrayList<Document>(m_batchSize);
+        for ( IntIterator rows = b.table.rows(); rows.hasNext(); ) {
+            int row = rows.nextInt();
+            String s = b.table.getString(row, b.field);
+            if ( s == null ) continue;
+            batch.add(getRowDocument(b.key(row), s));
+            if ( batch.size() >= m_batchSize ) {
+                m_lucene.addDocuments(batch);
+                batch.clear();
+            }
+        }
+        if ( batch.size() > 0 )
+            m_lucene.addDocuments(batch);
+        if ( m_persistent )
+            commit();
+    }
+    
+    /**
+     * Commits pending index changes. For a persistent index, the current
+     * fingerprints of all indexed table columns are stored along with the
+     * commit, allowing the index to be reused by a later session.
+     */
+    public void commit() {
+        Map<String,String> data 
+            = new HashMap<String,String>(m_lucene.getCommitData());
+        for ( TableBinding b : m_bindings.values() )
+            data.put(FINGERPRINT+b.name, b.fingerprint());
+        m_lucene.commit(data);
+    }
+    
+    /**
+     * Indexes the given field of each provided Tuple. Documents are handed
+     * to Lucene in batches of {@link #getBatchSize()} documents.
+     * @see prefux.data.search.SearchTupleSet#index(java.util.Iterator, java.lang.String)
+     */
+    public void index(Iterator tuples, String field) {
+        List<Document> batch = new ArrayList<Document>(m_batchSize);
+        while ( tuples.hasNext() ) {
+            Tuple t = (Tuple)tuples.next();
+            String s;
+            if ( (s=t.getString(field)) == null ) continue;
+            
+            int id = m_id++;
+            batch.add(getDocument(id, s));
+            m_map.put(id, t);
+            if ( batch.size() >= m_batchSize ) {
+                m_lucene.addDocuments(batch);
+                batch.clear();
+            }
+        }
+        if ( batch.size() > 0 )
+            m_lucene.addDocuments(batch);
+    }
+    
     /**
      * @see prefux.data.search.SearchTupleSet#index(prefux.data.Tuple, java.lang.String)
      */
     public void index(Tuple t, String field) {
-        m_lucene.setReadMode(false);
         String s;
         if ( (s=t.getString(field)) == null ) return;
         
@@ -159,6 +319,26 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         m_lucene.addDocument(getDocument(id, s));        
         m_map.put(id, t);
     }
+    
+    /**
+     * Returns the number of documents handed to Lucene at once when
+     * indexing an iteration of Tuples.
+     * @return the indexing batch size
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+    
+    /**
+     * Sets the number of documents handed to Lucene at once when
+     * indexing an iteration of Tuples.
+     * @param size the indexing batch size, must be at least one
+     */
+    public void setBatchSize(int size) {
+        if ( size < 1 )
+            throw new IllegalArgumentException("Batch size must be positive");
+        m_batchSize = size;
+    }
 
     /**
      * Returns false, as unindexing values is not currently supported.
@@ -190,6 +370,19 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         return d;
     }
     
+    /**
+     * Create a Lucene Document instance for a table row.
+     * @param key the row key, as created by the table binding
+     * @param text the text the Document should contain
+     * @return a new Lucene Document instance
+     */
+    protected Document getRowDocument(String key, String text) {
+        Document d = new Document();
+        d.add(new StringField(LuceneSearcher.FIELD, text, Store.YES));
+        d.add(new StringField(LuceneSearcher.ROW, key, Store.YES));
+        return d;
+    }
+    
     /**
      * Get the {@link LuceneSearcher} instance used by this class.
      * @return returns the backing lucene searcher.
@@ -211,8 +404,80 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
      * @see prefux.data.tuple.TupleSet#clear()
      */
     public void clear() {
-        m_lucene = new LuceneSearcher();
+        for ( TableBinding b : m_bindings.values() )
+            b.table.removeTableListener(b);
+        m_bindings.clear();
+        if ( m_persistent ) {
+            m_lucene.deleteAll();
+            m_lucene.commit(new HashMap<String,String>());
+        } else {
+            m_lucene.close();
+            m_lucene = new LuceneSearcher();
+        }
         super.clear();
     }
     
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Connects an indexed table column to the search index, applying row
+     * inserts, updates and deletes to the index as they occur.
+     */
+    private class TableBinding implements TableListener {
+        final String name;
+        final Table table;
+        final String field;
+        
+        TableBinding(String name, Table table, String field) {
+            this.name = name;
+            this.table = table;
+            this.field = field;
+        }
+        
+        String key(int row) {
+            return name + "#" + row;
+        }
+        
+        /**
+         * Computes a 64-bit FNV-1a hash over the field name and the
+         * (row, value) pairs of all rows.
+         */
+        String fingerprint() {
+            long h = 0xcbf29ce484222325L;
+            h = hash(h, field);
+            for ( IntIterator rows = table.rows(); rows.hasNext(); ) {
+                int row = rows.nextInt();
+                String s = table.getString(row, field);
+                h = (h ^ row) * 0x100000001b3L;
+                h = ( s == null ? h * 0x100000001b3L : hash(h, s) );
+            }
+            return Long.toHexString(h);
+        }
+        
+        private long hash(long h, String s) {
+            for ( int i=0; i<s.length(); ++i )
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            return (h ^ s.length()) * 0x100000001b3L;
+        }
+        
+        public void tableChanged(Table t, int start, int end, int col, int type) {
+            if ( col != EventConstants.ALL_COLUMNS 
+                    && col != t.getColumnNumber(field) )
+                return;
+            
+            for ( int r=start; r<=end; ++r ) {
+                Term key = new Term(LuceneSearcher.ROW, key(r));
+                if ( type == EventConstants.DELETE ) {
+                    m_lucene.deleteDocuments(key);
+                } else {
+                    String s = t.getString(r, field);
+                    if ( s == null )
+                        m_lucene.deleteDocuments(key);
+                    else
+                        m_lucene.updateDocument(key, getRowDocument(key(r), s));
+                }
+            }
+        }
+    }
+    
 }  // end of class KeywordSearchTupleSet
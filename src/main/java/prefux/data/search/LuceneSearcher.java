@@ -31,8 +31,11 @@
 
 package prefux.data.search;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
@@ -41,13 +44,18 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 
@@ -57,6 +65,16 @@ import org.apache.lucene.util.Version;
  * text, for use within a single application session. The class can, however,
  * be parameterized for any number of other configurations, including accessing
  * persistent search indices.
+ * 
+ * <p>An existing index is opened for reading only; the {@link IndexWriter},
+ * which holds the write lock of the index, is opened on the first change
+ * and then kept open for the lifetime of the searcher. Searches are served
+ * from a near-real-time {@link IndexSearcher} obtained through a
+ * {@link SearcherManager}, which is only reopened when documents were added
+ * since the last search. Indexing and searching can therefore be
+ * interleaved freely without closing and reopening the index. Call
+ * {@link #close()} to release the index once the searcher is no longer
+ * needed.</p>
  *  
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -67,18 +85,24 @@ public class LuceneSearcher {
     public static final String FIELD = "prefux-text";
     /** Document field used to store the document ID number. */
     public static final String ID = "prefux-id";
+    /** Document field used to store the table row key of a document. */
+    public static final String ROW = "prefux-row";
     
     private Directory directory;
     private Analyzer analyzer;
     private String[] fields;
     
+    private volatile IndexWriter writer;
+    private volatile SearcherManager manager;
     private IndexSearcher searcher;
-    private IndexReader reader;
-    private IndexWriter writer;
+    private ThreadLocal<QueryParser> parser;
+    private volatile boolean m_dirty = false;
     private boolean m_readMode = true;
     private boolean m_readOnly = false;
     
-    private HashMap<String,Integer> m_hitCountCache;
+    private Map<String,Integer> m_hitCountCache;
+    /** Incremented on every change, guarded by the hit count cache */
+    private long m_generation = 0;
         
     /**
      * Create a new LuceneSearcher using an in-memory search index.
@@ -95,6 +119,19 @@ public class LuceneSearcher {
         this(dir, FIELD);
     }
     
+    /**
+     * Create a new LuceneSearcher using a persistent search index stored in
+     * the given file system directory. The best {@link FSDirectory}
+     * implementation for the platform is used, which is a memory mapped
+     * directory on 64 bit JVMs. An existing index in the directory is
+     * opened and kept, a missing one is created.
+     * @param dir the file system directory holding the search index.
+     * @throws IOException if the directory can not be opened
+     */
+    public LuceneSearcher(File dir) throws IOException {
+        this(FSDirectory.open(dir), FIELD);
+    }
+    
     /**
      * Create a new LuceneSearcher using a specified search index location,
      * a particular Document field to index, and given read/write status.
@@ -114,26 +151,63 @@ public class LuceneSearcher {
      * @param readOnly if this index is read-only or is writable.
      */
     public LuceneSearcher(Directory dir, String[] fields) {
-        m_hitCountCache = new HashMap<>();
+        m_hitCountCache = new ConcurrentHashMap<>();
         directory = dir;
         analyzer = new StandardAnalyzer();
         this.fields = (String[])fields.clone();
+        resetParser();
         try {
-        	IndexWriterConfig cfg = new IndexWriterConfig(Version.LUCENE_4_10_1, analyzer);
-            writer = new IndexWriter(directory, cfg);
-            writer.close();
-            writer = null;
+            if ( DirectoryReader.indexExists(directory) ) {
+                manager = new SearcherManager(directory, null);
+                searcher = manager.acquire();
+            } else {
+                // there is nothing to read, create the index
+                openWriter();
+            }
         } catch (IOException e1) {
             e1.printStackTrace();
         }
     }
     
+    /**
+     * Opens the index writer, if not done already, and switches searches
+     * to near-real-time readers of the writer.
+     * @return the index writer
+     * @throws IOException if the writer can not be opened
+     */
+    private synchronized IndexWriter openWriter() throws IOException {
+        if ( writer != null ) return writer;
+        IndexWriterConfig cfg = new IndexWriterConfig(Version.LUCENE_4_10_1, analyzer);
+        IndexWriter w = new IndexWriter(directory, cfg);
+        SearcherManager m = new SearcherManager(w, true, null);
+        if ( manager != null ) {
+            manager.release(searcher);
+            manager.close();
+        }
+        manager = m;
+        searcher = m.acquire();
+        writer = w;
+        return w;
+    }
+    
+    /**
+     * Returns the index writer, opening it on first use.
+     */
+    private IndexWriter writer() throws IOException {
+        IndexWriter w = writer;
+        return w != null ? w : openWriter();
+    }
+    
     // ------------------------------------------------------------------------
     
     /**
      * Sets if this LuceneSearcher is in read mode or write mode. In read more
      * searches can be issued, in write mode new Documents can be indexed.
      * Read-only LuceneSearcher instances can not be put into write mode.
+     * <p>As the index writer is kept open and searches are served from a
+     * near-real-time reader, switching modes no longer closes or reopens
+     * the index. Entering read mode simply makes sure that all documents
+     * added so far are visible to subsequent searches.</p>
      * @param mode true for read mode, false for write mode.
      * @return true if the mode was successfully set, false otherwise.
      */
@@ -142,71 +216,81 @@ public class LuceneSearcher {
         if ( m_readOnly && mode == false ) return false;
         // do nothing if already in the mode
         if ( m_readMode == mode ) return true;
-        // otherwise switch modes
-        if ( !mode ) {
-            // close any open searcher and reader
-            try {
-                // if ( searcher != null ) searcher.close();
-                if ( reader   != null ) reader.close();
-            } catch ( Exception e ) {
-                e.printStackTrace();
-                return false;
-            }
-            // open the writer
-            try {
-            	IndexWriterConfig cfg = new IndexWriterConfig(Version.LUCENE_4_10_1, analyzer);
-                writer = new IndexWriter(directory, cfg);
-            } catch (IOException e1) {
-                e1.printStackTrace();
-                return false;
-            }
-        } else {
-            // optimize index and close writer
-            try {
-                if ( writer != null ) {
-                    writer.close();
-                }
-            } catch (IOException e1) {
-                e1.printStackTrace();
-                return false;
-            }
-            // open the reader and searcher
-            try {
-                reader = DirectoryReader.open(directory);
-                searcher = new IndexSearcher(reader);
-            } catch ( Exception e ) {
-                e.printStackTrace();
-                return false;
-            }
-        }
+        if ( mode && !refresh() ) return false;
         m_readMode = mode;
         return true;
     }
     
+    /**
+     * Makes all documents added so far visible to searches. This reopens the
+     * near-real-time searcher only if the index changed since the last call.
+     * @return true if the searcher is up to date, false if an error occurred
+     */
+    public synchronized boolean refresh() {
+        if ( !m_dirty ) return true;
+        try {
+            m_dirty = false;
+            manager.maybeRefreshBlocking();
+            IndexSearcher s = manager.acquire();
+            manager.release(searcher);
+            searcher = s;
+            return true;
+        } catch ( IOException e ) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
     /**
      * Searches the Lucene index using the given query String, returns an object
-     * which provides access to the search results.
+     * which provides access to the search results. Documents added since the
+     * last search are made visible before the query is run.
+     * <p>The document numbers of the results are only valid for the reader
+     * the search was run on, which may already have been replaced when this
+     * method returns. Use {@link #searchDocuments(String)} to access the
+     * matching documents.</p>
      * @param query the search query
      * @return the search Hits
      * @throws ParseException if the query is not parsed successfully
      * @throws IOException if an input/ouput error occurs
-     * @throws IllegalStateException if the searcher is in write mode
      */
     public TopDocs search(String query) throws IOException, ParseException {
-        if ( m_readMode ) {
-            Query q;
-            if ( fields.length == 1 ) {
-            	QueryParser parser = new QueryParser(fields[0], analyzer);
-                q = parser.parse(query);
-            } else {
-            	MultiFieldQueryParser parser = new MultiFieldQueryParser(fields, analyzer);
-                q = parser.parse(query);
-            }
-            return searcher.search(q,100);
-        } else {
-            throw new IllegalStateException(
-                    "Searches can only be performed when " +
-                    "the LuceneSearcher is in read mode");
+        refresh();
+        Query q = parser.get().parse(query);
+        SearcherManager m = manager;
+        IndexSearcher s = m.acquire();
+        try {
+            return s.search(q,100);
+        } finally {
+            m.release(s);
+        }
+    }
+    
+    /**
+     * Searches the Lucene index using the given query String and returns
+     * the matching documents. The documents are loaded from the same reader
+     * the search was run on. Documents added since the last search are made
+     * visible before the query is run.
+     * @param query the search query
+     * @return the matching Documents, best matches first
+     * @throws ParseException if the query is not parsed successfully
+     * @throws IOException if an input/ouput error occurs
+     */
+    public Document[] searchDocuments(String query)
+        throws IOException, ParseException
+    {
+        refresh();
+        Query q = parser.get().parse(query);
+        SearcherManager m = manager;
+        IndexSearcher s = m.acquire();
+        try {
+            ScoreDoc[] hits = s.search(q,100).scoreDocs;
+            Document[] docs = new Document[hits.length];
+            for ( int i=0; i<hits.length; ++i )
+                docs[i] = s.doc(hits[i].doc);
+            return docs;
+        } finally {
+            m.release(s);
         }
     }
     
@@ -218,38 +302,193 @@ public class LuceneSearcher {
      * @return the number of matches to the query
      * @throws ParseException if the query is not parsed successfully
      * @throws IOException if an input/ouput error occurs
-     * @throws IllegalStateException if the searcher is in write mode
      */
     public int numHits(String query) throws ParseException, IOException {
         Integer count;
         if ( (count=m_hitCountCache.get(query)) == null ) {
+            long gen;
+            synchronized ( m_hitCountCache ) {
+                gen = m_generation;
+            }
             TopDocs hits = search(query);
             count = new Integer(hits.totalHits);
-            m_hitCountCache.put(query, count);
+            // do not cache counts of a searcher predating a change
+            synchronized ( m_hitCountCache ) {
+                if ( gen == m_generation )
+                    m_hitCountCache.put(query, count);
+            }
         }
         return count.intValue();
     }
     
     /**
-     * Add a document to the Lucene search index.
+     * Add a document to the Lucene search index. The document becomes
+     * visible to searches after the next {@link #refresh()}, which is
+     * performed automatically by {@link #search(String)}.
      * @param d the Document to add
-     * @throws IllegalStateException if the searcher is not in write mode
+     * @throws IllegalStateException if the searcher is read-only
      */
     public void addDocument(Document d) {
-        if ( !m_readMode ) {
+        checkWritable();
+        try {
+            writer().addDocument(d);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Add a batch of documents to the Lucene search index. This is
+     * considerably faster than adding the documents one by one.
+     * @param docs the Documents to add
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public void addDocuments(Iterable<? extends Iterable<? extends IndexableField>> docs) {
+        checkWritable();
+        try {
+            writer().addDocuments(docs);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Replace all documents matching the given term with a new document,
+     * or add the document if no document matches.
+     * @param t the Term identifying the document(s) to replace
+     * @param d the new Document
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public void updateDocument(Term t, Document d) {
+        checkWritable();
+        try {
+            writer().updateDocument(t, d);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Remove all documents containing the given term from the index.
+     * @param t the Term identifying the document(s) to remove
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public void deleteDocuments(Term t) {
+        checkWritable();
+        try {
+            writer().deleteDocuments(t);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Remove all documents matching the given query from the index.
+     * @param q the Query identifying the document(s) to remove
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public void deleteDocuments(Query q) {
+        checkWritable();
+        try {
+            writer().deleteDocuments(q);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Remove all documents from the index.
+     * @throws IllegalStateException if the searcher is read-only
+     */
+    public void deleteAll() {
+        checkWritable();
+        try {
+            writer().deleteAll();
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Returns the user data stored with the last commit of the index.
+     * @return the commit user data, an empty map if there is none
+     */
+    public Map<String,String> getCommitData() {
+        IndexWriter w = writer;
+        if ( w != null )
+            return w.getCommitData();
+        SearcherManager m = manager;
+        IndexSearcher s = null;
+        try {
+            s = m.acquire();
+            return ((DirectoryReader)s.getIndexReader())
+                    .getIndexCommit().getUserData();
+        } catch ( IOException e ) {
+            e.printStackTrace();
+            return Collections.emptyMap();
+        } finally {
             try {
-                writer.addDocument(d);
-                m_hitCountCache.clear();
-            } catch (IOException e) {
+                if ( s != null ) m.release(s);
+            } catch ( IOException e ) {
                 e.printStackTrace();
             }
-        } else {
+        }
+    }
+    
+    /**
+     * Commits all pending changes to the index directory, storing the given
+     * user data along with the commit. The data can be retrieved with
+     * {@link #getCommitData()} when the index is opened again.
+     * @param data the commit user data, or null to keep the current data
+     */
+    public void commit(Map<String,String> data) {
+        try {
+            IndexWriter w = writer();
+            if ( data != null )
+                w.setCommitData(data);
+            w.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void checkWritable() {
+        if ( m_readOnly ) {
             throw new IllegalStateException(
-                    "Documents can not be added to the index unless" +
-                    "the LuceneSearcher is not in read mode");
+                    "Documents can not be added to a read-only index");
+        }
+    }
+    
+    private void changed() {
+        m_dirty = true;
+        synchronized ( m_hitCountCache ) {
+            ++m_generation;
+            m_hitCountCache.clear();
         }
     }
     
+    /**
+     * Commits all pending changes and releases the index writer and
+     * searcher. This LuceneSearcher can not be used after it was closed.
+     */
+    public synchronized void close() {
+        try {
+            manager.release(searcher);
+            manager.close();
+            if ( writer != null )
+                writer.close();
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+        searcher = null;
+    }
+    
     /**
      * Returns the Analyzer used to process text. See Lucene documentation
      * for more details.
@@ -261,11 +500,14 @@ public class LuceneSearcher {
     
     /**
      * Sets the Analyzer used to process text. See Lucene documentation
-     * for more details.
+     * for more details. The new analyzer is only used for parsing queries;
+     * documents are analyzed by the analyzer the index writer was
+     * created with.
      * @param analyzer the analyzer to set
      */
     public void setAnalyzer(Analyzer analyzer) {
         this.analyzer = analyzer;
+        resetParser();
     }
     
     /**
@@ -286,6 +528,25 @@ public class LuceneSearcher {
      */
     public void setFields(String[] fields) {
         this.fields = (String[])fields.clone();
+        resetParser();
+    }
+    
+    /**
+     * Query parsers are not thread-safe, so each thread issuing searches
+     * gets its own parser, created once for the current fields and analyzer.
+     */
+    private void resetParser() {
+        final String[] f = fields;
+        final Analyzer a = analyzer;
+        parser = new ThreadLocal<QueryParser>() {
+            protected QueryParser initialValue() {
+                if ( f.length == 1 ) {
+                    return new QueryParser(f[0], a);
+                } else {
+                    return new MultiFieldQueryParser(f, a);
+                }
+            }
+        };
     }
     
     /**
@@ -294,7 +555,7 @@ public class LuceneSearcher {
      * @return teturns the IndexReader.
      */
     public IndexReader getIndexReader() {
-        return reader;
+        return searcher.getIndexReader();
     }
     
     /**
@@ -306,6 +567,20 @@ public class LuceneSearcher {
         return searcher;
     }
     
+    /**
+     * Returns the Lucene IndexWriter, opening it if needed. See Lucene
+     * documentation for more details.
+     * @return returns the IndexWriter, or null if it could not be opened.
+     */
+    public IndexWriter getIndexWriter() {
+        try {
+            return writer();
+        } catch ( IOException e ) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
     /**
      * Indicates if ths LuceneSearcher is read-only.
      * @return true if read-only, false if writes are allowed
@@ -30,17 +30,24 @@
  */
 package prefux.data.search;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.StringTokenizer;
 
+import prefux.data.Table;
 import prefux.data.Tuple;
+import prefux.util.ArrayLib;
+import prefux.util.collections.IntIterator;
 
 
 /**
  * <p>
  * SearchTupleSet implementation supporting word prefix searches over indexed
- * Tuple data fields. This class uses a {@link Trie Trie} data structure
- * to find search results quickly; however, only prefix matches will be
+ * Tuple data fields. This class uses an {@link ArrayTrie ArrayTrie} per
+ * backing table, storing row numbers rather than Tuple references, to find
+ * search results quickly; however, only prefix matches will be
  * identified as valid search matches. Multi-term search queries will result
  * in the union of the results for the individual query terms. That is, Tuples
  * that match any one of the terms will be included in the results.
@@ -57,8 +64,8 @@ import prefux.data.Tuple;
  */
 public class PrefixSearchTupleSet extends SearchTupleSet {
     
-    private Trie m_trie;
-    private Trie.TrieNode m_curNode;
+    private Map<Table,ArrayTrie> m_tries = new HashMap<Table,ArrayTrie>();
+    private boolean m_caseSensitive;
     private String m_delim = " \t\n\r";
     private String m_query = "";
     
@@ -75,7 +82,7 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * sensitive, false otherwise.
      */
     public PrefixSearchTupleSet(boolean caseSensitive) {
-        m_trie = new Trie(caseSensitive);
+        m_caseSensitive = caseSensitive;
     }
     
     /**
@@ -141,14 +148,57 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * Issues a prefix search and collects the results
      */
     private void prefixSearch(String query) {
-        m_curNode = m_trie.find(query);
-        if ( m_curNode != null ) {
-            Iterator iter = trieIterator();
-            while ( iter.hasNext() )
-                addInternal((Tuple)iter.next());
+        for ( Map.Entry<Table,ArrayTrie> e : m_tries.entrySet() ) {
+            Table table = e.getKey();
+            IntIterator rows = e.getValue().find(query);
+            if ( rows == null ) continue;
+            while ( rows.hasNext() )
+                addInternal(table.getTuple(rows.nextInt()));
         }
     }
     
+    /**
+     * Indexes the given field of each provided Tuple. All words found are
+     * collected first and then added to the index in a single bulk operation.
+     * @see prefux.data.search.SearchTupleSet#index(java.util.Iterator, java.lang.String)
+     */
+    public void index(Iterator tuples, String field) {
+        Table table = null;
+        String[] words = new String[16];
+        int[] rows = new int[16];
+        int n = 0;
+        while ( tuples.hasNext() ) {
+            Tuple t = (Tuple)tuples.next();
+            if ( table != t.getTable() ) {
+                if ( n > 0 ) getTrie(table).addStrings(words, rows, n);
+                table = t.getTable();
+                n = 0;
+            }
+            String s;
+            if ( (s=t.getString(field)) == null ) continue;
+            StringTokenizer st = new StringTokenizer(s,m_delim);
+            while ( st.hasMoreTokens() ) {
+                if ( n == words.length ) {
+                    words = Arrays.copyOf(words, 2*n);
+                    rows = ArrayLib.resize(rows, 2*n);
+                }
+                words[n] = st.nextToken();
+                rows[n++] = t.getRow();
+            }
+        }
+        if ( n > 0 ) getTrie(table).addStrings(words, rows, n);
+    }
+    
+    /**
+     * Indexes the given field for every row of the provided table. This is
+     * the fastest way to build the index for a complete data column.
+     * @param table the table to index
+     * @param field the data field to index
+     */
+    public void index(Table table, String field) {
+        getTrie(table).index(table, field, m_delim);
+    }
+    
     /**
      * Indexes the given field of the provided Tuple instance.
      * @see prefux.data.search.SearchTupleSet#index(prefux.data.Tuple, java.lang.String)
@@ -156,15 +206,21 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
     public void index(Tuple t, String field) {
         String s;
         if ( (s=t.getString(field)) == null ) return;
+        ArrayTrie trie = getTrie(t.getTable());
         StringTokenizer st = new StringTokenizer(s,m_delim);
         while ( st.hasMoreTokens() ) {
             String tok = st.nextToken();
-            addString(tok, t);
+            trie.addString(tok, t.getRow());
         }
     }
     
-    private void addString(String s, Tuple t) {
-        m_trie.addString(s,t);
+    private ArrayTrie getTrie(Table table) {
+        ArrayTrie trie = m_tries.get(table);
+        if ( trie == null ) {
+            trie = new ArrayTrie(m_caseSensitive);
+            m_tries.put(table, trie);
+        }
+        return trie;
     }
     
     /**
@@ -181,10 +237,12 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
     public void unindex(Tuple t, String field) {
         String s;
         if ( (s=t.getString(field)) == null ) return;
+        ArrayTrie trie = m_tries.get(t.getTable());
+        if ( trie == null ) return;
         StringTokenizer st = new StringTokenizer(s,m_delim);
         while ( st.hasMoreTokens() ) {
             String tok = st.nextToken();
-            removeString(tok, t);
+            trie.removeString(tok, t.getRow());
         }
     }
     
@@ -193,16 +251,8 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * @see prefux.data.tuple.TupleSet#clear()
      */
     public void clear() {
-        m_trie = new Trie(m_trie.isCaseSensitive());
+        m_tries.clear();
         super.clear();
     }
     
-    private void removeString(String s, Tuple t) {
-        m_trie.removeString(s,t);
-    }
-    
-    private Iterator trieIterator() {
-        return m_trie.new TrieIterator(m_curNode);
-    }
-    
 }  // end of class PrefixSearchTupleSet
@@ -120,8 +120,9 @@ public class FilterIteratorFactory {
      * @return an optimized iterator, or null if no optimization was found
      */
     protected static IntIterator getOptimizedIterator(Table t, Predicate p) {
-        if ( t.getRowCount() < OPTIMIZATION_THRESHOLD ) 
-            return null; // avoid overhead for small tables
+        // indexes over boolean columns are backed by bit sets, and are
+        // cheap enough to be used regardless of the table size
+        boolean small = t.getRowCount() < OPTIMIZATION_THRESHOLD;
         
         if ( p instanceof ColumnExpression ) {
             // try to optimize a boolean column
@@ -147,6 +148,10 @@ public class FilterIteratorFactory {
             // try to optimize an or clause
             return getOrIterator(t, (OrPredicate)p);
         }
+        else if ( small )
+        {
+            return null; // avoid overhead for small tables
+        }
         else if ( p instanceof ComparisonPredicate )
         {
             // try to optimize a comparison (=, !=, <, > ,etc)
@@ -161,9 +166,21 @@ public class FilterIteratorFactory {
         return null;
     }
     
+    /**
+     * Get an iterator over the rows of a table for which an indexed boolean
+     * column has the given value. For boolean columns the index maintains a
+     * bit set per value, so this amounts to iterating over the set bits.
+     * @param t the Table to iterate over
+     * @param field the boolean data field
+     * @param val the value to filter for
+     * @return an iterator over the matching rows, or null if the field
+     * is not an indexed boolean column
+     */
     protected static IntIterator getColumnIterator(
             Table t, String field, boolean val)
     {
+        if ( t.getColumnNumber(field) < 0 )
+            return null;
         if ( t.getColumnType(field) != boolean.class )
             return null; // only works for boolean-valued columns
         
@@ -105,6 +105,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#size()
      */
     public int size() {
+        accessCheck();
         return m_index.size();
     }
     
@@ -183,6 +184,14 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
         
         m_reindex = false;
     }
+    
+    /**
+     * Rebuild the index if it has been invalidated by a change of a range
+     * of values.
+     */
+    private void accessCheck() {
+        if ( m_reindex ) index();
+    }
 
     // ------------------------------------------------------------------------
     // Listener Methods
@@ -192,7 +201,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      */
     public void tableChanged(Table t, int start, int end, int col, int type) {
         if ( type == EventConstants.UPDATE || t != m_table 
-              || col != EventConstants.ALL_COLUMNS )
+              || col != EventConstants.ALL_COLUMNS || m_reindex )
             return;
         
         boolean insert = (type==EventConstants.INSERT);
@@ -267,6 +276,8 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
      */
     public void columnChanged(Column src, int type, int start, int end) {
+        // the previous values of a range are not known, rebuild the index
+        // upon next access. coalesces the rebuilds of successive events.
         m_reindex = true;
     }    
     
@@ -274,6 +285,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, boolean)
      */
     public void columnChanged(Column src, int idx, boolean prev) {
+        if ( m_reindex ) return; // rebuilt upon next access
         int row = m_rows.getTableRow(idx, getColumnIndex());
         if ( row < 0 ) return; // invalid row value
         ((BooleanIntSortedMap)m_index).remove(prev, row);
@@ -284,6 +296,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int)
      */
     public void columnChanged(Column src, int idx, int prev) {
+        if ( m_reindex ) return; // rebuilt upon next access
         int row = m_rows.getTableRow(idx, getColumnIndex());
         if ( row < 0 ) return; // invalid row value
         ((IntIntSortedMap)m_index).remove(prev, row);
@@ -294,6 +307,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, long)
      */
     public void columnChanged(Column src, int idx, long prev) {
+        if ( m_reindex ) return; // rebuilt upon next access
         int row = m_rows.getTableRow(idx, getColumnIndex());
         if ( row < 0 ) return; // invalid row value
         ((LongIntSortedMap)m_index).remove(prev, row);
@@ -304,6 +318,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, float)
      */
     public void columnChanged(Column src, int idx, float prev) {
+        if ( m_reindex ) return; // rebuilt upon next access
         int row = m_rows.getTableRow(idx, getColumnIndex());
         if ( row < 0 ) return; // invalid row value
         ((FloatIntSortedMap)m_index).remove(prev, row);
@@ -314,6 +329,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, double)
      */
     public void columnChanged(Column src, int idx, double prev) {
+        if ( m_reindex ) return; // rebuilt upon next access
         int row = m_rows.getTableRow(idx, getColumnIndex());
         if ( row < 0 ) return; // invalid row value
         ((DoubleIntSortedMap)m_index).remove(prev, row);
@@ -324,6 +340,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, java.lang.Object)
      */
     public void columnChanged(Column src, int idx, Object prev) {
+        if ( m_reindex ) return; // rebuilt upon next access
         int row = m_rows.getTableRow(idx, getColumnIndex());
         if ( row < 0 ) return; // invalid row value
         ((ObjectIntSortedMap)m_index).remove(prev, row);
@@ -337,6 +354,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#minimum()
      */
     public int minimum() {
+        accessCheck();
         return m_index.getMinimum();
     }
     
@@ -344,6 +362,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#maximum()
      */
     public int maximum() {
+        accessCheck();
         return m_index.getMaximum();
     }
     
@@ -351,6 +370,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#median()
      */
     public int median() {
+        accessCheck();
         return m_index.getMedian();
     }
     
@@ -358,6 +378,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#uniqueCount()
      */
     public int uniqueCount() {
+        accessCheck();
         return m_index.getUniqueCount();
     }
     
@@ -367,6 +388,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#allRows(int)
      */
     public IntIterator allRows(int type) {
+        accessCheck();
         boolean ascending = (type & Index.TYPE_ASCENDING) > 0;
         return m_index.valueIterator(ascending);
     }
@@ -375,6 +397,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(java.lang.Object, java.lang.Object, int)
      */
     public IntIterator rows(Object lo, Object hi, int type) {
+        accessCheck();
         if ( !(m_index instanceof ObjectIntSortedMap) )
             throw new IllegalStateException();
 
@@ -397,6 +420,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(int, int, int)
      */
     public IntIterator rows(int lo, int hi, int type) {
+        accessCheck();
         if ( !(m_index instanceof IntIntSortedMap) )
             throw new IllegalStateException();
 
@@ -416,6 +440,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(long, long, int)
      */
     public IntIterator rows(long lo, long hi, int type) {
+        accessCheck();
         if ( !(m_index instanceof LongIntSortedMap) )
             throw new IllegalStateException();
         
@@ -435,6 +460,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(float, float, int)
      */
     public IntIterator rows(float lo, float hi, int type) {
+        accessCheck();
         if ( !(m_index instanceof FloatIntSortedMap) )
             throw new IllegalStateException();
         
@@ -454,6 +480,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(double, double, int)
      */
     public IntIterator rows(double lo, double hi, int type) {
+        accessCheck();
         if ( !(m_index instanceof DoubleIntSortedMap) )
             throw new IllegalStateException();
         
@@ -503,6 +530,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(boolean)
      */
     public IntIterator rows(boolean val) {
+        accessCheck();
         if ( !(m_index instanceof BooleanIntSortedMap) )
             throw new IllegalStateException();
         
@@ -523,6 +551,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(double)
      */
     public int get(double x) {
+        accessCheck();
         DoubleIntSortedMap index = (DoubleIntSortedMap)m_index;
         return index.get(x);
     }
@@ -531,6 +560,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(float)
      */
     public int get(float x) {
+        accessCheck();
         FloatIntSortedMap index = (FloatIntSortedMap)m_index;
         return index.get(x);
     }
@@ -539,6 +569,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(int)
      */
     public int get(int x) {
+        accessCheck();
         IntIntSortedMap index = (IntIntSortedMap)m_index;
         return index.get(x);
     }
@@ -547,6 +578,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(long)
      */
     public int get(long x) {
+        accessCheck();
         LongIntSortedMap index = (LongIntSortedMap)m_index;
         return index.get(x);
     }
@@ -555,6 +587,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(java.lang.Object)
      */
     public int get(Object x) {
+        accessCheck();
         ObjectIntSortedMap index = (ObjectIntSortedMap)m_index;
         return index.get(x);
     }
@@ -30,9 +30,14 @@
  */
 package prefux.render;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
 import javafx.scene.Parent;
@@ -60,6 +65,15 @@ import prefux.visual.VisualItem;
  * registers the JavaFX nodes on the parent nodes. The same for getRawShape().
  * </p>
  * 
+ * <p>
+ * Released nodes are kept in a pool per node class, so that subclasses can
+ * reuse them in {@link #getRawShape(VisualItem, boolean) getRawShape} via
+ * {@link #reuse(Class)} instead of allocating new nodes. Subclasses binding
+ * node properties to the item should do so through
+ * {@link #bindShape(VisualItem, Node, Runnable)} and undo these bindings in
+ * {@link #unbindShape(Node)}.
+ * </p>
+ * 
  * @version 2.0
  * @author Martin Stockhammer
  * @author alan newberger
@@ -70,11 +84,19 @@ public abstract class AbstractShapeRenderer implements Renderer {
 
 	private static final Logger log = LogManager.getLogger(AbstractShapeRenderer.class);
 
+	/** Node property holding the item a deferred binding is made for. */
+	private static final Object OWNER_KEY = new Object();
+
 	public static final int RENDER_TYPE_NONE = 0;
 	public static final int RENDER_TYPE_DRAW = 1;
 	public static final int RENDER_TYPE_FILL = 2;
 	public static final int RENDER_TYPE_DRAW_AND_FILL = 3;
 
+	/**
+	 * The default maximum number of pooled nodes per node class.
+	 */
+	public static final int DEFAULT_POOL_CAPACITY = 1024;
+
 	private int m_renderType = RENDER_TYPE_DRAW_AND_FILL;
 	protected Transform m_transform;
 	protected boolean m_manageBounds = true;
@@ -82,6 +104,9 @@ public abstract class AbstractShapeRenderer implements Renderer {
 	private List<String> rendererStyles = new ArrayList<>();
 	private List<Transform> transforms = null;
 
+	private Map<Class<?>, Deque<Node>> m_pool = new HashMap<>();
+	private int m_poolCapacity = DEFAULT_POOL_CAPACITY;
+
 	public AbstractShapeRenderer() {
 		if (getDefaultStyle() != null) {
 			rendererStyles.add(getDefaultStyle());
@@ -245,6 +270,129 @@ public abstract class AbstractShapeRenderer implements Renderer {
 		return item.getNode();
 	}
 
+	/**
+	 * Releases the node of the given item. The node is detached, unbound
+	 * from the item and reset, and kept for reuse unless the pool for its
+	 * class is full.
+	 * 
+	 * @see prefux.render.Renderer#release(prefux.visual.VisualItem)
+	 */
+	@Override
+	public void release(VisualItem item) {
+		Node node = item.getNode();
+		if (node == null)
+			return;
+		item.setNode(null);
+		FxGraphicsLib.removeFromParent(node);
+		node.getProperties().remove(OWNER_KEY);
+		unbindShape(node);
+		node.getTransforms().clear();
+		node.getStyleClass().clear();
+		node.setOnMouseEntered(null);
+		node.setOnMouseExited(null);
+		node.setCursor(null);
+		synchronized (m_pool) {
+			Deque<Node> pool = m_pool.get(node.getClass());
+			if (pool == null) {
+				pool = new ArrayDeque<>();
+				m_pool.put(node.getClass(), pool);
+			}
+			if (pool.size() < m_poolCapacity)
+				pool.push(node);
+		}
+	}
+
+	/**
+	 * Undo the bindings of a node to the item it was rendered for. Called
+	 * when the node is released; subclasses binding node properties to
+	 * item properties should override this method.
+	 * 
+	 * @param node
+	 *            the released node
+	 */
+	protected void unbindShape(Node node) {
+	}
+
+	/**
+	 * Take a previously released node of the given class from the pool.
+	 * 
+	 * @param type
+	 *            the node class
+	 * @return a pooled node, or null if there is none
+	 */
+	protected <T extends Node> T reuse(Class<T> type) {
+		synchronized (m_pool) {
+			Deque<Node> pool = m_pool.get(type);
+			return pool == null || pool.isEmpty() ? null : type.cast(pool
+					.pop());
+		}
+	}
+
+	/**
+	 * Bind the properties of a node to an item on the JavaFX application
+	 * thread. On that thread, the binding is done immediately. Otherwise it
+	 * is deferred, and skipped if the node has been released in the
+	 * meantime, as a pooled node may already have been handed out to
+	 * another item.
+	 * 
+	 * @param item
+	 *            the item the node is rendered for
+	 * @param node
+	 *            the node to bind
+	 * @param binding
+	 *            binds the node properties to the item
+	 */
+	protected void bindShape(VisualItem item, Node node, Runnable binding) {
+		if (Platform.isFxApplicationThread()) {
+			binding.run();
+			return;
+		}
+		node.getProperties().put(OWNER_KEY, item);
+		Platform.runLater(() -> {
+			if (node.getProperties().get(OWNER_KEY) == item)
+				binding.run();
+		});
+	}
+
+	/**
+	 * Returns the maximum number of pooled nodes per node class.
+	 * 
+	 * @return the pool capacity
+	 */
+	public int getPoolCapacity() {
+		return m_poolCapacity;
+	}
+
+	/**
+	 * Sets the maximum number of pooled nodes per node class. Pooled nodes
+	 * exceeding the new capacity are dropped.
+	 * 
+	 * @param capacity
+	 *            the pool capacity, zero disables pooling
+	 */
+	public void setPoolCapacity(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException(
+					"Pool capacity must be non-negative: " + capacity);
+		}
+		synchronized (m_pool) {
+			m_poolCapacity = capacity;
+			for (Deque<Node> pool : m_pool.values()) {
+				while (pool.size() > capacity)
+					pool.pop();
+			}
+		}
+	}
+
+	/**
+	 * Drops all pooled nodes.
+	 */
+	public void clearPool() {
+		synchronized (m_pool) {
+			m_pool.clear();
+		}
+	}
+
 
 
 	public void addStyle(String style) {
@@ -31,17 +31,35 @@
 package prefux.render;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.scene.Group;
 import javafx.scene.Node;
+import javafx.scene.Parent;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.ClosePath;
 import javafx.scene.shape.Line;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
 import javafx.scene.shape.Polygon;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+
+import prefux.action.layout.graph.EdgeBundlingLayout;
+import prefux.data.Table;
 import prefux.data.util.Point2D;
+import prefux.util.FxGraphicsLib;
 import prefux.visual.EdgeItem;
 import prefux.visual.VisualItem;
 
@@ -57,19 +75,195 @@ import prefux.visual.VisualItem;
  * This class also supports arrows for directed edges. See the
  * </p>
  *
+ * <p>
+ * Edges between distinct nodes are drawn as a group of the line and an arrow
+ * head placed at three quarters of the line, which follows the line as its
+ * end points move. Self-loops are drawn as a plain line.
+ * </p>
+ *
+ * <p>
+ * For large graphs, the renderer can be switched to batched mode with
+ * {@link #setBatched(boolean)}. Instead of a node per edge, all edges of a
+ * display sharing a style class are then written into a single
+ * {@link Path}, with the arrow heads in a second path carrying the
+ * additional {@link #ARROW_STYLE_CLASS} style class. The paths are updated
+ * once per frame, and only for edges whose end points or control points
+ * have changed. Batched edges follow the control points computed by
+ * {@link EdgeBundlingLayout}, but cannot be picked individually: they have
+ * no node of their own, so the display attaches them without a node, and
+ * {@link #locatePoint(Point2D, VisualItem)} never matches them. The batches
+ * are only accessed on the JavaFX application thread; edges rendered or
+ * released on other threads are added to or removed from their batch
+ * later on that thread.
+ * </p>
+ *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class EdgeRenderer extends AbstractShapeRenderer implements Renderer {
 
-
-	public static List<EdgeItem> edgeList = new ArrayList<>();
-	public static List<Polygon> arrowHeadList = new ArrayList<>();
-
 	private static final Logger log = LogManager.getLogger(EdgeRenderer.class);
 
 	public static final String DEFAULT_STYLE_CLASS = "prefux-edge";
 
+	/**
+	 * The style class added to the path holding the arrow heads of batched
+	 * edges.
+	 */
+	public static final String ARROW_STYLE_CLASS = "prefux-edge-arrow";
+
+	/*
+	 * The arrow head outline, pointing along the positive x-axis
+	 */
+	private static final double[] ARROW_SHAPE = new double[] { -10, -5, 10, 0, -10, 5 };
+
+	private boolean m_batched = false;
+	private String m_pointsField = EdgeBundlingLayout.CONTROL_POINTS;
+
+	/** The batches per display and style class, FX thread only */
+	private final Map<Parent, Map<String, Batch>> m_batches = new IdentityHashMap<>();
+	/** The batch holding each batched edge, FX thread only */
+	private final Map<EdgeItem, Batch> m_batchOf = new IdentityHashMap<>();
+
+	private final AnimationTimer m_timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			for (Map<String, Batch> batches : m_batches.values()) {
+				for (Batch b : batches.values())
+					b.update();
+			}
+		}
+	};
+
+	/**
+	 * Indicates if edges are drawn in batches.
+	 * 
+	 * @return true if edges are written into shared paths, false if each
+	 *         edge gets its own node
+	 */
+	public boolean isBatched() {
+		return m_batched;
+	}
+
+	/**
+	 * Sets if edges are drawn in batches, sharing a single path per display
+	 * and style class. This should be set before any edge is rendered.
+	 * 
+	 * @param batched
+	 *            true to write edges into shared paths, false to create a
+	 *            node per edge
+	 */
+	public void setBatched(boolean batched) {
+		m_batched = batched;
+	}
+
+	/**
+	 * Returns the data field holding the control points of batched edges.
+	 * 
+	 * @return the control points field, or null if edges are always drawn
+	 *         as straight lines
+	 */
+	public String getControlPointsField() {
+		return m_pointsField;
+	}
+
+	/**
+	 * Sets the data field holding the control points of batched edges, as a
+	 * <code>double[]</code> of alternating x and y coordinates excluding the
+	 * end points. The default is {@link EdgeBundlingLayout#CONTROL_POINTS}.
+	 * 
+	 * @param field
+	 *            the control points field, or null to always draw straight
+	 *            lines
+	 */
+	public void setControlPointsField(String field) {
+		m_pointsField = field;
+	}
+
+	@Override
+	public void render(Parent g, VisualItem item, boolean bind) {
+		if (!m_batched) {
+			super.render(g, item, bind);
+			return;
+		}
+		EdgeItem edge = (EdgeItem) item;
+		String style = getStyle(item);
+		if (Platform.isFxApplicationThread()) {
+			addToBatch(g, edge, style);
+		} else {
+			Platform.runLater(() -> addToBatch(g, edge, style));
+		}
+	}
+
+	/**
+	 * Add an edge to the batch of the given display and style class,
+	 * creating the batch if needed. Must be called on the JavaFX
+	 * application thread.
+	 */
+	private void addToBatch(Parent g, EdgeItem edge, String style) {
+		if (m_batchOf.containsKey(edge))
+			return;
+		Map<String, Batch> batches = m_batches.get(g);
+		if (batches == null) {
+			batches = new HashMap<>();
+			m_batches.put(g, batches);
+		}
+		Batch batch = batches.get(style);
+		if (batch == null) {
+			batch = new Batch(g, style);
+			drawShape(g, edge, batch.m_lines);
+			drawShape(g, edge, batch.m_arrows);
+			batch.m_arrows.getStyleClass().add(ARROW_STYLE_CLASS);
+			batch.m_arrows.toBack();
+			batch.m_lines.toBack();
+			batches.put(style, batch);
+		}
+		batch.add(edge);
+		m_batchOf.put(edge, batch);
+		m_timer.start();
+	}
+
+	@Override
+	public void release(VisualItem item) {
+		if (!m_batched) {
+			super.release(item);
+		} else if (Platform.isFxApplicationThread()) {
+			removeFromBatch(item);
+		} else {
+			Platform.runLater(() -> removeFromBatch(item));
+		}
+	}
+
+	/**
+	 * Remove an edge from its batch, disposing of the batch once it is
+	 * empty. Edges that are not batched are released as usual. Must be
+	 * called on the JavaFX application thread.
+	 */
+	private void removeFromBatch(VisualItem item) {
+		Batch batch = m_batchOf.remove(item);
+		if (batch == null) {
+			super.release(item);
+			return;
+		}
+		batch.remove((EdgeItem) item);
+		if (batch.isEmpty()) {
+			batch.dispose();
+			Map<String, Batch> batches = m_batches.get(batch.m_parent);
+			batches.remove(batch.m_style);
+			if (batches.isEmpty())
+				m_batches.remove(batch.m_parent);
+		}
+		if (m_batchOf.isEmpty())
+			m_timer.stop();
+	}
+
+	/**
+	 * Always returns false. In particular, batched edges can not be picked,
+	 * as they are drawn as part of a path shared with other edges.
+	 * 
+	 * @see prefux.render.Renderer#locatePoint(prefux.data.util.Point2D,
+	 *      prefux.visual.VisualItem)
+	 */
 	@Override
 	public boolean locatePoint(Point2D p, VisualItem item) {
 		log.debug("locatePoint " + p + " " + item);
@@ -80,53 +274,291 @@ public class EdgeRenderer extends AbstractShapeRenderer implements Renderer {
 	protected Node getRawShape(VisualItem item, boolean bind) {
 
 		EdgeItem edge = (EdgeItem) item;
-		Line line = new Line();
-
-		double[] arrowShape = new double[] {-10, -5, 10, 0, -10, 5};
-		Polygon triangle = new Polygon(arrowShape);
-		if(!edge.getSourceItem().get("bibtexkey").toString().matches(edge.getTargetItem().get("bibtexkey").toString())) {
-			edgeList.add(edge);
-			arrowHeadList.add(triangle);
+		Node shape;
+		Line line;
+		if (edge.getSourceItem() == edge.getTargetItem()) {
+			line = reuse(Line.class);
+			if (line == null) {
+				line = new Line();
+			}
+			shape = line;
+		} else {
+			Group group = reuse(Group.class);
+			if (group != null) {
+				line = (Line) group.getChildren().get(0);
+			} else {
+				line = new Line();
+				group = new Group(line, createArrowHead(line));
+			}
+			shape = group;
 		}
 
 		if (bind) {
-			Platform.runLater(() -> {
-					line.startXProperty().bind(edge.getSourceItem().xProperty());
-					line.startYProperty().bind(edge.getSourceItem().yProperty());
-					line.endXProperty().bind(edge.getTargetItem().xProperty());
-					line.endYProperty().bind(edge.getTargetItem().yProperty());
+			final Line l = line;
+			final Node n = shape;
+			bindShape(item, n, () -> {
+					l.startXProperty().bind(edge.getSourceItem().xProperty());
+					l.startYProperty().bind(edge.getSourceItem().yProperty());
+					l.endXProperty().bind(edge.getTargetItem().xProperty());
+					l.endYProperty().bind(edge.getTargetItem().yProperty());
 			});
 		}
-		return line;
+		return shape;
 	}
 
+	/**
+	 * Create an arrow head that keeps itself aligned with the given line.
+	 */
+	private Polygon createArrowHead(Line line) {
+		Polygon arrowHead = new Polygon(ARROW_SHAPE);
+		InvalidationListener update = o -> {
+			double sx = line.getStartX(), sy = line.getStartY();
+			double dx = line.getEndX() - sx, dy = line.getEndY() - sy;
+			arrowHead.setTranslateX(sx + 0.75 * dx);
+			arrowHead.setTranslateY(sy + 0.75 * dy);
+			arrowHead.setRotate(Math.toDegrees(Math.atan2(dy, dx)));
+		};
+		line.startXProperty().addListener(update);
+		line.startYProperty().addListener(update);
+		line.endXProperty().addListener(update);
+		line.endYProperty().addListener(update);
+		return arrowHead;
+	}
+
+	@Override
+	protected void unbindShape(Node node) {
+		Line line = (Line) (node instanceof Group
+				? ((Group) node).getChildren().get(0) : node);
+		line.startXProperty().unbind();
+		line.startYProperty().unbind();
+		line.endXProperty().unbind();
+		line.endYProperty().unbind();
+	}
+
+	@Override
+	public String getDefaultStyle() {
+		return DEFAULT_STYLE_CLASS;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The path elements of a batched edge, along with the geometry they were
+	 * last computed from.
+	 */
+	private static final class Segment {
+		double sx = Double.NaN, sy, tx, ty;
+		double[] points;
+		PathElement[] line;
+		PathElement[] arrow;
+	}
+
+	/**
+	 * The edges of a display sharing a style class, drawn as one path for
+	 * the lines and one for the arrow heads.
+	 */
+	private final class Batch {
+		final Parent m_parent;
+		final String m_style;
+		final Path m_lines = new Path();
+		final Path m_arrows = new Path();
+		final Map<EdgeItem, Segment> m_edges = new LinkedHashMap<>();
+		/** The modification counts of the tables the geometry is read from */
+		final Map<Table, Integer> m_mods = new IdentityHashMap<>();
+		boolean m_structure = true;
+
+		Batch(Parent parent, String style) {
+			m_parent = parent;
+			m_style = style;
+			m_lines.setMouseTransparent(true);
+			m_arrows.setMouseTransparent(true);
+			m_arrows.setFill(Color.BLACK);
+		}
+
+		void add(EdgeItem edge) {
+			m_edges.put(edge, new Segment());
+			m_structure = true;
+		}
+
+		void remove(EdgeItem edge) {
+			m_edges.remove(edge);
+			m_structure = true;
+		}
+
+		boolean isEmpty() {
+			return m_edges.isEmpty();
+		}
+
+		void dispose() {
+			m_lines.getElements().clear();
+			m_arrows.getElements().clear();
+			FxGraphicsLib.removeFromParent(m_lines);
+			FxGraphicsLib.removeFromParent(m_arrows);
+		}
+
+		/**
+		 * Checks if any of the tables holding the edges or their end points
+		 * changed since the last update.
+		 */
+		private boolean tablesChanged() {
+			boolean changed = false;
+			for (Map.Entry<Table, Integer> e : m_mods.entrySet()) {
+				int mod = e.getKey().getModificationCount();
+				if (mod != e.getValue()) {
+					e.setValue(mod);
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		private void track(Table t) {
+			if (!m_mods.containsKey(t)) {
+				m_mods.put(t, t.getModificationCount());
+			}
+		}
+
+		/**
+		 * Recomputes the elements of the edges that moved, and rebuilds the
+		 * element lists of the paths if edges were added or removed, or
+		 * changed their number of control points.
+		 */
+		void update() {
+			if (!m_structure && !tablesChanged())
+				return;
+			for (Iterator<Map.Entry<EdgeItem, Segment>> iter = m_edges
+					.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry<EdgeItem, Segment> e = iter.next();
+				EdgeItem edge = e.getKey();
+				if (!edge.isValid()) {
+					// kept until the display releases it
+					continue;
+				}
+				if (updateSegment(edge, e.getValue()))
+					m_structure = true;
+			}
+			if (m_structure) {
+				List<PathElement> lines = new ArrayList<>();
+				List<PathElement> arrows = new ArrayList<>();
+				for (Segment seg : m_edges.values()) {
+					for (PathElement pe : seg.line)
+						lines.add(pe);
+					if (seg.arrow != null) {
+						for (PathElement pe : seg.arrow)
+							arrows.add(pe);
+					}
+				}
+				m_lines.getElements().setAll(lines);
+				m_arrows.getElements().setAll(arrows);
+				m_structure = false;
+			}
+		}
 
-	public static void calcArrowHeadsAngle() {
+		/**
+		 * Updates the path elements of an edge if its geometry changed.
+		 * 
+		 * @return true if the number of path elements changed
+		 */
+		private boolean updateSegment(EdgeItem edge, Segment seg) {
+			VisualItem s = edge.getSourceItem(), t = edge.getTargetItem();
+			track(edge.getTable());
+			track(s.getTable());
+			track(t.getTable());
+			double sx = s.getX(), sy = s.getY();
+			double tx = t.getX(), ty = t.getY();
+			double[] pts = null;
+			if (m_pointsField != null && s != t
+					&& edge.getTable().getColumnNumber(m_pointsField) >= 0) {
+				Object o = edge.get(m_pointsField);
+				if (o instanceof double[])
+					pts = (double[]) o;
+			}
+			if (sx == seg.sx && sy == seg.sy && tx == seg.tx && ty == seg.ty
+					&& pts == seg.points && seg.line != null)
+				return false;
 
-		int accordingEdge = 0;
-		for (Polygon arrowHead:arrowHeadList) {
-			if(edgeList.get(accordingEdge) != null) {
-				EdgeItem edge = (EdgeItem) edgeList.get(accordingEdge);
+			int n = pts == null ? 0 : pts.length / 2;
+			boolean resized = seg.line == null || seg.line.length != n + 2
+					|| (seg.arrow == null) != (s == t);
+			if (resized) {
+				seg.line = new PathElement[n + 2];
+				seg.line[0] = new MoveTo();
+				for (int i = 1; i < n + 2; ++i)
+					seg.line[i] = new LineTo();
+				seg.arrow = s == t ? null : new PathElement[] { new MoveTo(),
+						new LineTo(), new LineTo(), new ClosePath() };
+			}
+			seg.sx = sx;
+			seg.sy = sy;
+			seg.tx = tx;
+			seg.ty = ty;
+			seg.points = pts;
 
-				javafx.geometry.Point2D targetPoint = new javafx.geometry.Point2D(edge.getTargetItem().xProperty().getValue(), edge.getTargetItem().yProperty().getValue());
-				javafx.geometry.Point2D sourcePoint = new javafx.geometry.Point2D(edge.getSourceItem().xProperty().getValue(), edge.getSourceItem().yProperty().getValue());
-				javafx.geometry.Point2D middlePoint = targetPoint.midpoint(sourcePoint);
-				javafx.geometry.Point2D quarterPoint = targetPoint.midpoint(middlePoint);
+			// polyline coordinates, including the end points
+			double[] xy = new double[2 * (n + 2)];
+			xy[0] = sx;
+			xy[1] = sy;
+			if (n > 0)
+				System.arraycopy(pts, 0, xy, 2, 2 * n);
+			xy[2 * n + 2] = tx;
+			xy[2 * n + 3] = ty;
 
-				Double currentx = edge.getTargetItem().getX() - edge.getSourceItem().getX() - (0.5 * arrowHead.getBoundsInLocal().getMaxX());
-				Double currenty = edge.getTargetItem().getY() - edge.getSourceItem().getY() - (0.5 * arrowHead.getBoundsInLocal().getMaxY());
-				Double currentAngle = Math.toDegrees(Math.atan2(currenty, currentx));
+			MoveTo m = (MoveTo) seg.line[0];
+			m.setX(sx);
+			m.setY(sy);
+			for (int i = 1; i < n + 2; ++i) {
+				LineTo l = (LineTo) seg.line[i];
+				l.setX(xy[2 * i]);
+				l.setY(xy[2 * i + 1]);
+			}
+			if (seg.arrow != null)
+				placeArrow(seg.arrow, xy);
+			return resized;
+		}
+	}
 
-				arrowHead.setTranslateX(quarterPoint.getX());
-				arrowHead.setTranslateY(quarterPoint.getY());
-				arrowHead.setRotate(currentAngle);
-				accordingEdge++;
+	/**
+	 * Positions the arrow head elements at three quarters of the length of
+	 * the given polyline, aligned with the segment it falls on.
+	 */
+	private static void placeArrow(PathElement[] arrow, double[] xy) {
+		int n = xy.length / 2;
+		double total = 0;
+		for (int i = 1; i < n; ++i)
+			total += Math.sqrt(sq(xy[2 * i] - xy[2 * i - 2])
+					+ sq(xy[2 * i + 1] - xy[2 * i - 1]));
+		double target = 0.75 * total, walked = 0;
+		double ax = xy[0], ay = xy[1], dx = 0, dy = 0;
+		for (int i = 1; i < n; ++i) {
+			dx = xy[2 * i] - xy[2 * i - 2];
+			dy = xy[2 * i + 1] - xy[2 * i - 1];
+			double l = Math.sqrt(dx * dx + dy * dy);
+			if (walked + l >= target || i == n - 1) {
+				double f = l > 0 ? (target - walked) / l : 0;
+				ax = xy[2 * i - 2] + f * dx;
+				ay = xy[2 * i - 1] + f * dy;
+				break;
+			}
+			walked += l;
+		}
+		double a = Math.atan2(dy, dx);
+		double cos = Math.cos(a), sin = Math.sin(a);
+		for (int i = 0; i < 3; ++i) {
+			double px = ARROW_SHAPE[2 * i], py = ARROW_SHAPE[2 * i + 1];
+			double x = ax + px * cos - py * sin;
+			double y = ay + px * sin + py * cos;
+			if (i == 0) {
+				((MoveTo) arrow[0]).setX(x);
+				((MoveTo) arrow[0]).setY(y);
+			} else {
+				((LineTo) arrow[i]).setX(x);
+				((LineTo) arrow[i]).setY(y);
 			}
 		}
 	}
-	@Override
-	public String getDefaultStyle() {
-		return DEFAULT_STYLE_CLASS;
+
+	private static double sq(double d) {
+		return d * d;
 	}
 
 } // end of class EdgeRenderer
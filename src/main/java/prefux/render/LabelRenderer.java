@@ -30,7 +30,6 @@
  */
 package prefux.render;
 
-import javafx.application.Platform;
 import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
@@ -268,19 +267,34 @@ public class LabelRenderer extends AbstractShapeRenderer {
 	 * @see prefux.render.AbstractShapeRenderer#getRawShape(prefux.visual.VisualItem)
 	 */
 	protected Node getRawShape(VisualItem item, boolean bind) {
-		pane = new StackPane();
 		m_text = getText(item);
-		txt = new Label(m_text);
-		img = new ImageView(getImage(item));
-		pane.getChildren().add(img);
-		pane.getChildren().add(txt);
+		pane = reuse(StackPane.class);
+		if (pane != null) {
+			img = (ImageView) pane.getChildren().get(0);
+			txt = (Label) pane.getChildren().get(1);
+			img.setImage(getImage(item));
+			txt.setText(m_text);
+		} else {
+			pane = new StackPane();
+			txt = new Label(m_text);
+			img = new ImageView(getImage(item));
+			pane.getChildren().add(img);
+			pane.getChildren().add(txt);
+		}
+		final StackPane node = pane;
 		if (bind) {
-			Platform.runLater(() -> {
-				pane.layoutXProperty().bind(item.xProperty());
-				pane.layoutYProperty().bind(item.yProperty());
+			bindShape(item, node, () -> {
+				node.layoutXProperty().bind(item.xProperty());
+				node.layoutYProperty().bind(item.yProperty());
 			});
 		}
-		return pane;
+		return node;
+	}
+
+	@Override
+	protected void unbindShape(Node node) {
+		node.layoutXProperty().unbind();
+		node.layoutYProperty().unbind();
 	}
 
 	/**
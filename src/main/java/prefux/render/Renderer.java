@@ -31,8 +31,10 @@
 package prefux.render;
 
 
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import prefux.data.util.Point2D;
+import prefux.util.FxGraphicsLib;
 import prefux.visual.VisualItem;
 
 
@@ -68,6 +70,21 @@ public interface Renderer {
      */
     public void render(Parent g, VisualItem item, boolean bind);
 
+    /**
+     * Release the node rendered for an item, e.g. because the item was
+     * removed, filtered or left the visible region. The node is detached
+     * from its parent and from the item. Renderers may unbind and keep the
+     * node for reuse with other items.
+     * @param item the visual item whose node to release
+     */
+    public default void release(VisualItem item) {
+        Node node = item.getNode();
+        if (node != null) {
+            item.setNode(null);
+            FxGraphicsLib.removeFromParent(node);
+        }
+    }
+
     /**
      * Returns true if the Point is located inside the extents of the item.
      * This calculation matches against the exaxt item shape, and so is more
@@ -34,7 +34,6 @@
  */
 package prefux.render;
 
-import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.ObjectBinding;
 import javafx.scene.Node;
@@ -149,10 +148,16 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 	protected Node getRawShape(VisualItem item, boolean bind) {
 		double radius = useItemSize ? item.getSize() * getBaseSize()
 		        : getBaseSize();
-		final Circle circle = new Circle(radius);
+		Circle pooled = reuse(Circle.class);
+		if (pooled != null) {
+			pooled.setRadius(radius);
+		} else {
+			pooled = new Circle(radius);
+		}
+		final Circle circle = pooled;
 		if (bind) {
 
-			Platform.runLater(() -> {
+			bindShape(item, circle, () -> {
 				circle.centerXProperty().bind(item.xProperty());
 				circle.centerYProperty().bind(item.yProperty());
 				if (useItemSize) {
@@ -182,6 +187,18 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 		return circle;
 	}
 
+	@Override
+	protected void unbindShape(Node node) {
+		Circle circle = (Circle) node;
+		circle.centerXProperty().unbind();
+		circle.centerYProperty().unbind();
+		circle.radiusProperty().unbind();
+		circle.fillProperty().unbind();
+		// the fill is not set when reused with fill mode NONE, restore the
+		// default fill of a new circle
+		circle.setFill(Color.BLACK);
+	}
+
 	/**
 	 * If set to true, the size of the node is bound to the size attribute of the visual item.
 	 * @param value
@@ -95,6 +95,56 @@ public class DataLib {
 
     // ------------------------------------------------------------------------
     
+    /**
+     * Get a sketch of the distribution of a numeric data field, supporting
+     * approximate quantile queries.
+     * @param tuples an iterator over tuples
+     * @param field the column / data field name
+     * @return a quantile sketch of the data field values
+     */
+    public static QuantileSketch quantileSketch(Iterator tuples, String field) {
+        QuantileSketch sketch = new QuantileSketch();
+        while ( tuples.hasNext() ) {
+            sketch.update(((Tuple)tuples.next()).getDouble(field));
+        }
+        return sketch;
+    }
+    
+    /**
+     * Get a sketch of the distribution of a numeric data field, supporting
+     * approximate quantile queries. For tables, the sketch maintained by the
+     * column metadata is returned, which must not be modified.
+     * @param tuples a TupleSet
+     * @param field the column / data field name
+     * @return a quantile sketch of the data field values
+     */
+    public static QuantileSketch quantileSketch(TupleSet tuples, String field) {
+        if ( tuples instanceof Table ) {
+            ColumnMetadata md = ((Table)tuples).getMetadata(field);
+            return md.getQuantileSketch();
+        } else {
+            return quantileSketch(tuples.tuples(), field);
+        }
+    }
+    
+    /**
+     * Compute approximate n-quantile boundaries of a numeric data field.
+     * The result is an n+1 size array holding the minimum value in the
+     * first entry and then n quantile boundaries in the subsequent entries.
+     * @param tuples a TupleSet
+     * @param field the column / data field name
+     * @param n the number of quantile boundaries
+     * @return an n+1 array of doubles containing the minimum value and
+     * the quantile boundary values, in that order
+     * @see MathLib#quantiles(int, double[])
+     * @see QuantileSketch#getQuantiles(int)
+     */
+    public static double[] quantiles(TupleSet tuples, String field, int n) {
+        return quantileSketch(tuples, field).getQuantiles(n);
+    }
+
+    // ------------------------------------------------------------------------
+    
     /**
      * Get a sorted array containing all column values for a given tuple
      * iterator and field.
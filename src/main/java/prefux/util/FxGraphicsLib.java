@@ -84,6 +84,21 @@ public class FxGraphicsLib {
 
 	}
 
+	/**
+	 * Removes a node from its parent, if it has one.
+	 * 
+	 * @param child
+	 *            the node to remove
+	 */
+	public static void removeFromParent(Node child) {
+		Parent g = child.getParent();
+		if (g instanceof Pane) {
+			((Pane) g).getChildren().remove(child);
+		} else if (g instanceof Group) {
+			((Group) g).getChildren().remove(child);
+		}
+	}
+
 	public static boolean find(Parent p, Node node) {
 		return p.lookupAll("#" + node.getId()).stream()
 				.anyMatch(n -> n.equals(node));
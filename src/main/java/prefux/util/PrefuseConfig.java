@@ -55,12 +55,26 @@ import prefux.util.io.IOLib;
  * <li><code>activity.threadPriority</code> - the thread priority of the
  * ActivityManager thread. The value should be between 1 and 10, with 5 being
  * the standard Java default. The default prefux setting is 6.</li>
+ * <li><code>activity.frameClock</code> - if true, activities are stepped
+ * once per JavaFX pulse instead of on the ActivityManager thread. The
+ * default is false.</li>
+ * <li><code>activity.frameBudget</code> - the time in milliseconds that
+ * activities may take per frame before low priority activities are
+ * deferred, when stepping activities per frame. The default is 8.</li>
+ * <li><code>action.parallelThreshold</code> - the minimum number of items
+ * an ItemAction must process before running in parallel, when parallel
+ * execution is enabled for the action. The default is 2048.</li>
  * <li><code>data.io.worker.threadPriority</code> - the thread priority of
  * asynchronous database worker threads. The default prefux setting is 5
  * (same as the Java thread default).</li>
+ * <li><code>data.io.worker.threads</code> - the maximum number of
+ * asynchronous database worker threads. The default prefux setting is 2.</li>
+ * <li><code>data.io.sql.poolSize</code> - the maximum number of pooled
+ * connections per database. The default prefux setting is 4.</li>
  * <li><code>data.filter.optimizeThreshold</code> - the minimum number of items
  * that must be contained in a table for optimized query plans to be
- * considered. The default value is 300.</li>
+ * considered. The default value is 300. Indexed boolean columns, such as
+ * the visibility flags of visual items, are always used.</li>
  * <li><code>util.logdir</code> - the directory in which to write prefux log
  * files. The default is "null" which defaults logging output to standard
  * output.</li> 
@@ -221,12 +235,17 @@ public class PrefuseConfig extends Properties {
     private void setDefaults() {        
         setProperty("size.scale2D", "0.5");
         setProperty("activity.threadPriority", "6");
+        setProperty("activity.frameClock", "false");
+        setProperty("activity.frameBudget", "8");
+        setProperty("action.parallelThreshold", "2048");
         setProperty("data.delimiter", ".");
         setProperty("data.graph.nodeGroup", "nodes");
         setProperty("data.graph.edgeGroup", "edges");
         setProperty("data.visual.fieldPrefix", "_");
         setProperty("data.io.worker.threadPriority", 
                 String.valueOf(Thread.NORM_PRIORITY));
+        setProperty("data.io.worker.threads", "2");
+        setProperty("data.io.sql.poolSize", "4");
         
         // prefux will only attempt to optimize filtering operations
         // on tables with more rows than this threshold value
@@ -0,0 +1,384 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Mergeable sketch of the distribution of a stream of double values,
+ * answering approximate quantile and rank queries in bounded memory. The
+ * sketch follows the compactor design of Karnin, Lang and Liberty ("KLL"):
+ * values are collected in a hierarchy of buffers, and whenever a buffer
+ * fills up it is sorted and every other value is promoted to the next level,
+ * where it stands in for twice as many input values. The buffer capacities
+ * shrink geometrically towards the lower levels, so that the sketch retains
+ * on the order of <code>k</code> values regardless of the number of values
+ * seen, while answering rank queries with an error of roughly
+ * <code>1.7/k</code> (i.e., about one percent at the default setting of
+ * 200). The exact minimum and maximum are always retained.
+ * 
+ * <p>Two sketches can be combined using {@link #merge(QuantileSketch)}, so
+ * that sketches computed over disjoint partitions of a data set (for
+ * example, on separate loader threads) yield a sketch of the whole data set
+ * with the same error guarantee. Sketches do not support removal of values;
+ * data structures maintaining a sketch over changing data, such as
+ * {@link prefux.data.column.ColumnMetadata}, rebuild it when values are
+ * removed.</p>
+ * 
+ * <p>Compaction offsets are drawn from a generator with a fixed seed, so
+ * that a given input sequence always results in the same sketch.</p>
+ */
+public class QuantileSketch {
+
+    /** The default accuracy parameter of a sketch. */
+    public static final int DEFAULT_K = 200;
+    
+    private static final double SHRINK = 2.0/3.0;
+    
+    private final int m_k;
+    private final Random m_rand = new Random(0x5ca1ab1eL);
+    
+    private double[][] m_levels = new double[1][8];
+    private int[] m_sizes = new int[1];
+    private int m_size = 0;    // number of retained values
+    private int m_maxSize;     // total capacity of all levels
+    
+    private long m_count = 0;
+    private double m_min = Double.NaN;
+    private double m_max = Double.NaN;
+    
+    // sorted view of the retained values, built lazily for queries
+    private double[] m_sorted;
+    private long[] m_cumul;
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Create a new, empty QuantileSketch with the default accuracy.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+    
+    /**
+     * Create a new, empty QuantileSketch.
+     * @param k the accuracy parameter, approximately the number of values
+     * retained at the top level of the sketch. Rank errors are inversely
+     * proportional to this value.
+     */
+    public QuantileSketch(int k) {
+        if ( k < 8 )
+            throw new IllegalArgumentException("k must be at least 8: "+k);
+        m_k = k;
+        m_maxSize = capacity(0);
+    }
+    
+    /**
+     * Get the accuracy parameter of this sketch.
+     * @return the accuracy parameter
+     */
+    public int getK() {
+        return m_k;
+    }
+    
+    /**
+     * Get the number of values added to this sketch, including those
+     * added to merged sketches.
+     * @return the number of values summarized by this sketch
+     */
+    public long getCount() {
+        return m_count;
+    }
+    
+    /**
+     * Indicates if no values have been added to this sketch.
+     * @return true if the sketch is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return m_count == 0;
+    }
+    
+    /**
+     * Get the exact minimum value added to this sketch.
+     * @return the minimum value, or NaN if the sketch is empty
+     */
+    public double getMinimum() {
+        return m_min;
+    }
+    
+    /**
+     * Get the exact maximum value added to this sketch.
+     * @return the maximum value, or NaN if the sketch is empty
+     */
+    public double getMaximum() {
+        return m_max;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Updates
+    
+    /**
+     * Add a value to this sketch. NaN values are ignored.
+     * @param x the value to add
+     */
+    public void update(double x) {
+        if ( Double.isNaN(x) ) return;
+        if ( m_count == 0 || x < m_min ) m_min = x;
+        if ( m_count == 0 || x > m_max ) m_max = x;
+        ++m_count;
+        append(0, x);
+        if ( m_size >= m_maxSize )
+            compress();
+        m_sorted = null;
+    }
+    
+    /**
+     * Merge the values summarized by another sketch into this one. The
+     * other sketch is not modified.
+     * @param other the sketch to merge into this one
+     * @return this sketch
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if ( other == this ) {
+            throw new IllegalArgumentException(
+                "Can't merge a sketch into itself.");
+        }
+        if ( other.m_count == 0 ) return this;
+        
+        if ( m_count == 0 || other.m_min < m_min ) m_min = other.m_min;
+        if ( m_count == 0 || other.m_max > m_max ) m_max = other.m_max;
+        m_count += other.m_count;
+        
+        while ( m_levels.length < other.m_levels.length )
+            grow();
+        for ( int h=0; h<other.m_levels.length; ++h ) {
+            double[] l = other.m_levels[h];
+            for ( int i=0, n=other.m_sizes[h]; i<n; ++i )
+                append(h, l[i]);
+        }
+        while ( m_size >= m_maxSize )
+            compress();
+        m_sorted = null;
+        return this;
+    }
+    
+    /**
+     * Remove all values from this sketch.
+     */
+    public void clear() {
+        m_levels = new double[1][8];
+        m_sizes = new int[1];
+        m_size = 0;
+        m_maxSize = capacity(0);
+        m_count = 0;
+        m_min = m_max = Double.NaN;
+        m_sorted = null;
+    }
+    
+    private void append(int h, double x) {
+        double[] l = m_levels[h];
+        int n = m_sizes[h];
+        if ( n == l.length )
+            m_levels[h] = l = ArrayLib.resize(l, 2*n);
+        l[n] = x;
+        m_sizes[h] = n+1;
+        ++m_size;
+    }
+    
+    /**
+     * Capacity of the given level, given the current number of levels.
+     */
+    private int capacity(int h) {
+        int depth = m_levels.length - h - 1;
+        return (int)Math.ceil(m_k * Math.pow(SHRINK, depth)) + 1;
+    }
+    
+    private void grow() {
+        int h = m_levels.length;
+        double[][] levels = new double[h+1][];
+        System.arraycopy(m_levels, 0, levels, 0, h);
+        levels[h] = new double[8];
+        m_levels = levels;
+        m_sizes = ArrayLib.resize(m_sizes, h+1);
+        
+        m_maxSize = 0;
+        for ( int i=0; i<=h; ++i )
+            m_maxSize += capacity(i);
+    }
+    
+    /**
+     * Compact the lowest full level(s) until the sketch fits its capacity.
+     */
+    private void compress() {
+        for ( int h=0; h<m_levels.length; ++h ) {
+            if ( m_sizes[h] < capacity(h) )
+                continue;
+            if ( h+1 == m_levels.length )
+                grow();
+            
+            // sort the level and promote every other value. for an odd
+            // number of values, the most recently added one stays behind.
+            double[] l = m_levels[h];
+            int n = m_sizes[h];
+            int m = n & ~1;
+            double last = l[n-1];
+            Arrays.sort(l, 0, m);
+            for ( int i=m_rand.nextBoolean() ? 1 : 0; i<m; i+=2 )
+                append(h+1, l[i]);
+            m_size -= n;
+            m_sizes[h] = 0;
+            if ( m < n )
+                append(h, last);
+            if ( m_size < m_maxSize )
+                break;
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Queries
+    
+    private void sortedView() {
+        if ( m_sorted != null ) return;
+        
+        double[] v = new double[m_size];
+        int[] lvl = new int[m_size];
+        int n = 0;
+        for ( int h=0; h<m_levels.length; ++h ) {
+            System.arraycopy(m_levels[h], 0, v, n, m_sizes[h]);
+            Arrays.fill(lvl, n, n+m_sizes[h], h);
+            n += m_sizes[h];
+        }
+        ArrayLib.sort(v, lvl, n);
+        
+        // a value retained at level h stands in for 2^h input values
+        long[] w = new long[n];
+        long cumul = 0;
+        for ( int i=0; i<n; ++i ) {
+            cumul += 1L << lvl[i];
+            w[i] = cumul;
+        }
+        m_sorted = v;
+        m_cumul = w;
+    }
+    
+    /**
+     * Get the approximate value at the given quantile. The value returned
+     * for a fraction <code>q</code> approximates the value at index
+     * <code>floor(q*(n-1))</code> of the sorted input values, where
+     * <code>n</code> is the number of values. Fractions of 0 and 1 return
+     * the exact minimum and maximum values.
+     * @param q the quantile fraction, between 0 and 1
+     * @return the approximate quantile value, or NaN if the sketch is empty
+     */
+    public double getQuantile(double q) {
+        if ( m_count == 0 ) return Double.NaN;
+        if ( q <= 0 ) return m_min;
+        if ( q >= 1 ) return m_max;
+        return value((long)(q*(m_count-1)));
+    }
+    
+    /**
+     * Value at the given (0-based) position in the weighted sorted order.
+     */
+    private double value(long pos) {
+        sortedView();
+        long[] w = m_cumul;
+        int lo = 0, hi = w.length-1;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( w[mid] > pos )
+                hi = mid;
+            else
+                lo = mid+1;
+        }
+        return m_sorted[lo];
+    }
+    
+    /**
+     * Compute approximate n-quantile boundaries of the values in this
+     * sketch, in the format of {@link MathLib#quantiles(int, double[])}:
+     * the result is an n+1 size array holding the minimum value in the
+     * first entry and then n quantile boundaries in the subsequent entries,
+     * the last being the maximum value.
+     * @param n the number of quantile boundaries
+     * @return an n+1 array of doubles containing the minimum value and
+     * the quantile boundary values, in that order. All values are NaN if
+     * the sketch is empty.
+     */
+    public double[] getQuantiles(int n) {
+        double[] qtls = new double[n+1];
+        if ( m_count == 0 ) {
+            Arrays.fill(qtls, Double.NaN);
+            return qtls;
+        }
+        qtls[0] = m_min;
+        qtls[n] = m_max;
+        for ( int i=1; i<n; ++i ) {
+            qtls[i] = value(((m_count-1)*i)/n);
+        }
+        return qtls;
+    }
+    
+    /**
+     * Get the approximate fraction of values strictly less than the
+     * given value.
+     * @param x the value to rank
+     * @return the approximate rank of the value, between 0 and 1, or NaN
+     * if the sketch is empty
+     */
+    public double getRank(double x) {
+        if ( m_count == 0 ) return Double.NaN;
+        if ( x <= m_min ) return 0;
+        if ( x > m_max ) return 1;
+        sortedView();
+        double[] v = m_sorted;
+        int lo = 0, hi = v.length;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( v[mid] < x )
+                lo = mid+1;
+            else
+                hi = mid;
+        }
+        long below = lo==0 ? 0 : m_cumul[lo-1];
+        return ((double)below) / m_cumul[m_cumul.length-1];
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "QuantileSketch[k="+m_k+", count="+m_count
+            +", retained="+m_size+", levels="+m_levels.length+"]";
+    }
+    
+} // end of class QuantileSketch
@@ -0,0 +1,339 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.collections;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash multimap holding (key,value) associations of type
+ * <tt>(int-->int)</tt>, where keys are non-negative and expected to be
+ * reasonably dense, such as table row numbers. Each (key,value) pair is
+ * stored at most once. Membership tests, insertions and removals of pairs
+ * take constant expected time, and all values of a key can be traversed
+ * without allocating objects using {@link #first(int)},
+ * {@link #next(int)} and {@link #value(int)}:
+ * 
+ * <pre>
+ * for ( int e = map.first(key); e &gt;= 0; e = map.next(e) ) {
+ *     int value = map.value(e);
+ *     ...
+ * }
+ * </pre>
+ * 
+ * <p>Entries are kept in parallel primitive arrays. Pairs are chained in hash
+ * buckets for membership tests, and the entries of each key form a doubly
+ * linked list whose head is looked up directly by key.</p>
+ */
+public class IntIntMultiMap {
+
+    private static final int NIL = -1;
+    
+    // per key
+    private int[] m_head  = new int[0];
+    private int[] m_count = new int[0];
+    
+    // per entry
+    private int[] m_key;
+    private int[] m_val;
+    private int[] m_chain;  // next entry in hash bucket, or free list
+    private int[] m_knext;  // next entry with the same key
+    private int[] m_kprev;  // previous entry with the same key
+    
+    private int[] m_buckets;
+    private int m_free = NIL;
+    private int m_used = 0;
+    private int m_size = 0;
+    
+    /**
+     * Create a new, empty IntIntMultiMap.
+     */
+    public IntIntMultiMap() {
+        this(16);
+    }
+    
+    /**
+     * Create a new, empty IntIntMultiMap with room for the given number of
+     * pairs before the map needs to grow.
+     * @param capacity the initial capacity
+     */
+    public IntIntMultiMap(int capacity) {
+        capacity = Math.max(capacity, 4);
+        m_key = new int[capacity];
+        m_val = new int[capacity];
+        m_chain = new int[capacity];
+        m_knext = new int[capacity];
+        m_kprev = new int[capacity];
+        int nb = Integer.highestOneBit(capacity) << 1;
+        m_buckets = new int[nb];
+        Arrays.fill(m_buckets, NIL);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Returns the number of (key,value) pairs in the map.
+     * @return the number of pairs
+     */
+    public int size() {
+        return m_size;
+    }
+    
+    /**
+     * Returns the number of values associated with the given key.
+     * @param key the key
+     * @return the number of values for the key
+     */
+    public int count(int key) {
+        return ( key >= 0 && key < m_count.length ? m_count[key] : 0 );
+    }
+    
+    /**
+     * Indicates if the given (key,value) pair is contained in the map.
+     * @param key the key
+     * @param val the value
+     * @return true if the pair is contained, false otherwise
+     */
+    public boolean contains(int key, int val) {
+        return find(key, val) != NIL;
+    }
+    
+    /**
+     * Returns the first entry of the given key, or a negative number if
+     * the key has no values.
+     * @param key the key
+     * @return an entry handle for use with {@link #next(int)} and
+     * {@link #value(int)}
+     */
+    public int first(int key) {
+        return ( key >= 0 && key < m_head.length ? m_head[key] : NIL );
+    }
+    
+    /**
+     * Returns the entry following the given one with the same key, or a
+     * negative number if there is none.
+     * @param entry the current entry handle
+     * @return the next entry handle
+     */
+    public int next(int entry) {
+        return m_knext[entry];
+    }
+    
+    /**
+     * Returns the value stored at the given entry.
+     * @param entry the entry handle
+     * @return the value of the entry
+     */
+    public int value(int entry) {
+        return m_val[entry];
+    }
+    
+    /**
+     * Returns an iterator over the values of the given key. The map should
+     * not be modified while the iteration is in progress.
+     * @param key the key
+     * @return an iterator over the key's values
+     */
+    public IntIterator values(final int key) {
+        return new IntIterator() {
+            int m_cur = first(key);
+            public boolean hasNext() {
+                return m_cur != NIL;
+            }
+            public int nextInt() {
+                if ( m_cur == NIL )
+                    throw new NoSuchElementException();
+                int v = m_val[m_cur];
+                m_cur = m_knext[m_cur];
+                return v;
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Add a (key,value) pair to the map.
+     * @param key the key, must be non-negative
+     * @param val the value
+     * @return true if the pair was added, false if it was already present
+     */
+    public boolean put(int key, int val) {
+        if ( key < 0 )
+            throw new IllegalArgumentException("Negative key: "+key);
+        if ( find(key, val) != NIL )
+            return false;
+        
+        if ( key >= m_head.length ) {
+            int len = Math.max(key+1, 3*m_head.length/2 + 1);
+            int olen = m_head.length;
+            m_head = Arrays.copyOf(m_head, len);
+            m_count = Arrays.copyOf(m_count, len);
+            Arrays.fill(m_head, olen, len, NIL);
+        }
+        
+        int e;
+        if ( m_free != NIL ) {
+            e = m_free;
+            m_free = m_chain[e];
+        } else {
+            if ( m_used == m_key.length )
+                grow();
+            e = m_used++;
+        }
+        m_key[e] = key;
+        m_val[e] = val;
+        
+        int b = bucket(key, val);
+        m_chain[e] = m_buckets[b];
+        m_buckets[b] = e;
+        
+        int h = m_head[key];
+        m_knext[e] = h;
+        m_kprev[e] = NIL;
+        if ( h != NIL ) m_kprev[h] = e;
+        m_head[key] = e;
+        m_count[key]++;
+        
+        if ( ++m_size > 3*(m_buckets.length >> 2) )
+            rehash(m_buckets.length << 1);
+        return true;
+    }
+    
+    /**
+     * Remove a (key,value) pair from the map.
+     * @param key the key
+     * @param val the value
+     * @return true if the pair was removed, false if it was not present
+     */
+    public boolean remove(int key, int val) {
+        int b = bucket(key, val);
+        int prev = NIL;
+        for ( int e = m_buckets[b]; e != NIL; prev = e, e = m_chain[e] ) {
+            if ( m_key[e] == key && m_val[e] == val ) {
+                if ( prev == NIL )
+                    m_buckets[b] = m_chain[e];
+                else
+                    m_chain[prev] = m_chain[e];
+                unlinkKey(e);
+                m_chain[e] = m_free;
+                m_free = e;
+                --m_size;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Remove all values associated with the given key.
+     * @param key the key
+     * @return the number of removed pairs
+     */
+    public int removeAll(int key) {
+        int n = 0;
+        for ( int e = first(key); e != NIL; ) {
+            int nxt = m_knext[e];
+            remove(key, m_val[e]);
+            e = nxt; ++n;
+        }
+        return n;
+    }
+    
+    /**
+     * Remove all pairs from the map.
+     */
+    public void clear() {
+        Arrays.fill(m_head, NIL);
+        Arrays.fill(m_count, 0);
+        Arrays.fill(m_buckets, NIL);
+        m_free = NIL;
+        m_used = 0;
+        m_size = 0;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    private int find(int key, int val) {
+        for ( int e = m_buckets[bucket(key, val)]; e != NIL; e = m_chain[e] ) {
+            if ( m_key[e] == key && m_val[e] == val )
+                return e;
+        }
+        return NIL;
+    }
+    
+    private int bucket(int key, int val) {
+        int h = key * 0x9E3779B9 + val;
+        h ^= (h >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+        return h & (m_buckets.length - 1);
+    }
+    
+    private void unlinkKey(int e) {
+        int key = m_key[e];
+        int p = m_kprev[e], n = m_knext[e];
+        if ( p == NIL )
+            m_head[key] = n;
+        else
+            m_knext[p] = n;
+        if ( n != NIL )
+            m_kprev[n] = p;
+        m_count[key]--;
+    }
+    
+    private void grow() {
+        int len = 3*m_key.length/2 + 1;
+        m_key = Arrays.copyOf(m_key, len);
+        m_val = Arrays.copyOf(m_val, len);
+        m_chain = Arrays.copyOf(m_chain, len);
+        m_knext = Arrays.copyOf(m_knext, len);
+        m_kprev = Arrays.copyOf(m_kprev, len);
+    }
+    
+    private void rehash(int nbuckets) {
+        m_buckets = new int[nbuckets];
+        Arrays.fill(m_buckets, NIL);
+        // re-chain all live entries, walking the key lists. the chain
+        // links of free entries form the free list and are left intact.
+        for ( int k=0; k<m_head.length; ++k ) {
+            for ( int e = m_head[k]; e != NIL; e = m_knext[e] ) {
+                int b = bucket(m_key[e], m_val[e]);
+                m_chain[e] = m_buckets[b];
+                m_buckets[b] = e;
+            }
+        }
+    }
+    
+} // end of class IntIntMultiMap
@@ -0,0 +1,522 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.collections;
+
+import java.util.Arrays;
+
+import prefux.util.ArrayLib;
+
+/**
+ * Spatial index of axis-aligned rectangles keyed by non-negative int ids,
+ * such as table row numbers, supporting region queries, nearest neighbor
+ * queries and bounding box computation.
+ * 
+ * <p>The index is a bucketed <i>loose</i> quadtree: each node covers a
+ * square cell, but holds any rectangle whose center lies in the cell and
+ * whose extent is at most half the cell size, so that the rectangles of a
+ * node lie within a square twice the size of its cell. Rectangles thus
+ * never straddle cell boundaries, and moving a rectangle only requires
+ * re-linking it when it leaves the cell of its node, which makes the
+ * structure well suited to continuously animated items. Nodes hold up to
+ * a few rectangles before being split, and the root grows as needed to
+ * cover rectangles outside of the current extent.</p>
+ * 
+ * <p>Entries and nodes are stored in parallel primitive arrays. Each node
+ * caches the bounding box of its subtree, which is recomputed lazily and
+ * only for subtrees that changed since the last bounds query.</p>
+ */
+public class LooseQuadTree {
+
+    private static final int NIL = -1;
+    /** Number of entries a node holds before it is split. */
+    private static final int BUCKET = 8;
+    /** Minimum cell size relative to the root cell, limits tree depth. */
+    private static final double MIN_CELL = 1.0 / (1<<24);
+    
+    // per entry, indexed by id
+    private double[] m_x0 = new double[0];
+    private double[] m_y0 = new double[0];
+    private double[] m_x1 = new double[0];
+    private double[] m_y1 = new double[0];
+    private int[] m_enode = new int[0]; // containing node, or NIL
+    private int[] m_enext = new int[0]; // next entry in node
+    private int[] m_eprev = new int[0]; // previous entry in node
+    private int m_size = 0;
+    
+    // per node
+    private double[] m_cx;    // cell center
+    private double[] m_cy;
+    private double[] m_half;  // half of the cell size
+    private int[] m_parent;   // parent node, or next free node
+    private int[] m_child;    // 4 children per node
+    private int[] m_head;     // first entry of the node
+    private int[] m_nsize;    // number of entries in the node
+    private int[] m_count;    // number of entries in the subtree
+    private boolean[] m_split;
+    private boolean[] m_dirty;
+    private double[] m_bx0;   // cached bounds of the subtree
+    private double[] m_by0;
+    private double[] m_bx1;
+    private double[] m_by1;
+    private int m_nodes = 0;
+    private int m_free = NIL;
+    private int m_root = NIL;
+    
+    // traversal stack
+    private int[] m_stack = new int[64];
+    
+    // nearest neighbor search state
+    private double m_px, m_py, m_best, m_bestArea;
+    private int m_bestId;
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Create a new, empty LooseQuadTree.
+     */
+    public LooseQuadTree() {
+        allocNodes(16);
+    }
+    
+    /**
+     * Get the number of rectangles in the index.
+     * @return the number of indexed rectangles
+     */
+    public int size() {
+        return m_size;
+    }
+    
+    /**
+     * Indicates if the index contains a rectangle for the given id.
+     * @param id the id to look up
+     * @return true if the id is indexed, false otherwise
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < m_enode.length && m_enode[id] != NIL;
+    }
+    
+    /**
+     * Remove all rectangles from the index.
+     */
+    public void clear() {
+        Arrays.fill(m_enode, NIL);
+        m_size = 0;
+        m_nodes = 0;
+        m_free = NIL;
+        m_root = NIL;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Updates
+    
+    /**
+     * Add a rectangle to the index, or move the rectangle of an already
+     * indexed id.
+     * @param id the non-negative id of the rectangle
+     * @param x the minimum x-coordinate
+     * @param y the minimum y-coordinate
+     * @param w the width, must not be negative
+     * @param h the height, must not be negative
+     */
+    public void put(int id, double x, double y, double w, double h) {
+        if ( id < 0 )
+            throw new IllegalArgumentException("Negative id: "+id);
+        if ( !Double.isFinite(x) || !Double.isFinite(y) ||
+             !Double.isFinite(w) || !Double.isFinite(h) || w < 0 || h < 0 )
+            throw new IllegalArgumentException(
+                "Invalid rectangle for id "+id+": "+x+","+y+","+w+","+h);
+        if ( id >= m_enode.length )
+            allocEntries(id+1);
+        
+        double cx = x + w/2, cy = y + h/2, e = Math.max(w, h)/2;
+        int n = m_enode[id];
+        m_x0[id] = x;   m_y0[id] = y;
+        m_x1[id] = x+w; m_y1[id] = y+h;
+        
+        if ( n != NIL ) {
+            if ( fits(n, cx, cy, e) ) {
+                // still contained in its node, only the bounds change
+                markDirty(n);
+                return;
+            }
+            unlink(id);
+        } else {
+            ++m_size;
+        }
+        insert(id, cx, cy, e);
+    }
+    
+    /**
+     * Remove the rectangle of the given id from the index.
+     * @param id the id to remove
+     * @return true if the id was indexed, false otherwise
+     */
+    public boolean remove(int id) {
+        if ( !contains(id) ) return false;
+        unlink(id);
+        --m_size;
+        return true;
+    }
+    
+    private boolean fits(int n, double cx, double cy, double e) {
+        double h = m_half[n];
+        return e <= h && Math.abs(cx-m_cx[n]) <= h
+                      && Math.abs(cy-m_cy[n]) <= h;
+    }
+    
+    private void insert(int id, double cx, double cy, double e) {
+        if ( m_root == NIL ) {
+            m_root = newNode(NIL, cx, cy, Math.max(e, 1));
+        }
+        while ( !fits(m_root, cx, cy, e) ) {
+            grow(cx, cy);
+        }
+        
+        // descend as long as the rectangle fits the child cells
+        int n = m_root;
+        while ( m_split[n] && e <= m_half[n]/2 ) {
+            int q = quadrant(n, cx, cy);
+            int c = m_child[4*n+q];
+            if ( c == NIL ) {
+                double h = m_half[n]/2;
+                c = newNode(n, m_cx[n] + ((q&1)==0 ? -h : h),
+                               m_cy[n] + ((q&2)==0 ? -h : h), h);
+                m_child[4*n+q] = c;
+            }
+            n = c;
+        }
+        link(id, n);
+        
+        if ( !m_split[n] && m_nsize[n] > BUCKET &&
+             m_half[n] > m_half[m_root]*MIN_CELL )
+        {
+            split(n);
+        }
+    }
+    
+    private void split(int n) {
+        m_split[n] = true;
+        double h = m_half[n]/2;
+        int id = m_head[n];
+        while ( id != NIL ) {
+            int next = m_enext[id];
+            double e = Math.max(m_x1[id]-m_x0[id], m_y1[id]-m_y0[id])/2;
+            if ( e <= h ) {
+                unlink(id);
+                insert(id, (m_x0[id]+m_x1[id])/2, (m_y0[id]+m_y1[id])/2, e);
+            }
+            id = next;
+        }
+    }
+    
+    /**
+     * Double the root cell, extending it towards the given point.
+     */
+    private void grow(double cx, double cy) {
+        int r = m_root;
+        double h = m_half[r];
+        double nx = m_cx[r] + (cx < m_cx[r] ? -h : h);
+        double ny = m_cy[r] + (cy < m_cy[r] ? -h : h);
+        int root = newNode(NIL, nx, ny, 2*h);
+        m_split[root] = true;
+        m_child[4*root + quadrant(root, m_cx[r], m_cy[r])] = r;
+        m_parent[r] = root;
+        m_count[root] = m_count[r];
+        m_dirty[root] = true;
+        m_root = root;
+    }
+    
+    private int quadrant(int n, double x, double y) {
+        return (x >= m_cx[n] ? 1 : 0) | (y >= m_cy[n] ? 2 : 0);
+    }
+    
+    private void link(int id, int n) {
+        int head = m_head[n];
+        m_enode[id] = n;
+        m_eprev[id] = NIL;
+        m_enext[id] = head;
+        if ( head != NIL ) m_eprev[head] = id;
+        m_head[n] = id;
+        ++m_nsize[n];
+        for ( int p=n; p != NIL; p = m_parent[p] )
+            ++m_count[p];
+        markDirty(n);
+    }
+    
+    private void unlink(int id) {
+        int n = m_enode[id];
+        int prev = m_eprev[id], next = m_enext[id];
+        if ( prev != NIL ) m_enext[prev] = next; else m_head[n] = next;
+        if ( next != NIL ) m_eprev[next] = prev;
+        m_enode[id] = NIL;
+        --m_nsize[n];
+        markDirty(n);
+        
+        // update subtree counts, releasing nodes that became empty
+        for ( int p=n; p != NIL; ) {
+            int parent = m_parent[p];
+            if ( --m_count[p] == 0 && p != m_root ) {
+                for ( int q=0; q<4; ++q ) {
+                    if ( m_child[4*parent+q] == p )
+                        m_child[4*parent+q] = NIL;
+                }
+                freeNode(p);
+            }
+            p = parent;
+        }
+    }
+    
+    private void markDirty(int n) {
+        for ( ; n != NIL && !m_dirty[n]; n = m_parent[n] )
+            m_dirty[n] = true;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Queries
+    
+    /**
+     * Get the ids of all rectangles intersecting the given region.
+     * Rectangles touching the region boundary are included.
+     * @param x the minimum x-coordinate of the region
+     * @param y the minimum y-coordinate of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @return an iterator over the ids of the intersecting rectangles
+     */
+    public IntIterator query(double x, double y, double w, double h) {
+        int[] ids = new int[16];
+        int count = 0;
+        double x1 = x+w, y1 = y+h;
+        
+        int sp = 0;
+        if ( m_root != NIL ) m_stack[sp++] = m_root;
+        while ( sp > 0 ) {
+            int n = m_stack[--sp];
+            // test against the loose cell, twice the size of the cell
+            double lh = 2*m_half[n];
+            if ( m_cx[n]-lh > x1 || m_cx[n]+lh < x ||
+                 m_cy[n]-lh > y1 || m_cy[n]+lh < y )
+                continue;
+            
+            for ( int id=m_head[n]; id != NIL; id=m_enext[id] ) {
+                if ( m_x0[id] <= x1 && m_x1[id] >= x &&
+                     m_y0[id] <= y1 && m_y1[id] >= y )
+                {
+                    if ( count == ids.length )
+                        ids = ArrayLib.resize(ids, 2*count);
+                    ids[count++] = id;
+                }
+            }
+            if ( m_split[n] ) {
+                if ( sp+4 > m_stack.length )
+                    m_stack = ArrayLib.resize(m_stack, 2*m_stack.length);
+                for ( int q=0; q<4; ++q ) {
+                    int c = m_child[4*n+q];
+                    if ( c != NIL ) m_stack[sp++] = c;
+                }
+            }
+        }
+        return new IntArrayIterator(ids, 0, count);
+    }
+    
+    /**
+     * Get the id of the rectangle nearest to the given point. The distance
+     * to a rectangle is zero if the point lies within it; among several
+     * rectangles at the same distance, the one with the smallest area is
+     * returned, so that the innermost of nested rectangles is picked.
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @param maxDist the maximum distance to consider
+     * @return the id of the nearest rectangle, or -1 if there is no
+     * rectangle within the maximum distance
+     */
+    public int nearest(double x, double y, double maxDist) {
+        m_px = x;
+        m_py = y;
+        m_best = maxDist;
+        m_bestArea = Double.POSITIVE_INFINITY;
+        m_bestId = NIL;
+        if ( m_root != NIL ) nearest(m_root);
+        return m_bestId;
+    }
+    
+    private void nearest(int n) {
+        for ( int id=m_head[n]; id != NIL; id=m_enext[id] ) {
+            double d = distance(m_x0[id], m_y0[id], m_x1[id], m_y1[id]);
+            if ( d > m_best ) continue;
+            double a = (m_x1[id]-m_x0[id])*(m_y1[id]-m_y0[id]);
+            if ( d < m_best || a < m_bestArea || m_bestId == NIL ) {
+                m_best = d;
+                m_bestArea = a;
+                m_bestId = id;
+            }
+        }
+        if ( !m_split[n] ) return;
+        
+        // visit children in order of increasing distance
+        double[] dist = new double[4];
+        int[] order = new int[4];
+        int k = 0;
+        for ( int q=0; q<4; ++q ) {
+            int c = m_child[4*n+q];
+            if ( c == NIL ) continue;
+            double lh = 2*m_half[c];
+            double d = distance(m_cx[c]-lh, m_cy[c]-lh,
+                                m_cx[c]+lh, m_cy[c]+lh);
+            int i = k++;
+            for ( ; i > 0 && dist[i-1] > d; --i ) {
+                dist[i] = dist[i-1];
+                order[i] = order[i-1];
+            }
+            dist[i] = d;
+            order[i] = c;
+        }
+        for ( int i=0; i<k; ++i ) {
+            if ( dist[i] <= m_best )
+                nearest(order[i]);
+        }
+    }
+    
+    private double distance(double x0, double y0, double x1, double y1) {
+        double dx = m_px < x0 ? x0-m_px : (m_px > x1 ? m_px-x1 : 0);
+        double dy = m_py < y0 ? y0-m_py : (m_py > y1 ? m_py-y1 : 0);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+    
+    /**
+     * Get the bounding box of all indexed rectangles.
+     * @param bounds an array of length four in which to store the
+     * minimum x, minimum y, maximum x and maximum y coordinates
+     * @return true if the bounds were computed, false if the index is empty
+     */
+    public boolean getBounds(double[] bounds) {
+        if ( m_size == 0 ) return false;
+        validate(m_root);
+        bounds[0] = m_bx0[m_root];
+        bounds[1] = m_by0[m_root];
+        bounds[2] = m_bx1[m_root];
+        bounds[3] = m_by1[m_root];
+        return true;
+    }
+    
+    private void validate(int n) {
+        if ( !m_dirty[n] ) return;
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for ( int id=m_head[n]; id != NIL; id=m_enext[id] ) {
+            x0 = Math.min(x0, m_x0[id]); y0 = Math.min(y0, m_y0[id]);
+            x1 = Math.max(x1, m_x1[id]); y1 = Math.max(y1, m_y1[id]);
+        }
+        if ( m_split[n] ) {
+            for ( int q=0; q<4; ++q ) {
+                int c = m_child[4*n+q];
+                if ( c == NIL ) continue;
+                validate(c);
+                x0 = Math.min(x0, m_bx0[c]); y0 = Math.min(y0, m_by0[c]);
+                x1 = Math.max(x1, m_bx1[c]); y1 = Math.max(y1, m_by1[c]);
+            }
+        }
+        m_bx0[n] = x0; m_by0[n] = y0;
+        m_bx1[n] = x1; m_by1[n] = y1;
+        m_dirty[n] = false;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Storage
+    
+    private void allocEntries(int size) {
+        int cap = Math.max(size, 3*m_enode.length/2+1);
+        int old = m_enode.length;
+        m_x0 = ArrayLib.resize(m_x0, cap);
+        m_y0 = ArrayLib.resize(m_y0, cap);
+        m_x1 = ArrayLib.resize(m_x1, cap);
+        m_y1 = ArrayLib.resize(m_y1, cap);
+        m_enode = ArrayLib.resize(m_enode, cap);
+        m_enext = ArrayLib.resize(m_enext, cap);
+        m_eprev = ArrayLib.resize(m_eprev, cap);
+        Arrays.fill(m_enode, old, cap, NIL);
+    }
+    
+    private void allocNodes(int cap) {
+        m_cx = ArrayLib.resize(m_cx == null ? new double[0] : m_cx, cap);
+        m_cy = ArrayLib.resize(m_cy == null ? new double[0] : m_cy, cap);
+        m_half = ArrayLib.resize(m_half == null ? new double[0] : m_half, cap);
+        m_parent = ArrayLib.resize(m_parent == null ? new int[0] : m_parent, cap);
+        m_child = ArrayLib.resize(m_child == null ? new int[0] : m_child, 4*cap);
+        m_head = ArrayLib.resize(m_head == null ? new int[0] : m_head, cap);
+        m_nsize = ArrayLib.resize(m_nsize == null ? new int[0] : m_nsize, cap);
+        m_count = ArrayLib.resize(m_count == null ? new int[0] : m_count, cap);
+        m_bx0 = ArrayLib.resize(m_bx0 == null ? new double[0] : m_bx0, cap);
+        m_by0 = ArrayLib.resize(m_by0 == null ? new double[0] : m_by0, cap);
+        m_bx1 = ArrayLib.resize(m_bx1 == null ? new double[0] : m_bx1, cap);
+        m_by1 = ArrayLib.resize(m_by1 == null ? new double[0] : m_by1, cap);
+        boolean[] split = new boolean[cap], dirty = new boolean[cap];
+        if ( m_split != null ) {
+            System.arraycopy(m_split, 0, split, 0, m_split.length);
+            System.arraycopy(m_dirty, 0, dirty, 0, m_dirty.length);
+        }
+        m_split = split;
+        m_dirty = dirty;
+    }
+    
+    private int newNode(int parent, double cx, double cy, double half) {
+        int n;
+        if ( m_free != NIL ) {
+            n = m_free;
+            m_free = m_parent[n];
+        } else {
+            if ( m_nodes == m_cx.length )
+                allocNodes(2*m_nodes);
+            n = m_nodes++;
+        }
+        m_cx[n] = cx;
+        m_cy[n] = cy;
+        m_half[n] = half;
+        m_parent[n] = parent;
+        m_child[4*n] = m_child[4*n+1] = m_child[4*n+2] = m_child[4*n+3] = NIL;
+        m_head[n] = NIL;
+        m_nsize[n] = 0;
+        m_count[n] = 0;
+        m_split[n] = false;
+        // empty and clean, so that marking a descendant dirty reaches
+        // all the way up to the root
+        m_dirty[n] = false;
+        m_bx0[n] = m_by0[n] = Double.POSITIVE_INFINITY;
+        m_bx1[n] = m_by1[n] = Double.NEGATIVE_INFINITY;
+        return n;
+    }
+    
+    private void freeNode(int n) {
+        m_parent[n] = m_free;
+        m_free = n;
+    }
+    
+} // end of class LooseQuadTree
@@ -0,0 +1,343 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.display;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import prefux.render.LabelRenderer;
+import prefux.visual.VisualItem;
+
+/**
+ * Level-of-detail policy of a display, deciding which items are drawn in
+ * full at a given display scale. Below configurable scale thresholds,
+ * labels are omitted, edges are sampled down to a fixed budget, and dense
+ * regions of items are replaced by aggregate glyphs computed over a grid
+ * of screen-sized cells. This bounds the number of drawn elements by the
+ * size of the display rather than the size of the data.
+ */
+public class LevelOfDetail {
+
+    /** The default scale below which labels are omitted. */
+    public static final double DEFAULT_LABEL_SCALE = 0.5;
+    /** The default scale below which edges are sampled. */
+    public static final double DEFAULT_EDGE_SCALE = 0.5;
+    /** The default scale below which dense regions are aggregated. */
+    public static final double DEFAULT_AGGREGATE_SCALE = 0.25;
+    /** The default maximum number of edges drawn when sampling. */
+    public static final int DEFAULT_EDGE_BUDGET = 2000;
+    /** The default size of aggregation cells, in screen pixels. */
+    public static final double DEFAULT_CELL_SIZE = 16.0;
+    /** The default number of items making up an aggregate. */
+    public static final int DEFAULT_AGGREGATE_COUNT = 4;
+    
+    private double m_labelScale = DEFAULT_LABEL_SCALE;
+    private double m_edgeScale = DEFAULT_EDGE_SCALE;
+    private double m_aggrScale = DEFAULT_AGGREGATE_SCALE;
+    private int    m_edgeBudget = DEFAULT_EDGE_BUDGET;
+    private double m_cellSize = DEFAULT_CELL_SIZE;
+    private int    m_aggrCount = DEFAULT_AGGREGATE_COUNT;
+    
+    // ------------------------------------------------------------------------
+    // Thresholds
+    
+    /**
+     * Get the display scale below which labels are omitted.
+     * @return the label scale threshold
+     */
+    public double getLabelScale() {
+        return m_labelScale;
+    }
+    
+    /**
+     * Set the display scale below which labels are omitted.
+     * @param scale the label scale threshold
+     */
+    public void setLabelScale(double scale) {
+        m_labelScale = scale;
+    }
+    
+    /**
+     * Get the display scale below which edges are sampled.
+     * @return the edge scale threshold
+     */
+    public double getEdgeScale() {
+        return m_edgeScale;
+    }
+    
+    /**
+     * Set the display scale below which edges are sampled.
+     * @param scale the edge scale threshold
+     */
+    public void setEdgeScale(double scale) {
+        m_edgeScale = scale;
+    }
+    
+    /**
+     * Get the display scale below which dense regions are aggregated.
+     * @return the aggregation scale threshold
+     */
+    public double getAggregateScale() {
+        return m_aggrScale;
+    }
+    
+    /**
+     * Set the display scale below which dense regions are aggregated.
+     * @param scale the aggregation scale threshold
+     */
+    public void setAggregateScale(double scale) {
+        m_aggrScale = scale;
+    }
+    
+    /**
+     * Get the maximum number of edges drawn when edges are sampled.
+     * @return the edge budget
+     */
+    public int getEdgeBudget() {
+        return m_edgeBudget;
+    }
+    
+    /**
+     * Set the maximum number of edges drawn when edges are sampled.
+     * @param budget the edge budget, must be non-negative
+     */
+    public void setEdgeBudget(int budget) {
+        if ( budget < 0 )
+            throw new IllegalArgumentException(
+                "Edge budget must be non-negative: "+budget);
+        m_edgeBudget = budget;
+    }
+    
+    /**
+     * Get the size of the aggregation cells, in screen pixels.
+     * @return the cell size
+     */
+    public double getCellSize() {
+        return m_cellSize;
+    }
+    
+    /**
+     * Set the size of the aggregation cells, in screen pixels.
+     * @param size the cell size, must be positive
+     */
+    public void setCellSize(double size) {
+        if ( !(size > 0) || Double.isInfinite(size) )
+            throw new IllegalArgumentException(
+                "Cell size must be positive: "+size);
+        m_cellSize = size;
+    }
+    
+    /**
+     * Get the minimum number of items in a cell for the cell to be drawn
+     * as an aggregate.
+     * @return the aggregate count
+     */
+    public int getAggregateCount() {
+        return m_aggrCount;
+    }
+    
+    /**
+     * Set the minimum number of items in a cell for the cell to be drawn
+     * as an aggregate.
+     * @param count the aggregate count, must be at least 2
+     */
+    public void setAggregateCount(int count) {
+        if ( count < 2 )
+            throw new IllegalArgumentException(
+                "Aggregate count must be at least 2: "+count);
+        m_aggrCount = count;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Level-of-Detail Decisions
+    
+    /**
+     * Indicates if labels are drawn at the given display scale.
+     * @param scale the display scale
+     * @return true if labels are drawn
+     */
+    public boolean isLabelVisible(double scale) {
+        return scale >= m_labelScale;
+    }
+    
+    /**
+     * Indicates if the given item is a label, i.e. is drawn by a
+     * {@link prefux.render.LabelRenderer}.
+     * @param item the item to check
+     * @return true if the item is a label
+     */
+    public boolean isLabel(VisualItem item) {
+        return item.getRenderer() instanceof LabelRenderer;
+    }
+    
+    /**
+     * Indicates if edges are sampled at the given display scale.
+     * @param scale the display scale
+     * @return true if edges are sampled
+     */
+    public boolean isEdgeSampled(double scale) {
+        return scale < m_edgeScale;
+    }
+    
+    /**
+     * Indicates if dense regions are aggregated at the given display scale.
+     * @param scale the display scale
+     * @return true if dense regions are aggregated
+     */
+    public boolean isAggregated(double scale) {
+        return scale < m_aggrScale;
+    }
+    
+    /**
+     * Decide if an edge is kept when sampling. Each edge is assigned a
+     * fixed pseudo-random rank, and an edge is kept if its rank lies
+     * below the fraction of edges that fit into the budget. The kept
+     * edges thus stay stable while panning, and a smaller set of
+     * candidate edges always keeps a superset of the edges kept from a
+     * larger one.
+     * @param edge the edge to sample
+     * @param count the number of candidate edges
+     * @return true if the edge should be drawn
+     */
+    public boolean sampleEdge(VisualItem edge, int count) {
+        if ( count <= m_edgeBudget ) return true;
+        long h = edge.getRow() * 0x9E3779B97F4A7C15L;
+        h ^= (h >>> 32);
+        double rank = (h & 0xFFFFFFL) / (double)(1<<24);
+        return rank < m_edgeBudget / (double)count;
+    }
+    
+    /**
+     * Get the radius, in screen pixels, of the glyph drawn for an
+     * aggregate of the given number of items.
+     * @param count the number of aggregated items
+     * @return the glyph radius
+     */
+    public double getGlyphRadius(int count) {
+        return Math.min(m_cellSize/2, 2 + 1.5*Math.sqrt(count));
+    }
+    
+    /**
+     * Bin items into a grid of cells of {@link #getCellSize()} screen
+     * pixels. Cells containing at least {@link #getAggregateCount()} items
+     * are returned as aggregates, while the items of sparser cells are
+     * added to the given collection. The grid is anchored at the item
+     * space origin, so cells do not change while panning.
+     * @param items the items to aggregate
+     * @param scale the display scale
+     * @param keep the collection receiving the items that are not
+     * aggregated
+     * @return the list of aggregates
+     */
+    public List<Aggregate> aggregate(Iterator<VisualItem> items,
+                                     double scale,
+                                     Collection<VisualItem> keep)
+    {
+        double cell = m_cellSize / scale;
+        Map<Long,Aggregate> cells = new HashMap<>();
+        while ( items.hasNext() ) {
+            VisualItem item = items.next();
+            double x = item.getX(), y = item.getY();
+            long cx = (long)Math.floor(x/cell), cy = (long)Math.floor(y/cell);
+            Long key = (cx << 32) ^ (cy & 0xFFFFFFFFL);
+            Aggregate a = cells.get(key);
+            if ( a == null ) {
+                a = new Aggregate();
+                cells.put(key, a);
+            }
+            a.add(item, x, y, m_aggrCount);
+        }
+        
+        List<Aggregate> list = new ArrayList<>();
+        for ( Aggregate a : cells.values() ) {
+            if ( a.m_count >= m_aggrCount ) {
+                list.add(a);
+            } else {
+                keep.addAll(a.m_items);
+            }
+        }
+        return list;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * A dense grid cell drawn in place of the items it contains.
+     */
+    public static class Aggregate {
+        
+        private int m_count;
+        private double m_sumX, m_sumY;
+        // only held until the cell turns out to be an aggregate
+        private List<VisualItem> m_items = new ArrayList<>(4);
+        
+        void add(VisualItem item, double x, double y, int threshold) {
+            m_count++;
+            m_sumX += x;
+            m_sumY += y;
+            if ( m_count < threshold ) {
+                m_items.add(item);
+            } else {
+                m_items.clear();
+            }
+        }
+        
+        /**
+         * Get the number of aggregated items.
+         * @return the item count
+         */
+        public int getCount() {
+            return m_count;
+        }
+        
+        /**
+         * Get the x-coordinate of the centroid of the aggregated items.
+         * @return the centroid x-coordinate
+         */
+        public double getX() {
+            return m_sumX / m_count;
+        }
+        
+        /**
+         * Get the y-coordinate of the centroid of the aggregated items.
+         * @return the centroid y-coordinate
+         */
+        public double getY() {
+            return m_sumY / m_count;
+        }
+        
+    } // end of class Aggregate
+
+} // end of class LevelOfDetail
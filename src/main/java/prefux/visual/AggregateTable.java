@@ -34,16 +34,17 @@
  */
 package prefux.visual;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import prefux.Visualization;
 import prefux.data.Schema;
 import prefux.data.Table;
 import prefux.data.Tuple;
 import prefux.data.event.EventConstants;
-import prefux.data.util.Index;
-import prefux.util.collections.IntIterator;
+import prefux.data.event.TableListener;
+import prefux.util.collections.IntIntMultiMap;
 import prefux.visual.tuple.TableAggregateItem;
 
 /**
@@ -52,14 +53,30 @@ import prefux.visual.tuple.TableAggregateItem;
  * a mapping between AggregateItems and the VisualItems contained within
  * those aggregates.
  * 
+ * <p>Memberships are stored per source table of the member items, as a pair
+ * of primitive multimaps from aggregate row to member row and from member
+ * row to aggregate row. Membership tests, additions and removals take
+ * constant time and iterating over an aggregate does not create any
+ * intermediate objects besides the iterator itself.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class AggregateTable extends VisualTable {
 
     /**
-     * Table storing the 1->Many aggregation mappings
+     * The tables containing aggregated items
+     */
+    protected Table[] m_sources = new Table[0];
+    /**
+     * Per source table, the mapping from aggregate rows to member rows
      */
-    protected Table m_aggregated;
+    protected IntIntMultiMap[] m_members = new IntIntMultiMap[0];
+    /**
+     * Per source table, the mapping from member rows to aggregate rows
+     */
+    protected IntIntMultiMap[] m_aggregates = new IntIntMultiMap[0];
+    
+    private final TableListener m_sourceListener = new SourceListener();
     
     /**
      * Create a new AggregateTable.
@@ -78,9 +95,6 @@ public class AggregateTable extends VisualTable {
      */
     public AggregateTable(Visualization vis, String group, Schema schema) {
         super(vis, group, schema, TableAggregateItem.class);
-        m_aggregated = AGGREGATED_SCHEMA.instantiate();
-        m_aggregated.index(AGGREGATE);
-        m_aggregated.index(MEMBER_HASH);
     }
     
     // ------------------------------------------------------------------------
@@ -92,8 +106,8 @@ public class AggregateTable extends VisualTable {
      */
     public int getAggregateSize(int row) {
         int size = 0;
-        AggregatedIterator ati = new AggregatedIterator(row);
-        for ( ; ati.hasNext(); ++size, ati.next() );
+        for ( int s=0; s<m_members.length; ++s )
+            size += m_members[s].count(row);
         return size;
     }
     
@@ -104,11 +118,10 @@ public class AggregateTable extends VisualTable {
      */
     public void addToAggregate(int row, VisualItem member) {
         validRowCheck(row, true);
-        if ( !aggregateContains(row, member) ) {
-            int ar = m_aggregated.addRow();
-            m_aggregated.setInt(ar, AGGREGATE, row);
-            m_aggregated.setInt(ar, MEMBER_HASH, getHashCode(member));
-            m_aggregated.set(ar, MEMBER, member);
+        int s = getSourceIndex(member.getTable(), true);
+        int mr = member.getRow();
+        if ( m_members[s].put(row, mr) ) {
+            m_aggregates[s].put(mr, row);
             fireTableEvent(row, row,
                     EventConstants.ALL_COLUMNS, EventConstants.UPDATE);
         }
@@ -121,9 +134,10 @@ public class AggregateTable extends VisualTable {
      */
     public void removeFromAggregate(int row, VisualItem member) {
         validRowCheck(row, true);
-        int ar = getAggregatedRow(row, member);
-        if ( ar >= 0 ) {
-            m_aggregated.removeRow(ar);
+        int s = getSourceIndex(member.getTable(), false);
+        int mr = member.getRow();
+        if ( s >= 0 && m_members[s].remove(row, mr) ) {
+            m_aggregates[s].remove(mr, row);
             fireTableEvent(row, row,
                 EventConstants.ALL_COLUMNS, EventConstants.UPDATE);
         }
@@ -144,16 +158,12 @@ public class AggregateTable extends VisualTable {
      * @param update indicates whether or not to fire a table update
      */
     protected void clearAggregateMappings(int row, boolean update) {
-        Index index = m_aggregated.index(AGGREGATE);
         boolean fire = false;
-        for ( IntIterator rows = index.rows(row); rows.hasNext(); ) {
-            int r = rows.nextInt();
-            // this removal maneuver is ok because we know we are
-            // pulling row values directly from an index
-            // with intervening iterators, remove might throw an exception
-            rows.remove();
-            m_aggregated.removeRow(r);
-            fire = true;
+        for ( int s=0; s<m_members.length; ++s ) {
+            IntIntMultiMap members = m_members[s];
+            for ( int e = members.first(row); e >= 0; e = members.next(e) )
+                m_aggregates[s].remove(members.value(e), row);
+            fire |= members.removeAll(row) > 0;
         }
         if ( update && fire ) 
             fireTableEvent(row, row,
@@ -167,33 +177,8 @@ public class AggregateTable extends VisualTable {
      * @return true if the item is in the aggregate, false otherwise
      */
     public boolean aggregateContains(int row, VisualItem member) {
-        return getAggregatedRow(row, member) >= 0;
-    }
-    
-    /**
-     * Get the row index to the aggregate mapping table for the given
-     * aggregate and contained VisualItem.
-     * @param row the table row of the aggregate
-     * @param member the VisualItem to look up
-     * @return the row index into the internal aggregate mapping table for the
-     * mapping between the given aggregate row and given VisualItem
-     */
-    protected int getAggregatedRow(int row, VisualItem member) {
-        Index index = m_aggregated.index(MEMBER_HASH);
-        int hash = getHashCode(member);
-        int ar = index.get(hash);
-        if ( ar < 0 ) {
-            return -1;
-        } else if ( m_aggregated.getInt(ar, AGGREGATE) == row ) {
-            return ar;
-        } else {
-            for ( IntIterator rows = index.rows(hash); rows.hasNext(); ) {
-                ar = rows.nextInt();
-                if ( m_aggregated.getInt(ar, AGGREGATE) == row )
-                    return ar;
-            }
-            return -1;
-        }
+        int s = getSourceIndex(member.getTable(), false);
+        return s >= 0 && m_members[s].contains(row, member.getRow());
     }
     
     /**
@@ -211,25 +196,84 @@ public class AggregateTable extends VisualTable {
      * @return an iterator over all AggregateItems that contain the input Tuple
      */
     public Iterator<? extends Tuple> getAggregates(Tuple t) {
-        int hash = getHashCode(t);
-        IntIterator iit = m_aggregated.getIndex(MEMBER_HASH).rows(hash);
-        HashSet<Tuple> set = new HashSet<>();
-        while ( iit.hasNext() ) {
-            int r = iit.nextInt();
-            set.add(getTuple(m_aggregated.getInt(r, AGGREGATE)));
+        int s = getSourceIndex(t.getTable(), false);
+        Tuple[] aggs;
+        if ( s < 0 ) {
+            aggs = new Tuple[0];
+        } else {
+            IntIntMultiMap map = m_aggregates[s];
+            aggs = new Tuple[map.count(t.getRow())];
+            int i = 0;
+            for ( int e = map.first(t.getRow()); e >= 0; e = map.next(e) )
+                aggs[i++] = getTuple(map.value(e));
         }
-        return set.iterator();
+        return Arrays.asList(aggs).iterator();
     }
     
     /**
-     * Get a hashcode that uniquely identifies a particular tuple
-     * @param t the tuple to compute the hash for
-     * @return a unique identifier for the tuple
+     * Get the index of the given source table in the membership arrays,
+     * optionally registering the table if it is not yet known.
+     * @param t the table containing aggregated items
+     * @param create indicates whether or not to register an unknown table
+     * @return the source index, or -1 if the table is unknown and was not
+     * registered
      */
-    protected int getHashCode(Tuple t) {
-        // this works for now because hashCode is not overloaded on
-        // the provided Tuple implementations
-        return t.hashCode();
+    protected int getSourceIndex(Table t, boolean create) {
+        for ( int s=0; s<m_sources.length; ++s )
+            if ( m_sources[s] == t ) return s;
+        if ( !create ) return -1;
+        
+        int s = m_sources.length;
+        m_sources = Arrays.copyOf(m_sources, s+1);
+        m_members = Arrays.copyOf(m_members, s+1);
+        m_aggregates = Arrays.copyOf(m_aggregates, s+1);
+        m_sources[s] = t;
+        m_members[s] = new IntIntMultiMap();
+        m_aggregates[s] = new IntIntMultiMap();
+        t.addTableListener(m_sourceListener);
+        return s;
+    }
+    
+    /**
+     * Stop listening to the registered source tables and forget them.
+     */
+    private void detachSources() {
+        for ( int s=0; s<m_sources.length; ++s )
+            m_sources[s].removeTableListener(m_sourceListener);
+        m_sources = new Table[0];
+        m_members = new IntIntMultiMap[0];
+        m_aggregates = new IntIntMultiMap[0];
+    }
+    
+    /**
+     * Removes all aggregates, and stops listening to the tables containing
+     * aggregated items.
+     * @see prefux.data.Table#clear()
+     */
+    public void clear() {
+        super.clear();
+        detachSources();
+    }
+    
+    /**
+     * Removes all table listeners from this table, and stops listening to
+     * the tables containing aggregated items.
+     * @see prefux.data.Table#removeAllTableListeners()
+     */
+    public void removeAllTableListeners() {
+        super.removeAllTableListeners();
+        detachSources();
+    }
+    
+    /**
+     * Stops listening to the parent table, if any, and to the tables
+     * containing aggregated items.
+     * @see prefux.data.CascadedTable#dispose()
+     */
+    public void dispose() {
+        if ( m_parent != null )
+            super.dispose();
+        detachSources();
     }
     
     /**
@@ -264,6 +308,26 @@ public class AggregateTable extends VisualTable {
         super.fireTableEvent(row0, row1, col, type);
     }
     
+    /**
+     * Drops the memberships of source table rows as they are deleted, so
+     * that re-used rows do not inherit stale aggregate memberships.
+     */
+    private class SourceListener implements TableListener {
+        public void tableChanged(Table t, int start, int end, int col, int type) {
+            if ( col != EventConstants.ALL_COLUMNS 
+                    || type != EventConstants.DELETE )
+                return;
+            int s = getSourceIndex(t, false);
+            if ( s < 0 ) return;
+            IntIntMultiMap aggs = m_aggregates[s];
+            for ( int r=start; r<=end; ++r ) {
+                for ( int e = aggs.first(r); e >= 0; e = aggs.next(e) )
+                    m_members[s].remove(aggs.value(e), r);
+                aggs.removeAll(r);
+            }
+        }
+    }
+    
     
     // ------------------------------------------------------------------------
     // Aggregated Iterator
@@ -272,51 +336,33 @@ public class AggregateTable extends VisualTable {
      * Iterator instance that iterates over the items contained in an aggregate.
      */
     protected class AggregatedIterator implements Iterator<Tuple> {
-        private IntIterator m_rows;
-        private Tuple m_next = null;
+        private int m_row;
+        private int m_source = -1;
+        private int m_entry = -1;
 
         public AggregatedIterator(int row) {
-            Index index = m_aggregated.index(AGGREGATE);
-            m_rows = index.rows(row);
+            m_row = row;
             advance();
         }
         public boolean hasNext() {
-            return m_next != null;
+            return m_entry >= 0;
         }
         public Tuple next() {
-            Tuple retval = m_next;
-            advance();
-            return retval;
+            if ( m_entry < 0 )
+                throw new NoSuchElementException();
+            Tuple t = m_sources[m_source].getTuple(
+                    m_members[m_source].value(m_entry));
+            m_entry = m_members[m_source].next(m_entry);
+            if ( m_entry < 0 ) advance();
+            return t;
         }
         private void advance() {
-            while ( m_rows.hasNext() ) {
-                int ar = m_rows.nextInt();
-                Tuple t = (Tuple)m_aggregated.get(ar, MEMBER);
-                if ( t.isValid() ) {
-                    m_next = t;
-                    return;
-                } else {
-                    m_aggregated.removeRow(ar);
-                }
-            }
-            m_next = null;
+            while ( m_entry < 0 && ++m_source < m_members.length )
+                m_entry = m_members[m_source].first(m_row);
         }
         public void remove() {
             throw new UnsupportedOperationException();
         }
     }
     
-    // ------------------------------------------------------------------------
-    // Aggregated Table Schema
-    
-    protected static final String AGGREGATE = "aggregate";
-    protected static final String MEMBER_HASH = "hash";
-    protected static final String MEMBER = "member";
-    protected static final Schema AGGREGATED_SCHEMA = new Schema();
-    static {
-        AGGREGATED_SCHEMA.addColumn(AGGREGATE, int.class);
-        AGGREGATED_SCHEMA.addColumn(MEMBER_HASH, int.class);
-        AGGREGATED_SCHEMA.addColumn(MEMBER, Tuple.class);
-    }
-    
 } // end of class AggregateTable
@@ -0,0 +1,274 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.visual;
+
+import java.util.Iterator;
+
+import prefux.data.Table;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.data.util.Rectangle2D;
+import prefux.util.collections.IntIterator;
+import prefux.util.collections.LooseQuadTree;
+
+/**
+ * Spatial index over the visible items of a {@link VisualTable}, supporting
+ * fast region queries, nearest item lookups (e.g., for picking) and
+ * bounding box computation. Instances are created explicitly through
+ * {@link VisualTable#getSpatialIndex()} and kept up to date by listening to
+ * changes of the table's position, bounds and visibility columns, as well
+ * as row insertions and deletions.
+ * 
+ * <p>Each item is indexed by its bounds, if these have been set to a
+ * non-empty rectangle (for example, by a renderer or a layout), and by its
+ * (x,y) location otherwise.</p>
+ * 
+ * @see prefux.util.collections.LooseQuadTree
+ */
+public class SpatialIndex implements TableListener {
+
+    private VisualTable m_table;
+    private LooseQuadTree m_tree = new LooseQuadTree();
+    private double[] m_bounds = new double[4];
+    
+    private int m_xcol, m_ycol, m_bcol, m_vcol;
+    
+    /**
+     * Create a new SpatialIndex over the items of the given table. The
+     * index registers itself as a listener of the table.
+     * @param table the VisualTable to index
+     */
+    public SpatialIndex(VisualTable table) {
+        m_table = table;
+        resolveColumns();
+        for ( IntIterator rows = table.rows(); rows.hasNext(); )
+            update(rows.nextInt());
+        table.addTableListener(this);
+    }
+    
+    /**
+     * Dispose of this index, unregistering it from the backing table.
+     */
+    public void dispose() {
+        m_table.removeTableListener(this);
+        m_tree.clear();
+    }
+    
+    /**
+     * Get the table indexed by this SpatialIndex.
+     * @return the indexed VisualTable
+     */
+    public VisualTable getTable() {
+        return m_table;
+    }
+    
+    /**
+     * Get the number of items currently indexed, i.e., the number of
+     * visible items in the table.
+     * @return the number of indexed items
+     */
+    public int size() {
+        return m_tree.size();
+    }
+    
+    private void resolveColumns() {
+        m_xcol = m_table.getColumnNumber(VisualItem.X);
+        m_ycol = m_table.getColumnNumber(VisualItem.Y);
+        m_bcol = m_table.getColumnNumber(VisualItem.BOUNDS);
+        m_vcol = m_table.getColumnNumber(VisualItem.VISIBLE);
+    }
+    
+    /**
+     * Re-index the item at the given row.
+     */
+    private void update(int row) {
+        if ( !m_table.isValidRow(row) || !m_table.isVisible(row) ) {
+            m_tree.remove(row);
+            return;
+        }
+        Rectangle2D b = m_table.getBounds(row);
+        if ( b != null && (b.getWidth() > 0 || b.getHeight() > 0) ) {
+            m_tree.put(row, b.getMinX(), b.getMinY(),
+                            b.getWidth(), b.getHeight());
+        } else {
+            double x = m_table.getX(row), y = m_table.getY(row);
+            if ( Double.isNaN(x) || Double.isNaN(y) ) {
+                m_tree.remove(row);
+            } else {
+                m_tree.put(row, x, y, 0, 0);
+            }
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Queries
+    
+    /**
+     * Get the rows of all indexed items whose bounds intersect the given
+     * region.
+     * @param region the query region
+     * @return an iterator over the matching table rows
+     */
+    public IntIterator rows(Rectangle2D region) {
+        return m_tree.query(region.getMinX(), region.getMinY(),
+                            region.getWidth(), region.getHeight());
+    }
+    
+    /**
+     * Get all indexed items whose bounds intersect the given region.
+     * @param region the query region
+     * @return an iterator over the matching VisualItems
+     */
+    public Iterator<VisualItem> items(Rectangle2D region) {
+        final IntIterator rows = rows(region);
+        return new Iterator<VisualItem>() {
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+            public VisualItem next() {
+                return m_table.getItem(rows.nextInt());
+            }
+        };
+    }
+    
+    /**
+     * Get the item nearest to the given point, within the given distance.
+     * Items containing the point have distance zero; among overlapping
+     * items, the one with the smallest bounds is returned.
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @param maxDistance the maximum distance of the item to the point
+     * @return the nearest item, or null if no item is within the given
+     * distance
+     */
+    public VisualItem getNearestItem(double x, double y, double maxDistance) {
+        int row = m_tree.nearest(x, y, maxDistance);
+        return row < 0 ? null : m_table.getItem(row);
+    }
+    
+    /**
+     * Get the distance of the given point to an item, as used by
+     * {@link #getNearestItem(double, double, double)}: zero if the point
+     * lies within the item's bounds, or its location if the item has
+     * no bounds.
+     * @param item the item
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return the distance of the point to the item, or infinity if the
+     * item has neither bounds nor a location
+     */
+    public static double distance(VisualItem item, double x, double y) {
+        Rectangle2D b = item.getBounds();
+        double x0, y0, x1, y1;
+        if ( b != null && (b.getWidth() > 0 || b.getHeight() > 0) ) {
+            x0 = b.getMinX(); x1 = b.getMaxX();
+            y0 = b.getMinY(); y1 = b.getMaxY();
+        } else {
+            x0 = x1 = item.getX();
+            y0 = y1 = item.getY();
+            if ( Double.isNaN(x0) || Double.isNaN(y0) )
+                return Double.POSITIVE_INFINITY;
+        }
+        double dx = x < x0 ? x0-x : (x > x1 ? x-x1 : 0);
+        double dy = y < y0 ? y0-y : (y > y1 ? y-y1 : 0);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+    
+    /**
+     * Get the area of an item's bounds, used to pick the innermost of
+     * overlapping items.
+     * @param item the item
+     * @return the area of the item's bounds, zero if it has none
+     */
+    public static double area(VisualItem item) {
+        Rectangle2D b = item.getBounds();
+        return b == null ? 0 : b.getWidth()*b.getHeight();
+    }
+    
+    /**
+     * Indicates if an item's bounds, or its location if it has no bounds,
+     * intersect the given region, as determined by {@link #items(Rectangle2D)}.
+     * @param item the item
+     * @param region the query region
+     * @return true if the item intersects the region, false otherwise
+     */
+    public static boolean intersects(VisualItem item, Rectangle2D region) {
+        Rectangle2D b = item.getBounds();
+        double x0, y0, x1, y1;
+        if ( b != null && (b.getWidth() > 0 || b.getHeight() > 0) ) {
+            x0 = b.getMinX(); x1 = b.getMaxX();
+            y0 = b.getMinY(); y1 = b.getMaxY();
+        } else {
+            x0 = x1 = item.getX();
+            y0 = y1 = item.getY();
+        }
+        return x0 <= region.getMaxX() && x1 >= region.getMinX() &&
+               y0 <= region.getMaxY() && y1 >= region.getMinY();
+    }
+    
+    /**
+     * Get the bounding box of all indexed items.
+     * @return the bounding box, or null if no items are indexed
+     */
+    public Rectangle2D getBounds() {
+        if ( !m_tree.getBounds(m_bounds) )
+            return null;
+        return new Rectangle2D(m_bounds[0], m_bounds[1],
+                m_bounds[2]-m_bounds[0], m_bounds[3]-m_bounds[1]);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * @see prefux.data.event.TableListener#tableChanged(prefux.data.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( col == EventConstants.ALL_COLUMNS ) {
+            // row insertion or deletion, or a change of unknown extent.
+            // deleted rows are still valid while the event is processed.
+            for ( int r=start; r<=end; ++r ) {
+                if ( type == EventConstants.DELETE )
+                    m_tree.remove(r);
+                else
+                    update(r);
+            }
+        } else if ( type != EventConstants.UPDATE ) {
+            // column added or removed
+            resolveColumns();
+        } else if ( col == m_xcol || col == m_ycol ||
+                    col == m_bcol || col == m_vcol )
+        {
+            for ( int r=start; r<=end; ++r )
+                update(r);
+        }
+    }
+    
+} // end of class SpatialIndex
@@ -59,6 +59,7 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
 
     private Visualization m_vis;
     private String m_group;
+    private SpatialIndex m_spatial;
 
 
     // ------------------------------------------------------------------------
@@ -166,7 +167,10 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
     }
 
     /**
-     * Initialize this VisualTable
+     * Initialize this VisualTable. The boolean flags commonly used for
+     * filtering (visible, start visible, validated, hover and fixed) are
+     * indexed, so that iterating over, e.g., the visible items only visits
+     * the rows whose flag is set.
      * 
      * @param vis
      *            the Visualization associated with this table
@@ -185,6 +189,10 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
             index(VisualItem.STARTVISIBLE);
         if (canGetBoolean(VisualItem.VALIDATED))
             index(VisualItem.VALIDATED);
+        if (canGetBoolean(VisualItem.HOVER))
+            index(VisualItem.HOVER);
+        if (canGetBoolean(VisualItem.FIXED))
+            index(VisualItem.FIXED);
     }
 
     // ------------------------------------------------------------------------
@@ -259,6 +267,46 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
         m_group = group;
     }
 
+    /**
+     * Get the spatial index over the visible items of this table, creating
+     * it if necessary. Once created, the index is maintained as items move,
+     * change bounds or visibility, or are added and removed, until it is
+     * removed using {@link #removeSpatialIndex()}. Spatial queries of the
+     * {@link prefux.Visualization} only consult existing indices, they
+     * never create one.
+     * 
+     * @return the spatial index of this table
+     */
+    public SpatialIndex getSpatialIndex() {
+        if (m_spatial == null)
+            m_spatial = new SpatialIndex(this);
+        return m_spatial;
+    }
+
+    /**
+     * Indicates if a spatial index has been created for this table.
+     * 
+     * @return true if this table has a spatial index, false otherwise
+     * @see #getSpatialIndex()
+     */
+    public boolean hasSpatialIndex() {
+        return m_spatial != null;
+    }
+
+    /**
+     * Remove the spatial index of this table, if any, unregistering it
+     * from the table.
+     * 
+     * @return true if a spatial index was removed, false otherwise
+     */
+    public boolean removeSpatialIndex() {
+        if (m_spatial == null)
+            return false;
+        m_spatial.dispose();
+        m_spatial = null;
+        return true;
+    }
+
     /**
      * Get the VisualItem for the given table row.
      * 
@@ -771,7 +771,7 @@ public class TableVisualItem extends TableTuple<VisualTable> implements
 	@Override
 	public void tableChanged(Table t, int start, int end, int col, int type) {
 		if (!ignoreTableUpdate && type == EventConstants.UPDATE
-		        && (start == m_row) && (start == end)) {
+		        && start <= m_row && m_row <= end) {
 			String colName = getColumnName(col);
 			if (DOUBLE_PROPERTIES.containsKey(colName)) {
 				Platform.runLater(() -> {
@@ -31,7 +31,6 @@ import prefux.data.Table;
 import prefux.data.expression.Predicate;
 import prefux.data.expression.parser.ExpressionParser;
 import prefux.render.DefaultRendererFactory;
-import prefux.render.EdgeRenderer;
 import prefux.render.LabelRenderer;
 import prefux.render.ShapeRenderer;
 import prefux.util.ColorLib;
@@ -207,9 +206,6 @@ public class JavaFxSample extends Application {
 		display.prefHeight(root.getPrefHeight());
 		display.prefWidth(root.getPrefWidth());
 
-		for (int i = 0; EdgeRenderer.arrowHeadList.size() > i; i++) {
-			display.getChildren().add(EdgeRenderer.arrowHeadList.get(i));
-		}
 			root.setCenter(display);
 			root.setBottom(buildControlPanel(display));
 			root.setTop(showKeyCheckBox(display, root));
@@ -0,0 +1,104 @@
+package prefux.action;
+
+import prefux.Visualization
+import prefux.data.Table
+import prefux.visual.VisualItem
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class ActionListTest extends Specification {
+
+    /** Writes the number of its runs into the value field. */
+    static class Writer extends ItemAction {
+        int runs = 0
+
+        Writer() {
+            super("data")
+        }
+
+        protected void preProcess(double frac) {
+            ++runs
+        }
+
+        public void process(VisualItem item, double frac) {
+            item.setDouble("value", runs)
+        }
+    }
+
+    /** Copies the value field, only if it changed since the last run. */
+    static class Copier extends ItemAction {
+        Copier() {
+            super("data")
+            addDependency("data", "value")
+        }
+
+        public void process(VisualItem item, double frac) {
+            item.setDouble("copy", item.getDouble("value"))
+        }
+    }
+
+    Visualization vis
+    Writer writer
+    Copier copier
+
+    def setup() {
+        Table table = new Table()
+        table.addColumn("value", double.class)
+        table.addColumn("copy", double.class)
+        table.addRows(5)
+        vis = new Visualization()
+        vis.addTable("data", table)
+        writer = new Writer()
+        copier = new Copier()
+    }
+
+    def copies() {
+        def result = []
+        Iterator<VisualItem> items = vis.items("data")
+        while (items.hasNext()) {
+            result << items.next().getDouble("copy")
+        }
+        result
+    }
+
+    @Unroll
+    def "dependent action sees the changes of a fused list, copier first: #copierFirst"() {
+        given:
+        ActionList list = new ActionList()
+        list.setFused(true)
+        if (copierFirst) {
+            list.add(copier)
+            list.add(writer)
+        } else {
+            list.add(writer)
+            list.add(copier)
+        }
+        list.setVisualization(vis)
+
+        when:
+        list.run(1.0)
+        list.run(1.0)
+
+        then:
+        writer.runs == 2
+        copier.getExecutedCount() == 2
+        copier.getSkippedCount() == 0
+        copies() == [expected] * 5
+
+        when:
+        copier.resetRunCounts()
+        writer.setEnabled(false)
+        list.run(1.0)
+        list.run(1.0)
+
+        then:
+        copier.getExecutedCount() == (copierFirst ? 1 : 0)
+        copier.getSkippedCount() == (copierFirst ? 1 : 2)
+        copies() == [2.0d] * 5
+
+        where:
+        copierFirst | expected
+        true        | 1.0d
+        false       | 2.0d
+    }
+}
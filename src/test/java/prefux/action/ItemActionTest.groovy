@@ -0,0 +1,145 @@
+package prefux.action;
+
+import static prefux.Constants.NUMERICAL
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import javafx.application.Application
+import javafx.application.Platform
+import javafx.stage.Stage
+import prefux.Visualization
+import prefux.action.animate.ColorAnimator
+import prefux.action.animate.LocationAnimator
+import prefux.action.assignment.ColorAction
+import prefux.action.assignment.DataColorAction
+import prefux.data.Table
+import prefux.data.Tuple
+import prefux.data.event.TableListener
+import prefux.data.expression.AbstractPredicate
+import prefux.visual.VisualItem
+import prefux.visual.VisualTable
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class ItemActionTest extends Specification {
+
+    static CountDownLatch started = new CountDownLatch(1)
+
+    public static class AsNonApp extends Application {
+        @Override
+        public void start(Stage primaryStage) throws Exception {
+            started.countDown()
+        }
+    }
+
+    def setupSpec() {
+        Thread t = new Thread("JavaFX Init Thread") {
+                    public void run() {
+                        Application.launch(AsNonApp.class, new String[0]);
+                    }
+                };
+        t.setDaemon(true);
+        t.start();
+        started.await(10, TimeUnit.SECONDS)
+    }
+
+    /** Moves every item to twice its row number, on any thread. */
+    static class Mover extends ItemAction {
+        Mover() {
+            super("data", new AbstractPredicate() {
+                public boolean getBoolean(Tuple t) {
+                    return t.getRow() % 5 != 0
+                }
+            })
+        }
+
+        protected boolean isThreadSafe() {
+            true
+        }
+
+        public void process(VisualItem item, double frac) {
+            item.setX(2 * item.getRow())
+        }
+    }
+
+    Visualization vis
+    VisualTable vt
+    Mover mover
+
+    def setup() {
+        Table table = new Table()
+        table.addColumn("value", double.class)
+        table.addRows(100)
+        vis = new Visualization()
+        vt = vis.addTable("data", table)
+        mover = new Mover()
+        mover.setVisualization(vis)
+        mover.setParallel(true)
+        mover.setParallelThreshold(1)
+    }
+
+    /** Waits until the JavaFX events posted so far have been processed. */
+    def flushFx() {
+        CountDownLatch done = new CountDownLatch(1)
+        Platform.runLater({ done.countDown() })
+        done.await(10, TimeUnit.SECONDS)
+    }
+
+    def "parallel run fires one update event per run of rows on the calling thread"() {
+        given:
+        def events = []
+        vt.addTableListener({ t, start, end, col, type ->
+            if (col >= 0 && vt.getColumnName(col) == VisualItem.X)
+                events << [start, end, Thread.currentThread()]
+        } as TableListener)
+
+        when:
+        mover.run(1.0)
+
+        then:
+        events.collect { [it[0], it[1]] } == (0..<20).collect { [5 * it + 1, 5 * it + 4] }
+        events.every { it[2] == Thread.currentThread() }
+    }
+
+    def "column listeners are brought up to date after a parallel run"() {
+        given:
+        vt.index(VisualItem.X)
+        vt.getMetadata(VisualItem.X).getMaximumRow()
+
+        when:
+        mover.run(1.0)
+
+        then:
+        vt.getIndex(VisualItem.X).maximum() == 99
+        vt.getMetadata(VisualItem.X).getMaximumRow() == 99
+        vt.getIndex(VisualItem.X).rows(42.0d).next() == 21
+    }
+
+    def "item properties follow the coalesced update events"() {
+        given:
+        def items = (0..<100).collect { (VisualItem) vt.getTuple(it) }
+
+        when:
+        mover.run(1.0)
+        flushFx()
+
+        then:
+        items.every { it.xProperty().get() == (it.getRow() % 5 != 0 ? 2 * it.getRow() : 0) }
+    }
+
+    @Unroll
+    def "#action.class.simpleName is thread-safe: #threadSafe"() {
+        expect:
+        action.isThreadSafe() == threadSafe
+
+        where:
+        action                                                                | threadSafe
+        new ColorAction("data", VisualItem.FILLCOLOR)                         | true
+        new ColorAction("data", VisualItem.FILLCOLOR) { }                     | false
+        new DataColorAction("data", "value", NUMERICAL, VisualItem.FILLCOLOR) | false
+        new LocationAnimator("data")                                          | true
+        new ColorAnimator("data")                                             | true
+        new ColorAnimator("data") { }                                         | false
+    }
+}
@@ -0,0 +1,114 @@
+package prefux.action.animate;
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import javafx.application.Application
+import javafx.application.Platform
+import javafx.stage.Stage
+import prefux.Visualization
+import prefux.data.Table
+import prefux.data.Tuple
+import prefux.data.event.TableListener
+import prefux.data.expression.AbstractPredicate
+import prefux.util.ColorLib
+import prefux.visual.VisualItem
+import prefux.visual.VisualTable
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class ColumnAnimatorTest extends Specification {
+
+    static CountDownLatch started = new CountDownLatch(1)
+
+    public static class AsNonApp extends Application {
+        @Override
+        public void start(Stage primaryStage) throws Exception {
+            started.countDown()
+        }
+    }
+
+    def setupSpec() {
+        Thread t = new Thread("JavaFX Init Thread") {
+                    public void run() {
+                        Application.launch(AsNonApp.class, new String[0]);
+                    }
+                };
+        t.setDaemon(true);
+        t.start();
+        started.await(10, TimeUnit.SECONDS)
+    }
+
+    static final int START_COLOR = ColorLib.rgb(0, 0, 0)
+    static final int END_COLOR = ColorLib.rgb(200, 100, 50)
+
+    Visualization vis
+    VisualTable vt
+    List<VisualItem> items
+    ColumnAnimator animator
+
+    def setup() {
+        Table table = new Table()
+        table.addColumn("value", double.class)
+        table.addRows(10)
+        vis = new Visualization()
+        vt = vis.addTable("data", table)
+        items = (0..<10).collect { (VisualItem) vt.getTuple(it) }
+        items.each {
+            it.setStartX(0)
+            it.setEndX(10 * it.getRow())
+            it.setStartFillColor(START_COLOR)
+            it.setEndFillColor(END_COLOR)
+        }
+        animator = new ColumnAnimator("data")
+        animator.setVisualization(vis)
+    }
+
+    /** Waits until the JavaFX events posted so far have been processed. */
+    def flushFx() {
+        CountDownLatch done = new CountDownLatch(1)
+        Platform.runLater({ done.countDown() })
+        done.await(10, TimeUnit.SECONDS)
+    }
+
+    @Unroll
+    def "animated values reach the item properties, parallel: #parallel"() {
+        given:
+        animator.setParallel(parallel)
+        animator.setParallelThreshold(1)
+
+        when:
+        animator.run(0.5)
+        flushFx()
+
+        then:
+        items.every { it.getX() == 5 * it.getRow() }
+        items.every { it.xProperty().get() == 5 * it.getRow() }
+        items.every { it.fillColorProperty().get() == ColorLib.interp(START_COLOR, END_COLOR, 0.5) }
+
+        where:
+        parallel << [false, true]
+    }
+
+    def "one update event is fired per run of animated rows"() {
+        given:
+        animator.setFilterPredicate(new AbstractPredicate() {
+            public boolean getBoolean(Tuple t) {
+                return t.getRow() % 3 != 0
+            }
+        })
+        def events = []
+        vt.addTableListener({ t, start, end, col, type ->
+            if (col >= 0 && vt.getColumnName(col) == VisualItem.X)
+                events << [start, end]
+        } as TableListener)
+
+        when:
+        animator.run(1.0)
+        flushFx()
+
+        then:
+        events == [[1, 2], [4, 5], [7, 8]]
+        items.every { it.xProperty().get() == (it.getRow() % 3 != 0 ? 10 * it.getRow() : 0) }
+    }
+}
@@ -0,0 +1,140 @@
+package prefux.action.layout.graph;
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import javafx.application.Application
+import javafx.stage.Stage
+import prefux.Visualization
+import prefux.data.Node
+import prefux.data.Tree
+import prefux.data.util.Point2D
+import prefux.visual.NodeItem
+import prefux.visual.VisualTree
+import spock.lang.Specification
+
+public class ArrayNodeLinkTreeLayoutTest extends Specification {
+
+    static CountDownLatch started = new CountDownLatch(1)
+
+    public static class AsNonApp extends Application {
+        @Override
+        public void start(Stage primaryStage) throws Exception {
+            started.countDown()
+        }
+    }
+
+    def setupSpec() {
+        Thread t = new Thread("JavaFX Init Thread") {
+                    public void run() {
+                        Application.launch(AsNonApp.class, new String[0]);
+                    }
+                };
+        t.setDaemon(true);
+        t.start();
+        started.await(10, TimeUnit.SECONDS)
+    }
+
+    static final double EPSILON = 1e-9
+
+    Visualization vis
+    VisualTree vt
+    ArrayNodeLinkTreeLayout incremental
+    NodeLinkTreeLayout reference
+
+    def setup() {
+        // a tree of four levels with an uneven number of children per node
+        Tree tree = new Tree()
+        List<Node> level = [tree.addRoot()]
+        3.times { depth ->
+            List<Node> next = []
+            level.eachWithIndex { Node n, int i ->
+                ((i + depth) % 4 + 1).times { next << tree.addChild(n) }
+            }
+            level = next
+        }
+        vis = new Visualization()
+        vt = vis.addTree("tree", tree)
+        // vary the node sizes, so that spacing depends on the neighbors
+        items().each { NodeItem item ->
+            item.setBounds(0, 0, 10 + 5 * (item.getRow() % 3), 8 + 3 * (item.getRow() % 4))
+        }
+
+        incremental = new ArrayNodeLinkTreeLayout("tree")
+        incremental.setIncremental(true)
+        incremental.setVisualization(vis)
+        incremental.setLayoutAnchor(new Point2D(0, 0))
+        reference = new NodeLinkTreeLayout("tree")
+        reference.setVisualization(vis)
+        reference.setLayoutAnchor(new Point2D(0, 0))
+    }
+
+    List<NodeItem> items() {
+        (0..<vt.getNodeCount()).collect { (NodeItem) vt.getNode(it) }
+    }
+
+    /** The items placed by a layout: the root and all children of expanded items. */
+    List<NodeItem> placed() {
+        List<NodeItem> result = []
+        List<NodeItem> queue = [(NodeItem) incremental.getLayoutRoot()]
+        while (!queue.isEmpty()) {
+            NodeItem item = queue.remove(0)
+            result << item
+            if (item.isExpanded())
+                item.children().each { queue << (NodeItem) it }
+        }
+        result
+    }
+
+    /** Runs both layouts and returns the largest difference in position. */
+    double difference() {
+        incremental.run(1.0)
+        def positions = placed().collectEntries { [it, [it.getX(), it.getY()]] }
+        reference.run(1.0)
+        positions.collect { NodeItem item, List p ->
+            Math.max(Math.abs(item.getX() - p[0]), Math.abs(item.getY() - p[1]))
+        }.max()
+    }
+
+    def "incremental layout matches a complete layout as subtrees are collapsed and expanded"() {
+        given:
+        List<NodeItem> inner = items().findAll { it.getChildCount() > 0 && it.getDepth() > 0 }
+
+        expect:
+        inner.size() >= 4
+        difference() < EPSILON
+
+        when: "a subtree is collapsed"
+        inner[1].setExpanded(false)
+
+        then:
+        difference() < EPSILON
+
+        when: "it is expanded again"
+        inner[1].setExpanded(true)
+
+        then:
+        difference() < EPSILON
+
+        when: "several subtrees change at once"
+        inner[0].setExpanded(false)
+        inner[inner.size() - 1].setExpanded(false)
+        inner[2].setExpanded(false)
+
+        then:
+        difference() < EPSILON
+
+        when: "a collapsed subtree is expanded while an ancestor is collapsed"
+        inner[0].setExpanded(true)
+        incremental.getLayoutRoot().setExpanded(false)
+
+        then:
+        difference() < EPSILON
+
+        when:
+        incremental.getLayoutRoot().setExpanded(true)
+
+        then:
+        difference() < EPSILON
+    }
+}
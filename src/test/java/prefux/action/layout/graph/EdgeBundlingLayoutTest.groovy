@@ -0,0 +1,108 @@
+package prefux.action.layout.graph;
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class EdgeBundlingLayoutTest extends Specification {
+
+    static final double EPSILON = 1e-9
+
+    EdgeBundlingLayout layout = new EdgeBundlingLayout("graph")
+
+    /** Sets the edges to bundle, each given as source x, y and target x, y. */
+    def edges(List<List<Double>> e) {
+        layout.setEdges(e.collect { it[0] } as double[], e.collect { it[1] } as double[],
+                        e.collect { it[2] } as double[], e.collect { it[3] } as double[])
+    }
+
+    static boolean close(double[] actual, List<Double> expected) {
+        actual.length == expected.size() &&
+            (0..<actual.length).every { Math.abs(actual[it] - expected[it]) < EPSILON }
+    }
+
+    def "edges are computed in parallel by default"() {
+        expect:
+        layout.isParallel()
+    }
+
+    @Unroll
+    def "compatibility of #name edges"() {
+        given:
+        layout.setCompatibilityThreshold(threshold)
+        edges([[0, 0, 10, 0], other])
+
+        expect:
+        Math.abs(layout.compatibility(0, 1) - expected) < EPSILON
+        Math.abs(layout.compatibility(1, 0) - expected) < EPSILON
+
+        where:
+        name                   | other            | threshold | expected
+        "parallel"             | [0, 1, 10, 1]    | 0.6       | 10 / 11d
+        "opposite"             | [10, 1, 0, 1]    | 0.6       | 10 / 11d
+        "longer"               | [-5, 1, 15, 1]   | 0.6       | (12 / 17d) * (15 / 16d)
+        "perpendicular"        | [5, -5, 5, 5]    | 0.6       | 0
+        "distant"              | [20, 0, 30, 0]   | 0.6       | 0
+        "mutually invisible"   | [20, 0, 30, 0]   | 0.01      | 0
+    }
+
+    def "the compatibility is the product of the angle, scale, position and visibility factors"() {
+        given:
+        layout.setCompatibilityThreshold(0.01)
+        // at 60 degrees, half as long, centered above the middle of the first edge
+        edges([[0, 0, 10, 0], [3.75, 0, 6.25, 2.5 * Math.sqrt(3)]])
+
+        when:
+        double ca = 0.5
+        double cs = 2 / (7.5d / 5 + 10 / 7.5d)
+        double cp = 7.5d / (7.5d + 1.25d * Math.sqrt(3))
+
+        then:
+        Math.abs(layout.visibility(0, 1) - 1) < EPSILON
+        Math.abs(layout.visibility(1, 0) - 0.25) < EPSILON
+        Math.abs(layout.compatibility(0, 1) - ca * cs * cp * 0.25) < EPSILON
+        Math.abs(layout.compatibility(1, 0) - ca * cs * cp * 0.25) < EPSILON
+    }
+
+    def "visibility compares the midpoint of the projected edge with the midpoint of the edge"() {
+        given:
+        edges([[0, 0, 10, 0], [5, 3, 15, 3], [-5, 1, 15, 1]])
+
+        expect:
+        // the projection of edge 1 is centered at 10, half its length from 5
+        Math.abs(layout.visibility(0, 1)) < EPSILON
+        Math.abs(layout.visibility(1, 0)) < EPSILON
+        // a longer edge centered on the same midpoint sees it entirely
+        Math.abs(layout.visibility(0, 2) - 1) < EPSILON
+        Math.abs(layout.visibility(2, 0) - 1) < EPSILON
+    }
+
+    def "a straight polyline is subdivided into evenly spaced points"() {
+        given:
+        edges([[0, 0, 10, 0]])
+
+        expect:
+        close(layout.subdivide(0, [5, 0] as double[], 1), [5, 0])
+        close(layout.subdivide(0, [5, 0] as double[], 3), [2.5, 0, 5, 0, 7.5, 0])
+        close(layout.subdivide(0, [2.5, 0, 5, 0, 7.5, 0] as double[], 6),
+              (1..6).collect { [10 * it / 7d, 0] }.flatten())
+    }
+
+    def "a bent polyline is subdivided by its length, keeping its shape"() {
+        given:
+        edges([[0, 0, 10, 0]])
+        double[] bent = [5, 5] as double[]
+
+        expect:
+        close(layout.subdivide(0, bent, 1), [5, 5])
+        close(layout.subdivide(0, bent, 2), [10 / 3d, 10 / 3d, 20 / 3d, 10 / 3d])
+        close(layout.subdivide(0, bent, 3), [2.5, 2.5, 5, 5, 7.5, 2.5])
+    }
+
+    def "subdivision uses the end points of the edge it belongs to"() {
+        given:
+        edges([[0, 0, 10, 0], [0, 10, 0, 20]])
+
+        expect:
+        close(layout.subdivide(1, [0, 15] as double[], 3), [0, 12.5, 0, 15, 0, 17.5])
+    }
+}
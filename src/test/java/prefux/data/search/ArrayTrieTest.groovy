@@ -0,0 +1,125 @@
+package prefux.data.search;
+
+import prefux.data.Table
+import prefux.util.collections.IntIterator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class ArrayTrieTest extends Specification {
+
+    ArrayTrie trie
+
+    def setup() {
+        trie = new ArrayTrie(false)
+    }
+
+    def rows(IntIterator iter) {
+        def result = []
+        while (iter != null && iter.hasNext()) {
+            result << iter.nextInt()
+        }
+        result.sort()
+    }
+
+    def "addString grows past the initial capacity"() {
+        when:
+        for (int i = 0; i < 100; ++i) {
+            trie.addString("word" + i, i)
+        }
+
+        then:
+        trie.size() == 100
+        trie.count("word") == 100
+        rows(trie.find("word5")) == [5, 50, 51, 52, 53, 54, 55, 56, 57, 58, 59]
+    }
+
+    def "index grows the token buffer past the row count"() {
+        given:
+        Table table = new Table()
+        table.addColumn("label", String.class)
+        table.addRows(3)
+        (0..2).each { row ->
+            table.setString(row, "label", (1..20).collect { "t${row}x${it}" }.join(" "))
+        }
+
+        when:
+        trie.index(table, "label", " ")
+
+        then:
+        trie.size() == 60
+        rows(trie.find("t1x")).size() == 20
+        rows(trie.find("t2x20")) == [2]
+    }
+
+    @Unroll
+    def "prefix #prefix matches rows #expected"() {
+        given:
+        trie.addString("Apple", 0)
+        trie.addString("apricot", 1)
+        trie.addString("banana", 2)
+        trie.addString("apple", 3)
+
+        expect:
+        rows(trie.find(prefix)) == expected
+        trie.count(prefix) == expected.size()
+
+        where:
+        prefix  | expected
+        "ap"    | [0, 1, 3]
+        "APPLE" | [0, 3]
+        "b"     | [2]
+        "c"     | []
+    }
+
+    def "case sensitive index distinguishes case"() {
+        given:
+        trie = new ArrayTrie(true)
+        trie.addString("Apple", 0)
+        trie.addString("apple", 1)
+
+        expect:
+        rows(trie.find("A")) == [0]
+        rows(trie.find("a")) == [1]
+    }
+
+    def "removeString removes only the given word and row"() {
+        given:
+        trie.addString("apple", 0)
+        trie.addString("apple", 1)
+        trie.addString("apricot", 1)
+
+        when:
+        boolean removed = trie.removeString("apple", 1)
+
+        then:
+        removed
+        trie.size() == 2
+        rows(trie.find("apple")) == [0]
+        rows(trie.find("apr")) == [1]
+        !trie.removeString("apple", 1)
+    }
+
+    def "PrefixSearchTupleSet indexes and unindexes many tuples"() {
+        given:
+        Table table = new Table()
+        table.addColumn("label", String.class)
+        table.addRows(40)
+        (0..39).each { table.setString(it, "label", "alpha beta gamma" + it) }
+        PrefixSearchTupleSet set = new PrefixSearchTupleSet()
+
+        when:
+        set.index(table.tuples(), "label")
+        set.search("gamma1")
+
+        then:
+        set.getTupleCount() == 11
+
+        when:
+        set.unindex(table.getTuple(1), "label")
+        set.search("")
+        set.search("gamma1")
+
+        then:
+        set.getTupleCount() == 10
+    }
+}
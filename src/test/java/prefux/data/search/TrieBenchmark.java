@@ -0,0 +1,127 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.search;
+
+import java.util.Random;
+
+import prefux.data.Table;
+import prefux.data.Tuple;
+import prefux.util.collections.IntIterator;
+
+/**
+ * Compares build time, heap usage and prefix lookup throughput of the
+ * object based {@link Trie} and the array based {@link ArrayTrie}.
+ * Run with the number of labels to index as the optional first argument.
+ */
+public class TrieBenchmark {
+
+	private static final String FIELD = "label";
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		Random r = new Random(42);
+		Table table = new Table();
+		table.addColumn(FIELD, String.class);
+		table.addRows(n);
+		for (int i = 0; i < n; i++) {
+			table.setString(i, FIELD, randomWord(r) + " " + randomWord(r));
+		}
+		String[] queries = new String[10000];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = randomWord(r).substring(0, 1 + r.nextInt(3));
+		}
+
+		long mem = usedMemory();
+		long t0 = System.nanoTime();
+		Trie trie = new Trie(false);
+		for (int i = 0; i < n; i++) {
+			Tuple t = table.getTuple(i);
+			for (String tok : table.getString(i, FIELD).split(" ")) {
+				trie.addString(tok, t);
+			}
+		}
+		long t1 = System.nanoTime();
+		long trieMem = usedMemory() - mem;
+		long hits = 0;
+		for (String q : queries) {
+			Trie.TrieNode node = trie.find(q);
+			if (node != null) {
+				for (java.util.Iterator<?> it = trie.new TrieIterator(node); it.hasNext(); it.next()) {
+					hits++;
+				}
+			}
+		}
+		long t2 = System.nanoTime();
+		report("Trie", t1 - t0, trieMem, t2 - t1, hits);
+		trie = null;
+
+		mem = usedMemory();
+		t0 = System.nanoTime();
+		ArrayTrie atrie = new ArrayTrie(false);
+		atrie.index(table, FIELD, " ");
+		t1 = System.nanoTime();
+		long atrieMem = usedMemory() - mem;
+		hits = 0;
+		for (String q : queries) {
+			IntIterator rows = atrie.find(q);
+			if (rows != null) {
+				for (; rows.hasNext(); rows.nextInt()) {
+					hits++;
+				}
+			}
+		}
+		t2 = System.nanoTime();
+		report("ArrayTrie", t1 - t0, atrieMem, t2 - t1, hits);
+	}
+
+	private static void report(String name, long build, long mem, long query, long hits) {
+		System.out.printf("%-10s build %8.1f ms  heap %8.1f MB  queries %8.1f ms  (%d hits)%n",
+				name, build / 1e6, mem / (1024.0 * 1024.0), query / 1e6, hits);
+	}
+
+	private static String randomWord(Random r) {
+		int len = 3 + r.nextInt(8);
+		char[] c = new char[len];
+		for (int i = 0; i < len; i++) {
+			c[i] = (char) ('a' + r.nextInt(26));
+		}
+		return new String(c);
+	}
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+}
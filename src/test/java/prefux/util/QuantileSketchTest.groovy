@@ -0,0 +1,143 @@
+package prefux.util;
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+public class QuantileSketchTest extends Specification {
+
+    /** Allowed rank error, about twice the expected error at the default k. */
+    static final double EPSILON = 0.02
+
+    static final int N = 100000
+
+    double[] values
+    double[] sorted
+
+    def setup() {
+        Random rand = new Random(42)
+        values = new double[N]
+        for (int i = 0; i < N; ++i)
+            values[i] = rand.nextGaussian()
+        sorted = values.clone()
+        Arrays.sort(sorted)
+    }
+
+    /** The exact fraction of values strictly less than x. */
+    double exactRank(double x) {
+        int lo = 0, hi = N
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1
+            if (sorted[mid] < x) lo = mid + 1 else hi = mid
+        }
+        lo / (double) N
+    }
+
+    /** The largest rank error of a sketch at the percentiles of the input. */
+    double maxRankError(QuantileSketch sketch) {
+        (1..<100).collect { int p ->
+            double x = sorted[(int) (p * N / 100)]
+            Math.abs(sketch.getRank(x) - exactRank(x))
+        }.max()
+    }
+
+    def "ranks and quantiles are within the error bound of the exact values"() {
+        given:
+        QuantileSketch sketch = new QuantileSketch()
+        values.each { sketch.update(it) }
+
+        expect:
+        sketch.getCount() == N
+        sketch.getMinimum() == sorted[0]
+        sketch.getMaximum() == sorted[N - 1]
+        maxRankError(sketch) < EPSILON
+        (1..<100).every { int p ->
+            Math.abs(exactRank(sketch.getQuantile(p / 100.0d)) - p / 100.0d) < EPSILON
+        }
+        sketch.getQuantile(0) == sorted[0]
+        sketch.getQuantile(1) == sorted[N - 1]
+    }
+
+    def "a merged sketch has the accuracy of a sketch over the union"() {
+        given:
+        QuantileSketch whole = new QuantileSketch()
+        QuantileSketch a = new QuantileSketch()
+        QuantileSketch b = new QuantileSketch()
+        values.eachWithIndex { double x, int i ->
+            whole.update(x)
+            // partitions of different size and distribution
+            (x < 0.5 && i % 3 != 0 ? a : b).update(x)
+        }
+        long partCount = b.getCount()
+        double partMedian = b.getQuantile(0.5)
+
+        when:
+        a.merge(b)
+
+        then:
+        a.getCount() == whole.getCount()
+        a.getMinimum() == whole.getMinimum()
+        a.getMaximum() == whole.getMaximum()
+        maxRankError(a) < EPSILON
+        (1..<10).every { int d ->
+            Math.abs(a.getQuantile(d / 10.0d) - whole.getQuantile(d / 10.0d)) < 0.1
+        }
+        b.getCount() == partCount
+        b.getQuantile(0.5) == partMedian
+    }
+
+    def "merging an empty sketch leaves a sketch unchanged"() {
+        given:
+        QuantileSketch sketch = new QuantileSketch()
+        values.each { sketch.update(it) }
+        double median = sketch.getQuantile(0.5)
+
+        when:
+        sketch.merge(new QuantileSketch())
+
+        then:
+        sketch.getCount() == N
+        sketch.getQuantile(0.5) == median
+    }
+
+    def "an empty sketch answers NaN"() {
+        given:
+        QuantileSketch sketch = new QuantileSketch()
+
+        expect:
+        sketch.isEmpty()
+        sketch.getCount() == 0
+        Double.isNaN(sketch.getMinimum())
+        Double.isNaN(sketch.getMaximum())
+        Double.isNaN(sketch.getQuantile(0.5))
+        Double.isNaN(sketch.getRank(0))
+        sketch.getQuantiles(4).every { Double.isNaN(it) }
+    }
+
+    @Unroll
+    def "a sketch of a single value answers that value for quantile #q"() {
+        given:
+        QuantileSketch sketch = new QuantileSketch()
+        sketch.update(3.5)
+
+        expect:
+        !sketch.isEmpty()
+        sketch.getCount() == 1
+        sketch.getQuantile(q) == 3.5
+        sketch.getRank(3.5) == 0
+        sketch.getRank(4) == 1
+
+        where:
+        q << [0, 0.25, 0.5, 1]
+    }
+
+    def "NaN values are ignored"() {
+        given:
+        QuantileSketch sketch = new QuantileSketch()
+
+        when:
+        sketch.update(Double.NaN)
+
+        then:
+        sketch.isEmpty()
+    }
+}
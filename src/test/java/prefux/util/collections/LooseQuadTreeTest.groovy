@@ -0,0 +1,215 @@
+package prefux.util.collections;
+
+import spock.lang.Specification
+
+public class LooseQuadTreeTest extends Specification {
+
+    LooseQuadTree tree = new LooseQuadTree()
+
+    /** Rectangles by id, as x, y, width, height, or null if removed. */
+    Map<Integer, List<Double>> rects = [:]
+
+    def put(int id, double x, double y, double w, double h) {
+        tree.put(id, x, y, w, h)
+        rects[id] = [x, y, w, h]
+    }
+
+    def remove(int id) {
+        rects.remove(id)
+        tree.remove(id)
+    }
+
+    Set<Integer> query(double x, double y, double w, double h) {
+        Set<Integer> ids = []
+        IntIterator iter = tree.query(x, y, w, h)
+        while (iter.hasNext()) ids << iter.nextInt()
+        ids
+    }
+
+    Set<Integer> expectedQuery(double x, double y, double w, double h) {
+        rects.findAll { id, r ->
+            r[0] <= x + w && r[0] + r[2] >= x && r[1] <= y + h && r[1] + r[3] >= y
+        }.keySet()
+    }
+
+    static double distance(List<Double> r, double x, double y) {
+        double dx = x < r[0] ? r[0] - x : (x > r[0] + r[2] ? x - r[0] - r[2] : 0)
+        double dy = y < r[1] ? r[1] - y : (y > r[1] + r[3] ? y - r[1] - r[3] : 0)
+        Math.sqrt(dx * dx + dy * dy)
+    }
+
+    int expectedNearest(double x, double y, double maxDist) {
+        int best = -1
+        double bestDist = maxDist, bestArea = Double.POSITIVE_INFINITY
+        rects.each { id, r ->
+            double d = distance(r, x, y), a = r[2] * r[3]
+            if (d < bestDist || (d == bestDist && a < bestArea)) {
+                best = id
+                bestDist = d
+                bestArea = a
+            }
+        }
+        best
+    }
+
+    /** Adds n rectangles of mixed sizes to a 1000 by 1000 area. */
+    def fill(int n, Random rand) {
+        n.times { id ->
+            double w = rand.nextDouble() * (id % 10 == 0 ? 50 : 2)
+            put(id, rand.nextDouble() * 1000 - 500, rand.nextDouble() * 1000 - 500, w, w / 2)
+        }
+    }
+
+    def "an empty tree has no rectangles"() {
+        expect:
+        tree.size() == 0
+        !tree.contains(0)
+        !tree.query(-1e6, -1e6, 2e6, 2e6).hasNext()
+        tree.nearest(0, 0, Double.POSITIVE_INFINITY) == -1
+        !tree.getBounds(new double[4])
+    }
+
+    def "nodes are split as rectangles are added, and queries find all of them"() {
+        given:
+        Random rand = new Random(7)
+
+        when:
+        fill(2000, rand)
+
+        then:
+        tree.size() == 2000
+        (0..<2000).every { tree.contains(it) }
+        query(-500, -500, 1050, 1050) == rects.keySet()
+        (0..<100).every {
+            double x = rand.nextDouble() * 1000 - 500, y = rand.nextDouble() * 1000 - 500
+            query(x, y, 40, 40) == expectedQuery(x, y, 40, 40)
+        }
+    }
+
+    def "a rectangle touching the query region is included"() {
+        given:
+        put(1, 10, 10, 5, 5)
+
+        expect:
+        query(15, 15, 1, 1) == [1] as Set
+        query(0, 0, 10, 10) == [1] as Set
+        query(15.5, 10, 1, 1).isEmpty()
+    }
+
+    def "the tree grows to hold rectangles outside of its cell"() {
+        given:
+        put(0, 0, 0, 1, 1)
+
+        when:
+        put(1, 1e6, -1e6, 10, 10)
+        put(2, -1e5, 3e5, 0, 0)
+        double[] bounds = new double[4]
+
+        then:
+        tree.size() == 3
+        query(1e6 - 1, -1e6 - 1, 2, 2) == [1] as Set
+        query(-1e5, 3e5, 0, 0) == [2] as Set
+        query(-1, -1, 3, 3) == [0] as Set
+        tree.getBounds(bounds)
+        bounds as List == [-1e5d, -1e6d, 1e6d + 10, 3e5d]
+    }
+
+    def "moved rectangles are found at their new location only"() {
+        given:
+        Random rand = new Random(11)
+        fill(500, rand)
+
+        when:
+        (0..<500).step(3).each { id ->
+            def r = rects[id]
+            put(id, r[0] + (id % 2 == 0 ? 0.5 : 3000), r[1], r[2], r[3])
+        }
+
+        then:
+        tree.size() == 500
+        (0..<100).every {
+            double x = rand.nextDouble() * 4000 - 500, y = rand.nextDouble() * 1000 - 500
+            query(x, y, 60, 60) == expectedQuery(x, y, 60, 60)
+        }
+    }
+
+    def "removed rectangles are no longer found"() {
+        given:
+        Random rand = new Random(3)
+        fill(1000, rand)
+
+        when:
+        (0..<1000).step(2).each { remove(it) }
+
+        then:
+        tree.size() == 500
+        !tree.contains(0)
+        tree.contains(1)
+        !tree.remove(0)
+        !tree.remove(5000)
+        query(-500, -500, 1050, 1050) == rects.keySet()
+        (0..<100).every {
+            double x = rand.nextDouble() * 1000 - 500, y = rand.nextDouble() * 1000 - 500
+            query(x, y, 40, 40) == expectedQuery(x, y, 40, 40)
+        }
+
+        when: "all rectangles are removed"
+        (1..<1000).step(2).each { remove(it) }
+        double[] bounds = new double[4]
+
+        then:
+        tree.size() == 0
+        !tree.getBounds(bounds)
+        !tree.query(-1e6, -1e6, 2e6, 2e6).hasNext()
+
+        when: "the tree is used again"
+        put(7, 1, 2, 3, 4)
+
+        then:
+        tree.getBounds(bounds)
+        bounds as List == [1d, 2d, 4d, 6d]
+    }
+
+    def "the nearest rectangle within the maximum distance is found"() {
+        given:
+        Random rand = new Random(5)
+        fill(2000, rand)
+        (0..<2000).step(3).each { remove(it) }
+
+        expect:
+        (0..<200).every {
+            double x = rand.nextDouble() * 1200 - 600, y = rand.nextDouble() * 1200 - 600
+            tree.nearest(x, y, 20) == expectedNearest(x, y, 20)
+        }
+    }
+
+    def "the innermost of nested rectangles is nearest to a point inside them"() {
+        given:
+        put(0, 0, 0, 100, 100)
+        put(1, 10, 10, 50, 50)
+        put(2, 20, 20, 5, 5)
+        put(3, 200, 200, 0, 0)
+
+        expect:
+        tree.nearest(22, 22, 0) == 2
+        tree.nearest(30, 30, 0) == 1
+        tree.nearest(90, 90, 0) == 0
+        tree.nearest(203, 204, 5) == 3
+        tree.nearest(203, 204, 4.9) == -1
+    }
+
+    def "rejects invalid rectangles"() {
+        when:
+        tree.put(id, x, y, w, h)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        id | x          | y   | w  | h
+        -1 | 0          | 0   | 1  | 1
+        0  | Double.NaN | 0   | 1  | 1
+        0  | 0          | 0   | -1 | 1
+        0  | 0          | 0   | 1  | Double.POSITIVE_INFINITY
+    }
+}